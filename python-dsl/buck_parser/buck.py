@@ -48,7 +48,7 @@ from typing import (
 
 import pywatchman
 from pywatchman import WatchmanError
-from six import PY3, iteritems, itervalues, string_types
+from six import PY3, integer_types, iteritems, itervalues, string_types
 
 # Python 2.6, 2.7, use iterator filter from Python 3
 from six.moves import builtins, filter
@@ -1716,8 +1716,33 @@ def format_exception_info(exception_info):
     return formatted
 
 
-def encode_result(values, diagnostics, profile):
-    # type: (List[Dict[str, object]], List[Diagnostic], Optional[str]) -> str
+# Encodings of the results sent to the Java process.
+JSON_ENCODING = "json"
+BSER_ENCODING = "bser"
+
+
+def _to_bser_value(value, json_encoder):
+    # type: (object, BuckJSONEncoder) -> object
+    """Converts a value to the plain types supported by BSER encoders, as json_encoder does."""
+    if value is None or isinstance(
+        value, (bool, float) + integer_types + string_types
+    ):
+        return value
+    if isinstance(value, dict):
+        return {k: _to_bser_value(v, json_encoder) for k, v in iteritems(value)}
+    if isinstance(value, (list, tuple)):
+        return [_to_bser_value(v, json_encoder) for v in value]
+    return _to_bser_value(json_encoder.default(value), json_encoder)
+
+
+def _encode(result, json_encoder, encoding):
+    if encoding == BSER_ENCODING:
+        return pywatchman.bser.dumps(_to_bser_value(result, json_encoder))
+    return json_encoder.encode(result)
+
+
+def encode_result(values, diagnostics, profile, encoding=JSON_ENCODING):
+    # type: (List[Dict[str, object]], List[Diagnostic], Optional[str], str) -> Union[str, bytes]
     result = {
         "values": [
             {k: v for k, v in iteritems(value) if v is not None} for value in values
@@ -1735,7 +1760,7 @@ def encode_result(values, diagnostics, profile):
     if profile is not None:
         result["profile"] = profile
     try:
-        return json_encoder.encode(result)
+        return _encode(result, json_encoder, encoding)
     except Exception as e:
         # Try again without the values
         result["values"] = []
@@ -1749,10 +1774,12 @@ def encode_result(values, diagnostics, profile):
                 "exception": format_exception_info(sys.exc_info()),
             }
         )
-        return json_encoder.encode(result)
+        return _encode(result, json_encoder, encoding)
 
 
-def process_with_diagnostics(build_file_query, build_file_processor, to_parent):
+def process_with_diagnostics(
+    build_file_query, build_file_processor, to_parent, encoding=JSON_ENCODING
+):
     start_time = time.time()
     build_file = build_file_query.get("buildFile")
     watch_root = build_file_query.get("watchRoot")
@@ -1793,16 +1820,18 @@ def process_with_diagnostics(build_file_query, build_file_processor, to_parent):
             )
         raise
     finally:
-        java_process_send_result(to_parent, values, diagnostics, None)
+        java_process_send_result(to_parent, values, diagnostics, None, encoding)
 
     end_time = time.time()
     return end_time - start_time
 
 
-def java_process_send_result(to_parent, values, diagnostics, profile_result):
+def java_process_send_result(
+    to_parent, values, diagnostics, profile_result, encoding=JSON_ENCODING
+):
     """Sends result to the Java process"""
-    data = encode_result(values, diagnostics, profile_result)
-    if PY3:
+    data = encode_result(values, diagnostics, profile_result, encoding)
+    if PY3 and not isinstance(data, bytes):
         # in Python 3 write expects bytes instead of string
         data = data.encode("utf-8")
     to_parent.write(data)
@@ -1950,7 +1979,13 @@ def main():
         action="store_true",
         help="Warn about deprecated syntax usage.",
     )
+    parser.add_option(
+        "--bser_output",
+        action="store_true",
+        help="Encode the results sent to the parent process with BSER instead of JSON.",
+    )
     (options, args) = parser.parse_args()
+    encoding = _get_encoding(options)
 
     # Even though project_root is absolute path, it may not be concise. For
     # example, it might be like "C:\project\.\rule".
@@ -2039,7 +2074,7 @@ def main():
                     "projectPrefix": project_root,
                 }
                 duration = process_with_diagnostics(
-                    query, build_file_processor, to_parent
+                    query, build_file_processor, to_parent, encoding
                 )
                 processed_build_file.append(
                     {"buildFile": build_file, "duration": duration}
@@ -2059,7 +2094,7 @@ def main():
                     report_profile(options, to_parent, processed_build_file, profiler)
                 else:
                     duration = process_with_diagnostics(
-                        build_file_query, build_file_processor, to_parent
+                        build_file_query, build_file_processor, to_parent, encoding
                     )
                     processed_build_file.append(
                         {
@@ -2127,13 +2162,19 @@ def report_profile(options, to_parent, processed_build_file, profiler):
             extra_result += "\n\n"
             profile_result = extra_result + profile_result
             profile_result += Tracer.get_all_traces_and_reset()
-            java_process_send_result(to_parent, [], [], profile_result)
+            java_process_send_result(
+                to_parent, [], [], profile_result, _get_encoding(options)
+            )
         except Exception:
             trace = traceback.format_exc()
             print(str(trace))
             raise
     else:
-        java_process_send_result(to_parent, [], [], None)
+        java_process_send_result(to_parent, [], [], None, _get_encoding(options))
+
+
+def _get_encoding(options):
+    return BSER_ENCODING if options.bser_output else JSON_ENCODING
 
 
 def make_glob(pat):
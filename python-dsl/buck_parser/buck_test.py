@@ -13,15 +13,20 @@
 # under the License.
 
 import itertools
+import json
 import os
 import shutil
 import tempfile
 import unittest
 from pathlib import Path, PurePosixPath, PureWindowsPath
 
+from pywatchman import bser
+
 from .buck import (
+    BSER_ENCODING,
     BuildFileContext,
     LazyBuildEnvPartial,
+    encode_result,
     flatten_dicts,
     get_mismatched_args,
     host_info,
@@ -29,6 +34,7 @@ from .buck import (
 )
 from .glob_internal import glob_internal, path_component_starts_with_dot
 from .glob_watchman import format_watchman_query_params
+from .select_support import SelectorList, SelectorValue
 
 
 class FakePathMixin(object):
@@ -77,6 +83,27 @@ class TestBuckPlatform(unittest.TestCase):
         )
 
 
+class TestEncodeResult(unittest.TestCase):
+    def test_bser_encoding_matches_json_encoding(self):
+        values = [
+            {
+                "name": "lib",
+                "deps": (":a", ":b"),
+                "count": 3,
+                "ratio": 0.5,
+                "enabled": True,
+                "srcs": SelectorList([SelectorValue({"DEFAULT": ["A.java"]}, "")]),
+                "unset": None,
+            }
+        ]
+        json_result = json.loads(encode_result(values, [], "profile"))
+        bser_result = bser.loads(
+            encode_result(values, [], "profile", BSER_ENCODING),
+            value_encoding="utf-8",
+        )
+        self.assertEqual(json_result, bser_result)
+
+
 class TestBuckGlobMixin(object):
     def do_glob(self, *args, **kwargs):
         # subclasses can override this to test a different glob implementation
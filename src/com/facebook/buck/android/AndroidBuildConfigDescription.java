@@ -33,6 +33,7 @@ import com.facebook.buck.core.util.immutables.BuckStyleImmutable;
 import com.facebook.buck.io.filesystem.ProjectFilesystem;
 import com.facebook.buck.jvm.core.JavaAbis;
 import com.facebook.buck.jvm.java.CalculateClassAbi;
+import com.facebook.buck.jvm.java.JavaBuckConfig;
 import com.facebook.buck.jvm.java.Javac;
 import com.facebook.buck.jvm.java.JavacFactory;
 import com.facebook.buck.jvm.java.JavacOptions;
@@ -50,9 +51,12 @@ public class AndroidBuildConfigDescription
 
   private static final Flavor GEN_JAVA_FLAVOR = InternalFlavor.of("gen_java_android_build_config");
 
+  private final JavaBuckConfig javaBuckConfig;
   private final JavacFactory javacFactory;
 
-  public AndroidBuildConfigDescription(ToolchainProvider toolchainProvider) {
+  public AndroidBuildConfigDescription(
+      ToolchainProvider toolchainProvider, JavaBuckConfig javaBuckConfig) {
+    this.javaBuckConfig = javaBuckConfig;
     javacFactory = JavacFactory.getDefault(toolchainProvider);
   }
 
@@ -75,7 +79,8 @@ public class AndroidBuildConfigDescription
           buildTarget,
           graphBuilder,
           context.getProjectFilesystem(),
-          Objects.requireNonNull(configRule.getSourcePathToOutput()));
+          Objects.requireNonNull(configRule.getSourcePathToOutput()),
+          javaBuckConfig.getClassAbiCacheMaxSizeBytes());
     }
 
     return createBuildRule(
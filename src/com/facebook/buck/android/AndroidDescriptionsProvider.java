@@ -67,7 +67,7 @@ public class AndroidDescriptionsProvider implements DescriptionProvider {
             toolchainProvider,
             new AndroidBinaryGraphEnhancerFactory(),
             new AndroidBinaryFactory(androidBuckConfig)),
-        new AndroidBuildConfigDescription(toolchainProvider),
+        new AndroidBuildConfigDescription(toolchainProvider, javaConfig),
         new AndroidBundleDescription(
             javaConfig,
             proGuardConfig,
@@ -82,7 +82,7 @@ public class AndroidDescriptionsProvider implements DescriptionProvider {
             javaConfig, proGuardConfig, cxxBuckConfig, dxConfig, toolchainProvider),
         new AndroidInstrumentationTestDescription(config, toolchainProvider),
         new AndroidLibraryDescription(javaConfig, defaultAndroidCompilerFactory, toolchainProvider),
-        new AndroidPrebuiltAarDescription(toolchainProvider),
+        new AndroidPrebuiltAarDescription(toolchainProvider, javaConfig),
         new AndroidResourceDescription(toolchainProvider, androidBuckConfig),
         new RobolectricTestDescription(
             toolchainProvider, javaConfig, defaultAndroidCompilerFactory),
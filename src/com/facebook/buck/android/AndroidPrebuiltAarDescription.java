@@ -40,6 +40,7 @@ import com.facebook.buck.io.filesystem.ProjectFilesystem;
 import com.facebook.buck.jvm.core.JavaAbis;
 import com.facebook.buck.jvm.java.CalculateClassAbi;
 import com.facebook.buck.jvm.java.ExtraClasspathProvider;
+import com.facebook.buck.jvm.java.JavaBuckConfig;
 import com.facebook.buck.jvm.java.JavacFactory;
 import com.facebook.buck.jvm.java.JavacToJarStepFactory;
 import com.facebook.buck.jvm.java.MaybeRequiredForSourceOnlyAbiArg;
@@ -83,10 +84,13 @@ public class AndroidPrebuiltAarDescription
   }
 
   private final ToolchainProvider toolchainProvider;
+  private final JavaBuckConfig javaBuckConfig;
   private final JavacFactory javacFactory;
 
-  public AndroidPrebuiltAarDescription(ToolchainProvider toolchainProvider) {
+  public AndroidPrebuiltAarDescription(
+      ToolchainProvider toolchainProvider, JavaBuckConfig javaBuckConfig) {
     this.toolchainProvider = toolchainProvider;
+    this.javaBuckConfig = javaBuckConfig;
     this.javacFactory = JavacFactory.getDefault(toolchainProvider);
   }
 
@@ -129,7 +133,8 @@ public class AndroidPrebuiltAarDescription
           graphBuilder,
           projectFilesystem,
           ExplicitBuildTargetSourcePath.of(
-              unzipAar.getBuildTarget(), unzipAar.getPathToClassesJar()));
+              unzipAar.getBuildTarget(), unzipAar.getPathToClassesJar()),
+          javaBuckConfig.getClassAbiCacheMaxSizeBytes());
     }
 
     Iterable<PrebuiltJar> javaDeps =
@@ -130,7 +130,8 @@ public class RobolectricTestDescription
           buildTarget,
           graphBuilder,
           projectFilesystem,
-          Objects.requireNonNull(testRule.getSourcePathToOutput()));
+          Objects.requireNonNull(testRule.getSourcePathToOutput()),
+          javaBuckConfig.getClassAbiCacheMaxSizeBytes());
     }
 
     JavacOptions javacOptions =
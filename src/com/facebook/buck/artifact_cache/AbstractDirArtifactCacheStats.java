@@ -0,0 +1,40 @@
+/*
+ * Copyright 2019-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.artifact_cache;
+
+import com.facebook.buck.core.util.immutables.BuckStyleTuple;
+import com.google.common.collect.ImmutableList;
+import org.immutables.value.Value;
+
+/** Counters of a {@link DirArtifactCache}, since it was created. */
+@BuckStyleTuple
+@Value.Immutable
+interface AbstractDirArtifactCacheStats {
+  long getHits();
+
+  long getMisses();
+
+  long getEvictions();
+
+  long getEvictedBytes();
+
+  /** Size of the cache, if it is size-bounded and its index was loaded. */
+  long getSizeBytes();
+
+  /** Keys of the most read entries, most read first, if the cache is size-bounded. */
+  ImmutableList<String> getHotKeys();
+}
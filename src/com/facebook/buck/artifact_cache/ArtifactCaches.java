@@ -347,7 +347,11 @@ public class ArtifactCaches implements ArtifactCacheFactory, AutoCloseable {
               httpWriteExecutorService,
               httpFetchExecutorService,
               builder,
-              HttpArtifactCache::new,
+              (args) ->
+                  new HttpArtifactCache(
+                      args,
+                      buckConfig.getHttpMultiFetchEnabled() ? getMultiFetchLimit(buckConfig) : 0,
+                      buckConfig.getHttpFetchConcurrency()),
               mode,
               clientCertificateHandler);
           break;
@@ -25,7 +25,6 @@ import com.facebook.buck.io.file.BorrowablePath;
 import com.facebook.buck.io.file.LazyPath;
 import com.facebook.buck.io.filesystem.ProjectFilesystem;
 import com.facebook.buck.util.DirectoryCleaner;
-import com.facebook.buck.util.DirectoryCleanerArgs;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Charsets;
 import com.google.common.collect.ComparisonChain;
@@ -51,6 +50,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
 import javax.annotation.Nullable;
 
 public class DirArtifactCache implements ArtifactCache {
@@ -58,12 +58,10 @@ public class DirArtifactCache implements ArtifactCache {
   private static final Logger LOG = Logger.get(DirArtifactCache.class);
 
   private static final ArtifactCacheMode CACHE_MODE = ArtifactCacheMode.dir;
-  // Ratio of bytes stored to max size that expresses how many bytes need to be stored after we
-  // attempt to delete old files.
-  private static final float STORED_TO_MAX_BYTES_RATIO_TRIM_TRIGGER = 0.5f;
   // How much of the max size to leave if we decide to delete old files.
   private static final float MAX_BYTES_TRIM_RATIO = 2 / 3f;
   private static final String TMP_EXTENSION = ".tmp";
+  private static final int HOT_KEYS_TO_REPORT = 10;
 
   private final String name;
   private final ProjectFilesystem filesystem;
@@ -71,7 +69,9 @@ public class DirArtifactCache implements ArtifactCache {
   private final Optional<Long> maxCacheSizeBytes;
   private final CacheReadMode cacheReadMode;
   private final ListeningExecutorService storeExecutorService;
-  private long bytesSinceLastDeleteOldFiles;
+  private final Optional<DirArtifactCacheIndex> index;
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
 
   public DirArtifactCache(
       String name,
@@ -87,7 +87,13 @@ public class DirArtifactCache implements ArtifactCache {
     this.maxCacheSizeBytes = maxCacheSizeBytes;
     this.cacheReadMode = cacheReadMode;
     this.storeExecutorService = storeExecutorService;
-    this.bytesSinceLastDeleteOldFiles = 0L;
+    this.index =
+        maxCacheSizeBytes.map(
+            maxSize ->
+                new DirArtifactCacheIndex(
+                    filesystem.resolve(cacheDir),
+                    filesystem.resolve(getPathToTempFolder()),
+                    getDirectoryCleanerPathSelector()::comparePaths));
 
     // Check first, as mkdirs will fail if the path is a symlink.
     if (!filesystem.isDirectory(cacheDir)) {
@@ -131,8 +137,11 @@ public class DirArtifactCache implements ArtifactCache {
 
       result =
           CacheResult.hit(name, CACHE_MODE, metadata.build(), filesystem.getFileSize(output.get()));
+      hits.incrementAndGet();
+      index.ifPresent(cacheIndex -> cacheIndex.recordAccess(getIndexKey(ruleKey)));
     } catch (NoSuchFileException e) {
       result = CacheResult.miss();
+      misses.incrementAndGet();
     } catch (IOException e) {
       LOG.warn(e, "Artifact fetch(%s, %s) error", ruleKey, output);
       result =
@@ -186,8 +195,6 @@ public class DirArtifactCache implements ArtifactCache {
             storeArtifactOutput(borrowedAndStoredArtifactPath.get(), artifactPath);
           }
         }
-        bytesSinceLastDeleteOldFiles += filesystem.getFileSize(artifactPath);
-
         // Now, write the meta data artifact.
         Path tmp = filesystem.createTempFile(getPreparedTempFolder(), "metadata", TMP_EXTENSION);
         try {
@@ -201,20 +208,24 @@ public class DirArtifactCache implements ArtifactCache {
             }
           }
           filesystem.move(tmp, metadataPath, StandardCopyOption.REPLACE_EXISTING);
-          bytesSinceLastDeleteOldFiles += filesystem.getFileSize(metadataPath);
         } finally {
           filesystem.deleteFileAtPathIfExists(tmp);
         }
+
+        if (index.isPresent()) {
+          index
+              .get()
+              .recordStore(
+                  getIndexKey(ruleKey),
+                  filesystem.getFileSize(artifactPath) + filesystem.getFileSize(metadataPath));
+        }
       }
 
     } catch (IOException e) {
       LOG.warn(e, "Artifact store(%s, %s) error", info.getRuleKeys(), output);
     }
 
-    if (maxCacheSizeBytes.isPresent()
-        && bytesSinceLastDeleteOldFiles
-            > (maxCacheSizeBytes.get() * STORED_TO_MAX_BYTES_RATIO_TRIM_TRIGGER)) {
-      bytesSinceLastDeleteOldFiles = 0L;
+    if (index.isPresent() && index.get().getTotalBytes() > maxCacheSizeBytes.get()) {
       deleteOldFiles();
     }
   }
@@ -249,6 +260,7 @@ public class DirArtifactCache implements ArtifactCache {
     try {
       filesystem.deleteFileAtPathIfExists(metadataPath);
       filesystem.deleteFileAtPathIfExists(artifactPath);
+      index.ifPresent(cacheIndex -> cacheIndex.recordRemove(getIndexKey(ruleKey)));
     } catch (IOException e) {
       String message =
           String.format("Failed to delete artifact for rule key [%s] from local cache", ruleKey);
@@ -291,6 +303,10 @@ public class DirArtifactCache implements ArtifactCache {
     return getParentDirForRuleKey(ruleKey).resolve(ruleKey + extension.orElse(""));
   }
 
+  private String getIndexKey(RuleKey ruleKey) {
+    return cacheDir.relativize(getPathForRuleKey(ruleKey, Optional.empty())).toString();
+  }
+
   @VisibleForTesting
   Path getParentDirForRuleKey(RuleKey ruleKey) {
     ImmutableList<String> folders = subfolders(ruleKey);
@@ -309,7 +325,6 @@ public class DirArtifactCache implements ArtifactCache {
     try {
       filesystem.copyFile(output, tmp);
       filesystem.move(tmp, artifactPath);
-      bytesSinceLastDeleteOldFiles += filesystem.getFileSize(artifactPath);
     } finally {
       filesystem.deleteFileAtPathIfExists(tmp);
     }
@@ -322,33 +337,43 @@ public class DirArtifactCache implements ArtifactCache {
 
   @Override
   public void close() {
-    // Do a cache clean up on exit only if cache was written to.
-    if (bytesSinceLastDeleteOldFiles > 0) {
-      deleteOldFiles();
-    }
+    // Entries are evicted as they are stored, so only the index needs to be written out.
+    index.ifPresent(DirArtifactCacheIndex::flush);
+    LOG.debug("Closing dir cache [%s]: %s", name, getStats());
+  }
+
+  /** @return the hit and eviction counters of this cache. */
+  public DirArtifactCacheStats getStats() {
+    return DirArtifactCacheStats.of(
+        hits.get(),
+        misses.get(),
+        index.map(DirArtifactCacheIndex::getEvictionCount).orElse(0L),
+        index.map(DirArtifactCacheIndex::getEvictedBytes).orElse(0L),
+        index.map(DirArtifactCacheIndex::getTotalBytes).orElse(0L),
+        index
+            .map(cacheIndex -> cacheIndex.getHotKeys(HOT_KEYS_TO_REPORT))
+            .orElse(ImmutableList.of()));
   }
 
-  /** Deletes files that haven't been accessed recently from the directory cache. */
+  /**
+   * Deletes the least recently used entries from the directory cache if it grew larger than its
+   * maximum size.
+   */
   @VisibleForTesting
   void deleteOldFiles() {
-    if (!maxCacheSizeBytes.isPresent()) {
+    if (!index.isPresent()) {
       return;
     }
-
-    Path cacheDirInFs = filesystem.resolve(cacheDir);
-    try {
-      synchronized (this) {
-        newDirectoryCleaner().clean(cacheDirInFs);
-      }
-    } catch (IOException e) {
-      LOG.error(e, "Failed to clean path [%s].", cacheDirInFs);
-    }
+    index
+        .get()
+        .evict(maxCacheSizeBytes.get(), (long) (maxCacheSizeBytes.get() * MAX_BYTES_TRIM_RATIO));
   }
 
   @VisibleForTesting
   List<Path> getAllFilesInCache() {
     List<Path> allFiles = new ArrayList<>();
     Path tempFolderPath = getPathToTempFolder();
+    Path indexPath = filesystem.resolve(cacheDir).resolve(DirArtifactCacheIndex.INDEX_DIR_NAME);
     try {
       Files.walkFileTree(
           filesystem.resolve(cacheDir),
@@ -360,7 +385,7 @@ public class DirArtifactCache implements ArtifactCache {
             public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs)
                 throws IOException {
               // do not work with files in temp folder as they will be moved later
-              if (dir.equals(tempFolderPath)) {
+              if (dir.equals(tempFolderPath) || dir.equals(indexPath)) {
                 return FileVisitResult.SKIP_SUBTREE;
               }
               return super.preVisitDirectory(dir, attrs);
@@ -380,18 +405,6 @@ public class DirArtifactCache implements ArtifactCache {
     return allFiles;
   }
 
-  private DirectoryCleaner newDirectoryCleaner() {
-    DirectoryCleanerArgs cleanerArgs =
-        DirectoryCleanerArgs.builder()
-            .setPathSelector(getDirectoryCleanerPathSelector())
-            .setMaxTotalSizeBytes(maxCacheSizeBytes.get())
-            .setMaxBytesAfterDeletion((long) (maxCacheSizeBytes.get() * MAX_BYTES_TRIM_RATIO))
-            .setMinAmountOfEntriesToKeep(0)
-            .build();
-
-    return new DirectoryCleaner(cleanerArgs);
-  }
-
   @VisibleForTesting
   DirectoryCleaner.PathSelector getDirectoryCleanerPathSelector() {
     return new DirectoryCleaner.PathSelector() {
@@ -0,0 +1,503 @@
+/*
+ * Copyright 2019-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.artifact_cache;
+
+import com.facebook.buck.core.util.log.Logger;
+import com.facebook.buck.util.DirectoryCleaner;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Ordering;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Tracks the entries of a {@link DirArtifactCache} in least recently used order, so that the cache
+ * can be kept under its maximum size without walking the cache directory.
+ *
+ * <p>The index is persisted as an append-only log of added, accessed and removed entries, which is
+ * replayed when the index is first needed and compacted into a snapshot once it grows much larger
+ * than the number of entries. Several processes may share a cache directory: each one appends its
+ * records under a file lock and reads the records appended by the others before evicting. The
+ * cache directory is only walked once, to build the index of a cache that doesn't have one yet.
+ *
+ * <p>An entry is keyed by the path of its artifact relative to the cache directory, and covers both
+ * the artifact and its metadata file.
+ */
+class DirArtifactCacheIndex {
+  private static final Logger LOG = Logger.get(DirArtifactCacheIndex.class);
+
+  static final String INDEX_DIR_NAME = ".index";
+  private static final String LOG_FILE_NAME = "log";
+  private static final String LOCK_FILE_NAME = "lock";
+  private static final String METADATA_EXTENSION = ".metadata";
+
+  private static final int MAGIC = 0x44414349;
+  @VisibleForTesting static final int VERSION = 1;
+  private static final int HEADER_SIZE = 16;
+
+  private static final byte ADD = 1;
+  private static final byte ACCESS = 2;
+  private static final byte REMOVE = 3;
+
+  /** Number of records buffered in memory before they are appended to the log. */
+  private static final int MAX_PENDING_RECORDS = 1024;
+  /** Logs are compacted once they hold this many records per entry, and at least this many. */
+  private static final int COMPACTION_RECORDS_PER_ENTRY = 4;
+
+  private static final int MIN_RECORDS_BEFORE_COMPACTION = 10000;
+
+  private final Path root;
+  private final Path tempDir;
+  private final Path indexDir;
+  private final Comparator<DirectoryCleaner.PathStats> bootstrapOrder;
+  private final Random random = new Random();
+
+  // Entries from least to most recently used.
+  private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+  private final List<Record> pendingRecords = new ArrayList<>();
+  private long totalBytes;
+  private boolean loaded;
+  private long generation;
+  private long readOffset;
+  private long logRecords;
+  private long evictionCount;
+  private long evictedBytes;
+
+  /**
+   * @param root absolute path of the cache directory
+   * @param tempDir directory of the cache holding partially written entries
+   * @param bootstrapOrder order in which to evict the entries found when building a new index
+   */
+  DirArtifactCacheIndex(
+      Path root, Path tempDir, Comparator<DirectoryCleaner.PathStats> bootstrapOrder) {
+    this.root = root;
+    this.tempDir = tempDir;
+    this.indexDir = root.resolve(INDEX_DIR_NAME);
+    this.bootstrapOrder = bootstrapOrder;
+  }
+
+  /** Records that the entry with the given key was read. */
+  synchronized void recordAccess(String key) {
+    if (loaded) {
+      Entry entry = entries.get(key);
+      if (entry == null) {
+        return;
+      }
+      entry.hits++;
+    }
+    addPendingRecord(new Record(ACCESS, key, 0, 0));
+  }
+
+  /** Records that an entry of {@code sizeBytes} was written with the given key. */
+  synchronized void recordStore(String key, long sizeBytes) {
+    ensureLoaded();
+    Record record = new Record(ADD, key, sizeBytes, 0);
+    apply(record);
+    addPendingRecord(record);
+  }
+
+  /** Records that the entry with the given key was deleted. */
+  synchronized void recordRemove(String key) {
+    ensureLoaded();
+    Record record = new Record(REMOVE, key, 0, 0);
+    apply(record);
+    addPendingRecord(record);
+  }
+
+  /**
+   * Deletes least recently used entries until the cache is no larger than {@code targetBytes}, if
+   * it is currently larger than {@code maxBytes}. Entries recently used by other processes sharing
+   * the cache directory are taken into account.
+   */
+  synchronized void evict(long maxBytes, long targetBytes) {
+    synchronizeWithLog();
+    if (totalBytes <= maxBytes) {
+      return;
+    }
+    int evicted = 0;
+    Iterator<Entry> iterator = entries.values().iterator();
+    while (totalBytes > targetBytes && iterator.hasNext()) {
+      Entry entry = iterator.next();
+      try {
+        Path artifact = root.resolve(entry.key);
+        Files.deleteIfExists(artifact.resolveSibling(artifact.getFileName() + METADATA_EXTENSION));
+        Files.deleteIfExists(artifact);
+      } catch (IOException e) {
+        LOG.warn(e, "Failed to evict [%s] from [%s].", entry.key, root);
+        continue;
+      }
+      iterator.remove();
+      totalBytes -= entry.sizeBytes;
+      evictedBytes += entry.sizeBytes;
+      evicted++;
+      pendingRecords.add(new Record(REMOVE, entry.key, 0, 0));
+    }
+    evictionCount += evicted;
+    LOG.debug("Evicted %d entries from [%s], %d bytes left.", evicted, root, totalBytes);
+    synchronizeWithLog();
+  }
+
+  /**
+   * Appends the records buffered in memory to the log. Doesn't load the index if it isn't loaded
+   * yet, so that processes which only read from the cache never need to build it.
+   */
+  synchronized void flush() {
+    if (pendingRecords.isEmpty()) {
+      return;
+    }
+    if (loaded) {
+      synchronizeWithLog();
+      return;
+    }
+    try {
+      if (Files.exists(indexDir.resolve(LOG_FILE_NAME))) {
+        try (FileChannel lockChannel = openLock();
+            FileLock ignored = lockChannel.lock()) {
+          appendPendingRecords();
+        }
+      }
+    } catch (IOException e) {
+      LOG.warn(e, "Failed to update the index of [%s].", root);
+    }
+    pendingRecords.clear();
+  }
+
+  synchronized long getTotalBytes() {
+    return totalBytes;
+  }
+
+  synchronized long getEvictionCount() {
+    return evictionCount;
+  }
+
+  synchronized long getEvictedBytes() {
+    return evictedBytes;
+  }
+
+  /** @return the keys of the {@code limit} most read entries, most read first. */
+  synchronized ImmutableList<String> getHotKeys(int limit) {
+    return Ordering.natural()
+        .onResultOf((Entry entry) -> entry.hits)
+        .greatestOf(entries.values(), limit)
+        .stream()
+        .map(entry -> entry.key)
+        .collect(ImmutableList.toImmutableList());
+  }
+
+  private void ensureLoaded() {
+    if (!loaded) {
+      synchronizeWithLog();
+    }
+  }
+
+  private void addPendingRecord(Record record) {
+    pendingRecords.add(record);
+    if (pendingRecords.size() >= MAX_PENDING_RECORDS) {
+      flush();
+    }
+  }
+
+  private void apply(Record record) {
+    switch (record.type) {
+      case ADD:
+        Entry added = new Entry(record.key, record.sizeBytes);
+        added.hits = record.hits;
+        Entry previous = entries.put(record.key, added);
+        totalBytes += record.sizeBytes;
+        if (previous != null) {
+          totalBytes -= previous.sizeBytes;
+          added.hits += previous.hits;
+        }
+        break;
+      case ACCESS:
+        Entry entry = entries.get(record.key);
+        if (entry != null) {
+          entry.hits++;
+        }
+        break;
+      case REMOVE:
+        Entry removed = entries.remove(record.key);
+        if (removed != null) {
+          totalBytes -= removed.sizeBytes;
+        }
+        break;
+      default:
+        throw new IllegalArgumentException("Unknown record type " + record.type);
+    }
+  }
+
+  /**
+   * Reads the records appended by other processes, then appends the pending records or compacts the
+   * log. Falls back to building the index from the cache directory if the log is missing or
+   * unreadable.
+   */
+  private void synchronizeWithLog() {
+    try {
+      try (FileChannel lockChannel = openLock();
+          FileLock ignored = lockChannel.lock()) {
+        if (!readLog()) {
+          bootstrap();
+          writeSnapshot();
+        } else if (logRecords + pendingRecords.size()
+            > Math.max(
+                MIN_RECORDS_BEFORE_COMPACTION, COMPACTION_RECORDS_PER_ENTRY * entries.size())) {
+          writeSnapshot();
+        } else {
+          appendPendingRecords();
+        }
+      }
+    } catch (IOException e) {
+      LOG.warn(e, "Failed to update the index of [%s].", root);
+    }
+    loaded = true;
+    pendingRecords.clear();
+  }
+
+  private FileChannel openLock() throws IOException {
+    Files.createDirectories(indexDir);
+    return FileChannel.open(
+        indexDir.resolve(LOCK_FILE_NAME), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+  }
+
+  /**
+   * Applies the records of the log not seen yet, replaying it entirely if it was rewritten.
+   *
+   * @return whether the log could be read
+   */
+  private boolean readLog() throws IOException {
+    Path logPath = indexDir.resolve(LOG_FILE_NAME);
+    try (FileChannel channel = FileChannel.open(logPath, StandardOpenOption.READ)) {
+      ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+      while (header.hasRemaining() && channel.read(header) >= 0) {}
+      header.flip();
+      if (header.remaining() < HEADER_SIZE
+          || header.getInt() != MAGIC
+          || header.getInt() != VERSION) {
+        LOG.warn("Ignoring index of [%s] with unknown format.", root);
+        return false;
+      }
+      long logGeneration = header.getLong();
+      boolean replay = !loaded || logGeneration != generation;
+      if (replay) {
+        entries.clear();
+        totalBytes = 0;
+        logRecords = 0;
+        readOffset = HEADER_SIZE;
+        generation = logGeneration;
+      }
+      // The records are read into the heap rather than mapped, so that the log can be replaced by
+      // a snapshot while they're applied, including on Windows.
+      long size = channel.size();
+      ByteBuffer buffer = ByteBuffer.allocate(Math.toIntExact(size - readOffset));
+      channel.position(readOffset);
+      while (buffer.hasRemaining() && channel.read(buffer) >= 0) {}
+      buffer.flip();
+      while (buffer.hasRemaining()) {
+        Record record;
+        try {
+          record = Record.read(buffer);
+        } catch (BufferUnderflowException | IllegalArgumentException e) {
+          // A process died while appending to the log.
+          LOG.warn("Ignoring index of [%s] with a truncated record.", root);
+          return false;
+        }
+        apply(record);
+        logRecords++;
+      }
+      readOffset = size;
+      if (replay) {
+        // The records of this process that are not in the log yet were lost by the replay.
+        pendingRecords.forEach(this::apply);
+      }
+      return true;
+    } catch (NoSuchFileException e) {
+      return false;
+    }
+  }
+
+  private void appendPendingRecords() throws IOException {
+    if (pendingRecords.isEmpty()) {
+      return;
+    }
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (DataOutputStream out = new DataOutputStream(bytes)) {
+      for (Record record : pendingRecords) {
+        record.write(out);
+      }
+    }
+    try (FileChannel channel =
+        FileChannel.open(
+            indexDir.resolve(LOG_FILE_NAME), StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+      ByteBuffer buffer = ByteBuffer.wrap(bytes.toByteArray());
+      while (buffer.hasRemaining()) {
+        channel.write(buffer);
+      }
+      readOffset = channel.size();
+    }
+    logRecords += pendingRecords.size();
+  }
+
+  /** Atomically replaces the log with one adding every entry, from least to most recently used. */
+  private void writeSnapshot() throws IOException {
+    long newGeneration = random.nextLong();
+    Path tmp = Files.createTempFile(indexDir, LOG_FILE_NAME, ".tmp");
+    try {
+      try (DataOutputStream out =
+          new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeLong(newGeneration);
+        for (Entry entry : entries.values()) {
+          new Record(ADD, entry.key, entry.sizeBytes, entry.hits).write(out);
+        }
+      }
+      Files.move(
+          tmp,
+          indexDir.resolve(LOG_FILE_NAME),
+          StandardCopyOption.REPLACE_EXISTING,
+          StandardCopyOption.ATOMIC_MOVE);
+      generation = newGeneration;
+      readOffset = Files.size(indexDir.resolve(LOG_FILE_NAME));
+      logRecords = entries.size();
+    } finally {
+      Files.deleteIfExists(tmp);
+    }
+  }
+
+  /** Rebuilds the index from the files in the cache directory. */
+  private void bootstrap() throws IOException {
+    LOG.info("Building the index of [%s].", root);
+    Map<String, DirectoryCleaner.PathStats> found = new HashMap<>();
+    Files.walkFileTree(
+        root,
+        new SimpleFileVisitor<Path>() {
+          @Override
+          public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+            return dir.equals(tempDir) || dir.equals(indexDir)
+                ? FileVisitResult.SKIP_SUBTREE
+                : FileVisitResult.CONTINUE;
+          }
+
+          @Override
+          public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+            String key = root.relativize(file).toString();
+            if (key.endsWith(METADATA_EXTENSION)) {
+              key = key.substring(0, key.length() - METADATA_EXTENSION.length());
+            }
+            found.merge(
+                key,
+                new DirectoryCleaner.PathStats(
+                    root.resolve(key),
+                    attrs.size(),
+                    attrs.creationTime().toMillis(),
+                    attrs.lastAccessTime().toMillis()),
+                (first, second) ->
+                    new DirectoryCleaner.PathStats(
+                        first.getPath(),
+                        first.getTotalSizeBytes() + second.getTotalSizeBytes(),
+                        Math.max(first.getCreationMillis(), second.getCreationMillis()),
+                        Math.max(first.getLastAccessMillis(), second.getLastAccessMillis())));
+            return FileVisitResult.CONTINUE;
+          }
+        });
+    List<DirectoryCleaner.PathStats> sorted = new ArrayList<>(found.values());
+    sorted.sort(bootstrapOrder);
+    entries.clear();
+    totalBytes = 0;
+    for (DirectoryCleaner.PathStats stats : sorted) {
+      String key = root.relativize(stats.getPath()).toString();
+      apply(new Record(ADD, key, stats.getTotalSizeBytes(), 0));
+    }
+    // Accesses of this process happened after the files were last read.
+    pendingRecords.forEach(this::apply);
+  }
+
+  private static final class Entry {
+    private final String key;
+    private final long sizeBytes;
+    private long hits;
+
+    private Entry(String key, long sizeBytes) {
+      this.key = key;
+      this.sizeBytes = sizeBytes;
+    }
+  }
+
+  private static final class Record {
+    private final byte type;
+    private final String key;
+    private final long sizeBytes;
+    private final long hits;
+
+    private Record(byte type, String key, long sizeBytes, long hits) {
+      this.type = type;
+      this.key = key;
+      this.sizeBytes = sizeBytes;
+      this.hits = hits;
+    }
+
+    private static Record read(ByteBuffer buffer) {
+      byte type = buffer.get();
+      byte[] key = new byte[buffer.getShort() & 0xFFFF];
+      buffer.get(key);
+      String keyString = new String(key, StandardCharsets.UTF_8);
+      switch (type) {
+        case ADD:
+          return new Record(type, keyString, buffer.getLong(), buffer.getLong());
+        case ACCESS:
+        case REMOVE:
+          return new Record(type, keyString, 0, 0);
+        default:
+          throw new IllegalArgumentException("Unknown record type " + type);
+      }
+    }
+
+    private void write(DataOutputStream out) throws IOException {
+      byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+      out.writeByte(type);
+      out.writeShort(keyBytes.length);
+      out.write(keyBytes);
+      if (type == ADD) {
+        out.writeLong(sizeBytes);
+        out.writeLong(hits);
+      }
+    }
+  }
+}
@@ -23,6 +23,7 @@ import com.facebook.buck.core.rulekey.RuleKey;
 import com.facebook.buck.core.util.log.Logger;
 import com.facebook.buck.io.file.LazyPath;
 import com.facebook.buck.slb.HttpResponse;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.io.ByteSource;
 import java.io.DataInputStream;
@@ -34,6 +35,8 @@ import java.net.URLEncoder;
 import java.nio.file.Path;
 import java.nio.file.StandardCopyOption;
 import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Function;
 import javax.annotation.Nullable;
 import okhttp3.MediaType;
@@ -56,10 +59,30 @@ public final class HttpArtifactCache extends AbstractNetworkCache {
   private final Function<String, UnconfiguredBuildTargetView> unconfiguredBuildTargetFactory;
   private final TargetConfigurationSerializer targetConfigurationSerializer;
 
+  private final int concurrencyLevel;
+  private final Optional<MultiFetchBatchSizer> multiFetchBatchSizer;
+
   public HttpArtifactCache(NetworkCacheArgs args) {
+    this(args, 0, 0);
+  }
+
+  /**
+   * @param multiFetchLimit the maximum number of rule keys fetched in a single request, multi-fetch
+   *     is disabled if < 1.
+   * @param concurrencyLevel the number of concurrent requests that pending fetches are spread
+   *     over.
+   */
+  public HttpArtifactCache(NetworkCacheArgs args, int multiFetchLimit, int concurrencyLevel) {
     super(args);
     this.unconfiguredBuildTargetFactory = args.getUnconfiguredBuildTargetFactory();
     this.targetConfigurationSerializer = args.getTargetConfigurationSerializer();
+    this.concurrencyLevel = concurrencyLevel;
+    this.multiFetchBatchSizer =
+        multiFetchLimit > 0 && concurrencyLevel > 0
+            ? Optional.of(
+                new MultiFetchBatchSizer(
+                    multiFetchLimit, MultiFetchBatchSizer.DEFAULT_TARGET_BATCH_LATENCY_MILLIS))
+            : Optional.empty();
   }
 
   @Override
@@ -94,59 +117,82 @@ public final class HttpArtifactCache extends AbstractNetworkCache {
           return resultBuilder.setCacheResult(CacheResult.error(getName(), getMode(), msg)).build();
         }
 
-        // Setup a temporary file, which sits next to the destination, to write to and
-        // make sure all parent dirs exist.
-        Path file = output.get();
-        getProjectFilesystem().createParentDirs(file);
-        Path temp =
-            getProjectFilesystem()
-                .createTempFile(file.getParent(), file.getFileName().toString(), ".tmp");
-
-        FetchResponseReadResult fetchedData;
-        try (OutputStream tempFileOutputStream = getProjectFilesystem().newFileOutputStream(temp)) {
-          fetchedData =
-              HttpArtifactCacheBinaryProtocol.readFetchResponse(input, tempFileOutputStream);
-        }
+        return storeFetchedArtifact(
+            resultBuilder,
+            response.requestUrl(),
+            ruleKey,
+            output,
+            payloadSink -> HttpArtifactCacheBinaryProtocol.readFetchResponse(input, payloadSink));
+      }
+    }
+  }
 
-        resultBuilder
-            .setBuildTarget(
-                AbstractArtifactCacheEventFactory.getTarget(
-                    unconfiguredBuildTargetFactory,
-                    targetConfigurationSerializer,
-                    fetchedData.getMetadata()))
-            .setResponseSizeBytes(fetchedData.getResponseSizeBytes())
-            .setArtifactContentHash(fetchedData.getArtifactOnlyHashCode().toString());
-
-        // Verify that we were one of the rule keys that stored this artifact.
-        if (!fetchedData.getRuleKeys().contains(ruleKey)) {
-          String msg = "incorrect key name";
-          reportFailureWithFormatKey("fetch(%s, %s): %s", response.requestUrl(), ruleKey, msg);
-          return resultBuilder.setCacheResult(CacheResult.error(getName(), getMode(), msg)).build();
-        }
+  /** Reads the payload of a fetch response into the given sink. */
+  private interface FetchResponseReader {
+    FetchResponseReadResult read(OutputStream payloadSink) throws IOException;
+  }
 
-        // Now form the checksum on the file we got and compare it to the checksum form the
-        // the HTTP header.  If it's incorrect, log this and return a miss.
-        if (!fetchedData.getExpectedHashCode().equals(fetchedData.getActualHashCode())) {
-          String msg = "artifact had invalid checksum";
-          reportFailureWithFormatKey("fetch(%s, %s): %s", response.requestUrl(), ruleKey, msg);
-          getProjectFilesystem().deleteFileAtPath(temp);
-          return resultBuilder.setCacheResult(CacheResult.error(getName(), getMode(), msg)).build();
-        }
+  /**
+   * Reads an artifact into a temporary file next to {@code output}, verifies it and moves it into
+   * place.
+   */
+  private FetchResult storeFetchedArtifact(
+      FetchResult.Builder resultBuilder,
+      String requestUrl,
+      RuleKey ruleKey,
+      LazyPath output,
+      FetchResponseReader reader)
+      throws IOException {
+    // Setup a temporary file, which sits next to the destination, to write to and
+    // make sure all parent dirs exist.
+    Path file = output.get();
+    getProjectFilesystem().createParentDirs(file);
+    Path temp =
+        getProjectFilesystem()
+            .createTempFile(file.getParent(), file.getFileName().toString(), ".tmp");
 
-        // Finally, move the temp file into it's final place.
-        getProjectFilesystem().move(temp, file, StandardCopyOption.REPLACE_EXISTING);
-
-        LOG.info("fetch(%s, %s): cache hit", response.requestUrl(), ruleKey);
-        return resultBuilder
-            .setCacheResult(
-                CacheResult.hit(
-                    getName(),
-                    getMode(),
-                    fetchedData.getMetadata(),
-                    fetchedData.getResponseSizeBytes()))
-            .build();
-      }
+    FetchResponseReadResult fetchedData;
+    try (OutputStream tempFileOutputStream = getProjectFilesystem().newFileOutputStream(temp)) {
+      fetchedData = reader.read(tempFileOutputStream);
+    }
+
+    resultBuilder
+        .setBuildTarget(
+            AbstractArtifactCacheEventFactory.getTarget(
+                unconfiguredBuildTargetFactory,
+                targetConfigurationSerializer,
+                fetchedData.getMetadata()))
+        .setResponseSizeBytes(fetchedData.getResponseSizeBytes())
+        .setArtifactContentHash(fetchedData.getArtifactOnlyHashCode().toString());
+
+    // Verify that we were one of the rule keys that stored this artifact.
+    if (!fetchedData.getRuleKeys().contains(ruleKey)) {
+      String msg = "incorrect key name";
+      reportFailureWithFormatKey("fetch(%s, %s): %s", requestUrl, ruleKey, msg);
+      return resultBuilder.setCacheResult(CacheResult.error(getName(), getMode(), msg)).build();
     }
+
+    // Now form the checksum on the file we got and compare it to the checksum form the
+    // the HTTP header.  If it's incorrect, log this and return a miss.
+    if (!fetchedData.getExpectedHashCode().equals(fetchedData.getActualHashCode())) {
+      String msg = "artifact had invalid checksum";
+      reportFailureWithFormatKey("fetch(%s, %s): %s", requestUrl, ruleKey, msg);
+      getProjectFilesystem().deleteFileAtPath(temp);
+      return resultBuilder.setCacheResult(CacheResult.error(getName(), getMode(), msg)).build();
+    }
+
+    // Finally, move the temp file into it's final place.
+    getProjectFilesystem().move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+
+    LOG.info("fetch(%s, %s): cache hit", requestUrl, ruleKey);
+    return resultBuilder
+        .setCacheResult(
+            CacheResult.hit(
+                getName(),
+                getMode(),
+                fetchedData.getMetadata(),
+                fetchedData.getResponseSizeBytes()))
+        .build();
   }
 
   @Override
@@ -215,9 +261,104 @@ public final class HttpArtifactCache extends AbstractNetworkCache {
     throw new RuntimeException("Delete operation is not yet supported");
   }
 
+  @Override
+  protected int getMultiFetchBatchSize(int pendingRequestsSize) {
+    return multiFetchBatchSizer
+        .map(sizer -> Math.min(sizer.getBatchSize(), 1 + pendingRequestsSize / concurrencyLevel))
+        .orElse(0);
+  }
+
   @Override
   protected MultiFetchResult multiFetchImpl(
-      Iterable<AbstractAsynchronousCache.FetchRequest> requests) {
-    throw new RuntimeException("multiFetch not supported");
+      Iterable<AbstractAsynchronousCache.FetchRequest> requests) throws IOException {
+    ImmutableList<AbstractAsynchronousCache.FetchRequest> fetchRequests =
+        ImmutableList.copyOf(requests);
+    HttpArtifactCacheBinaryProtocol.MultiFetchRequest multiFetchRequest =
+        new HttpArtifactCacheBinaryProtocol.MultiFetchRequest(
+            fetchRequests.stream()
+                .map(AbstractAsynchronousCache.FetchRequest::getRuleKey)
+                .collect(ImmutableList.toImmutableList()),
+            fetchRequests.stream()
+                .map(AbstractAsynchronousCache.FetchRequest::getBuildTarget)
+                .map(target -> target != null ? target.getFullyQualifiedName() : "")
+                .collect(ImmutableList.toImmutableList()));
+    Request.Builder requestBuilder =
+        new Request.Builder()
+            .post(
+                new RequestBody() {
+                  @Override
+                  public MediaType contentType() {
+                    return OCTET_STREAM_CONTENT_TYPE;
+                  }
+
+                  @Override
+                  public long contentLength() {
+                    return multiFetchRequest.getContentLength();
+                  }
+
+                  @Override
+                  public void writeTo(BufferedSink bufferedSink) throws IOException {
+                    multiFetchRequest.write(bufferedSink.outputStream());
+                  }
+                });
+
+    long startNanos = System.nanoTime();
+    ImmutableList.Builder<FetchResult> results =
+        ImmutableList.builderWithExpectedSize(fetchRequests.size());
+    try (HttpResponse response = fetchClient.makeRequest("/artifacts/multifetch", requestBuilder)) {
+      if (response.statusCode() != HttpURLConnection.HTTP_OK) {
+        throw new IOException(
+            String.format(
+                "unexpected server response: [%d:%s]",
+                response.statusCode(), response.statusMessage()));
+      }
+      try (DataInputStream input =
+          new DataInputStream(new FullyReadOnCloseInputStream(response.getBody()))) {
+        int index = 0;
+        try {
+          for (; index < fetchRequests.size(); index++) {
+            results.add(
+                readMultiFetchEntry(input, response.requestUrl(), fetchRequests.get(index)));
+          }
+        } catch (IOException e) {
+          if (index == 0) {
+            throw e;
+          }
+          // Keep the artifacts that were fully received, the others will be fetched again.
+          LOG.info(
+              e,
+              "multifetch(%s): response interrupted after %d of %d artifacts",
+              response.requestUrl(),
+              index,
+              fetchRequests.size());
+          for (; index < fetchRequests.size(); index++) {
+            results.add(FetchResult.builder().setCacheResult(CacheResult.skipped()).build());
+          }
+        }
+      }
+    }
+    multiFetchBatchSizer.ifPresent(
+        sizer ->
+            sizer.recordBatch(
+                fetchRequests.size(),
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos)));
+    return MultiFetchResult.of(results.build());
+  }
+
+  private FetchResult readMultiFetchEntry(
+      DataInputStream input, String requestUrl, AbstractAsynchronousCache.FetchRequest request)
+      throws IOException {
+    FetchResult.Builder resultBuilder = FetchResult.builder();
+    if (!HttpArtifactCacheBinaryProtocol.readMultiFetchResponseHeader(input)) {
+      LOG.info("fetch(%s, %s): cache miss", requestUrl, request.getRuleKey());
+      return resultBuilder.setCacheResult(CacheResult.miss()).build();
+    }
+    return storeFetchedArtifact(
+        resultBuilder,
+        requestUrl,
+        request.getRuleKey(),
+        request.getOutput(),
+        payloadSink ->
+            HttpArtifactCacheBinaryProtocol.readMultiFetchResponsePayload(input, payloadSink));
   }
 }
@@ -22,6 +22,8 @@ import com.facebook.buck.util.hash.HasherInputStream;
 import com.facebook.buck.util.hash.HasherOutputStream;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Charsets;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.hash.HashCode;
@@ -30,10 +32,13 @@ import com.google.common.hash.Hasher;
 import com.google.common.hash.Hashing;
 import com.google.common.io.ByteSource;
 import com.google.common.io.ByteStreams;
+import com.google.common.io.CountingInputStream;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
@@ -137,6 +142,63 @@ public class HttpArtifactCacheBinaryProtocol {
     return result.build();
   }
 
+  /**
+   * Reads the rule keys requested by a {@link MultiFetchRequest}. The build targets sent along with
+   * them are only informative and are skipped.
+   */
+  public static ImmutableList<RuleKey> readMultiFetchRequest(DataInputStream input)
+      throws IOException {
+    int ruleKeysCount = input.readInt();
+    ImmutableList.Builder<RuleKey> ruleKeys = ImmutableList.builderWithExpectedSize(ruleKeysCount);
+    for (int i = 0; i < ruleKeysCount; i++) {
+      ruleKeys.add(new RuleKey(input.readUTF()));
+      input.readUTF();
+    }
+    return ruleKeys.build();
+  }
+
+  /**
+   * Reads the header of the next entry of a multi-fetch response.
+   *
+   * @return whether the entry holds an artifact, in which case it must be read with {@link
+   *     #readMultiFetchResponsePayload} before reading the next entry.
+   */
+  public static boolean readMultiFetchResponseHeader(DataInputStream input) throws IOException {
+    return input.readBoolean();
+  }
+
+  /**
+   * Reads the artifact of a multi-fetch response entry, leaving {@code input} positioned at the
+   * next entry.
+   */
+  public static FetchResponseReadResult readMultiFetchResponsePayload(
+      DataInputStream input, OutputStream payloadSink) throws IOException {
+    long entrySize = input.readLong();
+    CountingInputStream entryInput = new CountingInputStream(ByteStreams.limit(input, entrySize));
+    // Reading the entry closes its stream, which must not close the rest of the response.
+    FetchResponseReadResult result =
+        readFetchResponse(
+            new DataInputStream(
+                new FilterInputStream(entryInput) {
+                  @Override
+                  public void close() {}
+                }),
+            payloadSink);
+    if (entryInput.getCount() != entrySize) {
+      throw new EOFException(
+          String.format(
+              "Multi-fetch response entry truncated after %d of %d bytes.",
+              entryInput.getCount(), entrySize));
+    }
+    return result;
+  }
+
+  /** Writes a multi-fetch response entry for a rule key that is not in the cache. */
+  public static void writeMultiFetchResponseMiss(DataOutputStream responseSink)
+      throws IOException {
+    responseSink.writeBoolean(false);
+  }
+
   @VisibleForTesting
   static byte[] createKeysHeader(ImmutableSet<RuleKey> ruleKeys) throws IOException {
     try (ByteArrayOutputStream out = new ByteArrayOutputStream();
@@ -226,6 +288,39 @@ public class HttpArtifactCacheBinaryProtocol {
     }
   }
 
+  /**
+   * Request for the artifacts of several rule keys. The response is a sequence of entries, one per
+   * rule key and in the same order, each made of a header telling whether the artifact was found
+   * followed by the size-prefixed artifact when it was. Artifacts can thus be streamed to disk as
+   * they arrive instead of buffering the whole response.
+   */
+  public static class MultiFetchRequest {
+    private final byte[] rawRequest;
+
+    public MultiFetchRequest(ImmutableList<RuleKey> ruleKeys, ImmutableList<String> buildTargets)
+        throws IOException {
+      Preconditions.checkArgument(ruleKeys.size() == buildTargets.size());
+      try (ByteArrayOutputStream out = new ByteArrayOutputStream();
+          DataOutputStream data = new DataOutputStream(out)) {
+        data.writeInt(ruleKeys.size());
+        for (int i = 0; i < ruleKeys.size(); i++) {
+          data.writeUTF(ruleKeys.get(i).toString());
+          data.writeUTF(buildTargets.get(i));
+        }
+        data.flush();
+        this.rawRequest = out.toByteArray();
+      }
+    }
+
+    public long getContentLength() {
+      return rawRequest.length;
+    }
+
+    public void write(OutputStream requestSink) throws IOException {
+      requestSink.write(rawRequest);
+    }
+  }
+
   public static class FetchResponse {
     private final ByteSource payloadSource;
     private final byte[] rawMetadata;
@@ -252,6 +347,15 @@ public class HttpArtifactCacheBinaryProtocol {
         payloadSource.copyTo(responseSink);
       }
     }
+
+    /** Writes this response as an entry of a multi-fetch response, leaving the sink open. */
+    public void writeMultiFetchEntry(DataOutputStream responseSink) throws IOException {
+      responseSink.writeBoolean(true);
+      responseSink.writeLong(contentLength);
+      responseSink.writeInt(rawMetadata.length);
+      responseSink.write(rawMetadata);
+      payloadSource.copyTo(responseSink);
+    }
   }
 
   abstract static class MetadataAndPayloadReadResult {
@@ -0,0 +1,54 @@
+/*
+ * Copyright 2019-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.artifact_cache;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Sizes multi-fetch batches from the latency of previous batches. Batches grow while full batches
+ * complete well within the target latency, and shrink when a batch takes longer, so that large
+ * artifacts or a slow connection don't hold many other artifacts back in a single request.
+ */
+class MultiFetchBatchSizer {
+  static final long DEFAULT_TARGET_BATCH_LATENCY_MILLIS = 2000;
+  private static final int INITIAL_BATCH_SIZE = 8;
+
+  private final int maxBatchSize;
+  private final long targetBatchLatencyMillis;
+  private final AtomicInteger batchSize;
+
+  MultiFetchBatchSizer(int maxBatchSize, long targetBatchLatencyMillis) {
+    this.maxBatchSize = maxBatchSize;
+    this.targetBatchLatencyMillis = targetBatchLatencyMillis;
+    this.batchSize = new AtomicInteger(Math.min(maxBatchSize, INITIAL_BATCH_SIZE));
+  }
+
+  int getBatchSize() {
+    return batchSize.get();
+  }
+
+  /** Records that a batch of {@code size} rule keys was fetched in {@code latencyMillis}. */
+  void recordBatch(int size, long latencyMillis) {
+    if (latencyMillis > targetBatchLatencyMillis) {
+      batchSize.updateAndGet(current -> Math.max(1, current / 2));
+    } else if (latencyMillis < targetBatchLatencyMillis / 2) {
+      // Batches smaller than the current size only tell that there wasn't more work pending.
+      batchSize.updateAndGet(
+          current -> size < current ? current : Math.min(maxBatchSize, 2 * current));
+    }
+  }
+}
@@ -23,6 +23,7 @@ import com.facebook.buck.core.exceptions.HumanReadableException;
 import com.facebook.buck.core.model.BuildTarget;
 import com.facebook.buck.core.rulekey.RuleKey;
 import com.facebook.buck.core.util.log.Logger;
+import com.facebook.buck.counters.CounterRegistry;
 import com.facebook.buck.event.BuckEventBus;
 import com.facebook.buck.event.SimplePerfEvent;
 import com.facebook.buck.io.file.BorrowablePath;
@@ -31,10 +32,12 @@ import com.facebook.buck.io.file.MostFiles;
 import com.facebook.buck.io.filesystem.ProjectFilesystem;
 import com.facebook.buck.util.sqlite.RetryBusyHandler;
 import com.facebook.buck.util.sqlite.SQLiteUtils;
+import com.facebook.buck.util.sqlite.SQLiteWriteBehindQueue;
 import com.facebook.buck.util.types.Pair;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Charsets;
 import com.google.common.base.Functions;
+import com.google.common.base.Throwables;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
@@ -64,7 +67,9 @@ import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
 import javax.annotation.Nullable;
 import org.sqlite.BusyHandler;
 import org.sqlite.SQLiteConfig;
@@ -75,6 +80,9 @@ import org.sqlite.SQLiteConfig;
  * <p>Cache entries are either metadata or content. All metadata contains a mapping to a content
  * entry. Content entries with sufficiently small content will have their artifacts inlined into the
  * database for improved performance.
+ *
+ * <p>Stores and access time updates are batched into transactions on a background thread by a
+ * {@link SQLiteWriteBehindQueue}, while fetches read from a separate connection.
  */
 public class SQLiteArtifactCache implements ArtifactCache {
 
@@ -136,6 +144,7 @@ public class SQLiteArtifactCache implements ArtifactCache {
     }
 
     this.db = new ConnectionInfo(cacheDir);
+    eventBus.post(new CounterRegistry.AsyncCounterRegistrationEvent(db.writeQueue.getCounters()));
   }
 
   @Override
@@ -281,7 +290,7 @@ public class SQLiteArtifactCache implements ArtifactCache {
 
     try {
       db.storeMetadata(info.getRuleKeys(), marshalMetadata(metadata));
-    } catch (IOException | SQLException e) {
+    } catch (IOException e) {
       LOG.warn(e, "Metadata store(%s) error", info.getRuleKeys());
     }
 
@@ -405,7 +414,7 @@ public class SQLiteArtifactCache implements ArtifactCache {
     try {
       int deleted = db.deleteMetadata(evictionTime);
       LOG.verbose("Removed %d metadata rows not accessed since %s", deleted, evictionTime);
-    } catch (SQLException e) {
+    } catch (SQLException | InterruptedException e) {
       LOG.error(e, "Failed to clean database");
     }
 
@@ -421,11 +430,12 @@ public class SQLiteArtifactCache implements ArtifactCache {
 
     long totalSizeBytes;
     try {
+      db.flush();
       totalSizeBytes = db.totalSize();
       if (totalSizeBytes <= maxCacheSizeBytes.get()) {
         return Futures.immediateFuture(null);
       }
-    } catch (SQLException e) {
+    } catch (SQLException | InterruptedException e) {
       LOG.error(e, "Failed to find total artifact size.");
       return Futures.immediateFuture(null);
     }
@@ -441,7 +451,7 @@ public class SQLiteArtifactCache implements ArtifactCache {
       Timestamp evictionCutoff = contentToEvict.getSecond();
       int deleted = db.deleteContent(evictionCutoff);
       LOG.verbose("Deleted %d cached artifacts last accessed before %s", deleted, evictionCutoff);
-    } catch (IOException | SQLException e) {
+    } catch (IOException | SQLException | InterruptedException e) {
       LOG.error(e, "Failed to clean path [%s].", filesystem.resolve(cacheDir));
     }
 
@@ -499,8 +509,18 @@ public class SQLiteArtifactCache implements ArtifactCache {
     stmt.executeUpdate();
   }
 
+  private void flushWrites() throws SQLException {
+    try {
+      db.flush();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new SQLException(e);
+    }
+  }
+
   @VisibleForTesting
   ImmutableList<RuleKey> directoryFileContentHashes() throws SQLException {
+    flushWrites();
     ImmutableList.Builder<RuleKey> keys = ImmutableList.builder();
     try (ResultSet rs =
         db.connection
@@ -515,6 +535,7 @@ public class SQLiteArtifactCache implements ArtifactCache {
 
   @VisibleForTesting
   ImmutableList<RuleKey> inlinedArtifactContentHashes() throws SQLException {
+    flushWrites();
     ImmutableList.Builder<RuleKey> keys = ImmutableList.builder();
     try (ResultSet rs =
         db.connection
@@ -529,6 +550,7 @@ public class SQLiteArtifactCache implements ArtifactCache {
 
   @VisibleForTesting
   ImmutableList<RuleKey> metadataRuleKeys() throws SQLException {
+    flushWrites();
     ImmutableList.Builder<RuleKey> keys = ImmutableList.builder();
     try (ResultSet rs =
         db.connection.createStatement().executeQuery("SELECT rulekey FROM metadata")) {
@@ -540,7 +562,14 @@ public class SQLiteArtifactCache implements ArtifactCache {
   }
 
   private static class ConnectionInfo {
+    // Connection used for reads, and by tests to insert rows directly.
     private final Connection connection;
+    private final Connection writeConnection;
+    private final SQLiteWriteBehindQueue writeQueue;
+
+    // Rows written but not committed yet, which reads must see.
+    private final ConcurrentHashMap<RuleKey, byte[]> pendingMetadata = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<RuleKey, Content> pendingContent = new ConcurrentHashMap<>();
 
     private final PreparedStatement fetchMetadata;
     private final PreparedStatement fetchContent;
@@ -565,10 +594,12 @@ public class SQLiteArtifactCache implements ArtifactCache {
       Properties properties = new SQLiteConfig().toProperties();
       properties.setProperty(
           SQLiteConfig.Pragma.DATE_STRING_FORMAT.pragmaName, "yyyy-MM-dd HH:mm:ss");
-      connection =
-          DriverManager.getConnection("jdbc:sqlite:" + cacheDir.resolve("dircache.db"), properties);
+      String url = "jdbc:sqlite:" + cacheDir.resolve("dircache.db");
+      connection = DriverManager.getConnection(url, properties);
       connection.createStatement().executeUpdate("PRAGMA SYNCHRONOUS = OFF");
       connection.createStatement().executeUpdate("PRAGMA JOURNAL_MODE = WAL");
+      writeConnection = DriverManager.getConnection(url, properties);
+      writeConnection.createStatement().executeUpdate("PRAGMA SYNCHRONOUS = OFF");
 
       /*
        * This cache is used for two different layers, so we use two separate databases to encode these
@@ -608,114 +639,196 @@ public class SQLiteArtifactCache implements ArtifactCache {
               "SELECT artifact, filepath, size FROM content WHERE sha1 = ?");
 
       updateMetadataTime =
-          connection.prepareStatement(
+          writeConnection.prepareStatement(
               "UPDATE metadata SET accessed = CURRENT_TIMESTAMP WHERE rulekey = ?");
       updateContentTime =
-          connection.prepareStatement(
+          writeConnection.prepareStatement(
               "UPDATE content SET accessed = CURRENT_TIMESTAMP WHERE sha1 = ?");
 
       storeMetadata =
-          connection.prepareStatement("REPLACE INTO metadata (rulekey, data) VALUES (?, ?)");
+          writeConnection.prepareStatement("REPLACE INTO metadata (rulekey, data) VALUES (?, ?)");
       storeArtifact =
-          connection.prepareStatement(
-              "INSERT INTO content (sha1, artifact, size) VALUES (?, ?, ?)");
+          writeConnection.prepareStatement(
+              "INSERT OR REPLACE INTO content (sha1, artifact, size) VALUES (?, ?, ?)");
       storeFilepath =
-          connection.prepareStatement(
-              "INSERT INTO content (sha1, filepath, size) VALUES (?, ?, ?)");
+          writeConnection.prepareStatement(
+              "INSERT OR REPLACE INTO content (sha1, filepath, size) VALUES (?, ?, ?)");
 
       selectContentByTime =
           connection.prepareStatement(
               "SELECT filepath, size, accessed FROM content ORDER BY accessed ASC, created ASC");
 
       deleteMetadataBeforeCutoff =
-          connection.prepareStatement("DELETE FROM metadata WHERE accessed < ?");
+          writeConnection.prepareStatement("DELETE FROM metadata WHERE accessed < ?");
       deleteContentBeforeCutoff =
-          connection.prepareStatement("DELETE FROM content WHERE accessed < ?");
-      deleteContentForHash = connection.prepareStatement("DELETE FROM content WHERE sha1 = ?");
+          writeConnection.prepareStatement("DELETE FROM content WHERE accessed < ?");
+      deleteContentForHash =
+          writeConnection.prepareStatement("DELETE FROM content WHERE sha1 = ?");
 
       contentSize = connection.prepareStatement("SELECT sum(size) FROM content");
 
       BusyHandler.setHandler(connection, new RetryBusyHandler());
+      BusyHandler.setHandler(writeConnection, new RetryBusyHandler());
+      writeQueue =
+          new SQLiteWriteBehindQueue(
+              "dircache", writeConnection, SQLiteWriteBehindQueue.DEFAULT_MAX_BATCH_SIZE);
+    }
+
+    /** Waits until the writes queued so far are visible to reads from the database. */
+    private void flush() throws InterruptedException {
+      writeQueue.flush();
     }
 
     private synchronized Optional<byte[]> selectMetadata(RuleKey ruleKey) throws SQLException {
+      byte[] pending = pendingMetadata.get(ruleKey);
+      if (pending != null) {
+        return Optional.of(pending);
+      }
       fetchMetadata.setBytes(1, getBytes(ruleKey));
-      ResultSet rs = fetchMetadata.executeQuery();
-      return rs.next() ? Optional.of(rs.getBytes(1)) : Optional.empty();
+      // Result sets are closed so that this connection doesn't keep reading an old snapshot.
+      try (ResultSet rs = fetchMetadata.executeQuery()) {
+        return rs.next() ? Optional.of(rs.getBytes(1)) : Optional.empty();
+      }
     }
 
     private synchronized Optional<Content> selectContent(RuleKey contentHash) throws SQLException {
-      fetchContent.setBytes(1, getBytes(contentHash));
-      ResultSet rs = fetchContent.executeQuery();
-      return rs.next()
-          ? Optional.of(new Content(rs.getBytes(1), rs.getString(2), rs.getLong(3)))
-          : Optional.empty();
-    }
-
-    private synchronized void accessMetadata(RuleKey ruleKey) throws SQLException {
-      updateMetadataTime.setBytes(1, getBytes(ruleKey));
-      updateMetadataTime.executeUpdate();
-    }
-
-    private synchronized void accessContent(RuleKey contentHash) throws SQLException {
-      updateContentTime.setBytes(1, getBytes(contentHash));
-      updateContentTime.executeUpdate();
-    }
-
-    private synchronized void storeMetadata(ImmutableSet<RuleKey> ruleKeys, byte[] metadata)
-        throws SQLException {
-      for (RuleKey ruleKey : ruleKeys) {
-        storeMetadata.setBytes(1, getBytes(ruleKey));
-        storeMetadata.setBytes(2, metadata);
-        storeMetadata.addBatch();
+      Content pending = pendingContent.get(contentHash);
+      if (pending != null) {
+        return Optional.of(pending);
       }
-      storeMetadata.executeBatch();
-    }
-
-    private synchronized void storeArtifact(Iterable<RuleKey> hashes, byte[] artifact, long size)
-        throws SQLException {
-      for (RuleKey contentHash : hashes) {
-        storeArtifact.setBytes(1, getBytes(contentHash));
-        storeArtifact.setBytes(2, artifact);
-        storeArtifact.setLong(3, size);
-        storeArtifact.addBatch();
+      fetchContent.setBytes(1, getBytes(contentHash));
+      try (ResultSet rs = fetchContent.executeQuery()) {
+        return rs.next()
+            ? Optional.of(new Content(rs.getBytes(1), rs.getString(2), rs.getLong(3)))
+            : Optional.empty();
       }
-      storeArtifact.executeBatch();
     }
 
-    private synchronized void storeFilepath(Iterable<RuleKey> ruleKeys, String filepath, long size)
-        throws SQLException {
-      for (RuleKey ruleKey : ruleKeys) {
-        storeFilepath.setBytes(1, getBytes(ruleKey));
-        storeFilepath.setString(2, filepath);
-        storeFilepath.setLong(3, size);
-        storeFilepath.addBatch();
+    private void accessMetadata(RuleKey ruleKey) {
+      writeQueue.enqueue(
+          () -> {
+            updateMetadataTime.setBytes(1, getBytes(ruleKey));
+            updateMetadataTime.executeUpdate();
+          });
+    }
+
+    private void accessContent(RuleKey contentHash) {
+      writeQueue.enqueue(
+          () -> {
+            updateContentTime.setBytes(1, getBytes(contentHash));
+            updateContentTime.executeUpdate();
+          });
+    }
+
+    private void storeMetadata(ImmutableSet<RuleKey> ruleKeys, byte[] metadata) {
+      ruleKeys.forEach(ruleKey -> pendingMetadata.put(ruleKey, metadata));
+      writeQueue
+          .enqueue(
+              () -> {
+                for (RuleKey ruleKey : ruleKeys) {
+                  storeMetadata.setBytes(1, getBytes(ruleKey));
+                  storeMetadata.setBytes(2, metadata);
+                  storeMetadata.addBatch();
+                }
+                storeMetadata.executeBatch();
+              })
+          .addListener(
+              () -> ruleKeys.forEach(ruleKey -> pendingMetadata.remove(ruleKey, metadata)),
+              MoreExecutors.directExecutor());
+    }
+
+    private void storeArtifact(ImmutableSet<RuleKey> hashes, byte[] artifact, long size) {
+      storeContent(
+          hashes,
+          new Content(artifact, null, size),
+          () -> {
+            for (RuleKey contentHash : hashes) {
+              storeArtifact.setBytes(1, getBytes(contentHash));
+              storeArtifact.setBytes(2, artifact);
+              storeArtifact.setLong(3, size);
+              storeArtifact.addBatch();
+            }
+            storeArtifact.executeBatch();
+          });
+    }
+
+    private void storeFilepath(ImmutableSet<RuleKey> ruleKeys, String filepath, long size) {
+      storeContent(
+          ruleKeys,
+          new Content(null, filepath, size),
+          () -> {
+            for (RuleKey ruleKey : ruleKeys) {
+              storeFilepath.setBytes(1, getBytes(ruleKey));
+              storeFilepath.setString(2, filepath);
+              storeFilepath.setLong(3, size);
+              storeFilepath.addBatch();
+            }
+            storeFilepath.executeBatch();
+          });
+    }
+
+    private void storeContent(
+        ImmutableSet<RuleKey> hashes, Content content, SQLiteWriteBehindQueue.Write write) {
+      hashes.forEach(contentHash -> pendingContent.put(contentHash, content));
+      writeQueue
+          .enqueue(write)
+          .addListener(
+              () -> hashes.forEach(contentHash -> pendingContent.remove(contentHash, content)),
+              MoreExecutors.directExecutor());
+    }
+
+    private int deleteMetadata(Timestamp evictionCutoff)
+        throws InterruptedException, SQLException {
+      AtomicInteger deleted = new AtomicInteger();
+      waitFor(
+          writeQueue.enqueue(
+              () -> {
+                deleteMetadataBeforeCutoff.setTimestamp(1, evictionCutoff);
+                deleted.set(deleteMetadataBeforeCutoff.executeUpdate());
+              }));
+      return deleted.get();
+    }
+
+    private int deleteContent(Timestamp evictionCutoff)
+        throws InterruptedException, SQLException {
+      AtomicInteger deleted = new AtomicInteger();
+      waitFor(
+          writeQueue.enqueue(
+              () -> {
+                deleteContentBeforeCutoff.setTimestamp(1, evictionCutoff);
+                deleted.set(deleteContentBeforeCutoff.executeUpdate());
+              }));
+      return deleted.get();
+    }
+
+    private void deleteContent(RuleKey contentHash) {
+      pendingContent.remove(contentHash);
+      writeQueue.enqueue(
+          () -> {
+            deleteContentForHash.setBytes(1, getBytes(contentHash));
+            deleteContentForHash.executeUpdate();
+          });
+    }
+
+    private static void waitFor(ListenableFuture<Void> write)
+        throws InterruptedException, SQLException {
+      try {
+        write.get();
+      } catch (ExecutionException e) {
+        Throwables.throwIfInstanceOf(e.getCause(), SQLException.class);
+        Throwables.throwIfUnchecked(e.getCause());
+        throw new IllegalStateException(e.getCause());
       }
-      storeFilepath.executeBatch();
-    }
-
-    private synchronized int deleteMetadata(Timestamp evictionCutoff) throws SQLException {
-      deleteMetadataBeforeCutoff.setTimestamp(1, evictionCutoff);
-      return deleteMetadataBeforeCutoff.executeUpdate();
-    }
-
-    private synchronized int deleteContent(Timestamp evictionCutoff) throws SQLException {
-      deleteContentBeforeCutoff.setTimestamp(1, evictionCutoff);
-      return deleteContentBeforeCutoff.executeUpdate();
-    }
-
-    private synchronized void deleteContent(RuleKey contentHash) throws SQLException {
-      deleteContentForHash.setBytes(1, getBytes(contentHash));
-      deleteContentForHash.executeUpdate();
     }
 
     private synchronized long totalSize() throws SQLException {
-      ResultSet rs = contentSize.executeQuery();
-      if (!rs.next()) {
-        throw new SQLException("Query failed: total size of artifacts");
-      }
+      try (ResultSet rs = contentSize.executeQuery()) {
+        if (!rs.next()) {
+          throw new SQLException("Query failed: total size of artifacts");
+        }
 
-      return rs.getLong(1);
+        return rs.getLong(1);
+      }
     }
 
     private synchronized Pair<Iterable<String>, Timestamp> getContentToEvict(long minToDelete)
@@ -723,27 +836,28 @@ public class SQLiteArtifactCache implements ArtifactCache {
       ImmutableList.Builder<String> filepaths = ImmutableList.builder();
       long deleted = 0;
 
-      ResultSet artifacts = selectContentByTime.executeQuery();
-      while (deleted < minToDelete && artifacts.next()) {
-        String filepath = artifacts.getString(1);
-        long sizeBytes = artifacts.getLong(2);
+      Timestamp evictionCutoff;
+      try (ResultSet artifacts = selectContentByTime.executeQuery()) {
+        while (deleted < minToDelete && artifacts.next()) {
+          String filepath = artifacts.getString(1);
+          long sizeBytes = artifacts.getLong(2);
+
+          // from database constraint, exactly one of filepath/artifact is null
+          if (Objects.nonNull(filepath)) {
+            LOG.verbose("Deleting path [%s] of total size [%d] bytes.", filepath, sizeBytes);
+            filepaths.add(filepath);
+          } else {
+            LOG.verbose("Deleting inlined artifact of size [%d] bytes.", sizeBytes);
+          }
+
+          deleted += sizeBytes;
+        }
 
-        // from database constraint, exactly one of filepath/artifact is null
-        if (Objects.nonNull(filepath)) {
-          LOG.verbose("Deleting path [%s] of total size [%d] bytes.", filepath, sizeBytes);
-          filepaths.add(filepath);
+        if (artifacts.next()) {
+          evictionCutoff = artifacts.getTimestamp(3);
         } else {
-          LOG.verbose("Deleting inlined artifact of size [%d] bytes.", sizeBytes);
+          evictionCutoff = Timestamp.from(Instant.now());
         }
-
-        deleted += sizeBytes;
-      }
-
-      Timestamp evictionCutoff;
-      if (artifacts.next()) {
-        evictionCutoff = artifacts.getTimestamp(3);
-      } else {
-        evictionCutoff = Timestamp.from(Instant.now());
       }
 
       return new Pair<>(filepaths.build(), evictionCutoff);
@@ -755,19 +869,24 @@ public class SQLiteArtifactCache implements ArtifactCache {
 
     private void close() {
       try {
+        writeQueue.close();
+        writeConnection.close();
         connection.close();
       } catch (SQLException e) {
         throw new RuntimeException(e);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new RuntimeException(e);
       }
     }
   }
 
   private static class Content {
-    private final byte[] artifact;
-    private final String filepath;
+    @Nullable private final byte[] artifact;
+    @Nullable private final String filepath;
     private final long size;
 
-    Content(byte[] artifact, String filepath, long size) {
+    Content(@Nullable byte[] artifact, @Nullable String filepath, long size) {
       this.artifact = artifact;
       this.filepath = filepath;
       this.size = size;
@@ -135,6 +135,7 @@ public class ArtifactCacheBuckConfig implements ConfigView<BuckConfig> {
   public static final String MULTI_FETCH = "multi_fetch";
   private static final String MULTI_FETCH_LIMIT = "multi_fetch_limit";
   public static final String MULTI_CHECK = "multi_check";
+  private static final String HTTP_MULTI_FETCH = "http_multi_fetch";
   private static final int DEFAULT_MULTI_FETCH_LIMIT = 100;
 
   private static final String DOWNLOAD_HEAVY_BUILD_CACHE_FETCH_THREADS =
@@ -165,6 +166,11 @@ public class ArtifactCacheBuckConfig implements ConfigView<BuckConfig> {
     return buckConfig.getBooleanValue(CACHE_SECTION_NAME, MULTI_CHECK, false);
   }
 
+  /** @return whether HTTP caches should fetch several artifacts per request. */
+  public boolean getHttpMultiFetchEnabled() {
+    return buckConfig.getBooleanValue(CACHE_SECTION_NAME, HTTP_MULTI_FETCH, false);
+  }
+
   @Override
   public BuckConfig getDelegate() {
     return buckConfig;
@@ -16,6 +16,7 @@
 
 package com.facebook.buck.cli;
 
+import com.facebook.buck.command.config.BuildBuckConfig;
 import com.facebook.buck.core.build.execution.context.ExecutionContext;
 import com.facebook.buck.core.cell.Cell;
 import com.facebook.buck.core.cell.CellConfig;
@@ -40,6 +41,8 @@ import com.facebook.buck.rules.keys.DefaultRuleKeyCache;
 import com.facebook.buck.rules.keys.EventPostingRuleKeyCacheScope;
 import com.facebook.buck.rules.keys.RuleKeyCacheRecycler;
 import com.facebook.buck.rules.keys.RuleKeyCacheScope;
+import com.facebook.buck.rules.keys.StripedRuleKeyCache;
+import com.facebook.buck.rules.keys.TrackableRuleKeyCache;
 import com.facebook.buck.rules.keys.TrackedRuleKeyCache;
 import com.facebook.buck.support.cli.args.BuckCellArg;
 import com.facebook.buck.support.cli.args.GlobalCliOptions;
@@ -409,7 +412,14 @@ public abstract class AbstractCommand extends CommandWithPluginManager {
                 new EventPostingRuleKeyCacheScope<>(
                     params.getBuckEventBus(),
                     new TrackedRuleKeyCache<>(
-                        new DefaultRuleKeyCache<>(), new InstrumentingCacheStatsTracker())));
+                        createRuleKeyCache(params.getBuckConfig()),
+                        new InstrumentingCacheStatsTracker())));
+  }
+
+  private static TrackableRuleKeyCache<RuleKey> createRuleKeyCache(BuckConfig buckConfig) {
+    return buckConfig.getView(BuildBuckConfig.class).useStripedRuleKeyCache()
+        ? new StripedRuleKeyCache<>()
+        : new DefaultRuleKeyCache<>();
   }
 
   @Override
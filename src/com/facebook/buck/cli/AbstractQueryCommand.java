@@ -352,6 +352,19 @@ public abstract class AbstractQueryCommand extends AbstractCommand {
 
   private void runSingleQuery(CommandRunnerParams params, BuckQueryEnvironment env, String query)
       throws IOException, InterruptedException, QueryException {
+    if (outputFormat == OutputFormat.LIST
+        && !shouldOutputAttributes()
+        && !sortOutputFormat.needToSortByRank()) {
+      // Plain target lists don't need the whole result up front, so print targets as they are
+      // found.
+      try (CloseableWrapper<PrintStream> printStreamWrapper = getPrintStreamWrapper(params)) {
+        PrintStream printStream = printStreamWrapper.get();
+        env.evaluateQuery(
+            QueryExpression.parse(query, env), target -> CommandHelper.print(target, printStream));
+      }
+      return;
+    }
+
     Set<QueryTarget> queryResult = env.evaluateQuery(query);
     LOG.debug("Printing out the following targets: %s", queryResult);
 
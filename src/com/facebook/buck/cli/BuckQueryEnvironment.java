@@ -23,12 +23,12 @@ import com.facebook.buck.core.cell.Cell;
 import com.facebook.buck.core.model.BuildFileTree;
 import com.facebook.buck.core.model.BuildTarget;
 import com.facebook.buck.core.model.QueryTarget;
+import com.facebook.buck.core.model.UnconfiguredBuildTargetView;
 import com.facebook.buck.core.model.impl.FilesystemBackedBuildFileTree;
 import com.facebook.buck.core.model.targetgraph.TargetNode;
 import com.facebook.buck.core.model.targetgraph.impl.TargetNodes;
 import com.facebook.buck.core.sourcepath.PathSourcePath;
 import com.facebook.buck.core.sourcepath.SourcePath;
-import com.facebook.buck.core.util.graph.AbstractBreadthFirstTraversal;
 import com.facebook.buck.core.util.graph.AcyclicDepthFirstPostOrderTraversal;
 import com.facebook.buck.core.util.graph.DirectedAcyclicGraph;
 import com.facebook.buck.core.util.graph.GraphTraversable;
@@ -37,6 +37,7 @@ import com.facebook.buck.event.BuckEventBus;
 import com.facebook.buck.event.ConsoleEvent;
 import com.facebook.buck.io.file.MorePaths;
 import com.facebook.buck.io.filesystem.ProjectFilesystem;
+import com.facebook.buck.parser.DaemonicParserState;
 import com.facebook.buck.parser.Parser;
 import com.facebook.buck.parser.ParserMessages;
 import com.facebook.buck.parser.ParsingContext;
@@ -68,13 +69,18 @@ import com.facebook.buck.util.MoreExceptions;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Functions;
 import com.google.common.base.Preconditions;
+import com.google.common.base.Throwables;
+import com.google.common.collect.HashMultimap;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.ImmutableSortedSet;
 import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
+import com.google.common.collect.SetMultimap;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
 import com.google.common.util.concurrent.MoreExecutors;
 import com.google.common.util.concurrent.SettableFuture;
 import com.google.common.util.concurrent.UncheckedExecutionException;
@@ -82,7 +88,6 @@ import java.io.IOException;
 import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedHashSet;
 import java.util.List;
@@ -92,6 +97,7 @@ import java.util.Optional;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
+import java.util.function.Consumer;
 import java.util.function.Function;
 import java.util.function.Predicate;
 
@@ -120,6 +126,9 @@ public class BuckQueryEnvironment implements QueryEnvironment<QueryBuildTarget>
           new RdepsFunction<>(),
           new TestsOfFunction<>());
 
+  /** Levels of graph traversals smaller than twice this size are expanded on a single thread. */
+  private static final int MIN_NODES_PER_NEIGHBORS_TASK = 1000;
+
   private final Parser parser;
   private final PerBuildState parserState;
   private final Cell rootCell;
@@ -128,15 +137,31 @@ public class BuckQueryEnvironment implements QueryEnvironment<QueryBuildTarget>
   private final BuckEventBus eventBus;
   private final QueryEnvironment.TargetEvaluator queryTargetEvaluator;
   private final TypeCoercerFactory typeCoercerFactory;
+  private final ListeningExecutorService executor;
 
   private final ImmutableMap<Cell, BuildFileTree> buildFileTrees;
-  private final Map<BuildTarget, QueryBuildTarget> buildTargetToQueryTarget = new HashMap<>();
+  private final Map<BuildTarget, QueryBuildTarget> buildTargetToQueryTarget =
+      new ConcurrentHashMap<>();
 
   // Query execution is single threaded, however the buildTransitiveClosure implementation
-  // traverses the graph in parallel.
+  // traverses the graph in parallel, and large levels of breadth first traversals are expanded in
+  // parallel.
   private MutableDirectedGraph<TargetNode<?>> graph = MutableDirectedGraph.createConcurrent();
   private Map<BuildTarget, TargetNode<?>> targetsToNodes = new ConcurrentHashMap<>();
 
+  /**
+   * Nodes of {@link #graph} by their unconfigured target, for looking up the reverse dependencies
+   * indexed by {@link DaemonicParserState}.
+   */
+  private final SetMultimap<UnconfiguredBuildTargetView, TargetNode<?>> unconfiguredTargetsToNodes =
+      HashMultimap.create();
+
+  /**
+   * Whether the reverse dependencies of every node of {@link #graph} are in the index of {@link
+   * DaemonicParserState}.
+   */
+  private boolean reverseDependenciesIndexed = true;
+
   @VisibleForTesting
   protected BuckQueryEnvironment(
       Cell rootCell,
@@ -145,7 +170,8 @@ public class BuckQueryEnvironment implements QueryEnvironment<QueryBuildTarget>
       PerBuildState parserState,
       TargetPatternEvaluator targetPatternEvaluator,
       BuckEventBus eventBus,
-      TypeCoercerFactory typeCoercerFactory) {
+      TypeCoercerFactory typeCoercerFactory,
+      ListeningExecutorService executor) {
     this.parser = parser;
     this.eventBus = eventBus;
     this.parserState = parserState;
@@ -163,6 +189,7 @@ public class BuckQueryEnvironment implements QueryEnvironment<QueryBuildTarget>
     this.targetPatternEvaluator = targetPatternEvaluator;
     this.queryTargetEvaluator = new TargetEvaluator(targetPatternEvaluator);
     this.typeCoercerFactory = typeCoercerFactory;
+    this.executor = executor;
   }
 
   public static BuckQueryEnvironment from(
@@ -172,7 +199,8 @@ public class BuckQueryEnvironment implements QueryEnvironment<QueryBuildTarget>
       PerBuildState parserState,
       TargetPatternEvaluator targetPatternEvaluator,
       BuckEventBus eventBus,
-      TypeCoercerFactory typeCoercerFactory) {
+      TypeCoercerFactory typeCoercerFactory,
+      ListeningExecutorService executor) {
     return new BuckQueryEnvironment(
         rootCell,
         ownersReportBuilder,
@@ -180,7 +208,8 @@ public class BuckQueryEnvironment implements QueryEnvironment<QueryBuildTarget>
         parserState,
         targetPatternEvaluator,
         eventBus,
-        typeCoercerFactory);
+        typeCoercerFactory,
+        executor);
   }
 
   public static BuckQueryEnvironment from(
@@ -201,7 +230,8 @@ public class BuckQueryEnvironment implements QueryEnvironment<QueryBuildTarget>
                 ParserConfig.ApplyDefaultFlavorsMode.DISABLED),
             params.getTargetConfiguration()),
         params.getBuckEventBus(),
-        params.getTypeCoercerFactory());
+        params.getTypeCoercerFactory(),
+        parsingContext.getExecutor());
   }
 
   public DirectedAcyclicGraph<TargetNode<?>> getTargetGraph() {
@@ -242,6 +272,23 @@ public class BuckQueryEnvironment implements QueryEnvironment<QueryBuildTarget>
     return evaluateQuery(QueryExpression.parse(query, this));
   }
 
+  /**
+   * Evaluate the specified query expression in this environment, passing resulting targets to
+   * {@code consumer} in the order of the set returned by {@link #evaluateQuery(QueryExpression)}.
+   * Graph traversals pass targets as soon as they are visited, without waiting for the whole
+   * result.
+   *
+   * @throws QueryException if the evaluation failed.
+   */
+  public void evaluateQuery(
+      QueryExpression<QueryBuildTarget> expr, Consumer<? super QueryTarget> consumer)
+      throws QueryException, InterruptedException {
+    Set<String> targetLiterals = new HashSet<>();
+    expr.collectTargetPatterns(targetLiterals);
+    preloadTargetPatterns(targetLiterals);
+    expr.forEach(new NoopQueryEvaluator<QueryBuildTarget>(), this, consumer);
+  }
+
   TargetNode<?> getNode(QueryBuildTarget target) throws QueryException {
     BuildTarget buildTarget = target.getBuildTarget();
     TargetNode<?> node = targetsToNodes.get(buildTarget);
@@ -256,6 +303,11 @@ public class BuckQueryEnvironment implements QueryEnvironment<QueryBuildTarget>
     }
   }
 
+  private TargetNode<?> getDiscoveredNode(BuildTarget buildTarget) {
+    return Preconditions.checkNotNull(
+        targetsToNodes.get(buildTarget), "Couldn't find TargetNode for %s", buildTarget);
+  }
+
   private QueryBuildTarget getOrCreateQueryBuildTarget(BuildTarget buildTarget) {
     return buildTargetToQueryTarget.computeIfAbsent(buildTarget, QueryBuildTarget::of);
   }
@@ -290,28 +342,96 @@ public class BuckQueryEnvironment implements QueryEnvironment<QueryBuildTarget>
     return builder.build();
   }
 
+  private List<TargetNode<?>> getNodes(Iterable<QueryBuildTarget> targets) throws QueryException {
+    List<TargetNode<?>> nodes = new ArrayList<>();
+    for (QueryBuildTarget target : targets) {
+      nodes.add(getNode(target));
+    }
+    return nodes;
+  }
+
+  /**
+   * Returns the neighbors of each of the given nodes, which usually form a level of a breadth first
+   * traversal, in the order of the nodes. Large levels are split into tasks run by the executor.
+   */
+  private <T> List<T> getNeighbors(
+      List<TargetNode<?>> nodes, Function<TargetNode<?>, Iterable<T>> neighbors)
+      throws QueryException {
+    if (nodes.size() < 2 * MIN_NODES_PER_NEIGHBORS_TASK) {
+      return getNeighborsOfPartition(nodes, neighbors);
+    }
+    List<ListenableFuture<List<T>>> partitionNeighbors = new ArrayList<>();
+    for (List<TargetNode<?>> partition : Lists.partition(nodes, MIN_NODES_PER_NEIGHBORS_TASK)) {
+      partitionNeighbors.add(executor.submit(() -> getNeighborsOfPartition(partition, neighbors)));
+    }
+    try {
+      List<T> result = new ArrayList<>();
+      for (List<T> partitionResult : Futures.allAsList(partitionNeighbors).get()) {
+        result.addAll(partitionResult);
+      }
+      return result;
+    } catch (ExecutionException e) {
+      Throwables.throwIfUnchecked(e.getCause());
+      throw new QueryException(e.getCause(), "Failed traversing the target graph");
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new QueryException(e, "Interrupted while traversing the target graph");
+    }
+  }
+
+  private static <T> List<T> getNeighborsOfPartition(
+      List<TargetNode<?>> nodes, Function<TargetNode<?>, Iterable<T>> neighbors) {
+    List<T> result = new ArrayList<>();
+    for (TargetNode<?> node : nodes) {
+      Iterables.addAll(result, neighbors.apply(node));
+    }
+    return result;
+  }
+
   @Override
   public ImmutableSet<QueryBuildTarget> getFwdDeps(Iterable<QueryBuildTarget> targets)
       throws QueryException {
-    ImmutableSet.Builder<QueryBuildTarget> result = new ImmutableSet.Builder<>();
-    for (QueryBuildTarget target : targets) {
-      TargetNode<?> node = getNode(target);
-      result.addAll(getTargetsFromTargetNodes(graph.getOutgoingNodesFor(node)));
-    }
-    return result.build();
+    return ImmutableSet.copyOf(
+        getNeighbors(
+            getNodes(targets),
+            node -> getTargetsFromTargetNodes(graph.getOutgoingNodesFor(node))));
   }
 
   @Override
   public Set<QueryBuildTarget> getReverseDeps(Iterable<QueryBuildTarget> targets)
       throws QueryException {
-    Set<QueryBuildTarget> result = new LinkedHashSet<>();
-    for (QueryBuildTarget target : targets) {
-      TargetNode<?> node = getNode(target);
-      for (TargetNode<?> parentNode : graph.getIncomingNodesFor(node)) {
-        result.add(getOrCreateQueryBuildTarget(parentNode.getBuildTarget()));
+    Function<TargetNode<?>, Iterable<TargetNode<?>>> parentNodes =
+        reverseDependenciesIndexed
+            ? this::getIndexedParentNodes
+            : node -> graph.getIncomingNodesFor(node);
+    return new LinkedHashSet<>(
+        getNeighbors(
+            getNodes(targets),
+            node ->
+                Iterables.transform(
+                    parentNodes.apply(node),
+                    parentNode -> getOrCreateQueryBuildTarget(parentNode.getBuildTarget()))));
+  }
+
+  /**
+   * Returns the nodes of the graph depending on {@code node}, using the reverse dependencies kept
+   * by the daemon instead of the edges of the graph.
+   */
+  private List<TargetNode<?>> getIndexedParentNodes(TargetNode<?> node) {
+    BuildTarget buildTarget = node.getBuildTarget();
+    List<TargetNode<?>> parentNodes = new ArrayList<>();
+    // The index doesn't know about configurations, so keep the nodes of the parents which depend
+    // on this configuration of the target.
+    DaemonicParserState daemonicParserState = parser.getPermState();
+    for (UnconfiguredBuildTargetView parent :
+        daemonicParserState.getReverseDependencies(buildTarget.getUnconfiguredBuildTargetView())) {
+      for (TargetNode<?> parentNode : unconfiguredTargetsToNodes.get(parent)) {
+        if (parentNode.getParseDeps().contains(buildTarget)) {
+          parentNodes.add(parentNode);
+        }
       }
     }
-    return result;
+    return parentNodes;
   }
 
   @Override
@@ -334,22 +454,33 @@ public class BuckQueryEnvironment implements QueryEnvironment<QueryBuildTarget>
   @Override
   public ImmutableSet<QueryBuildTarget> getTransitiveClosure(Set<QueryBuildTarget> targets)
       throws QueryException {
-    Set<TargetNode<?>> nodes = new LinkedHashSet<>(targets.size());
-    for (QueryBuildTarget target : targets) {
-      nodes.add(getNode(target));
+    // Breadth first traversal expanding one level at a time, which visits nodes in the same order
+    // as a traversal using a queue.
+    Set<TargetNode<?>> visited = new LinkedHashSet<>(targets.size());
+    List<TargetNode<?>> level = new ArrayList<>(targets.size());
+    for (TargetNode<?> node : getNodes(targets)) {
+      if (visited.add(node)) {
+        level.add(node);
+      }
     }
-    ImmutableSet.Builder<QueryBuildTarget> result = ImmutableSet.builder();
-
-    new AbstractBreadthFirstTraversal<TargetNode<?>>(nodes) {
-      @Override
-      public Iterable<TargetNode<?>> visit(TargetNode<?> node) {
-        result.add(getOrCreateQueryBuildTarget(node.getBuildTarget()));
-        return node.getParseDeps().stream()
-            .map(targetsToNodes::get)
-            .collect(ImmutableSet.toImmutableSet());
+    while (!level.isEmpty()) {
+      List<TargetNode<?>> nextLevel = new ArrayList<>();
+      for (TargetNode<?> dep :
+          getNeighbors(
+              level,
+              node -> Iterables.transform(node.getParseDeps(), this::getDiscoveredNode))) {
+        if (visited.add(dep)) {
+          nextLevel.add(dep);
+        }
       }
-    }.start();
+      level = nextLevel;
+    }
 
+    ImmutableSet.Builder<QueryBuildTarget> result =
+        ImmutableSet.builderWithExpectedSize(visited.size());
+    for (TargetNode<?> node : visited) {
+      result.add(getOrCreateQueryBuildTarget(node.getBuildTarget()));
+    }
     return result.build();
   }
 
@@ -418,6 +549,11 @@ public class BuckQueryEnvironment implements QueryEnvironment<QueryBuildTarget>
             Preconditions.checkNotNull(
                 targetsToNodes.get(buildTarget), "Couldn't find TargetNode for %s", buildTarget);
         graph.addNode(node);
+        UnconfiguredBuildTargetView unconfiguredBuildTarget =
+            buildTarget.getUnconfiguredBuildTargetView();
+        unconfiguredTargetsToNodes.put(unconfiguredBuildTarget, node);
+        reverseDependenciesIndexed &=
+            parser.getPermState().hasIndexedDependencies(unconfiguredBuildTarget);
         for (BuildTarget dep : node.getParseDeps()) {
           graph.addEdge(
               node,
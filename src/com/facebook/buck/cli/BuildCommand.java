@@ -50,6 +50,7 @@ import com.facebook.buck.io.filesystem.ProjectFilesystem;
 import com.facebook.buck.log.InvocationInfo;
 import com.facebook.buck.log.thrift.ThriftRuleKeyLogger;
 import com.facebook.buck.parser.SpeculativeParsing;
+import com.facebook.buck.parser.SpeculativeParsingRequest;
 import com.facebook.buck.parser.TargetNodeSpec;
 import com.facebook.buck.parser.config.ParserConfig;
 import com.facebook.buck.parser.exceptions.BuildTargetException;
@@ -707,16 +708,27 @@ public class BuildCommand extends AbstractCommand {
     // Parse the build files to create a ActionGraph.
     ParserConfig parserConfig = params.getBuckConfig().getView(ParserConfig.class);
     try {
-      return params
-          .getParser()
-          .buildTargetGraphWithoutTopLevelConfigurationTargets(
-              createParsingContext(params.getCell(), executor)
-                  .withSpeculativeParsing(SpeculativeParsing.ENABLED)
-                  .withApplyDefaultFlavorsMode(parserConfig.getDefaultFlavorsMode()),
-              targetNodeSpecEnhancer.apply(
-                  parseArgumentsAsTargetNodeSpecs(
-                      params.getCell(), params.getBuckConfig(), getArguments())),
-              params.getTargetConfiguration());
+      ImmutableList<TargetNodeSpec> specs =
+          targetNodeSpecEnhancer.apply(
+              parseArgumentsAsTargetNodeSpecs(
+                  params.getCell(), params.getBuckConfig(), getArguments()));
+      TargetGraphCreationResult result =
+          params
+              .getParser()
+              .buildTargetGraphWithoutTopLevelConfigurationTargets(
+                  createParsingContext(params.getCell(), executor)
+                      .withSpeculativeParsing(SpeculativeParsing.ENABLED)
+                      .withApplyDefaultFlavorsMode(parserConfig.getDefaultFlavorsMode()),
+                  specs,
+                  params.getTargetConfiguration());
+      if (parserConfig.getSpeculativeParsingAfterChanges()) {
+        params
+            .getParser()
+            .getPermState()
+            .getSpeculativeParsingHistory()
+            .recordRequest(SpeculativeParsingRequest.of(specs, params.getTargetConfiguration()));
+      }
+      return result;
     } catch (BuildTargetException e) {
       throw new ActionGraphCreationException(MoreExceptions.getHumanReadableOrLocalizedMessage(e));
     }
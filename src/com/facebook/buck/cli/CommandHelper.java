@@ -88,7 +88,17 @@ public final class CommandHelper {
    * @param printStream print stream for output
    */
   public static void print(Set<QueryTarget> targets, PrintStream printStream) {
-    targets.stream().map(CommandHelper::stringify).forEach(printStream::println);
+    targets.forEach(target -> print(target, printStream));
+  }
+
+  /**
+   * Prints a single target of a query result into printStream.
+   *
+   * @param target target of query result
+   * @param printStream print stream for output
+   */
+  public static void print(QueryTarget target, PrintStream printStream) {
+    printStream.println(stringify(target));
   }
 
   /**
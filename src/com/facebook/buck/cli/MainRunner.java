@@ -133,8 +133,12 @@ import com.facebook.buck.manifestservice.ManifestServiceConfig;
 import com.facebook.buck.parser.Parser;
 import com.facebook.buck.parser.ParserFactory;
 import com.facebook.buck.parser.ParserPythonInterpreterProvider;
+import com.facebook.buck.parser.ParsingContext;
+import com.facebook.buck.parser.SpeculativeParsing;
+import com.facebook.buck.parser.SpeculativeParsingRequest;
 import com.facebook.buck.parser.TargetSpecResolver;
 import com.facebook.buck.parser.config.ParserConfig;
+import com.facebook.buck.parser.exceptions.BuildFileParseException;
 import com.facebook.buck.remoteexecution.MetadataProviderFactory;
 import com.facebook.buck.remoteexecution.config.RemoteExecutionConfig;
 import com.facebook.buck.remoteexecution.event.RemoteExecutionStatsProvider;
@@ -1092,7 +1096,7 @@ public final class MainRunner {
                                 buckConfig.getView(BuildBuckConfig.class).getNumThreads())),
                         ExecutorPool.PROJECT.toString(),
                         EXECUTOR_SERVICES_TIMEOUT_SECONDS);
-            BuildInfoStoreManager storeManager = new BuildInfoStoreManager();
+            BuildInfoStoreManager storeManager = new BuildInfoStoreManager(buildEventBus);
             AbstractConsoleEventBusListener consoleListener =
                 createConsoleEventListener(
                     clock,
@@ -1497,15 +1501,41 @@ public final class MainRunner {
           // the stack
           // TODO(buck_team): refactor this as in case of exception exitCode is reported incorrectly
           // to the CommandEvent listener
-          if (exitCode == ExitCode.SUCCESS
-              && context.isPresent()
-              && !cliConfig.getFlushEventsBeforeExit()) {
+          boolean clientReleased =
+              exitCode == ExitCode.SUCCESS
+                  && context.isPresent()
+                  && !cliConfig.getFlushEventsBeforeExit();
+          if (clientReleased) {
             context.get().in.close(); // Avoid client exit triggering client disconnection handling.
             context.get().exit(exitCode.getCode());
           }
 
+          // Persist file hashes and parsed build files once the client is released so that they
+          // survive a daemon kill.
+          buckGlobalState.persistFileHashCaches();
+          buckGlobalState.persistParserState();
+
           // TODO(buck_team): refactor eventListeners for RAII
           flushAndCloseEventListeners(console, eventListeners);
+
+          // Speculative parsing only runs once the client is released and the events of the
+          // command are flushed, so that it never delays the command.
+          if (clientReleased
+              && rootCell
+                  .getBuckConfig()
+                  .getView(ParserConfig.class)
+                  .getSpeculativeParsingAfterChanges()) {
+            runSpeculativeParsing(
+                clock,
+                buckGlobalState,
+                rootCell,
+                watchman,
+                knownRuleTypesProvider,
+                executableFinder,
+                manifestServiceSupplier,
+                fileHashCache,
+                buildTargetFactory);
+          }
         }
       }
     }
@@ -1765,9 +1795,16 @@ public final class MainRunner {
     if (context.isPresent()) {
       // Note that watchmanWatcher is non-null only when context.isPresent().
       registerClientDisconnectedListener(context.get(), buckGlobalState);
+      // Speculative parsing left by a previous command must not race with the invalidation below.
+      buckGlobalState.cancelSpeculativeParsing();
       if (watchmanWatcher.isPresent()) {
         buckGlobalState.watchFileSystem(
-            buildEventBus, watchmanWatcher.get(), watchmanFreshInstanceAction);
+            buildEventBus,
+            watchmanWatcher.get(),
+            // A parser state restored from a snapshot is stale if Watchman lost track of changes.
+            buckGlobalState.isParserStateRestored()
+                ? FreshInstanceAction.POST_OVERFLOW_EVENT
+                : watchmanFreshInstanceAction);
       }
       if (buckConfig.getView(BuildBuckConfig.class).getRuleKeyCaching()) {
         LOG.debug("Using rule key calculation caching");
@@ -1808,6 +1845,81 @@ public final class MainRunner {
         defaultRuleKeyFactoryCacheRecycler);
   }
 
+  /**
+   * Parses the target patterns that builds requested after changes like the ones processed by this
+   * command, so that the next build finds them in the parser cache. The client of the command is
+   * released and its executors and event bus are shut down at this point, so this uses its own.
+   */
+  private void runSpeculativeParsing(
+      Clock clock,
+      BuckGlobalState buckGlobalState,
+      Cell rootCell,
+      Watchman watchman,
+      KnownRuleTypesProvider knownRuleTypesProvider,
+      ExecutableFinder executableFinder,
+      ThrowingCloseableMemoizedSupplier<ManifestService, IOException> manifestServiceSupplier,
+      FileHashLoader fileHashLoader,
+      UnconfiguredBuildTargetViewFactory unconfiguredBuildTargetFactory) {
+    buckGlobalState.runSpeculativeParsing(
+        requests -> {
+          ParserConfig parserConfig = rootCell.getBuckConfig().getView(ParserConfig.class);
+          TypeCoercerFactory typeCoercerFactory = buckGlobalState.getTypeCoercerFactory();
+          try (DefaultBuckEventBus eventBus = new DefaultBuckEventBus(clock, buildId);
+              CloseableMemoizedSupplier<DepsAwareExecutor<? super ComputeResult, ?>>
+                  depsAwareExecutorSupplier =
+                      getDepsAwareExecutorSupplier(DepsAwareExecutorType.DEFAULT, 1);
+              ThrowingCloseableWrapper<ListeningExecutorService, InterruptedException>
+                  parsingExecutorService =
+                      getExecutorWrapper(
+                          listeningDecorator(
+                              MostExecutors.newSingleThreadExecutor(
+                                  runnable -> {
+                                    Thread thread =
+                                        new MostExecutors.NamedThreadFactory("Speculative Parsing")
+                                            .newThread(runnable);
+                                    thread.setPriority(Thread.MIN_PRIORITY);
+                                    return thread;
+                                  })),
+                          "Speculative Parsing",
+                          EXECUTOR_SERVICES_TIMEOUT_SECONDS)) {
+            Parser parser =
+                ParserFactory.create(
+                    typeCoercerFactory,
+                    new DefaultConstructorArgMarshaller(typeCoercerFactory),
+                    knownRuleTypesProvider,
+                    new ParserPythonInterpreterProvider(parserConfig, executableFinder),
+                    buckGlobalState.getDaemonicParserState(),
+                    new TargetSpecResolver(
+                        eventBus,
+                        depsAwareExecutorSupplier.get(),
+                        rootCell.getCellProvider(),
+                        buckGlobalState.getDirectoryListCaches(),
+                        buckGlobalState.getFileTreeCaches()),
+                    watchman,
+                    eventBus,
+                    manifestServiceSupplier,
+                    fileHashLoader,
+                    unconfiguredBuildTargetFactory);
+            ParsingContext parsingContext =
+                ParsingContext.builder(rootCell, parsingExecutorService.get())
+                    .setSpeculativeParsing(SpeculativeParsing.ENABLED)
+                    .setApplyDefaultFlavorsMode(parserConfig.getDefaultFlavorsMode())
+                    .setEnableTargetCompatibilityChecks(
+                        parserConfig.getEnableTargetCompatibilityChecks())
+                    .build();
+            for (SpeculativeParsingRequest request : requests) {
+              try {
+                parser.buildTargetGraphWithoutTopLevelConfigurationTargets(
+                    parsingContext, request.getTargetNodeSpecs(), request.getTargetConfiguration());
+              } catch (BuildFileParseException e) {
+                // The changes may have broken the request, the next build reports it.
+                LOG.debug(e, "Speculative parsing of %s failed.", request);
+              }
+            }
+          }
+        });
+  }
+
   private static void registerClientDisconnectedListener(
       NGContext context, BuckGlobalState buckGlobalState) {
     Thread mainThread = Thread.currentThread();
@@ -1324,7 +1324,8 @@ public class TargetsCommand extends AbstractCommand {
                       params
                           .getParser()
                           .getTargetNodeRawAttributesJob(state, params.getCell(), node),
-                  getHashFunction())
+                  getHashFunction(),
+                  params.getParser().getPermState().getTargetNodeAttributesHashCache())
               .hashTargetGraph();
     }
 
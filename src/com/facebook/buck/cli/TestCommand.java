@@ -606,6 +606,7 @@ public class TestCommand extends BuildCommand {
                     params.getTargetConfigurationSerializer(),
                     params.getBuildInfoStoreManager(),
                     cachingBuildEngineBuckConfig.getResourceAwareSchedulingInfo(),
+                    cachingBuildEngineBuckConfig.getSchedulingOrder(),
                     cachingBuildEngineBuckConfig.getConsoleLogBuildRuleFailuresInline(),
                     RuleKeyFactories.of(
                         params.getRuleKeyConfiguration(),
@@ -241,6 +241,7 @@ public class LocalBuildExecutor implements BuildExecutor {
         targetConfigurationSerializer,
         args.getBuildInfoStoreManager(),
         engineConfig.getResourceAwareSchedulingInfo(),
+        engineConfig.getSchedulingOrder(),
         engineConfig.getConsoleLogBuildRuleFailuresInline(),
         RuleKeyFactories.of(
             args.getRuleKeyConfiguration(),
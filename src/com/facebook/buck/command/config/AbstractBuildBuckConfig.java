@@ -206,6 +206,15 @@ public abstract class AbstractBuildBuckConfig implements ConfigView<BuckConfig>
     return getDelegate().getBooleanValue(BUILD_SECTION, "rule_key_caching", false);
   }
 
+  /**
+   * @return whether rule keys should be cached in a {@code StripedRuleKeyCache}, which scales
+   *     better with the number of threads than the default cache.
+   */
+  @Value.Lazy
+  public boolean useStripedRuleKeyCache() {
+    return getDelegate().getBooleanValue(BUILD_SECTION, "striped_rule_key_cache", false);
+  }
+
   /** Whether to create symlinks of build output in buck-out/last. */
   @Value.Lazy
   public boolean createBuildOutputSymLinksEnabled() {
@@ -240,6 +249,12 @@ public abstract class AbstractBuildBuckConfig implements ConfigView<BuckConfig>
         .orElse(FileHashCacheMode.DEFAULT);
   }
 
+  /** @return whether file hashes should be persisted to reuse them after a daemon restart. */
+  @Value.Lazy
+  public boolean shouldPersistFileHashCache() {
+    return getDelegate().getBooleanValue(BUILD_SECTION, "persist_file_hash_cache", false);
+  }
+
   /** @return a target that points to a {@code platform} rule that describes the host platform. */
   @Value.Lazy
   public Optional<UnconfiguredBuildTargetView> getHostPlatform() {
@@ -79,6 +79,24 @@ public class BuildInfo {
 
     /** Key for {@link OnDiskBuildInfo} to store the hash of the output. */
     public static final String OUTPUT_HASH = "OUTPUT_HASH";
+
+    /**
+     * Key for {@link OnDiskBuildInfo} to store how long, in milliseconds, the rule took to build
+     * locally.
+     */
+    public static final String BUILD_DURATION_MILLIS = "BUILD_DURATION_MILLIS";
+
+    /**
+     * Key for {@link OnDiskBuildInfo} to store the CPU time, in milliseconds, used by the processes
+     * of the rule when it was built locally.
+     */
+    public static final String BUILD_CPU_MILLIS = "BUILD_CPU_MILLIS";
+
+    /**
+     * Key for {@link OnDiskBuildInfo} to store the peak resident memory, in bytes, of the processes
+     * of the rule when it was built locally.
+     */
+    public static final String BUILD_PEAK_MEMORY_BYTES = "BUILD_PEAK_MEMORY_BYTES";
   }
 
   public static final ImmutableSet<String> METADATA_KEYS =
@@ -94,7 +112,10 @@ public class BuildInfo {
           MetadataKey.CONFIGURATION,
           MetadataKey.MANIFEST_KEY,
           MetadataKey.BUILD_ID,
-          MetadataKey.ORIGIN_BUILD_ID);
+          MetadataKey.ORIGIN_BUILD_ID,
+          MetadataKey.BUILD_DURATION_MILLIS,
+          MetadataKey.BUILD_CPU_MILLIS,
+          MetadataKey.BUILD_PEAK_MEMORY_BYTES);
 
   /** All keys corresponding to rule keys. */
   public static final ImmutableSet<String> RULE_KEY_NAMES =
@@ -17,30 +17,66 @@
 package com.facebook.buck.core.build.engine.buildinfo;
 
 import com.facebook.buck.core.model.BuildTarget;
+import com.facebook.buck.counters.Counter;
 import com.facebook.buck.io.filesystem.ProjectFilesystem;
 import com.facebook.buck.util.sqlite.RetryBusyHandler;
 import com.facebook.buck.util.sqlite.SQLiteUtils;
+import com.facebook.buck.util.sqlite.SQLiteWriteBehindQueue;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
 import java.io.IOException;
 import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+import javax.annotation.Nullable;
 import org.sqlite.BusyHandler;
 
+/**
+ * {@link BuildInfoStore} backed by a SQLite database in the scratch directory.
+ *
+ * <p>Writes are batched into transactions by a {@link SQLiteWriteBehindQueue}, and are kept in
+ * memory until they are committed so that reads see them. Reads use a pool of connections, which
+ * read concurrently with each other and with the writer in WAL journal mode.
+ *
+ * <p>Writes that fail stay in memory, so that the rules that wrote them still read them, and the
+ * first failure is reported by {@link #close()}.
+ */
 public class SQLiteBuildInfoStore implements BuildInfoStore {
-  private final Connection connection;
-  private final PreparedStatement selectStmt;
-  private final PreparedStatement selectAllStmt;
+  private final String dbPath;
+  private final Connection writeConnection;
   private final PreparedStatement updateStmt;
   private final PreparedStatement deleteStmt;
+  private final SQLiteWriteBehindQueue writeQueue;
+
+  private final Queue<Reader> idleReaders = new ConcurrentLinkedQueue<>();
+  private final List<Reader> readers = new CopyOnWriteArrayList<>();
+
+  // Writes which are not committed yet, by target.
+  private final ConcurrentHashMap<String, PendingMetadata> pendingMetadata =
+      new ConcurrentHashMap<>();
+
+  // The first failure of a write that wasn't reported yet.
+  private final AtomicReference<Throwable> writeFailure = new AtomicReference<>();
 
   public SQLiteBuildInfoStore(ProjectFilesystem filesystem) throws IOException {
     SQLiteUtils.initialize();
-    String dbPath =
+    dbPath =
         filesystem
             .getRootPath()
             .resolve(filesystem.getBuckPaths().getScratchDir().resolve("metadata.db"))
@@ -48,100 +84,258 @@ public class SQLiteBuildInfoStore implements BuildInfoStore {
     filesystem.createParentDirs(dbPath);
     try {
       Class.forName("org.sqlite.JDBC");
-      connection = DriverManager.getConnection("jdbc:sqlite:" + dbPath);
-      connection.createStatement().executeUpdate("PRAGMA SYNCHRONOUS = OFF");
-      connection.createStatement().executeUpdate("PRAGMA JOURNAL_MODE = WAL");
-      connection
+      writeConnection = openConnection();
+      writeConnection.createStatement().executeUpdate("PRAGMA JOURNAL_MODE = WAL");
+      writeConnection
           .createStatement()
           .executeUpdate(
               "CREATE TABLE IF NOT EXISTS metadata "
                   + "(target TEXT, key TEXT, value TEXT, "
                   + "PRIMARY KEY (target, key)) "
                   + "WITHOUT ROWID");
-      selectStmt =
-          connection.prepareStatement("SELECT value FROM metadata WHERE target = ? AND key = ?");
-      selectAllStmt =
-          connection.prepareStatement("SELECT key, value FROM metadata WHERE target = ?");
-
       updateStmt =
-          connection.prepareStatement(
+          writeConnection.prepareStatement(
               "INSERT OR REPLACE INTO metadata (target, key, value) VALUES (?, ?, ?)");
-      deleteStmt = connection.prepareStatement("DELETE FROM metadata WHERE target = ?");
-      BusyHandler.setHandler(connection, new RetryBusyHandler());
+      deleteStmt = writeConnection.prepareStatement("DELETE FROM metadata WHERE target = ?");
+      writeQueue =
+          new SQLiteWriteBehindQueue(
+              "metadata", writeConnection, SQLiteWriteBehindQueue.DEFAULT_MAX_BATCH_SIZE);
     } catch (ClassNotFoundException | SQLException e) {
       throw new IOException(e);
     }
   }
 
+  private Connection openConnection() throws SQLException {
+    Connection connection = DriverManager.getConnection("jdbc:sqlite:" + dbPath);
+    connection.createStatement().executeUpdate("PRAGMA SYNCHRONOUS = OFF");
+    BusyHandler.setHandler(connection, new RetryBusyHandler());
+    return connection;
+  }
+
+  /** @return the counters of the write queue of this store. */
+  public ImmutableList<Counter> getCounters() {
+    return writeQueue.getCounters();
+  }
+
   @Override
   public void close() {
     try {
-      connection.close();
-    } catch (SQLException e) {
+      writeQueue.close();
+      for (Reader reader : readers) {
+        reader.connection.close();
+      }
+      writeConnection.close();
+      checkWrites();
+    } catch (IOException | SQLException e) {
+      throw new RuntimeException(e);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
       throw new RuntimeException(e);
     }
   }
 
   @Override
-  public synchronized Optional<String> readMetadata(BuildTarget buildTarget, String key) {
-    try {
-      selectStmt.setString(1, cellRelativeName(buildTarget));
-      selectStmt.setString(2, key);
-      try (ResultSet rs = selectStmt.executeQuery()) {
-        if (!rs.next()) {
-          return Optional.empty();
-        }
-        String value = rs.getString(1);
-        return Optional.of(value);
+  public Optional<String> readMetadata(BuildTarget buildTarget, String key) {
+    String target = cellRelativeName(buildTarget);
+    PendingMetadata pending = pendingMetadata.get(target);
+    if (pending != null) {
+      String value = pending.values.get(key);
+      if (value != null || pending.deleted) {
+        return Optional.ofNullable(value);
       }
-    } catch (SQLException e) {
-      throw new RuntimeException(e);
     }
+    return withReader(
+        reader -> {
+          reader.selectStmt.setString(1, target);
+          reader.selectStmt.setString(2, key);
+          try (ResultSet rs = reader.selectStmt.executeQuery()) {
+            if (!rs.next()) {
+              return Optional.empty();
+            }
+            String value = rs.getString(1);
+            return Optional.of(value);
+          }
+        });
   }
 
   @Override
-  public synchronized ImmutableMap<String, String> getAllMetadata(BuildTarget buildTarget) {
-    try {
-      selectAllStmt.setString(1, cellRelativeName(buildTarget));
-      try (ResultSet rs = selectAllStmt.executeQuery()) {
-        ImmutableMap.Builder<String, String> result = ImmutableMap.builder();
-        while (rs.next()) {
-          result.put(rs.getString(1), rs.getString(2));
-        }
-        return result.build();
-      }
-    } catch (SQLException e) {
-      throw new RuntimeException(e);
+  public ImmutableMap<String, String> getAllMetadata(BuildTarget buildTarget) {
+    String target = cellRelativeName(buildTarget);
+    PendingMetadata pending = pendingMetadata.get(target);
+    if (pending != null && pending.deleted) {
+      return pending.values;
+    }
+    ImmutableMap<String, String> stored =
+        withReader(
+            reader -> {
+              reader.selectAllStmt.setString(1, target);
+              try (ResultSet rs = reader.selectAllStmt.executeQuery()) {
+                ImmutableMap.Builder<String, String> result = ImmutableMap.builder();
+                while (rs.next()) {
+                  result.put(rs.getString(1), rs.getString(2));
+                }
+                return result.build();
+              }
+            });
+    if (pending == null) {
+      return stored;
     }
+    Map<String, String> merged = new HashMap<>(stored);
+    merged.putAll(pending.values);
+    return ImmutableMap.copyOf(merged);
   }
 
   @Override
-  public synchronized void updateMetadata(BuildTarget buildTarget, Map<String, String> metadata)
+  public void updateMetadata(BuildTarget buildTarget, Map<String, String> metadata)
       throws IOException {
-    try {
-      for (Map.Entry<String, String> e : metadata.entrySet()) {
-        updateStmt.setString(1, cellRelativeName(buildTarget));
-        updateStmt.setString(2, e.getKey());
-        updateStmt.setString(3, e.getValue());
-        updateStmt.addBatch();
-      }
-      updateStmt.executeBatch();
-    } catch (SQLException e) {
-      throw new IOException(e);
-    }
+    String target = cellRelativeName(buildTarget);
+    ImmutableMap<String, String> values = ImmutableMap.copyOf(metadata);
+    enqueue(
+        target,
+        previous -> previous == null ? new PendingMetadata(false, values) : previous.update(values),
+        () -> {
+          for (Map.Entry<String, String> e : values.entrySet()) {
+            updateStmt.setString(1, target);
+            updateStmt.setString(2, e.getKey());
+            updateStmt.setString(3, e.getValue());
+            updateStmt.addBatch();
+          }
+          updateStmt.executeBatch();
+        });
   }
 
   @Override
-  public synchronized void deleteMetadata(BuildTarget buildTarget) throws IOException {
+  public void deleteMetadata(BuildTarget buildTarget) throws IOException {
+    String target = cellRelativeName(buildTarget);
+    enqueue(
+        target,
+        previous -> new PendingMetadata(true, ImmutableMap.of()),
+        () -> {
+          deleteStmt.setString(1, target);
+          deleteStmt.executeUpdate();
+        });
+  }
+
+  /**
+   * Updates the pending metadata of a target and queues its write. Both happen under the lock of
+   * the target's entry, so that the writes to a target are committed in the order of its pending
+   * metadata.
+   */
+  private void enqueue(
+      String target,
+      Function<PendingMetadata, PendingMetadata> update,
+      SQLiteWriteBehindQueue.Write write) {
+    SettableFuture<Void> committed = SettableFuture.create();
+    PendingMetadata pending =
+        pendingMetadata.compute(
+            target,
+            (ignored, previous) -> {
+              committed.setFuture(writeQueue.enqueue(write));
+              return update.apply(previous);
+            });
+    Futures.addCallback(
+        committed,
+        new FutureCallback<Void>() {
+          @Override
+          public void onSuccess(@Nullable Void result) {
+            if (!pending.failedWrites) {
+              pendingMetadata.remove(target, pending);
+            }
+          }
+
+          @Override
+          public void onFailure(Throwable t) {
+            writeFailure.compareAndSet(null, t);
+            // Keeps the metadata, and the metadata written after it, readable.
+            pendingMetadata.computeIfPresent(
+                target, (ignored, current) -> current.withFailedWrites());
+          }
+        },
+        MoreExecutors.directExecutor());
+  }
+
+  /** Throws the first failure of a write, once all the writes are done. */
+  private void checkWrites() throws IOException {
+    Throwable failure = writeFailure.getAndSet(null);
+    if (failure != null) {
+      throw new IOException(
+          String.format("Failed to write build metadata to %s.", dbPath), failure);
+    }
+  }
+
+  private <T> T withReader(ReaderFunction<T> function) {
+    Reader reader = idleReaders.poll();
     try {
-      deleteStmt.setString(1, cellRelativeName(buildTarget));
-      deleteStmt.executeUpdate();
+      if (reader == null) {
+        reader = new Reader(openConnection());
+        readers.add(reader);
+      }
+      return function.apply(reader);
     } catch (SQLException e) {
-      throw new IOException(e);
+      throw new RuntimeException(e);
+    } finally {
+      if (reader != null) {
+        idleReaders.add(reader);
+      }
     }
   }
 
   private String cellRelativeName(BuildTarget buildTarget) {
     return buildTarget.getCellRelativeName();
   }
+
+  @FunctionalInterface
+  private interface ReaderFunction<T> {
+    T apply(Reader reader) throws SQLException;
+  }
+
+  /** A connection used by one thread at a time to read metadata. */
+  private static class Reader {
+    private final Connection connection;
+    private final PreparedStatement selectStmt;
+    private final PreparedStatement selectAllStmt;
+
+    private Reader(Connection connection) throws SQLException {
+      this.connection = connection;
+      this.selectStmt =
+          connection.prepareStatement("SELECT value FROM metadata WHERE target = ? AND key = ?");
+      this.selectAllStmt =
+          connection.prepareStatement("SELECT key, value FROM metadata WHERE target = ?");
+    }
+  }
+
+  /** Metadata of a target written since its last committed write. */
+  private static class PendingMetadata {
+    /** Whether the metadata of the target was deleted before {@link #values} were written. */
+    private final boolean deleted;
+
+    private final ImmutableMap<String, String> values;
+
+    /**
+     * Whether a write of {@link #values} failed, in which case they're kept in memory even once
+     * later writes are committed.
+     */
+    private final boolean failedWrites;
+
+    private PendingMetadata(boolean deleted, ImmutableMap<String, String> values) {
+      this(deleted, values, false);
+    }
+
+    private PendingMetadata(
+        boolean deleted, ImmutableMap<String, String> values, boolean failedWrites) {
+      this.deleted = deleted;
+      this.values = values;
+      this.failedWrites = failedWrites;
+    }
+
+    private PendingMetadata update(ImmutableMap<String, String> newValues) {
+      Map<String, String> merged = new HashMap<>(values);
+      merged.putAll(newValues);
+      return new PendingMetadata(deleted, ImmutableMap.copyOf(merged), failedWrites);
+    }
+
+    private PendingMetadata withFailedWrites() {
+      return new PendingMetadata(deleted, values, true);
+    }
+  }
 }
@@ -18,14 +18,27 @@ package com.facebook.buck.core.build.engine.cache.manager;
 
 import com.facebook.buck.core.build.engine.buildinfo.BuildInfoStore;
 import com.facebook.buck.core.build.engine.buildinfo.SQLiteBuildInfoStore;
+import com.facebook.buck.counters.CounterRegistry;
+import com.facebook.buck.event.BuckEventBus;
 import com.facebook.buck.io.filesystem.ProjectFilesystem;
 import java.io.IOException;
 import java.nio.file.Path;
+import java.util.Optional;
 import java.util.concurrent.ConcurrentHashMap;
 
 /** Manages the lifetimes of all {@link BuildInfoStore}s used in the build. */
 public class BuildInfoStoreManager implements AutoCloseable {
   private final ConcurrentHashMap<Path, BuildInfoStore> buildInfoStores = new ConcurrentHashMap<>();
+  private final Optional<BuckEventBus> eventBus;
+
+  public BuildInfoStoreManager() {
+    this.eventBus = Optional.empty();
+  }
+
+  /** @param eventBus event bus used to register the counters of the stores */
+  public BuildInfoStoreManager(BuckEventBus eventBus) {
+    this.eventBus = Optional.of(eventBus);
+  }
 
   @Override
   public void close() {
@@ -39,7 +52,12 @@ public class BuildInfoStoreManager implements AutoCloseable {
         filesystem.getRootPath(),
         path -> {
           try {
-            return new SQLiteBuildInfoStore(filesystem);
+            SQLiteBuildInfoStore store = new SQLiteBuildInfoStore(filesystem);
+            eventBus.ifPresent(
+                bus ->
+                    bus.post(
+                        new CounterRegistry.AsyncCounterRegistrationEvent(store.getCounters())));
+            return store;
           } catch (IOException e) {
             throw new RuntimeException(e);
           }
@@ -17,6 +17,7 @@ package com.facebook.buck.core.build.engine.config;
 
 import com.facebook.buck.core.build.engine.type.BuildType;
 import com.facebook.buck.core.build.engine.type.DepFiles;
+import com.facebook.buck.core.build.engine.type.SchedulingOrder;
 import com.facebook.buck.core.config.BuckConfig;
 import com.facebook.buck.core.config.ConfigView;
 import com.facebook.buck.core.resources.ResourcesConfig;
@@ -40,6 +41,13 @@ abstract class AbstractCachingBuildEngineBuckConfig implements ConfigView<BuckCo
     return getDelegate().getEnum("build", "depfiles", DepFiles.class).orElse(DepFiles.CACHE);
   }
 
+  /** @return the order in which the build engine starts rules that are ready to be built. */
+  public SchedulingOrder getSchedulingOrder() {
+    return getDelegate()
+        .getEnum("build", "scheduling_order", SchedulingOrder.class)
+        .orElse(SchedulingOrder.FIFO);
+  }
+
   /**
    * @return whether to log to console build rule failures as they happen, including rule name and
    *     error text. If false, then depending on keepGoing/verbosity settings, failures may not
@@ -77,6 +85,8 @@ abstract class AbstractCachingBuildEngineBuckConfig implements ConfigView<BuckCo
     return ResourceAwareSchedulingInfo.of(
         resourcesConfig.isResourceAwareSchedulingEnabled(),
         resourcesConfig.getDefaultResourceAmounts(),
-        resourcesConfig.getResourceAmountsPerRuleType());
+        resourcesConfig.getResourceAmountsPerRuleType(),
+        resourcesConfig.isAdaptiveResourceAmountsEnabled(),
+        resourcesConfig.getMaximumResourceAmounts());
   }
 }
@@ -30,7 +30,11 @@ abstract class AbstractResourceAwareSchedulingInfo {
 
   public static final ResourceAwareSchedulingInfo NON_AWARE_SCHEDULING_INFO =
       ResourceAwareSchedulingInfo.of(
-          false, ResourceAmountsEstimator.DEFAULT_AMOUNTS, ImmutableMap.of());
+          false,
+          ResourceAmountsEstimator.DEFAULT_AMOUNTS,
+          ImmutableMap.of(),
+          false,
+          ResourceAmountsEstimator.DEFAULT_MAXIMUM_AMOUNTS);
 
   public abstract boolean isResourceAwareSchedulingEnabled();
 
@@ -39,6 +43,15 @@ abstract class AbstractResourceAwareSchedulingInfo {
   /** Map from the value of {@link BuildRule#getType()} to the required resources. */
   public abstract ImmutableMap<String, ResourceAmounts> getAmountsPerRuleType();
 
+  /**
+   * @return whether to size the CPU and memory amounts of rules from the resources they used when
+   *     previously built, instead of the amounts configured for their type.
+   */
+  public abstract boolean isAdaptiveResourceAmountsEnabled();
+
+  /** @return the total resources available to the build. */
+  public abstract ResourceAmounts getMaximumResourceAmounts();
+
   public ResourceAmounts getResourceAmountsForRule(BuildRule rule) {
     if (isRuleResourceFree(rule)) {
       return ResourceAmounts.zero();
@@ -36,6 +36,7 @@ import com.facebook.buck.core.build.engine.config.ResourceAwareSchedulingInfo;
 import com.facebook.buck.core.build.engine.delegate.CachingBuildEngineDelegate;
 import com.facebook.buck.core.build.engine.type.BuildType;
 import com.facebook.buck.core.build.engine.type.DepFiles;
+import com.facebook.buck.core.build.engine.type.SchedulingOrder;
 import com.facebook.buck.core.build.event.BuildRuleEvent;
 import com.facebook.buck.core.build.execution.context.ExecutionContext;
 import com.facebook.buck.core.build.stats.BuildRuleDurationTracker;
@@ -99,6 +100,7 @@ public class CachingBuildEngine implements BuildEngine, Closeable {
 
   static final String BUILD_RULE_TYPE_CONTEXT_KEY = "build_rule_type";
   static final String STEP_TYPE_CONTEXT_KEY = "step_type";
+  static final String BUILD_TARGET_CONTEXT_KEY = "build_target";
   private final ConcurrentLinkedQueue<ListenableFuture<Void>> asyncCallbacks;
 
   enum StepType {
@@ -131,6 +133,9 @@ public class CachingBuildEngine implements BuildEngine, Closeable {
   private final FileHashCache fileHashCache;
   @VisibleForTesting final RuleKeyFactories ruleKeyFactories;
   private final ResourceAwareSchedulingInfo resourceAwareSchedulingInfo;
+  private final Optional<CriticalPathEstimator> criticalPathEstimator;
+  private final Optional<RuleResourceUsageMeter> resourceUsageMeter;
+  private final Optional<MeasuredResourceAmountsEstimator> measuredResourceAmountsEstimator;
 
   private final RuleDepsCache ruleDeps;
   private final Optional<UnskippedBuildEngineActionTracker> unskippedRulesTracker;
@@ -162,6 +167,7 @@ public class CachingBuildEngine implements BuildEngine, Closeable {
       TargetConfigurationSerializer targetConfigurationSerializer,
       BuildInfoStoreManager buildInfoStoreManager,
       ResourceAwareSchedulingInfo resourceAwareSchedulingInfo,
+      SchedulingOrder schedulingOrder,
       boolean consoleLogBuildFailuresInline,
       RuleKeyFactories ruleKeyFactories,
       RemoteBuildRuleCompletionWaiter remoteBuildRuleCompletionWaiter,
@@ -181,6 +187,7 @@ public class CachingBuildEngine implements BuildEngine, Closeable {
         ruleKeyFactories,
         remoteBuildRuleCompletionWaiter,
         resourceAwareSchedulingInfo,
+        schedulingOrder,
         new RuleKeyDiagnostics<>(
             rule ->
                 ruleKeyFactories
@@ -211,6 +218,7 @@ public class CachingBuildEngine implements BuildEngine, Closeable {
       RuleKeyFactories ruleKeyFactories,
       RemoteBuildRuleCompletionWaiter remoteBuildRuleCompletionWaiter,
       ResourceAwareSchedulingInfo resourceAwareSchedulingInfo,
+      SchedulingOrder schedulingOrder,
       RuleKeyDiagnostics<RuleKey, String> defaultRuleKeyDiagnostics,
       boolean consoleLogBuildFailuresInline,
       Optional<ManifestService> manifestService) {
@@ -230,6 +238,21 @@ public class CachingBuildEngine implements BuildEngine, Closeable {
     this.ruleKeyFactories = ruleKeyFactories;
     this.resourceAwareSchedulingInfo = resourceAwareSchedulingInfo;
     this.buildInfoStoreManager = buildInfoStoreManager;
+    this.criticalPathEstimator =
+        schedulingOrder == SchedulingOrder.CRITICAL_PATH
+            ? Optional.of(CriticalPathEstimator.fromBuildInfoStore(buildInfoStoreManager))
+            : Optional.empty();
+    if (resourceAwareSchedulingInfo.isResourceAwareSchedulingEnabled()
+        && resourceAwareSchedulingInfo.isAdaptiveResourceAmountsEnabled()) {
+      this.resourceUsageMeter = Optional.of(RuleResourceUsageMeter.start());
+      this.measuredResourceAmountsEstimator =
+          Optional.of(
+              new MeasuredResourceAmountsEstimator(
+                  buildInfoStoreManager, resourceAwareSchedulingInfo));
+    } else {
+      this.resourceUsageMeter = Optional.empty();
+      this.measuredResourceAmountsEstimator = Optional.empty();
+    }
     this.remoteBuildRuleCompletionWaiter = remoteBuildRuleCompletionWaiter;
 
     this.ruleDeps = new DefaultRuleDepsCache(resolver, actionToBuildRuleResolver);
@@ -256,6 +279,7 @@ public class CachingBuildEngine implements BuildEngine, Closeable {
       if (customBuildRuleStrategy.isPresent()) {
         customBuildRuleStrategy.get().close();
       }
+      resourceUsageMeter.ifPresent(RuleResourceUsageMeter::close);
       terminateBuildWithFailure(new CancellationException("Cancelling due to engine shutdown."));
       Futures.allAsList(asyncCallbacks).get();
     } catch (InterruptedException e) {
@@ -328,6 +352,7 @@ public class CachingBuildEngine implements BuildEngine, Closeable {
     List<ListenableFuture<BuildResult>> depResults =
         new ArrayList<>(SortedSets.sizeEstimate(rule.getBuildDeps()));
     for (BuildRule dep : shuffled(rule.getBuildDeps())) {
+      criticalPathEstimator.ifPresent(estimator -> estimator.registerDep(rule, dep));
       depResults.add(getBuildRuleResultWithRuntimeDeps(dep, buildContext, executionContext));
     }
     return Futures.allAsList(depResults);
@@ -339,6 +364,27 @@ public class CachingBuildEngine implements BuildEngine, Closeable {
     return rulesList;
   }
 
+  /**
+   * @return the priority with which the rule should wait for resources to be built locally. Rules
+   *     with a higher priority are started first.
+   */
+  private long getSchedulingPriority(BuildRule rule) {
+    return criticalPathEstimator
+        .map(estimator -> estimator.getRemainingPathMillis(rule))
+        .orElse(0L);
+  }
+
+  /** @return the resources to acquire before building the rule locally. */
+  private ResourceAmounts getResourceAmounts(BuildRule rule) {
+    return measuredResourceAmountsEstimator
+        .map(estimator -> estimator.getResourceAmounts(rule))
+        .orElseGet(() -> resourceAwareSchedulingInfo.getResourceAmountsForRule(rule));
+  }
+
+  private Optional<RuleResourceUsageMeter.Usage> finishResourceUsageMeasurement(BuildRule rule) {
+    return resourceUsageMeter.flatMap(meter -> meter.finish(rule));
+  }
+
   private void registerTopLevelRule(BuildRule rule, BuckEventBus eventBus) {
     unskippedRulesTracker.ifPresent(tracker -> tracker.registerTopLevelRule(rule, eventBus));
   }
@@ -562,5 +608,20 @@ public class CachingBuildEngine implements BuildEngine, Closeable {
     public void onRuleAboutToBeBuilt(BuildRule rule) {
       cachingBuildEngine.cachingBuildEngineDelegate.onRuleAboutToBeBuilt(rule);
     }
+
+    @Override
+    public long getSchedulingPriority(BuildRule rule) {
+      return cachingBuildEngine.getSchedulingPriority(rule);
+    }
+
+    @Override
+    public ResourceAmounts getResourceAmounts(BuildRule rule) {
+      return cachingBuildEngine.getResourceAmounts(rule);
+    }
+
+    @Override
+    public Optional<RuleResourceUsageMeter.Usage> finishResourceUsageMeasurement(BuildRule rule) {
+      return cachingBuildEngine.finishResourceUsageMeasurement(rule);
+    }
   }
 }
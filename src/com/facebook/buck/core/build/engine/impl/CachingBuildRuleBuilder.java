@@ -229,7 +229,7 @@ class CachingBuildRuleBuilder {
     this.ruleKeyFactories = ruleKeyFactories;
     this.service = service;
     this.rule = rule;
-    this.executionContext = executionContext;
+    this.executionContext = executionContext.withFileHashLoader(fileHashCache);
     this.onDiskBuildInfo = onDiskBuildInfo;
     this.buildInfoRecorder = new Discardable<>(buildInfoRecorder);
     this.buildableContext = buildableContext;
@@ -552,6 +552,8 @@ class CachingBuildRuleBuilder {
       // The BuildInfoRecorder should not be accessed after this point. It does not accurately
       // reflect the state of the buildrule.
       buildInfoRecorder.discard();
+      // Discard the measurements of rules that weren't built locally.
+      buildRuleBuilderDelegate.finishResourceUsageMeasurement(rule);
       FinalizingBuildRuleEvent.postEvent(eventBus, rule);
     }
   }
@@ -733,6 +735,25 @@ class CachingBuildRuleBuilder {
     // Make sure the origin field is filled in.
     getBuildInfoRecorder()
         .addBuildMetadata(BuildInfo.MetadataKey.ORIGIN_BUILD_ID, buildId.toString());
+    // Record how long the rule took so that later builds can estimate their critical path.
+    if (buildTimestampsMillis != null) {
+      getBuildInfoRecorder()
+          .addBuildMetadata(
+              BuildInfo.MetadataKey.BUILD_DURATION_MILLIS,
+              String.valueOf(buildTimestampsMillis.getSecond() - buildTimestampsMillis.getFirst()));
+    }
+    // Record the resources used by the processes of the rule, so that later builds can size it.
+    Optional<RuleResourceUsageMeter.Usage> resourceUsage =
+        buildRuleBuilderDelegate.finishResourceUsageMeasurement(rule);
+    if (resourceUsage.isPresent()) {
+      getBuildInfoRecorder()
+          .addBuildMetadata(
+              BuildInfo.MetadataKey.BUILD_CPU_MILLIS,
+              String.valueOf(resourceUsage.get().getCpuMillis()))
+          .addBuildMetadata(
+              BuildInfo.MetadataKey.BUILD_PEAK_MEMORY_BYTES,
+              String.valueOf(resourceUsage.get().getPeakMemoryBytes()));
+    }
     // Make sure that all of the local files have the same values they would as if the
     // rule had been built locally.
     getBuildInfoRecorder()
@@ -1091,7 +1112,8 @@ class CachingBuildRuleBuilder {
                     service
                         // This needs to adjust the default amounts even in the non-resource-aware
                         // scheduling case so that RuleScheduleInfo works correctly.
-                        .withDefaultAmounts(getRuleResourceAmounts())));
+                        .withDefaultAmounts(getRuleResourceAmounts())
+                        .withPriority(buildRuleBuilderDelegate.getSchedulingPriority(rule))));
 
     if (SupportsPipelining.isSupported(rule)) {
       buildResultFuture.addListener(
@@ -1310,7 +1332,7 @@ class CachingBuildRuleBuilder {
 
   private ResourceAmounts getRuleResourceAmounts() {
     if (resourceAwareSchedulingInfo.isResourceAwareSchedulingEnabled()) {
-      return resourceAwareSchedulingInfo.getResourceAmountsForRule(rule);
+      return buildRuleBuilderDelegate.getResourceAmounts(rule);
     } else {
       return getResourceAmountsForRuleWithCustomScheduleInfo();
     }
@@ -1405,7 +1427,9 @@ class CachingBuildRuleBuilder {
                       CachingBuildEngine.BUILD_RULE_TYPE_CONTEXT_KEY,
                       rule.getType(),
                       CachingBuildEngine.STEP_TYPE_CONTEXT_KEY,
-                      StepType.BUILD_STEP.toString())));
+                      StepType.BUILD_STEP.toString(),
+                      CachingBuildEngine.BUILD_TARGET_CONTEXT_KEY,
+                      rule.getFullyQualifiedName())));
     }
 
     public SettableFuture<Optional<BuildResult>> getFuture() {
@@ -1486,5 +1510,18 @@ class CachingBuildRuleBuilder {
     void addAsyncCallback(ListenableFuture<Void> callback);
 
     void onRuleAboutToBeBuilt(BuildRule rule);
+
+    /** @return the priority with which the rule waits for resources when built locally. */
+    long getSchedulingPriority(BuildRule rule);
+
+    /** @return the resources the rule acquires when resource-aware scheduling is enabled. */
+    ResourceAmounts getResourceAmounts(BuildRule rule);
+
+    /**
+     * Stops measuring the resources used by the processes of the rule.
+     *
+     * @return the measured resources, if they were measured
+     */
+    Optional<RuleResourceUsageMeter.Usage> finishResourceUsageMeasurement(BuildRule rule);
   }
 }
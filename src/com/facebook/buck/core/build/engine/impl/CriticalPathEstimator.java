@@ -0,0 +1,96 @@
+/*
+ * Copyright 2019-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.core.build.engine.impl;
+
+import com.facebook.buck.core.build.engine.buildinfo.BuildInfo;
+import com.facebook.buck.core.build.engine.cache.manager.BuildInfoStoreManager;
+import com.facebook.buck.core.model.BuildTarget;
+import com.facebook.buck.core.rules.BuildRule;
+import com.facebook.buck.core.util.log.Logger;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.ToLongFunction;
+
+/**
+ * Estimates the remaining critical path of each rule in a build, i.e. the duration of the longest
+ * chain of rules, starting with the rule itself, that can only run once the rule has been built.
+ *
+ * <p>The engine discovers rules top-down, so the estimate of a rule is refined every time one of
+ * its dependents is discovered. By the time all deps of a rule have finished, most of its
+ * dependents have usually been discovered and the estimate can be used as a scheduling priority.
+ */
+class CriticalPathEstimator {
+  private static final Logger LOG = Logger.get(CriticalPathEstimator.class);
+
+  /**
+   * Duration assumed for rules that have never been built locally. Using a non-zero value makes
+   * the estimate fall back to the depth of the remaining chain.
+   */
+  static final long DEFAULT_RULE_DURATION_MILLIS = 1;
+
+  private final ToLongFunction<BuildRule> durationEstimator;
+  private final ConcurrentMap<BuildTarget, Long> dependentsPathMillis = new ConcurrentHashMap<>();
+  private final ConcurrentMap<BuildTarget, Long> durationsMillis = new ConcurrentHashMap<>();
+
+  CriticalPathEstimator(ToLongFunction<BuildRule> durationEstimator) {
+    this.durationEstimator = durationEstimator;
+  }
+
+  /** Creates an estimator using the durations recorded by previous builds in the build info. */
+  static CriticalPathEstimator fromBuildInfoStore(BuildInfoStoreManager buildInfoStoreManager) {
+    return new CriticalPathEstimator(
+        rule ->
+            readRecordedDuration(buildInfoStoreManager, rule)
+                .orElse(DEFAULT_RULE_DURATION_MILLIS));
+  }
+
+  private static Optional<Long> readRecordedDuration(
+      BuildInfoStoreManager buildInfoStoreManager, BuildRule rule) {
+    if (!rule.hasBuildSteps()) {
+      return Optional.of(0L);
+    }
+    Optional<String> value =
+        buildInfoStoreManager
+            .get(rule.getProjectFilesystem())
+            .readMetadata(rule.getBuildTarget(), BuildInfo.MetadataKey.BUILD_DURATION_MILLIS);
+    if (!value.isPresent()) {
+      return Optional.empty();
+    }
+    try {
+      return Optional.of(Long.parseLong(value.get()));
+    } catch (NumberFormatException e) {
+      LOG.debug(e, "Ignoring malformed build duration for %s.", rule.getBuildTarget());
+      return Optional.empty();
+    }
+  }
+
+  /** Records that {@code dep} needs to be built before {@code rule}. */
+  void registerDep(BuildRule rule, BuildRule dep) {
+    dependentsPathMillis.merge(dep.getBuildTarget(), getRemainingPathMillis(rule), Math::max);
+  }
+
+  /**
+   * @return the estimated duration of the longest chain of work left in the build once the rule
+   *     starts, including the rule itself.
+   */
+  long getRemainingPathMillis(BuildRule rule) {
+    return dependentsPathMillis.getOrDefault(rule.getBuildTarget(), 0L)
+        + durationsMillis.computeIfAbsent(
+            rule.getBuildTarget(), ignored -> durationEstimator.applyAsLong(rule));
+  }
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright 2019-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.core.build.engine.impl;
+
+import com.facebook.buck.core.build.engine.buildinfo.BuildInfo;
+import com.facebook.buck.core.build.engine.buildinfo.BuildInfoStore;
+import com.facebook.buck.core.build.engine.cache.manager.BuildInfoStoreManager;
+import com.facebook.buck.core.build.engine.config.ResourceAwareSchedulingInfo;
+import com.facebook.buck.core.rules.BuildRule;
+import com.facebook.buck.core.util.log.Logger;
+import com.facebook.buck.util.concurrent.ResourceAmounts;
+import com.facebook.buck.util.concurrent.ResourceAmountsEstimator;
+import com.google.common.math.LongMath;
+import java.math.RoundingMode;
+import java.util.Optional;
+
+/**
+ * Sizes the CPU and memory amounts of rules from the resources their processes used when they were
+ * last built locally, as measured by {@link RuleResourceUsageMeter}. Rules without measurements
+ * keep the amounts configured for their type.
+ */
+class MeasuredResourceAmountsEstimator {
+  private static final Logger LOG = Logger.get(MeasuredResourceAmountsEstimator.class);
+
+  private final BuildInfoStoreManager buildInfoStoreManager;
+  private final ResourceAwareSchedulingInfo resourceAwareSchedulingInfo;
+
+  MeasuredResourceAmountsEstimator(
+      BuildInfoStoreManager buildInfoStoreManager,
+      ResourceAwareSchedulingInfo resourceAwareSchedulingInfo) {
+    this.buildInfoStoreManager = buildInfoStoreManager;
+    this.resourceAwareSchedulingInfo = resourceAwareSchedulingInfo;
+  }
+
+  /** @return the resources to acquire before building the rule locally. */
+  ResourceAmounts getResourceAmounts(BuildRule rule) {
+    ResourceAmounts configuredAmounts = resourceAwareSchedulingInfo.getResourceAmountsForRule(rule);
+    if (!rule.hasBuildSteps()) {
+      return configuredAmounts;
+    }
+    BuildInfoStore buildInfoStore = buildInfoStoreManager.get(rule.getProjectFilesystem());
+    Optional<Long> cpuMillis =
+        readRecordedValue(buildInfoStore, rule, BuildInfo.MetadataKey.BUILD_CPU_MILLIS);
+    Optional<Long> peakMemoryBytes =
+        readRecordedValue(buildInfoStore, rule, BuildInfo.MetadataKey.BUILD_PEAK_MEMORY_BYTES);
+    Optional<Long> durationMillis =
+        readRecordedValue(buildInfoStore, rule, BuildInfo.MetadataKey.BUILD_DURATION_MILLIS);
+    if (!cpuMillis.isPresent() || !peakMemoryBytes.isPresent() || !durationMillis.isPresent()) {
+      return configuredAmounts;
+    }
+
+    ResourceAmounts maximumAmounts = resourceAwareSchedulingInfo.getMaximumResourceAmounts();
+    // The processes of a rule using several cores at once spend more CPU time than the rule took.
+    int cpu =
+        clamp(
+            LongMath.divide(
+                cpuMillis.get(), Math.max(1, durationMillis.get()), RoundingMode.CEILING),
+            maximumAmounts.getCpu());
+    int memory =
+        clamp(
+            LongMath.divide(
+                peakMemoryBytes.get(),
+                ResourceAmountsEstimator.MEMORY_RESOURCE_UNIT_BYTES,
+                RoundingMode.CEILING),
+            maximumAmounts.getMemory());
+    return ResourceAmounts.of(
+        cpu, memory, configuredAmounts.getDiskIO(), configuredAmounts.getNetworkIO());
+  }
+
+  /** Every rule with build steps needs at least one unit, and no rule can exceed the maximum. */
+  private static int clamp(long amount, int maximumAmount) {
+    return (int) Math.max(1, Math.min(amount, Math.max(1, maximumAmount)));
+  }
+
+  private static Optional<Long> readRecordedValue(
+      BuildInfoStore buildInfoStore, BuildRule rule, String key) {
+    Optional<String> value = buildInfoStore.readMetadata(rule.getBuildTarget(), key);
+    if (!value.isPresent()) {
+      return Optional.empty();
+    }
+    try {
+      return Optional.of(Long.parseLong(value.get()));
+    } catch (NumberFormatException e) {
+      LOG.debug(e, "Ignoring malformed %s for %s.", key, rule.getBuildTarget());
+      return Optional.empty();
+    }
+  }
+}
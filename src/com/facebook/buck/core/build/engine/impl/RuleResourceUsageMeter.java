@@ -0,0 +1,199 @@
+/*
+ * Copyright 2019-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.core.build.engine.impl;
+
+import com.facebook.buck.core.rules.BuildRule;
+import com.facebook.buck.core.util.log.Logger;
+import com.facebook.buck.util.ProcessExecutorParams;
+import com.facebook.buck.util.ProcessHelper;
+import com.facebook.buck.util.ProcessRegistry;
+import com.facebook.buck.util.ProcessResourceConsumption;
+import com.facebook.buck.util.concurrent.MostExecutors;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.ImmutableMap;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.Nullable;
+
+/**
+ * Measures the CPU time and peak resident memory of the processes launched by the build steps of
+ * each rule, including their child processes.
+ *
+ * <p>Like {@link com.facebook.buck.util.perf.ProcessTracker}, processes are sampled periodically
+ * while they run, since their resource use can't be read once they have exited. Processes that
+ * finish between two samples are not measured.
+ */
+class RuleResourceUsageMeter implements AutoCloseable {
+  private static final Logger LOG = Logger.get(RuleResourceUsageMeter.class);
+
+  static final long SAMPLING_INTERVAL_MILLIS = 250;
+
+  private final ProcessHelper processHelper;
+  private final ProcessRegistry processRegistry;
+  private final ProcessRegistry.ProcessRegisterCallback processRegisterCallback =
+      this::registerProcess;
+  @Nullable private final ScheduledExecutorService sampler;
+  private final ConcurrentMap<String, RuleUsage> usagesByTarget = new ConcurrentHashMap<>();
+
+  @VisibleForTesting
+  RuleResourceUsageMeter(
+      ProcessHelper processHelper,
+      ProcessRegistry processRegistry,
+      @Nullable ScheduledExecutorService sampler) {
+    this.processHelper = processHelper;
+    this.processRegistry = processRegistry;
+    this.sampler = sampler;
+    processRegistry.subscribe(processRegisterCallback);
+    if (sampler != null) {
+      sampler.scheduleAtFixedRate(
+          this::sample, SAMPLING_INTERVAL_MILLIS, SAMPLING_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+    }
+  }
+
+  /** Creates a meter sampling the processes of all rules on a background thread. */
+  static RuleResourceUsageMeter start() {
+    return new RuleResourceUsageMeter(
+        ProcessHelper.getInstance(),
+        ProcessRegistry.getInstance(),
+        Executors.newSingleThreadScheduledExecutor(
+            new MostExecutors.NamedThreadFactory("RuleResourceUsageMeter")));
+  }
+
+  private void registerProcess(
+      Object process, ProcessExecutorParams params, ImmutableMap<String, String> context) {
+    String target = context.get(CachingBuildEngine.BUILD_TARGET_CONTEXT_KEY);
+    if (target == null) {
+      return;
+    }
+    Long pid = processHelper.getPid(process);
+    if (pid == null) {
+      return;
+    }
+    LOG.verbose("Measuring %s of %s (pid %d).", params.getCommand(), target, pid);
+    usagesByTarget.computeIfAbsent(target, ignored -> new RuleUsage()).addProcess(pid, process);
+  }
+
+  /** Samples the resource use of all processes of the rules being measured. */
+  @VisibleForTesting
+  void sample() {
+    for (RuleUsage usage : usagesByTarget.values()) {
+      usage.sample(processHelper);
+    }
+  }
+
+  /**
+   * Stops measuring the processes of the rule.
+   *
+   * @return the resources used by the processes of the rule since it started, if any was measured
+   */
+  Optional<Usage> finish(BuildRule rule) {
+    RuleUsage usage = usagesByTarget.remove(rule.getFullyQualifiedName());
+    return usage == null ? Optional.empty() : usage.finish(processHelper);
+  }
+
+  @Override
+  public void close() {
+    processRegistry.unsubscribe(processRegisterCallback);
+    if (sampler != null) {
+      sampler.shutdownNow();
+    }
+    usagesByTarget.clear();
+  }
+
+  /** Resources used by the processes of a rule. */
+  static final class Usage {
+    private final long cpuMillis;
+    private final long peakMemoryBytes;
+
+    Usage(long cpuMillis, long peakMemoryBytes) {
+      this.cpuMillis = cpuMillis;
+      this.peakMemoryBytes = peakMemoryBytes;
+    }
+
+    /** @return the user and system CPU time of the processes. */
+    long getCpuMillis() {
+      return cpuMillis;
+    }
+
+    /** @return the largest resident memory of the processes running at the same time. */
+    long getPeakMemoryBytes() {
+      return peakMemoryBytes;
+    }
+  }
+
+  private static final class RuleUsage {
+    private final Map<Long, RunningProcess> runningProcesses = new HashMap<>();
+    private long finishedCpuMillis;
+    private long peakMemoryBytes;
+    private boolean measured;
+
+    synchronized void addProcess(long pid, Object process) {
+      runningProcesses.put(pid, new RunningProcess(process));
+    }
+
+    synchronized void sample(ProcessHelper processHelper) {
+      long memoryBytes = 0;
+      Iterator<Map.Entry<Long, RunningProcess>> iterator = runningProcesses.entrySet().iterator();
+      while (iterator.hasNext()) {
+        Map.Entry<Long, RunningProcess> entry = iterator.next();
+        RunningProcess process = entry.getValue();
+        // Check whether the process finished first, so that the last sample isn't missed.
+        boolean finished = processHelper.hasProcessFinished(process.process);
+        ProcessResourceConsumption consumption =
+            processHelper.getTotalResourceConsumption(entry.getKey());
+        if (consumption != null) {
+          measured = true;
+          process.cpuMillis = Math.max(process.cpuMillis, consumption.getCpuTotal());
+          memoryBytes += consumption.getMemResident();
+        }
+        if (finished) {
+          finishedCpuMillis += process.cpuMillis;
+          iterator.remove();
+        }
+      }
+      peakMemoryBytes = Math.max(peakMemoryBytes, memoryBytes);
+    }
+
+    synchronized Optional<Usage> finish(ProcessHelper processHelper) {
+      sample(processHelper);
+      if (!measured) {
+        return Optional.empty();
+      }
+      long cpuMillis = finishedCpuMillis;
+      for (RunningProcess process : runningProcesses.values()) {
+        cpuMillis += process.cpuMillis;
+      }
+      return Optional.of(new Usage(cpuMillis, peakMemoryBytes));
+    }
+  }
+
+  private static final class RunningProcess {
+    private final Object process;
+    private long cpuMillis;
+
+    private RunningProcess(Object process) {
+      this.process = process;
+    }
+  }
+}
@@ -46,12 +46,16 @@ import java.util.Map;
 import java.util.Optional;
 import java.util.function.Function;
 import java.util.function.Predicate;
+import javax.annotation.Nullable;
 
 public class Manifest {
 
   private static final Logger LOG = Logger.get(Manifest.class);
 
-  private static final int VERSION = 0;
+  /** Version 1 adds the key inputs of the {@link ManifestIndex} after the entries. */
+  private static final int VERSION = 1;
+
+  private static final int VERSION_WITHOUT_INDEX = 0;
 
   private final RuleKey key;
 
@@ -63,6 +67,9 @@ public class Manifest {
 
   @VisibleForTesting final List<Pair<RuleKey, int[]>> entries;
 
+  @Nullable private int[] serializedKeyInputs;
+  @Nullable private volatile ManifestIndex index;
+
   /** Create an empty manifest. */
   public Manifest(RuleKey key) {
     this.key = key;
@@ -79,7 +86,11 @@ public class Manifest {
 
     // Verify the manifest version.
     int version = input.readInt();
-    Preconditions.checkState(version == VERSION, "invalid version: %s != %s", version, VERSION);
+    Preconditions.checkState(
+        version == VERSION || version == VERSION_WITHOUT_INDEX,
+        "invalid version: %s != %s",
+        version,
+        VERSION);
 
     key = new RuleKey(input.readUTF());
 
@@ -117,6 +128,14 @@ public class Manifest {
       LOG.verbose("%s: loaded entry for dep file rule key %s", this.key, key);
       entries.add(new Pair<>(key, entryHashes));
     }
+
+    if (version == VERSION) {
+      int numberOfKeyInputs = input.readInt();
+      serializedKeyInputs = new int[numberOfKeyInputs];
+      for (int index = 0; index < numberOfKeyInputs; index++) {
+        serializedKeyInputs[index] = input.readInt();
+      }
+    }
   }
 
   public RuleKey getKey() {
@@ -177,27 +196,64 @@ public class Manifest {
         resolver.getRelativePath(archivePath.getArchiveSourcePath()), archivePath.getMemberPath());
   }
 
+  /**
+   * @return the index of the entries, which is rebuilt if entries were added since it was last
+   *     built.
+   */
+  private ManifestIndex getIndex() {
+    ManifestIndex current = index;
+    if (current == null || current.getNumberOfEntries() != entries.size()) {
+      synchronized (this) {
+        current = index;
+        if (current == null || current.getNumberOfEntries() != entries.size()) {
+          current = ManifestIndex.of(inputs, hashes, entries, serializedKeyInputs);
+          index = current;
+        }
+      }
+    }
+    return current;
+  }
+
+  /**
+   * @return the hash of the input on disk, memoized in {@code onDiskHashes}, or empty if the input
+   *     is not in the universe or doesn't exist.
+   */
+  private Optional<HashCode> getOnDiskHash(
+      FileHashLoader fileHashLoader,
+      SourcePathResolver resolver,
+      ImmutableListMultimap<String, SourcePath> universe,
+      Map<Integer, Optional<HashCode>> onDiskHashes,
+      int inputIndex)
+      throws IOException {
+    Optional<HashCode> onDiskHash = onDiskHashes.get(inputIndex);
+    if (onDiskHash == null) {
+      ImmutableList<SourcePath> candidates = universe.get(inputs.get(inputIndex));
+      if (candidates.isEmpty()) {
+        onDiskHash = Optional.empty();
+      } else {
+        try {
+          onDiskHash = Optional.of(hashSourcePathGroup(fileHashLoader, resolver, candidates));
+        } catch (NoSuchFileException e) {
+          onDiskHash = Optional.empty();
+        }
+      }
+      onDiskHashes.put(inputIndex, onDiskHash);
+    }
+    return onDiskHash;
+  }
+
   private boolean hashesMatch(
       FileHashLoader fileHashLoader,
       SourcePathResolver resolver,
       ImmutableListMultimap<String, SourcePath> universe,
+      Map<Integer, Optional<HashCode>> onDiskHashes,
       int[] hashIndices)
       throws IOException {
     for (int hashIndex : hashIndices) {
       Pair<Integer, HashCode> hashEntry = hashes.get(hashIndex);
-      String input = inputs.get(hashEntry.getFirst());
-      ImmutableList<SourcePath> candidates = universe.get(input);
-      if (candidates.isEmpty()) {
-        return false;
-      }
-      HashCode onDiskHeaderHash;
-      try {
-        onDiskHeaderHash = hashSourcePathGroup(fileHashLoader, resolver, candidates);
-      } catch (NoSuchFileException e) {
-        return false;
-      }
-      HashCode inputHash = hashEntry.getSecond();
-      if (!inputHash.equals(onDiskHeaderHash)) {
+      Optional<HashCode> onDiskHeaderHash =
+          getOnDiskHash(fileHashLoader, resolver, universe, onDiskHashes, hashEntry.getFirst());
+      if (!onDiskHeaderHash.isPresent() || !hashEntry.getSecond().equals(onDiskHeaderHash.get())) {
         return false;
       }
     }
@@ -205,31 +261,35 @@ public class Manifest {
   }
 
   /**
+   * Lookups may run concurrently with each other, but not with {@link #addEntry}.
+   *
    * @return the {@link RuleKey} of the entry that matches the on disk hashes provided by {@code
    *     fileHashLoader}.
    */
   public Optional<RuleKey> lookup(
       FileHashLoader fileHashLoader, SourcePathResolver resolver, ImmutableSet<SourcePath> universe)
       throws IOException {
-    // Create a set of all paths we care about.
-    ImmutableSet.Builder<String> interestingPathsBuilder = new ImmutableSet.Builder<>();
-    for (Pair<?, int[]> entry : entries) {
-      for (int hashIndex : entry.getSecond()) {
-        interestingPathsBuilder.add(inputs.get(hashes.get(hashIndex).getFirst()));
-      }
-    }
-    ImmutableSet<String> interestingPaths = interestingPathsBuilder.build();
+    ManifestIndex index = getIndex();
 
     // Create a multimap from paths we care about to SourcePaths that maps to them.
     ImmutableListMultimap<String, SourcePath> mappedUniverse =
         index(
             universe,
             path -> sourcePathToManifestHeader(path, resolver),
-            interestingPaths::contains);
+            index.getInterestingInputs()::contains);
+
+    // Hash the key inputs to find the entries that may match.
+    Map<Integer, Optional<HashCode>> onDiskHashes = new HashMap<>();
+    for (int keyInput : index.getKeyInputs()) {
+      getOnDiskHash(fileHashLoader, resolver, mappedUniverse, onDiskHashes, keyInput);
+    }
+    ImmutableList<Integer> candidates =
+        index.getCandidates(keyInput -> onDiskHashes.get(keyInput).orElse(null));
 
     // Find a matching entry.
-    for (Pair<RuleKey, int[]> entry : entries) {
-      if (hashesMatch(fileHashLoader, resolver, mappedUniverse, entry.getSecond())) {
+    for (int entryIndex : candidates) {
+      Pair<RuleKey, int[]> entry = entries.get(entryIndex);
+      if (hashesMatch(fileHashLoader, resolver, mappedUniverse, onDiskHashes, entry.getSecond())) {
         return Optional.of(entry.getFirst());
       }
     }
@@ -310,6 +370,12 @@ public class Manifest {
       }
       output.writeUTF(entry.getFirst().toString());
     }
+
+    int[] keyInputs = getIndex().getKeyInputs();
+    output.writeInt(keyInputs.length);
+    for (int keyInput : keyInputs) {
+      output.writeInt(keyInput);
+    }
   }
 
   public int size() {
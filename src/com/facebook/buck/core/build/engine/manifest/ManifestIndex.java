@@ -0,0 +1,216 @@
+/*
+ * Copyright 2019-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.core.build.engine.manifest;
+
+import com.facebook.buck.core.rulekey.RuleKey;
+import com.facebook.buck.util.types.Pair;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableListMultimap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import javax.annotation.Nullable;
+
+/**
+ * Buckets the entries of a {@link Manifest} by the hashes of their key inputs: the inputs recorded
+ * by every entry that take the most distinct hashes across entries. A lookup then only hashes the
+ * key inputs to find the few entries that can match, instead of comparing the entries one by one.
+ *
+ * <p>Instances are immutable, so concurrent lookups can share them.
+ */
+final class ManifestIndex {
+
+  /** Bounds the number of inputs hashed before a lookup can narrow down the entries. */
+  static final int MAX_KEY_INPUTS = 8;
+
+  private final int numberOfEntries;
+  private final int[] keyInputs;
+  private final ImmutableSet<String> interestingInputs;
+  private final ImmutableListMultimap<HashCode, Integer> buckets;
+
+  private ManifestIndex(
+      int numberOfEntries,
+      int[] keyInputs,
+      ImmutableSet<String> interestingInputs,
+      ImmutableListMultimap<HashCode, Integer> buckets) {
+    this.numberOfEntries = numberOfEntries;
+    this.keyInputs = keyInputs;
+    this.interestingInputs = interestingInputs;
+    this.buckets = buckets;
+  }
+
+  /**
+   * Indexes the entries of a manifest.
+   *
+   * @param keyInputsHint key inputs recorded with the manifest, used if they are still valid for
+   *     the entries, to avoid selecting them again
+   */
+  static ManifestIndex of(
+      List<String> inputs,
+      List<Pair<Integer, HashCode>> hashes,
+      List<Pair<RuleKey, int[]>> entries,
+      @Nullable int[] keyInputsHint) {
+    List<Map<Integer, HashCode>> entryHashes = new ArrayList<>(entries.size());
+    ImmutableSet.Builder<String> interestingInputs = ImmutableSet.builder();
+    for (Pair<RuleKey, int[]> entry : entries) {
+      entryHashes.add(getEntryHashes(hashes, entry.getSecond()));
+      for (int hashIndex : entry.getSecond()) {
+        interestingInputs.add(inputs.get(hashes.get(hashIndex).getFirst()));
+      }
+    }
+
+    int[] keyInputs =
+        keyInputsHint != null && areValidKeyInputs(entryHashes, keyInputsHint)
+            ? keyInputsHint
+            : selectKeyInputs(entryHashes);
+
+    ImmutableListMultimap.Builder<HashCode, Integer> buckets = ImmutableListMultimap.builder();
+    for (int entryIndex = 0; entryIndex < entryHashes.size(); entryIndex++) {
+      Map<Integer, HashCode> hashesOfEntry = entryHashes.get(entryIndex);
+      if (hashesOfEntry != null) {
+        buckets.put(getBucketKey(keyInputs, hashesOfEntry::get), entryIndex);
+      }
+    }
+
+    return new ManifestIndex(entries.size(), keyInputs, interestingInputs.build(), buckets.build());
+  }
+
+  /**
+   * @return the hash of each input of the entry, or null if the entry records different hashes for
+   *     the same input, which no lookup can match.
+   */
+  @Nullable
+  private static Map<Integer, HashCode> getEntryHashes(
+      List<Pair<Integer, HashCode>> hashes, int[] hashIndices) {
+    Map<Integer, HashCode> entryHashes = new HashMap<>(hashIndices.length);
+    for (int hashIndex : hashIndices) {
+      Pair<Integer, HashCode> hash = hashes.get(hashIndex);
+      HashCode previous = entryHashes.put(hash.getFirst(), hash.getSecond());
+      if (previous != null && !previous.equals(hash.getSecond())) {
+        return null;
+      }
+    }
+    return entryHashes;
+  }
+
+  private static boolean areValidKeyInputs(
+      List<Map<Integer, HashCode>> entryHashes, int[] keyInputs) {
+    for (Map<Integer, HashCode> hashesOfEntry : entryHashes) {
+      if (hashesOfEntry == null) {
+        continue;
+      }
+      for (int keyInput : keyInputs) {
+        if (!hashesOfEntry.containsKey(keyInput)) {
+          return false;
+        }
+      }
+    }
+    return true;
+  }
+
+  /** Picks the inputs common to all entries which split them into the most buckets. */
+  private static int[] selectKeyInputs(List<Map<Integer, HashCode>> entryHashes) {
+    Set<Integer> commonInputs = null;
+    for (Map<Integer, HashCode> hashesOfEntry : entryHashes) {
+      if (hashesOfEntry == null) {
+        continue;
+      }
+      if (commonInputs == null) {
+        commonInputs = new HashSet<>(hashesOfEntry.keySet());
+      } else {
+        commonInputs.retainAll(hashesOfEntry.keySet());
+      }
+    }
+    if (commonInputs == null) {
+      return new int[0];
+    }
+
+    Map<Integer, Set<HashCode>> distinctHashes = new HashMap<>();
+    for (Map<Integer, HashCode> hashesOfEntry : entryHashes) {
+      if (hashesOfEntry == null) {
+        continue;
+      }
+      for (Integer input : commonInputs) {
+        distinctHashes.computeIfAbsent(input, i -> new HashSet<>()).add(hashesOfEntry.get(input));
+      }
+    }
+
+    return distinctHashes.entrySet().stream()
+        .filter(entry -> entry.getValue().size() > 1)
+        .sorted(
+            Comparator.<Map.Entry<Integer, Set<HashCode>>>comparingInt(
+                    entry -> -entry.getValue().size())
+                .thenComparing(Map.Entry::getKey))
+        .limit(MAX_KEY_INPUTS)
+        .mapToInt(Map.Entry::getKey)
+        .sorted()
+        .toArray();
+  }
+
+  /** Provides the hash of an input, or null if the input has no hash. */
+  @FunctionalInterface
+  interface InputHashes {
+    @Nullable
+    HashCode get(int inputIndex);
+  }
+
+  @Nullable
+  private static HashCode getBucketKey(int[] keyInputs, InputHashes inputHashes) {
+    Hasher hasher = Hashing.murmur3_128().newHasher();
+    for (int keyInput : keyInputs) {
+      HashCode hash = inputHashes.get(keyInput);
+      if (hash == null) {
+        return null;
+      }
+      hasher.putInt(hash.bits());
+      hasher.putBytes(hash.asBytes());
+    }
+    return hasher.hash();
+  }
+
+  /** @return the number of manifest entries when the index was built. */
+  int getNumberOfEntries() {
+    return numberOfEntries;
+  }
+
+  /** @return the indices of the inputs used to bucket the entries, in ascending order. */
+  int[] getKeyInputs() {
+    return keyInputs.clone();
+  }
+
+  /** @return the names of the inputs recorded by any entry. */
+  ImmutableSet<String> getInterestingInputs() {
+    return interestingInputs;
+  }
+
+  /**
+   * @param inputHashes the hashes of the inputs on disk, only queried for the key inputs
+   * @return the indices of the entries whose key input hashes match, in the order of the entries
+   */
+  ImmutableList<Integer> getCandidates(InputHashes inputHashes) {
+    HashCode bucketKey = getBucketKey(keyInputs, inputHashes);
+    return bucketKey == null ? ImmutableList.of() : buckets.get(bucketKey);
+  }
+}
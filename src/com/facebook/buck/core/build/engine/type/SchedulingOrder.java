@@ -0,0 +1,28 @@
+/*
+ * Copyright 2019-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.core.build.engine.type;
+
+/** The order in which the build engine starts rules that are ready to be built locally. */
+public enum SchedulingOrder {
+  /** Rules are started in the order in which their dependencies finish. */
+  FIFO,
+  /**
+   * Rules with the longest estimated chain of remaining work (based on the durations recorded by
+   * previous builds) are started first.
+   */
+  CRITICAL_PATH,
+}
@@ -37,6 +37,7 @@ import com.facebook.buck.util.concurrent.ExecutorPool;
 import com.facebook.buck.util.concurrent.ResourceAllocationFairness;
 import com.facebook.buck.util.concurrent.ResourceAmountsEstimator;
 import com.facebook.buck.util.environment.Platform;
+import com.facebook.buck.util.hashing.FileHashLoader;
 import com.facebook.buck.worker.WorkerProcessPool;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.io.Closer;
@@ -100,6 +101,12 @@ abstract class AbstractExecutionContext implements Closeable {
   @Value.Parameter
   abstract ProjectFilesystemFactory getProjectFilesystemFactory();
 
+  /**
+   * The hashes of source files and build outputs, as used for rule keys, when steps run as part of
+   * a build.
+   */
+  abstract Optional<FileHashLoader> getFileHashLoader();
+
   @Value.Default
   public long getDefaultTestTimeoutMillis() {
     return 0L;
@@ -45,6 +45,15 @@ public abstract class AbstractActionGraphConfig implements ConfigView<BuckConfig
             "cache", "incremental_action_graph_experiment", IncrementalActionGraphMode.class);
   }
 
+  /**
+   * @return the number of target graphs whose build rules are kept for incremental action graph
+   *     construction, so that commands alternating between different targets reuse their rules.
+   */
+  @Value.Derived
+  public int getIncrementalActionGraphRetainedGraphs() {
+    return getDelegate().getInteger("cache", "incremental_action_graph_retained_graphs").orElse(1);
+  }
+
   @Value.Derived
   public boolean isActionGraphCheckingEnabled() {
     return getDelegate().getBooleanValue("cache", "action_graph_cache_check_enabled", false);
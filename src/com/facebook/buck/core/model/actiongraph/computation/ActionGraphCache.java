@@ -30,8 +30,16 @@ public class ActionGraphCache {
   private final IncrementalActionGraphGenerator incrementalActionGraphGenerator;
 
   public ActionGraphCache(int maxEntries) {
+    this(maxEntries, 1);
+  }
+
+  /**
+   * @param maxRetainedGraphs number of target graphs whose build rules are kept for incremental
+   *     action graph construction
+   */
+  public ActionGraphCache(int maxEntries, int maxRetainedGraphs) {
     previousActionGraphs = CacheBuilder.newBuilder().maximumSize(maxEntries).build();
-    incrementalActionGraphGenerator = new IncrementalActionGraphGenerator();
+    incrementalActionGraphGenerator = new IncrementalActionGraphGenerator(maxRetainedGraphs);
   }
 
   public void invalidateCache() {
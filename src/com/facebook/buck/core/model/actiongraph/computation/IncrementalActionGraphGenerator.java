@@ -28,110 +28,239 @@ import com.facebook.buck.core.util.log.Logger;
 import com.facebook.buck.event.ActionGraphEvent;
 import com.facebook.buck.event.BuckEventBus;
 import com.google.common.base.Preconditions;
+import com.google.common.collect.HashMultimap;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.SetMultimap;
+import java.util.ArrayDeque;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.Map;
 import java.util.Objects;
-import java.util.Optional;
+import java.util.Queue;
 import java.util.Set;
 import javax.annotation.Nullable;
 
 /**
- * Provides a way to incrementally construct a new {@link ActionGraphBuilder} from a previous one.
+ * Provides a way to incrementally construct a new {@link ActionGraphBuilder} from previous ones.
  *
- * <p>This works by grabbing all the build rules from the previous {@link ActionGraphBuilder} with
- * unflavored targets that were not invalidated when doing a target graph walk to check for changes.
+ * <p>This works by keeping the build rules created for each unflavored target, together with the
+ * target nodes they were created from. A new graph reuses the rules of an unflavored target if its
+ * target nodes didn't change, and if none of its dependencies got new rules since, so that only
+ * the upward closure of the changed targets is created again.
+ *
+ * <p>The rules of targets which are not in the latest target graph are kept for a few more graphs,
+ * so that alternating between commands on different parts of the graph doesn't create the rules
+ * of each part again.
  */
 public class IncrementalActionGraphGenerator {
   private static final Logger LOG = Logger.get(IncrementalActionGraphGenerator.class);
 
+  private final int maxRetainedGraphs;
+  private final Map<UnflavoredBuildTargetView, RetainedTarget> retainedTargets = new HashMap<>();
+  private long generation;
+
   @Nullable private ActionGraphBuilder lastActionGraphBuilder;
-  @Nullable private TargetGraph lastTargetGraph;
+  @Nullable private GraphTargets lastGraphTargets;
+  private Set<UnflavoredBuildTargetView> lastReusedTargets = ImmutableSet.of();
+
+  public IncrementalActionGraphGenerator() {
+    this(1);
+  }
+
+  /**
+   * @param maxRetainedGraphs number of target graphs, including the latest one, whose build rules
+   *     are kept for reuse
+   */
+  public IncrementalActionGraphGenerator(int maxRetainedGraphs) {
+    Preconditions.checkArgument(maxRetainedGraphs > 0);
+    this.maxRetainedGraphs = maxRetainedGraphs;
+  }
 
   /**
    * Populates the given {@link ActionGraphBuilder} with the rules from the previously used {@link
-   * ActionGraphBuilder} that are deemed usable after checking for invalidations with a target graph
-   * walk.
+   * ActionGraphBuilder}s that are deemed usable after checking for invalidations with a target
+   * graph walk.
    */
   public void populateActionGraphBuilderWithCachedRules(
       BuckEventBus eventBus, TargetGraph targetGraph, ActionGraphBuilder graphBuilder) {
     int reusedRuleCount = 0;
     if (lastActionGraphBuilder != null) {
-      Objects.requireNonNull(lastTargetGraph);
-
-      // We first walk the new target graph to find new nodes. A new node will invalidate all nodes
-      // with the same unflavored target.
-      Set<UnflavoredBuildTargetView> unflavoredTargetsForNewNodes =
-          findUnflavoredTargetsForNewNodes(targetGraph);
-
-      // We figure out which build rules we can reuse from the last action graph by performing an
-      // invalidation walk over the new target graph.
-      Set<UnflavoredBuildTargetView> invalidUnflavoredTargets = new HashSet<>();
-      Set<UnflavoredBuildTargetView> allUnflavoredTargetsInNewGraph = new HashSet<>();
-      invalidateChangedTargets(
-          targetGraph,
-          allUnflavoredTargetsInNewGraph,
-          invalidUnflavoredTargets,
-          unflavoredTargetsForNewNodes);
-
-      // Now we can load in all build rules whose unflavored targets weren't invalidated for
-      // incremental action graph generation.
-      reusedRuleCount =
-          addValidRulesToActionGraphBuilder(
-              graphBuilder, allUnflavoredTargetsInNewGraph, invalidUnflavoredTargets);
+      // Record the rules that were created for the last graph, now that it is complete.
+      retainRulesOfLastGraph();
 
       // Invalidate the previous {@see ActionGraphBuilder}, which we no longer need, to make sure
       // nobody unexpectedly accesses it after this point.
       lastActionGraphBuilder.invalidate();
     }
 
-    lastTargetGraph = targetGraph;
+    GraphTargets graphTargets = new GraphTargets(targetGraph);
+    Set<UnflavoredBuildTargetView> reusedTargets = findReusableTargets(graphTargets);
+    if (!retainedTargets.isEmpty()) {
+      reusedRuleCount = addRetainedRulesToActionGraphBuilder(graphBuilder, reusedTargets);
+    }
+
     lastActionGraphBuilder = graphBuilder;
+    lastGraphTargets = graphTargets;
+    lastReusedTargets = reusedTargets;
     eventBus.post(new ActionGraphEvent.IncrementalLoad(reusedRuleCount));
   }
 
-  private Set<UnflavoredBuildTargetView> findUnflavoredTargetsForNewNodes(TargetGraph targetGraph) {
-    ImmutableSet.Builder<UnflavoredBuildTargetView> unflavoredTargetsForNewNodes =
-        new ImmutableSet.Builder<>();
-    Set<BuildTarget> explored = new HashSet<>();
-    for (TargetNode<?> root : targetGraph.getNodesWithNoIncomingEdges()) {
-      findUnflavoredTargetsForNewNodes(root, targetGraph, explored, unflavoredTargetsForNewNodes);
+  /**
+   * Creates new entries for the targets of the last graph whose rules were not reused, and updates
+   * the rules of all its targets from the last {@link ActionGraphBuilder}.
+   */
+  private void retainRulesOfLastGraph() {
+    GraphTargets graphTargets = Objects.requireNonNull(lastGraphTargets);
+    generation++;
+
+    // Entries are linked to the entries of their dependencies once they all exist, as the
+    // dependencies between unflavored targets may have cycles.
+    Map<UnflavoredBuildTargetView, RetainedTarget> createdTargets = new HashMap<>();
+    for (Map.Entry<UnflavoredBuildTargetView, ImmutableMap<BuildTarget, TargetNode<?>>> entry :
+        graphTargets.nodes.entrySet()) {
+      if (!lastReusedTargets.contains(entry.getKey())) {
+        createdTargets.put(entry.getKey(), new RetainedTarget(entry.getValue()));
+      }
+    }
+    retainedTargets.putAll(createdTargets);
+    for (Map.Entry<UnflavoredBuildTargetView, RetainedTarget> entry : createdTargets.entrySet()) {
+      for (UnflavoredBuildTargetView dep : graphTargets.deps.get(entry.getKey())) {
+        entry.getValue().deps.put(dep, Objects.requireNonNull(retainedTargets.get(dep)));
+      }
+    }
+
+    Map<UnflavoredBuildTargetView, ImmutableList.Builder<BuildRule>> rules = new HashMap<>();
+    for (BuildRule buildRule :
+        Objects.requireNonNull(lastActionGraphBuilder).getSuccessfullyConstructedBuildRules()) {
+      UnflavoredBuildTargetView target = buildRule.getBuildTarget().getUnflavoredBuildTarget();
+      if (graphTargets.nodes.containsKey(target)) {
+        rules.computeIfAbsent(target, ignored -> ImmutableList.builder()).add(buildRule);
+      }
+    }
+    for (UnflavoredBuildTargetView target : graphTargets.nodes.keySet()) {
+      RetainedTarget retainedTarget = Objects.requireNonNull(retainedTargets.get(target));
+      ImmutableList.Builder<BuildRule> targetRules = rules.get(target);
+      retainedTarget.rules = targetRules == null ? ImmutableList.of() : targetRules.build();
+      retainedTarget.lastUsedGeneration = generation;
+    }
+
+    // Forget the targets which were not part of the last few graphs. Targets depending on them
+    // can't be reused anymore either, as their dependencies are looked up by identity.
+    Iterator<RetainedTarget> iterator = retainedTargets.values().iterator();
+    while (iterator.hasNext()) {
+      if (iterator.next().lastUsedGeneration <= generation - maxRetainedGraphs) {
+        iterator.remove();
+      }
     }
-    return unflavoredTargetsForNewNodes.build();
   }
 
-  private void findUnflavoredTargetsForNewNodes(
-      TargetNode<?> node,
-      TargetGraph targetGraph,
-      Set<BuildTarget> explored,
-      ImmutableSet.Builder<UnflavoredBuildTargetView> unflavoredTargetsForNewNodes) {
-    if (explored.contains(node.getBuildTarget())) {
-      return;
+  /**
+   * @return the unflavored targets of the given graph whose retained rules can be reused, i.e. the
+   *     targets which are not in the upward closure of the changed targets.
+   */
+  private Set<UnflavoredBuildTargetView> findReusableTargets(GraphTargets graphTargets) {
+    Set<UnflavoredBuildTargetView> invalidTargets = new HashSet<>();
+    Queue<UnflavoredBuildTargetView> queue = new ArrayDeque<>();
+    for (UnflavoredBuildTargetView target : graphTargets.nodes.keySet()) {
+      if (!isUnchanged(target, graphTargets) && invalidTargets.add(target)) {
+        queue.add(target);
+      }
     }
-    explored.add(node.getBuildTarget());
 
-    if (!lastTargetGraph.getExactOptional(node.getBuildTarget()).isPresent()) {
-      unflavoredTargetsForNewNodes.add(node.getBuildTarget().getUnflavoredBuildTarget());
+    // Targets depending on an invalidated target may create their rules differently.
+    SetMultimap<UnflavoredBuildTargetView, UnflavoredBuildTargetView> dependents =
+        HashMultimap.create();
+    for (Map.Entry<UnflavoredBuildTargetView, UnflavoredBuildTargetView> dep :
+        graphTargets.deps.entries()) {
+      dependents.put(dep.getValue(), dep.getKey());
+    }
+    while (!queue.isEmpty()) {
+      UnflavoredBuildTargetView target = queue.remove();
+      for (UnflavoredBuildTargetView dependent : dependents.get(target)) {
+        if (invalidTargets.add(dependent)) {
+          if (LOG.isVerboseEnabled()) {
+            LOG.verbose("invalidating target %s due to dependency %s", dependent, target);
+          }
+          queue.add(dependent);
+        }
+      }
     }
 
-    for (TargetNode<?> child : targetGraph.getOutgoingNodesFor(node)) {
-      findUnflavoredTargetsForNewNodes(child, targetGraph, explored, unflavoredTargetsForNewNodes);
+    Set<UnflavoredBuildTargetView> reusableTargets = new HashSet<>(graphTargets.nodes.keySet());
+    reusableTargets.removeAll(invalidTargets);
+    return reusableTargets;
+  }
+
+  /**
+   * @return whether the retained rules of the target were created from the same target nodes and
+   *     against the same rules of its dependencies.
+   */
+  private boolean isUnchanged(UnflavoredBuildTargetView target, GraphTargets graphTargets) {
+    RetainedTarget retainedTarget = retainedTargets.get(target);
+    if (retainedTarget == null) {
+      // If this target doesn't have rules yet, flavored versions of the rules of its dependents
+      // might be created differently.
+      if (LOG.isVerboseEnabled()) {
+        LOG.verbose("target %s caused invalidation due to a new target", target);
+      }
+      return false;
+    }
+
+    for (TargetNode<?> node : Objects.requireNonNull(graphTargets.nodes.get(target)).values()) {
+      TargetNode<?> previousNode = retainedTarget.nodes.get(node.getBuildTarget());
+      // A new flavored node invalidates the unflavored target, as there are cases where a flavored
+      // version of a node shows up where the previous graph had only the unflavored version, e.g.
+      // when a {@code cxx_binary} changes to a {@code cxx_library}, and we'd otherwise happily
+      // incorrectly pull in the previous unflavored version of the node from cache. A changed node
+      // invalidates parent chains, as ancestors might generate their subgraphs differently.
+      if (!node.equals(previousNode)) {
+        if (LOG.isVerboseEnabled()) {
+          LOG.verbose(
+              "target %s caused invalidation due to target node change", node.getBuildTarget());
+        }
+        return false;
+      }
+
+      // Incremental caching is only supported for {@link Description}s known to be safe. This is
+      // because we cannot generally guarantee that descriptions won't do crazy things that violate
+      // our assumptions during their construction.
+      BaseDescription<?> description = node.getDescription();
+      if ((description instanceof Description<?>)
+          && !((Description<?>) description).producesCacheableSubgraph()) {
+        if (LOG.isVerboseEnabled()) {
+          LOG.verbose(
+              "target %s caused invalidation due to not being cacheable", node.getBuildTarget());
+        }
+        return false;
+      }
     }
+
+    for (UnflavoredBuildTargetView dep : graphTargets.deps.get(target)) {
+      RetainedTarget retainedDep = retainedTarget.deps.get(dep);
+      if (retainedDep == null || retainedDep != retainedTargets.get(dep)) {
+        if (LOG.isVerboseEnabled()) {
+          LOG.verbose("target %s invalidated due to new rules of dependency %s", target, dep);
+        }
+        return false;
+      }
+    }
+    return true;
   }
 
-  private int addValidRulesToActionGraphBuilder(
-      ActionGraphBuilder graphBuilder,
-      Set<UnflavoredBuildTargetView> allUnflavoredTargetsInNewGraph,
-      Set<UnflavoredBuildTargetView> invalidUnflavoredTargets) {
+  private int addRetainedRulesToActionGraphBuilder(
+      ActionGraphBuilder graphBuilder, Set<UnflavoredBuildTargetView> reusedTargets) {
     int totalRuleCount = 0;
     int reusedRuleCount = 0;
-    for (BuildRule buildRule :
-        Objects.requireNonNull(lastActionGraphBuilder).getSuccessfullyConstructedBuildRules()) {
-      UnflavoredBuildTargetView unflavoredTarget =
-          buildRule.getBuildTarget().getUnflavoredBuildTarget();
-      if (!invalidUnflavoredTargets.contains(unflavoredTarget)
-          && allUnflavoredTargetsInNewGraph.contains(unflavoredTarget)) {
+    for (Map.Entry<UnflavoredBuildTargetView, RetainedTarget> entry : retainedTargets.entrySet()) {
+      ImmutableList<BuildRule> rules = entry.getValue().rules;
+      totalRuleCount += rules.size();
+      if (!reusedTargets.contains(entry.getKey())) {
+        continue;
+      }
+      for (BuildRule buildRule : rules) {
         graphBuilder.addToIndex(buildRule);
 
         // Update build rule resolvers for all reused rules. Build rules may use build rule
@@ -141,128 +270,50 @@ public class IncrementalActionGraphGenerator {
 
         reusedRuleCount++;
       }
-      totalRuleCount++;
     }
 
-    LOG.debug("reused %d of %d build rules", reusedRuleCount, totalRuleCount);
+    LOG.debug("reused %d of %d retained build rules", reusedRuleCount, totalRuleCount);
     return reusedRuleCount;
   }
 
-  private void invalidateChangedTargets(
-      TargetGraph targetGraph,
-      Set<UnflavoredBuildTargetView> allUnflavoredTargetsInNewGraph,
-      Set<UnflavoredBuildTargetView> invalidUnflavoredTargets,
-      Set<UnflavoredBuildTargetView> unflavoredTargetsForNewNodes) {
-    Map<BuildTarget, Boolean> explored = new HashMap<>();
-    for (TargetNode<?> root : targetGraph.getNodesWithNoIncomingEdges()) {
-      invalidateChangedTargets(
-          root,
-          targetGraph,
-          explored,
-          allUnflavoredTargetsInNewGraph,
-          invalidUnflavoredTargets,
-          unflavoredTargetsForNewNodes);
-    }
-  }
-
-  private boolean invalidateChangedTargets(
-      TargetNode<?> node,
-      TargetGraph targetGraph,
-      Map<BuildTarget, Boolean> explored,
-      Set<UnflavoredBuildTargetView> allUnflavoredTargetsInNewGraph,
-      Set<UnflavoredBuildTargetView> invalidUnflavoredTargets,
-      Set<UnflavoredBuildTargetView> unflavoredTargetsForNewNodes) {
-    if (explored.containsKey(node.getBuildTarget())) {
-      return explored.get(node.getBuildTarget());
-    }
+  /** The target nodes of a target graph and the dependencies between them, by unflavored target. */
+  private static class GraphTargets {
+    private final Map<UnflavoredBuildTargetView, ImmutableMap<BuildTarget, TargetNode<?>>> nodes;
+    private final SetMultimap<UnflavoredBuildTargetView, UnflavoredBuildTargetView> deps =
+        HashMultimap.create();
 
-    allUnflavoredTargetsInNewGraph.add(node.getBuildTarget().getUnflavoredBuildTarget());
-
-    // Recursively check if any node in a child subgraph causes invalidation of its parent chain.
-    boolean ancestorInvalidated = false;
-    for (TargetNode<?> child : targetGraph.getOutgoingNodesFor(node)) {
-      // Note: We can't short circuit here since we need to also make sure things inside child
-      // subgraphs get properly invalidated in turn.
-      ancestorInvalidated |=
-          invalidateChangedTargets(
-              child,
-              targetGraph,
-              explored,
-              allUnflavoredTargetsInNewGraph,
-              invalidUnflavoredTargets,
-              unflavoredTargetsForNewNodes);
-    }
-
-    boolean invalidateParent = false;
-    if (ancestorInvalidated || shouldInvalidateParentChain(node, unflavoredTargetsForNewNodes)) {
-      if (LOG.isVerboseEnabled()) {
-        LOG.verbose("invalidating target %s", node.getBuildTarget().toString());
+    private GraphTargets(TargetGraph targetGraph) {
+      Map<UnflavoredBuildTargetView, ImmutableMap.Builder<BuildTarget, TargetNode<?>>> builders =
+          new HashMap<>();
+      for (TargetNode<?> node : targetGraph.getNodes()) {
+        UnflavoredBuildTargetView target = node.getBuildTarget().getUnflavoredBuildTarget();
+        builders
+            .computeIfAbsent(target, ignored -> ImmutableMap.builder())
+            .put(node.getBuildTarget(), node);
+        for (TargetNode<?> dep : targetGraph.getOutgoingNodesFor(node)) {
+          UnflavoredBuildTargetView depTarget = dep.getBuildTarget().getUnflavoredBuildTarget();
+          if (!depTarget.equals(target)) {
+            deps.put(target, depTarget);
+          }
+        }
       }
-      invalidateParent = true;
-
-      // This node is invalid. We can't load any of its flavors from cache.
-      invalidUnflavoredTargets.add(node.getBuildTarget().getUnflavoredBuildTarget());
+      nodes = new HashMap<>();
+      builders.forEach((target, builder) -> nodes.put(target, builder.build()));
     }
-
-    explored.put(node.getBuildTarget(), invalidateParent);
-    return invalidateParent;
   }
 
-  private boolean shouldInvalidateParentChain(
-      TargetNode<?> targetNode, Set<UnflavoredBuildTargetView> unflavoredTargetsForNewNodes) {
-    if (unflavoredTargetsForNewNodes.contains(
-        targetNode.getBuildTarget().getUnflavoredBuildTarget())) {
-      // If this node wasn't present in the previous graph, we need to invalidate, as flavored
-      // versions of rules might be reconstructed differently. Furthermore, there are cases where a
-      // flavored version of a node without the unflavored version shows up in the new target graph,
-      // when the previous target graph had only the unflavored version, e.g. when a
-      // {@code cxx_binary} changes to a {@code cxx_library}, and we'd otherwise happily incorrectly
-      // pull in the previous unflavored version of the node from cache.
-      if (LOG.isVerboseEnabled()) {
-        LOG.verbose(
-            "target %s caused invalidation due to a new node with the same unflavored target",
-            targetNode.getBuildTarget().toString());
-      }
-      return true;
-    }
+  /** The build rules created for an unflavored target, and what they were created from. */
+  private static class RetainedTarget {
+    private final ImmutableMap<BuildTarget, TargetNode<?>> nodes;
 
-    if (lastTargetGraph != null) {
-      Optional<TargetNode<?>> previousTargetNode =
-          lastTargetGraph.getExactOptional(targetNode.getBuildTarget());
-      if (previousTargetNode.isPresent()) {
-        Preconditions.checkState(
-            lastActionGraphBuilder.getRuleOptional(targetNode.getBuildTarget()).isPresent());
-        // If the target node has changed, then invalidate parent chains, as ancestors might
-        // generate their subgraphs differently given the change.
-        if (!targetNode.equals(previousTargetNode.get())) {
-          if (LOG.isVerboseEnabled()) {
-            LOG.verbose(
-                "target %s caused invalidation due to target node change",
-                targetNode.getBuildTarget().toString());
-          }
-          return true;
-        }
-      } else {
-        Preconditions.checkState(
-            unflavoredTargetsForNewNodes.contains(
-                targetNode.getBuildTarget().getUnflavoredBuildTarget()));
-      }
-    }
+    /** Entries of the dependencies that the rules were created against. */
+    private final Map<UnflavoredBuildTargetView, RetainedTarget> deps = new HashMap<>();
 
-    // Incremental caching is only supported for {@link Description}s known to
-    // be safe. This is
-    // because we cannot generally guarantee that descriptions won't do crazy things that violate
-    // our assumptions during their construction.
-    BaseDescription<?> description = targetNode.getDescription();
-    if ((description instanceof Description<?>)
-        && !((Description<?>) description).producesCacheableSubgraph()) {
-      if (LOG.isVerboseEnabled()) {
-        LOG.verbose(
-            "target %s caused invalidation due to not being cacheable",
-            targetNode.getBuildTarget().toString());
-      }
-      return true;
+    private ImmutableList<BuildRule> rules = ImmutableList.of();
+    private long lastUsedGeneration;
+
+    private RetainedTarget(ImmutableMap<BuildTarget, TargetNode<?>> nodes) {
+      this.nodes = nodes;
     }
-    return false;
   }
 }
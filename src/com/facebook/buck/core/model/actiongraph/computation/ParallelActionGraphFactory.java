@@ -37,6 +37,7 @@ import com.google.common.util.concurrent.ListenableFuture;
 import com.google.common.util.concurrent.ListeningExecutorService;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.function.Supplier;
 
@@ -76,6 +77,12 @@ public class ParallelActionGraphFactory implements ActionGraphFactoryDelegate {
 
     actionGraphCreationLifecycleListener.onCreate(graphBuilder);
 
+    // Rules reused from previous action graphs, which are already in the builder before the walk.
+    Map<BuildTarget, BuildRule> cachedRules = new HashMap<>();
+    for (BuildRule rule : graphBuilder.getSuccessfullyConstructedBuildRules()) {
+      cachedRules.put(rule.getBuildTarget(), rule);
+    }
+
     LOG.debug("start target graph walk");
     new AbstractBottomUpTraversal<TargetNode<?>, RuntimeException>(targetGraph) {
       @Override
@@ -85,6 +92,11 @@ public class ParallelActionGraphFactory implements ActionGraphFactoryDelegate {
         }
         // If we're loading this node from cache, we don't need to wait on our children, as the
         // entire subgraph will be loaded from cache.
+        BuildRule cachedRule = cachedRules.get(node.getBuildTarget());
+        if (cachedRule != null) {
+          futures.put(node.getBuildTarget(), Futures.immediateFuture(cachedRule));
+          return;
+        }
         List<ListenableFuture<BuildRule>> depFutures =
             targetGraph.getOutgoingNodesFor(node).stream()
                 .filter(dep -> dep.getRuleType().isBuildRule())
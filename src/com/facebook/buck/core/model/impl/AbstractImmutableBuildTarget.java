@@ -31,6 +31,8 @@ import com.fasterxml.jackson.annotation.JsonProperty;
 import com.fasterxml.jackson.annotation.JsonView;
 import com.google.common.base.Preconditions;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
 import com.google.common.collect.Ordering;
 import com.google.common.collect.Sets;
 import java.util.Set;
@@ -44,6 +46,24 @@ import org.immutables.value.Value;
 @Value.Immutable(prehash = true, builder = false)
 abstract class AbstractImmutableBuildTarget extends AbstractBuildTarget {
 
+  /**
+   * Interner for instances of BuildTarget. A build target is created for every dependency of every
+   * target node, so most of them are duplicates. Only targets with internal flavors are interned,
+   * see {@link ImmutableUnconfiguredBuildTargetView#hasOnlyInternalFlavors}.
+   */
+  private static final Interner<ImmutableBuildTarget> interner = Interners.newWeakInterner();
+
+  /** @return the interned build target of the given unconfigured target and configuration. */
+  static ImmutableBuildTarget interned(
+      UnconfiguredBuildTargetView unconfiguredBuildTargetView,
+      TargetConfiguration targetConfiguration) {
+    ImmutableBuildTarget target =
+        ImmutableBuildTarget.of(unconfiguredBuildTargetView, targetConfiguration);
+    return ImmutableUnconfiguredBuildTargetView.hasOnlyInternalFlavors(target.getFlavors())
+        ? interner.intern(target)
+        : target;
+  }
+
   @Override
   public abstract UnconfiguredBuildTargetView getUnconfiguredBuildTargetView();
 
@@ -105,7 +125,7 @@ abstract class AbstractImmutableBuildTarget extends AbstractBuildTarget {
 
   @Override
   public BuildTarget withShortName(String shortName) {
-    return ImmutableBuildTarget.of(
+    return interned(
         getUnconfiguredBuildTargetView().withShortName(shortName), getTargetConfiguration());
   }
 
@@ -121,7 +141,7 @@ abstract class AbstractImmutableBuildTarget extends AbstractBuildTarget {
 
   @Override
   public BuildTarget withoutFlavors() {
-    return ImmutableBuildTarget.of(
+    return interned(
         ImmutableUnconfiguredBuildTargetView.of(getUnflavoredBuildTarget()),
         getTargetConfiguration());
   }
@@ -133,7 +153,7 @@ abstract class AbstractImmutableBuildTarget extends AbstractBuildTarget {
 
   @Override
   public BuildTarget withFlavors(Iterable<? extends Flavor> flavors) {
-    return ImmutableBuildTarget.of(
+    return interned(
         getUnconfiguredBuildTargetView().withFlavors(flavors), getTargetConfiguration());
   }
 
@@ -149,7 +169,7 @@ abstract class AbstractImmutableBuildTarget extends AbstractBuildTarget {
 
   @Override
   public BuildTarget withUnflavoredBuildTarget(UnflavoredBuildTargetView target) {
-    return ImmutableBuildTarget.of(
+    return interned(
         getUnconfiguredBuildTargetView().withUnflavoredBuildTarget(target),
         getTargetConfiguration());
   }
@@ -20,6 +20,7 @@ import com.facebook.buck.core.model.BuildTarget;
 import com.facebook.buck.core.model.CanonicalCellName;
 import com.facebook.buck.core.model.Flavor;
 import com.facebook.buck.core.model.ImmutableUnconfiguredBuildTarget;
+import com.facebook.buck.core.model.InternalFlavor;
 import com.facebook.buck.core.model.TargetConfiguration;
 import com.facebook.buck.core.model.UnconfiguredBuildTarget;
 import com.facebook.buck.core.model.UnconfiguredBuildTargetView;
@@ -34,6 +35,8 @@ import com.google.common.base.Joiner;
 import com.google.common.base.Preconditions;
 import com.google.common.collect.ComparisonChain;
 import com.google.common.collect.ImmutableSortedSet;
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
 import java.nio.file.Path;
 import java.util.Arrays;
 import java.util.Objects;
@@ -46,6 +49,23 @@ import java.util.stream.Stream;
     setterVisibility = JsonAutoDetect.Visibility.NONE)
 public class ImmutableUnconfiguredBuildTargetView implements UnconfiguredBuildTargetView {
 
+  /**
+   * Interner for instances of UnconfiguredBuildTargetView, since the same targets are referenced by
+   * the dependencies of many nodes. Like flavor sets, only targets with internal flavors are
+   * interned.
+   */
+  private static final Interner<ImmutableUnconfiguredBuildTargetView> interner =
+      Interners.newWeakInterner();
+
+  /**
+   * Interner for flavor sets, which are shared by many targets. Only sets of {@link
+   * InternalFlavor}s are interned: flavors are equal by name, so interning sets of other flavors
+   * could replace a flavor with one of a different class, like a {@code UserFlavor} with its
+   * description.
+   */
+  private static final Interner<ImmutableSortedSet<Flavor>> flavorsInterner =
+      Interners.newWeakInterner();
+
   private final UnconfiguredBuildTarget data;
   private final UnflavoredBuildTargetView unflavoredBuildTargetView;
   private final int hash;
@@ -60,7 +80,7 @@ public class ImmutableUnconfiguredBuildTargetView implements UnconfiguredBuildTa
       UnconfiguredBuildTarget from = unflavoredBuildTargetView.getData();
       this.data =
           ImmutableUnconfiguredBuildTarget.of(
-              from.getCell(), from.getBaseName(), from.getName(), flavors);
+              from.getCell(), from.getBaseName(), from.getName(), internFlavors(flavors));
     }
     this.unflavoredBuildTargetView = unflavoredBuildTargetView;
     this.hash = Objects.hash(this.data, this.unflavoredBuildTargetView);
@@ -85,6 +105,28 @@ public class ImmutableUnconfiguredBuildTargetView implements UnconfiguredBuildTa
     this.hash = Objects.hash(this.data, this.unflavoredBuildTargetView);
   }
 
+  private static ImmutableSortedSet<Flavor> internFlavors(ImmutableSortedSet<Flavor> flavors) {
+    return hasOnlyInternalFlavors(flavors) ? flavorsInterner.intern(flavors) : flavors;
+  }
+
+  private static ImmutableUnconfiguredBuildTargetView intern(
+      ImmutableUnconfiguredBuildTargetView target) {
+    return hasOnlyInternalFlavors(target.getFlavors()) ? interner.intern(target) : target;
+  }
+
+  /**
+   * @return whether all the flavors are {@link InternalFlavor}s, so that a target with these
+   *     flavors can be replaced by any target equal to it
+   */
+  static boolean hasOnlyInternalFlavors(Iterable<Flavor> flavors) {
+    for (Flavor flavor : flavors) {
+      if (flavor.getClass() != InternalFlavor.class) {
+        return false;
+      }
+    }
+    return true;
+  }
+
   /**
    * Create new immutable instance of {@link UnconfiguredBuildTargetView}
    *
@@ -93,7 +135,7 @@ public class ImmutableUnconfiguredBuildTargetView implements UnconfiguredBuildTa
    */
   public static ImmutableUnconfiguredBuildTargetView of(
       Path cellPath, UnconfiguredBuildTarget data) {
-    return new ImmutableUnconfiguredBuildTargetView(cellPath, data);
+    return intern(new ImmutableUnconfiguredBuildTargetView(cellPath, data));
   }
 
   /**
@@ -104,7 +146,7 @@ public class ImmutableUnconfiguredBuildTargetView implements UnconfiguredBuildTa
    */
   public static ImmutableUnconfiguredBuildTargetView of(
       UnflavoredBuildTargetView unflavoredBuildTargetView, ImmutableSortedSet<Flavor> flavors) {
-    return new ImmutableUnconfiguredBuildTargetView(unflavoredBuildTargetView, flavors);
+    return intern(new ImmutableUnconfiguredBuildTargetView(unflavoredBuildTargetView, flavors));
   }
 
   /**
@@ -277,7 +319,7 @@ public class ImmutableUnconfiguredBuildTargetView implements UnconfiguredBuildTa
 
   @Override
   public BuildTarget configure(TargetConfiguration targetConfiguration) {
-    return ImmutableBuildTarget.of(this, targetConfiguration);
+    return AbstractImmutableBuildTarget.interned(this, targetConfiguration);
   }
 
   @Override
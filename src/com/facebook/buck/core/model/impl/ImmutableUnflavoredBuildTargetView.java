@@ -46,6 +46,12 @@ public class ImmutableUnflavoredBuildTargetView extends AbstractUnflavoredBuildT
   private static final Interner<ImmutableUnflavoredBuildTargetView> interner =
       Interners.newWeakInterner();
 
+  /** Interner for base names, which are shared by all targets of a package. */
+  private static final Interner<String> baseNameInterner = Interners.newWeakInterner();
+
+  /** Interner for cell paths, which are shared by all targets of a cell. */
+  private static final Interner<Path> cellPathInterner = Interners.newWeakInterner();
+
   @Override
   public UnconfiguredBuildTarget getData() {
     return data;
@@ -89,7 +95,10 @@ public class ImmutableUnflavoredBuildTargetView extends AbstractUnflavoredBuildT
     return of(
         cellPath,
         ImmutableUnconfiguredBuildTarget.of(
-            cellName, baseName, shortName, UnconfiguredBuildTarget.NO_FLAVORS));
+            cellName,
+            baseNameInterner.intern(baseName),
+            shortName,
+            UnconfiguredBuildTarget.NO_FLAVORS));
   }
 
   /**
@@ -99,7 +108,8 @@ public class ImmutableUnflavoredBuildTargetView extends AbstractUnflavoredBuildT
    * @param data {@link UnconfiguredBuildTarget} which encapsulates build target data
    */
   public static ImmutableUnflavoredBuildTargetView of(Path cellPath, UnconfiguredBuildTarget data) {
-    return interner.intern(new ImmutableUnflavoredBuildTargetView(cellPath, data));
+    return interner.intern(
+        new ImmutableUnflavoredBuildTargetView(cellPathInterner.intern(cellPath), data));
   }
 
   @Override
@@ -46,6 +46,7 @@ import java.nio.charset.StandardCharsets;
 import java.nio.file.Path;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
 import java.util.function.Function;
@@ -57,6 +58,11 @@ import java.util.stream.Collectors;
  * <p>A build target's hash code is guaranteed to change if the build target or any of its
  * dependencies change, including the contents of all input files to the target and its
  * dependencies.
+ *
+ * <p>The hash of the attributes of a node is memoized in a {@link TargetNodeAttributesHashCache},
+ * which the daemon keeps until the build file of the node changes. Hashing the graph again after a
+ * few build files changed then only hashes the attributes of the nodes defined in these files, and
+ * combines the memoized hashes with the (cached) hashes of input files for the others.
  */
 public class TargetGraphHashing {
 
@@ -70,6 +76,8 @@ public class TargetGraphHashing {
   private final RuleKeyConfiguration ruleKeyConfiguration;
   private final Function<TargetNode<?>, ListenableFuture<?>> targetNodeRawAttributesProvider;
   private final HashFunction hashFunction;
+  private final TargetNodeAttributesHashCache attributesHashCache;
+  private final String attributesHashKind;
 
   public TargetGraphHashing(
       BuckEventBus eventBus,
@@ -80,6 +88,28 @@ public class TargetGraphHashing {
       RuleKeyConfiguration ruleKeyConfiguration,
       Function<TargetNode<?>, ListenableFuture<?>> targetNodeRawAttributesProvider,
       HashFunction hashFunction) {
+    this(
+        eventBus,
+        targetGraph,
+        fileHashLoader,
+        roots,
+        executor,
+        ruleKeyConfiguration,
+        targetNodeRawAttributesProvider,
+        hashFunction,
+        TargetNodeAttributesHashCache.NONE);
+  }
+
+  public TargetGraphHashing(
+      BuckEventBus eventBus,
+      TargetGraph targetGraph,
+      FileHashLoader fileHashLoader,
+      Iterable<TargetNode<?>> roots,
+      ListeningExecutorService executor,
+      RuleKeyConfiguration ruleKeyConfiguration,
+      Function<TargetNode<?>, ListenableFuture<?>> targetNodeRawAttributesProvider,
+      HashFunction hashFunction,
+      TargetNodeAttributesHashCache attributesHashCache) {
     this.eventBus = eventBus;
     this.targetGraph = targetGraph;
     this.fileHashLoader = fileHashLoader;
@@ -88,6 +118,8 @@ public class TargetGraphHashing {
     this.executor = executor;
     this.ruleKeyConfiguration = ruleKeyConfiguration;
     this.targetNodeRawAttributesProvider = targetNodeRawAttributesProvider;
+    this.attributesHashCache = attributesHashCache;
+    this.attributesHashKind = hashFunction + ":" + ruleKeyConfiguration.getCoreKey();
   }
 
   /**
@@ -109,19 +141,36 @@ public class TargetGraphHashing {
     private final Map<BuildTarget, ListenableFuture<HashCode>> futures =
         new ConcurrentHashMap<>(targetGraph.getSize());
 
+    /** @return the hash of the node's build target and attributes, memoized across commands. */
+    private ListenableFuture<HashCode> getAttributesHash(TargetNode<?> node) {
+      Optional<HashCode> memoized = attributesHashCache.get(node, attributesHashKind);
+      if (memoized.isPresent()) {
+        return Futures.immediateFuture(memoized.get());
+      }
+      return Futures.transform(
+          targetNodeRawAttributesProvider.apply(node),
+          attributes -> {
+            // Hash the node's build target and rules.
+            LOG.verbose("Hashing node %s", node);
+            Hasher hasher = hashFunction.newHasher();
+            StringHashing.hashStringAndLength(hasher, node.getBuildTarget().toString());
+            JsonObjectHashing.hashJsonObject(hasher, attributes);
+            hasher.putString(ruleKeyConfiguration.getCoreKey(), StandardCharsets.UTF_8);
+            HashCode hash = hasher.hash();
+            attributesHashCache.put(node, attributesHashKind, hash);
+            return hash;
+          },
+          executor);
+    }
+
     /**
      * The initial hashing phase of a node, which hashes everything except its dependencies.
      *
      * @return the partial {@link Hasher}.
      */
-    private Hasher startNode(TargetNode<?> node, Object nodeAttributes) {
+    private Hasher startNode(TargetNode<?> node, HashCode attributesHash) {
       Hasher hasher = hashFunction.newHasher();
-
-      // Hash the node's build target and rules.
-      LOG.verbose("Hashing node %s", node);
-      StringHashing.hashStringAndLength(hasher, node.getBuildTarget().toString());
-      JsonObjectHashing.hashJsonObject(hasher, nodeAttributes);
-      hasher.putString(ruleKeyConfiguration.getCoreKey(), StandardCharsets.UTF_8);
+      hasher.putBytes(attributesHash.asBytes());
 
       // Hash the contents of all input files and directories.
       ProjectFilesystem cellFilesystem = node.getFilesystem();
@@ -184,9 +233,7 @@ public class TargetGraphHashing {
             Futures.transformAsync(
                 // Start hashing a node.
                 Futures.transform(
-                    targetNodeRawAttributesProvider.apply(node),
-                    attributes -> startNode(node, attributes),
-                    executor),
+                    getAttributesHash(node), hash -> startNode(node, hash), executor),
                 // Wait for all dependencies to finish hashing.
                 hasher ->
                     Futures.transform(
@@ -0,0 +1,49 @@
+/*
+ * Copyright 2019-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.core.model.targetgraph.impl;
+
+import com.facebook.buck.core.model.targetgraph.TargetNode;
+import com.google.common.hash.HashCode;
+import java.util.Optional;
+
+/**
+ * Memoizes the hashes that {@link TargetGraphHashing} computes from the attributes of target nodes.
+ * These hashes only depend on the build file defining a node, so implementations keep them until
+ * that build file changes.
+ */
+public interface TargetNodeAttributesHashCache {
+
+  /** A cache that doesn't keep anything. */
+  TargetNodeAttributesHashCache NONE =
+      new TargetNodeAttributesHashCache() {
+        @Override
+        public Optional<HashCode> get(TargetNode<?> node, String hashKind) {
+          return Optional.empty();
+        }
+
+        @Override
+        public void put(TargetNode<?> node, String hashKind, HashCode hash) {}
+      };
+
+  /**
+   * @param hashKind identifies how the hash was computed, e.g. the hash function, so that hashes
+   *     computed in different ways are cached separately.
+   */
+  Optional<HashCode> get(TargetNode<?> node, String hashKind);
+
+  void put(TargetNode<?> node, String hashKind, HashCode hash);
+}
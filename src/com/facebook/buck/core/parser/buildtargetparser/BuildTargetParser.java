@@ -31,8 +31,6 @@ import com.facebook.buck.core.model.impl.ImmutableUnconfiguredBuildTargetView;
 import com.facebook.buck.core.model.impl.ImmutableUnflavoredBuildTargetView;
 import com.facebook.buck.util.RichStream;
 import com.google.common.base.Splitter;
-import com.google.common.collect.Interner;
-import com.google.common.collect.Interners;
 import java.nio.file.Path;
 import java.util.HashSet;
 import java.util.List;
@@ -53,9 +51,6 @@ class BuildTargetParser {
   private static final String BUILD_RULE_SEPARATOR = ":";
   private static final Splitter BUILD_RULE_SEPARATOR_SPLITTER = Splitter.on(BUILD_RULE_SEPARATOR);
 
-  private final Interner<UnconfiguredBuildTargetView> flavoredTargetCache =
-      Interners.newWeakInterner();
-
   private final FlavorParser flavorParser = new FlavorParser();
 
   private BuildTargetParser() {
@@ -135,9 +130,8 @@ class BuildTargetParser {
       // owning cell.
       UnflavoredBuildTargetView unflavoredBuildTargetView =
           ImmutableUnflavoredBuildTargetView.of(cellPath, canonicalCellName, baseName, shortName);
-      return flavoredTargetCache.intern(
-          ImmutableUnconfiguredBuildTargetView.of(
-              unflavoredBuildTargetView, RichStream.from(flavorNames).map(InternalFlavor::of)));
+      return ImmutableUnconfiguredBuildTargetView.of(
+          unflavoredBuildTargetView, RichStream.from(flavorNames).map(InternalFlavor::of));
     } catch (HumanReadableException e) {
       throw new BuildTargetParseException(
           e,
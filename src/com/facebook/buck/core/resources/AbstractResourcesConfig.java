@@ -55,6 +55,16 @@ abstract class AbstractResourcesConfig implements ConfigView<BuckConfig> {
         .getBooleanValue(RESOURCES_SECTION_HEADER, "resource_aware_scheduling_enabled", false);
   }
 
+  /**
+   * @return whether to size rules from the CPU time and memory they used when previously built
+   *     locally, rather than from {@link #getResourceAmountsPerRuleType()}.
+   */
+  @Value.Lazy
+  public boolean isAdaptiveResourceAmountsEnabled() {
+    return getDelegate()
+        .getBooleanValue(RESOURCES_SECTION_HEADER, "adaptive_resource_amounts_enabled", false);
+  }
+
   @Value.Lazy
   public ImmutableMap<String, ResourceAmounts> getResourceAmountsPerRuleType() {
     ImmutableMap.Builder<String, ResourceAmounts> result = ImmutableMap.builder();
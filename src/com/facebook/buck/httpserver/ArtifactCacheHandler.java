@@ -26,10 +26,12 @@ import com.facebook.buck.core.util.log.Logger;
 import com.facebook.buck.io.file.BorrowablePath;
 import com.facebook.buck.io.file.LazyPath;
 import com.facebook.buck.io.filesystem.ProjectFilesystem;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.io.ByteSource;
 import com.google.common.util.concurrent.Futures;
 import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
@@ -84,6 +86,8 @@ public class ArtifactCacheHandler extends AbstractHandler {
       status = handleGet(baseRequest, response);
     } else if (method.equals("PUT")) {
       status = handlePut(baseRequest, response);
+    } else if (method.equals("POST")) {
+      status = handleMultiFetch(baseRequest, response);
     }
     return status;
   }
@@ -132,6 +136,52 @@ public class ArtifactCacheHandler extends AbstractHandler {
     }
   }
 
+  private int handleMultiFetch(Request baseRequest, HttpServletResponse response)
+      throws IOException {
+    if (!baseRequest.getHttpURI().getPath().equals("/artifacts/multifetch")) {
+      response.getWriter().write("Incorrect url format.");
+      return HttpServletResponse.SC_INTERNAL_SERVER_ERROR;
+    }
+
+    ImmutableList<RuleKey> ruleKeys;
+    try (DataInputStream requestInputData = new DataInputStream(baseRequest.getInputStream())) {
+      ruleKeys = HttpArtifactCacheBinaryProtocol.readMultiFetchRequest(requestInputData);
+    }
+
+    // Artifacts are streamed as they are fetched, so the status has to be sent first.
+    response.setStatus(HttpServletResponse.SC_OK);
+    projectFilesystem.mkdirs(projectFilesystem.getBuckPaths().getScratchDir());
+    DataOutputStream responseOutputData = new DataOutputStream(response.getOutputStream());
+    for (RuleKey ruleKey : ruleKeys) {
+      Path temp =
+          projectFilesystem.createTempFile(
+              projectFilesystem.getBuckPaths().getScratchDir(), "outgoing_rulekey", ".tmp");
+      try {
+        CacheResult fetchResult =
+            Futures.getUnchecked(
+                artifactCache.get().fetchAsync(null, ruleKey, LazyPath.ofInstance(temp)));
+        if (!fetchResult.getType().isSuccess()) {
+          HttpArtifactCacheBinaryProtocol.writeMultiFetchResponseMiss(responseOutputData);
+          continue;
+        }
+        new HttpArtifactCacheBinaryProtocol.FetchResponse(
+                ImmutableSet.of(ruleKey),
+                fetchResult.getMetadata(),
+                new ByteSource() {
+                  @Override
+                  public InputStream openStream() throws IOException {
+                    return projectFilesystem.newFileInputStream(temp);
+                  }
+                })
+            .writeMultiFetchEntry(responseOutputData);
+      } finally {
+        projectFilesystem.deleteFileAtPathIfExists(temp);
+      }
+    }
+    responseOutputData.flush();
+    return HttpServletResponse.SC_OK;
+  }
+
   private int handlePut(Request baseRequest, HttpServletResponse response) throws IOException {
     Path temp = null;
     try {
@@ -51,6 +51,22 @@ abstract class AbstractBuckPaths {
     return getConfiguredBuckOut().resolve(".currentversion");
   }
 
+  @Value.Derived
+  public Path getFileHashCacheSnapshot() {
+    return getBuckOut().resolve(".file_hash_cache");
+  }
+
+  @Value.Derived
+  public Path getParserStateSnapshot() {
+    return getBuckOut().resolve(".parser_state");
+  }
+
+  /** Stubs of class files, which are kept out of {@link #getCacheDir()} and its eviction. */
+  @Value.Derived
+  public Path getClassAbiCacheDir() {
+    return getBuckOut().resolve(".class_abi_cache");
+  }
+
   @Value.Derived
   public Path getGenDir() {
     return getConfiguredBuckOut().resolve("gen");
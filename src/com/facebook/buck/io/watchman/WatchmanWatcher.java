@@ -256,7 +256,6 @@ public class WatchmanWatcher {
     }
   }
 
-  @SuppressWarnings("unchecked")
   private void postEvents(
       BuckEventBus buckEventBus,
       FreshInstanceAction freshInstanceAction,
@@ -305,122 +304,22 @@ public class WatchmanWatcher {
           throw e;
         }
 
+        // The cursor only moves past the changes once they're posted, and so applied by the
+        // subscribers of the synchronous file change event bus. A snapshot of the parser state
+        // that records the cursor then never misses the changes it covers.
+        String newCursor = null;
         if (cursor.get().startsWith("c:")) {
           // Update the clockId
-          String newCursor =
+          newCursor =
               Optional.ofNullable((String) response.get("clock"))
                   .orElse(WatchmanFactory.NULL_CLOCK);
+        }
+        postChanges(
+            buckEventBus, freshInstanceAction, cellPath, response, filesHaveChanged, perfEvent);
+        if (newCursor != null) {
           LOG.debug("Updating Watchman Cursor from %s to %s", cursor.get(), newCursor);
           cursor.set(newCursor);
         }
-
-        String warning = (String) response.get("warning");
-        if (warning != null) {
-          buckEventBus.post(
-              new WatchmanDiagnosticEvent(
-                  WatchmanDiagnostic.of(WatchmanDiagnostic.Level.WARNING, warning)));
-        }
-
-        Boolean isFreshInstance = (Boolean) response.get("is_fresh_instance");
-        if (isFreshInstance != null && isFreshInstance) {
-          LOG.debug(
-              "Watchman indicated a fresh instance (fresh instance action %s)",
-              freshInstanceAction);
-          switch (freshInstanceAction) {
-            case NONE:
-              break;
-            case POST_OVERFLOW_EVENT:
-              postWatchEvent(
-                  buckEventBus,
-                  ImmutableWatchmanOverflowEvent.of(
-                      cellPath, "Watchman has been initialized recently."));
-              break;
-          }
-          filesHaveChanged.set(true);
-          return;
-        }
-
-        List<Map<String, Object>> files = (List<Map<String, Object>>) response.get("files");
-        if (files == null) {
-          if (freshInstanceAction == FreshInstanceAction.NONE) {
-            filesHaveChanged.set(true);
-          }
-          return;
-        }
-        LOG.debug("Watchman indicated %d changes", files.size());
-        if (files.size() > OVERFLOW_THRESHOLD) {
-          LOG.warn(
-              "Posting overflow event: too many files changed: %d > %d",
-              files.size(), OVERFLOW_THRESHOLD);
-          postWatchEvent(
-              buckEventBus, ImmutableWatchmanOverflowEvent.of(cellPath, "Too many files changed."));
-          filesHaveChanged.set(true);
-          return;
-        }
-        if (files.size() < TRACE_CHANGES_THRESHOLD) {
-          perfEvent.appendFinishedInfo("files", files);
-        } else {
-          perfEvent.appendFinishedInfo("files_sample", files.subList(0, TRACE_CHANGES_THRESHOLD));
-        }
-
-        FileSystem fileSystem = cellPath.getFileSystem();
-        List<WatchmanMultiplePathEvent.Change> changes = new ArrayList<>(files.size());
-        for (Map<String, Object> file : files) {
-          String fileName = (String) file.get("name");
-          if (fileName == null) {
-            LOG.warn("Filename missing from watchman file response %s", file);
-            postWatchEvent(
-                buckEventBus,
-                ImmutableWatchmanOverflowEvent.of(
-                    cellPath, "Filename missing from watchman response."));
-            filesHaveChanged.set(true);
-            return;
-          }
-          Boolean fileNew = (Boolean) file.get("new");
-          WatchmanEvent.Kind kind = WatchmanEvent.Kind.MODIFY;
-          if (fileNew != null && fileNew) {
-            kind = WatchmanEvent.Kind.CREATE;
-          }
-          Boolean fileExists = (Boolean) file.get("exists");
-          if (fileExists != null && !fileExists) {
-            kind = WatchmanEvent.Kind.DELETE;
-          }
-
-          // Following legacy behavior, everything we get from Watchman is interpreted as file
-          // changes unless explicitly specified with `type` field
-          WatchmanEvent.Type type = Type.FILE;
-          String stype = (String) file.get("type");
-          if (stype != null) {
-            switch (stype) {
-              case "d":
-                type = Type.DIRECTORY;
-                break;
-              case "l":
-                type = Type.SYMLINK;
-                break;
-            }
-          }
-
-          Path filePath = fileSystem.getPath(fileName);
-
-          changes.add(new ImmutableChange(type, filePath, kind));
-
-          if (type != WatchmanEvent.Type.DIRECTORY) {
-            // WatchmanPathEvent is sent for everything but directories - this is legacy
-            // behavior and we want to keep it.
-            // TODO(buck_team): switch everything to use WatchmanMultiplePathEvent and retire
-            // WatchmanPathEvent
-            postWatchEvent(buckEventBus, ImmutableWatchmanPathEvent.of(cellPath, kind, filePath));
-          }
-        }
-
-        if (!changes.isEmpty()) {
-          postWatchEvent(buckEventBus, new ImmutableWatchmanMultiplePathEvent(cellPath, changes));
-        }
-
-        if (!files.isEmpty() || freshInstanceAction == FreshInstanceAction.NONE) {
-          filesHaveChanged.set(true);
-        }
       }
     } catch (InterruptedException e) {
       String message = "The communication with watchman daemon has been interrupted.";
@@ -439,6 +338,123 @@ public class WatchmanWatcher {
     }
   }
 
+  @SuppressWarnings("unchecked")
+  private void postChanges(
+      BuckEventBus buckEventBus,
+      FreshInstanceAction freshInstanceAction,
+      Path cellPath,
+      Map<String, ? extends Object> response,
+      AtomicBoolean filesHaveChanged,
+      SimplePerfEvent.Scope perfEvent) {
+    String warning = (String) response.get("warning");
+    if (warning != null) {
+      buckEventBus.post(
+          new WatchmanDiagnosticEvent(
+              WatchmanDiagnostic.of(WatchmanDiagnostic.Level.WARNING, warning)));
+    }
+
+    Boolean isFreshInstance = (Boolean) response.get("is_fresh_instance");
+    if (isFreshInstance != null && isFreshInstance) {
+      LOG.debug(
+          "Watchman indicated a fresh instance (fresh instance action %s)",
+          freshInstanceAction);
+      switch (freshInstanceAction) {
+        case NONE:
+          break;
+        case POST_OVERFLOW_EVENT:
+          postWatchEvent(
+              buckEventBus,
+              ImmutableWatchmanOverflowEvent.of(
+                  cellPath, "Watchman has been initialized recently."));
+          break;
+      }
+      filesHaveChanged.set(true);
+      return;
+    }
+
+    List<Map<String, Object>> files = (List<Map<String, Object>>) response.get("files");
+    if (files == null) {
+      if (freshInstanceAction == FreshInstanceAction.NONE) {
+        filesHaveChanged.set(true);
+      }
+      return;
+    }
+    LOG.debug("Watchman indicated %d changes", files.size());
+    if (files.size() > OVERFLOW_THRESHOLD) {
+      LOG.warn(
+          "Posting overflow event: too many files changed: %d > %d",
+          files.size(), OVERFLOW_THRESHOLD);
+      postWatchEvent(
+          buckEventBus, ImmutableWatchmanOverflowEvent.of(cellPath, "Too many files changed."));
+      filesHaveChanged.set(true);
+      return;
+    }
+    if (files.size() < TRACE_CHANGES_THRESHOLD) {
+      perfEvent.appendFinishedInfo("files", files);
+    } else {
+      perfEvent.appendFinishedInfo("files_sample", files.subList(0, TRACE_CHANGES_THRESHOLD));
+    }
+
+    FileSystem fileSystem = cellPath.getFileSystem();
+    List<WatchmanMultiplePathEvent.Change> changes = new ArrayList<>(files.size());
+    for (Map<String, Object> file : files) {
+      String fileName = (String) file.get("name");
+      if (fileName == null) {
+        LOG.warn("Filename missing from watchman file response %s", file);
+        postWatchEvent(
+            buckEventBus,
+            ImmutableWatchmanOverflowEvent.of(
+                cellPath, "Filename missing from watchman response."));
+        filesHaveChanged.set(true);
+        return;
+      }
+      Boolean fileNew = (Boolean) file.get("new");
+      WatchmanEvent.Kind kind = WatchmanEvent.Kind.MODIFY;
+      if (fileNew != null && fileNew) {
+        kind = WatchmanEvent.Kind.CREATE;
+      }
+      Boolean fileExists = (Boolean) file.get("exists");
+      if (fileExists != null && !fileExists) {
+        kind = WatchmanEvent.Kind.DELETE;
+      }
+
+      // Following legacy behavior, everything we get from Watchman is interpreted as file
+      // changes unless explicitly specified with `type` field
+      WatchmanEvent.Type type = Type.FILE;
+      String stype = (String) file.get("type");
+      if (stype != null) {
+        switch (stype) {
+          case "d":
+            type = Type.DIRECTORY;
+            break;
+          case "l":
+            type = Type.SYMLINK;
+            break;
+        }
+      }
+
+      Path filePath = fileSystem.getPath(fileName);
+
+      changes.add(new ImmutableChange(type, filePath, kind));
+
+      if (type != WatchmanEvent.Type.DIRECTORY) {
+        // WatchmanPathEvent is sent for everything but directories - this is legacy
+        // behavior and we want to keep it.
+        // TODO(buck_team): switch everything to use WatchmanMultiplePathEvent and retire
+        // WatchmanPathEvent
+        postWatchEvent(buckEventBus, ImmutableWatchmanPathEvent.of(cellPath, kind, filePath));
+      }
+    }
+
+    if (!changes.isEmpty()) {
+      postWatchEvent(buckEventBus, new ImmutableWatchmanMultiplePathEvent(cellPath, changes));
+    }
+
+    if (!files.isEmpty() || freshInstanceAction == FreshInstanceAction.NONE) {
+      filesHaveChanged.set(true);
+    }
+  }
+
   private void postWatchEvent(BuckEventBus eventBus, WatchmanEvent event) {
     LOG.debug("Posting WatchEvent: %s", event);
     fileChangeEventBus.post(event);
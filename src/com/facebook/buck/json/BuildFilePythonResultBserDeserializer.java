@@ -0,0 +1,116 @@
+/*
+ * Copyright 2019-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.json;
+
+import com.facebook.buck.util.ImmutableMapWithNullValues;
+import com.facebook.buck.util.bser.BserDeserializer;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import javax.annotation.Nullable;
+
+/**
+ * BSER deserializer of the output of {@code buck.py} into {@link BuildFilePythonResult}, used when
+ * {@code buck.py} runs with {@code --bser_output}.
+ *
+ * <p>Produces the same types as {@link BuildFilePythonResultDeserializer}: integers are {@link
+ * Long}, lists are {@link ImmutableList}, maps are {@link ImmutableMapWithNullValues} and strings
+ * are interned. Not thread-safe.
+ */
+public final class BuildFilePythonResultBserDeserializer {
+  private static final Interner<String> STRING_INTERNER = Interners.newWeakInterner();
+
+  private final BserDeserializer deserializer =
+      new BserDeserializer(BserDeserializer.KeyOrdering.UNSORTED);
+
+  /** Reads the next result from {@code inputStream}. */
+  public BuildFilePythonResult deserialize(InputStream inputStream) throws IOException {
+    Object result = deserializer.deserializeBserValue(inputStream);
+    if (!(result instanceof Map)) {
+      throw new IOException("Expected a BSER object, got: " + result);
+    }
+    ImmutableList<Map<String, Object>> values = ImmutableList.of();
+    ImmutableList<Map<String, Object>> diagnostics = ImmutableList.of();
+    Optional<String> profile = Optional.empty();
+    for (Map.Entry<?, ?> entry : ((Map<?, ?>) result).entrySet()) {
+      String fieldName = (String) entry.getKey();
+      switch (fieldName) {
+        case "values":
+          values = convertObjectList(entry.getValue());
+          break;
+        case "diagnostics":
+          diagnostics = convertObjectList(entry.getValue());
+          break;
+        case "profile":
+          profile = Optional.of((String) entry.getValue());
+          break;
+        default:
+          throw new IOException("Unexpected field name: " + fieldName);
+      }
+    }
+    return BuildFilePythonResult.of(values, diagnostics, profile);
+  }
+
+  private static ImmutableList<Map<String, Object>> convertObjectList(@Nullable Object value)
+      throws IOException {
+    if (!(value instanceof List)) {
+      throw new IOException("Expected a BSER array, got: " + value);
+    }
+    ImmutableList.Builder<Map<String, Object>> result = ImmutableList.builder();
+    for (Object element : (List<?>) value) {
+      if (!(element instanceof Map)) {
+        throw new IOException("Expected a BSER object, got: " + element);
+      }
+      result.add(convertObject((Map<?, ?>) element));
+    }
+    return result.build();
+  }
+
+  private static Map<String, Object> convertObject(Map<?, ?> map) throws IOException {
+    ImmutableMapWithNullValues.Builder<String, Object> builder =
+        ImmutableMapWithNullValues.Builder.insertionOrder();
+    for (Map.Entry<?, ?> entry : map.entrySet()) {
+      builder.put(STRING_INTERNER.intern((String) entry.getKey()), convert(entry.getValue()));
+    }
+    return builder.build();
+  }
+
+  @Nullable
+  private static Object convert(@Nullable Object value) throws IOException {
+    if (value == null || value instanceof Boolean || value instanceof Double) {
+      return value;
+    } else if (value instanceof Number) {
+      return ((Number) value).longValue();
+    } else if (value instanceof String) {
+      return STRING_INTERNER.intern((String) value);
+    } else if (value instanceof List) {
+      ImmutableList.Builder<Object> builder = ImmutableList.builder();
+      for (Object element : (List<?>) value) {
+        builder.add(convert(element));
+      }
+      return builder.build();
+    } else if (value instanceof Map) {
+      return convertObject((Map<?, ?>) value);
+    }
+    throw new IOException("Unexpected BSER value: " + value);
+  }
+}
@@ -73,6 +73,18 @@ abstract class AbstractCompilerOutputPaths {
         .resolve("used-classes.json");
   }
 
+  /**
+   * Returns the directory keeping the state of incremental compilation between builds. Unlike the
+   * other output paths, it isn't cleaned before building the library.
+   */
+  public static Path getIncrementalStateDir(BuildTarget target, ProjectFilesystem filesystem) {
+    return BuildTargetPaths.getScratchPath(filesystem, target, "lib__%s__incremental");
+  }
+
+  public static Path getSourceClassUsageFilePath(BuildTarget target, ProjectFilesystem filesystem) {
+    return getIncrementalStateDir(target, filesystem).resolve("source-class-usage.json");
+  }
+
   public static Path getClassesDir(BuildTarget target, ProjectFilesystem filesystem) {
     return CompilerOutputPaths.of(target, filesystem).getClassesDir();
   }
@@ -65,6 +65,11 @@ abstract class AbstractCompilerParameters {
     return false;
   }
 
+  @Value.Default
+  public boolean shouldTrackSourceClassUsage() {
+    return false;
+  }
+
   @Nullable
   public abstract SourceOnlyAbiRuleInfoFactory getSourceOnlyAbiRuleInfoFactory();
 
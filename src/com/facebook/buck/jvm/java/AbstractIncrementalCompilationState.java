@@ -0,0 +1,46 @@
+/*
+ * Copyright 2019-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.jvm.java;
+
+import com.facebook.buck.core.util.immutables.BuckStyleImmutable;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSortedMap;
+import org.immutables.value.Value;
+
+/** What an incremental compilation of a library needs to know about its previous compilation. */
+@Value.Immutable
+@BuckStyleImmutable
+@JsonSerialize(as = IncrementalCompilationState.class)
+@JsonDeserialize(as = IncrementalCompilationState.class)
+abstract class AbstractIncrementalCompilationState {
+  /** The javac options, which include the classpath, and the versions of the compiler. */
+  public abstract ImmutableList<String> getCompilationKey();
+
+  /** Hashes of the names of the classes in each classpath entry. */
+  public abstract ImmutableSortedMap<String, String> getClasspathListingHashes();
+
+  /** Hashes of the contents of the sources, by path relative to the project root. */
+  public abstract ImmutableSortedMap<String, String> getSourceHashes();
+
+  /** The class usage of the sources, by path relative to the project root. */
+  public abstract ImmutableSortedMap<String, SourceClassUsage> getSourceClassUsages();
+
+  /** Hashes of the classpath classes used by any of the sources, by binary name. */
+  public abstract ImmutableSortedMap<String, String> getClasspathClassHashes();
+}
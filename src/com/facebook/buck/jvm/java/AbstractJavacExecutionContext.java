@@ -24,8 +24,10 @@ import com.facebook.buck.jvm.core.JavaPackageFinder;
 import com.facebook.buck.util.ClassLoaderCache;
 import com.facebook.buck.util.ProcessExecutor;
 import com.facebook.buck.util.Verbosity;
+import com.facebook.buck.util.hashing.FileHashLoader;
 import com.google.common.collect.ImmutableMap;
 import java.io.PrintStream;
+import java.util.Optional;
 import org.immutables.value.Value;
 
 @Value.Immutable
@@ -50,4 +52,10 @@ abstract class AbstractJavacExecutionContext {
   public abstract ImmutableMap<String, String> getEnvironment();
 
   public abstract ProcessExecutor getProcessExecutor();
+
+  /**
+   * The hashes of jars on the classpath, if in-process javac should list their classes from
+   * indexes shared by all compilations.
+   */
+  public abstract Optional<FileHashLoader> getClasspathJarHashLoader();
 }
@@ -131,6 +131,28 @@ abstract class AbstractJavacOptions implements AddsToRuleKey {
     return false;
   }
 
+  /**
+   * Whether libraries compiled to intermediate class files recompile only the sources affected by
+   * changes since their previous build. This doesn't change their outputs, so it's not part of the
+   * rule key.
+   */
+  @Value.Default
+  @CustomFieldBehavior(DefaultFieldSerialization.class)
+  protected boolean isIncrementalCompilationEnabled() {
+    return false;
+  }
+
+  /**
+   * Whether in-process javac lists the classes of jars on the classpath from indexes shared by all
+   * compilations, instead of opening and indexing each jar again. This doesn't change the outputs,
+   * so it's not part of the rule key.
+   */
+  @Value.Default
+  @CustomFieldBehavior(DefaultFieldSerialization.class)
+  protected boolean isClasspathJarMappingEnabled() {
+    return false;
+  }
+
   public void validateOptions(Function<String, Boolean> classpathChecker) throws IOException {
     if (getBootclasspath().isPresent()) {
       String bootclasspath = getBootclasspath().get();
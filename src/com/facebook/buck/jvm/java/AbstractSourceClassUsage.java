@@ -0,0 +1,37 @@
+/*
+ * Copyright 2019-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.jvm.java;
+
+import com.facebook.buck.core.util.immutables.BuckStyleImmutable;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import com.google.common.collect.ImmutableSortedSet;
+import org.immutables.value.Value;
+
+/**
+ * The classes that a source file depended on when it was compiled, and the classes that were
+ * generated from it, by binary name.
+ */
+@Value.Immutable
+@BuckStyleImmutable
+@JsonSerialize(as = SourceClassUsage.class)
+@JsonDeserialize(as = SourceClassUsage.class)
+abstract class AbstractSourceClassUsage {
+  public abstract ImmutableSortedSet<String> getUsedClasses();
+
+  public abstract ImmutableSortedSet<String> getGeneratedClasses();
+}
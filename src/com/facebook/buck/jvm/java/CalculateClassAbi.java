@@ -19,6 +19,8 @@ package com.facebook.buck.jvm.java;
 import com.facebook.buck.core.build.context.BuildContext;
 import com.facebook.buck.core.model.BuildTarget;
 import com.facebook.buck.core.rulekey.AddToRuleKey;
+import com.facebook.buck.core.rulekey.CustomFieldBehavior;
+import com.facebook.buck.core.rulekey.DefaultFieldSerialization;
 import com.facebook.buck.core.rules.SourcePathRuleFinder;
 import com.facebook.buck.core.rules.attr.BuildOutputInitializer;
 import com.facebook.buck.core.rules.attr.InitializableFromDisk;
@@ -49,7 +51,8 @@ public class CalculateClassAbi extends ModernBuildRule<CalculateClassAbi.Impl>
       ProjectFilesystem projectFilesystem,
       SourcePathRuleFinder ruleFinder,
       SourcePath binaryJar,
-      AbiGenerationMode compatibilityMode) {
+      AbiGenerationMode compatibilityMode,
+      long classAbiCacheMaxSizeBytes) {
     super(
         buildTarget,
         projectFilesystem,
@@ -57,6 +60,7 @@ public class CalculateClassAbi extends ModernBuildRule<CalculateClassAbi.Impl>
         new Impl(
             binaryJar,
             compatibilityMode,
+            classAbiCacheMaxSizeBytes,
             projectFilesystem,
             String.format("%s-abi.jar", buildTarget.getShortName())));
     this.javaAbiInfo = new DefaultJavaAbiInfo(getSourcePathToOutput());
@@ -67,8 +71,15 @@ public class CalculateClassAbi extends ModernBuildRule<CalculateClassAbi.Impl>
       BuildTarget target,
       SourcePathRuleFinder ruleFinder,
       ProjectFilesystem projectFilesystem,
-      SourcePath library) {
-    return of(target, ruleFinder, projectFilesystem, library, AbiGenerationMode.CLASS);
+      SourcePath library,
+      long classAbiCacheMaxSizeBytes) {
+    return of(
+        target,
+        ruleFinder,
+        projectFilesystem,
+        library,
+        AbiGenerationMode.CLASS,
+        classAbiCacheMaxSizeBytes);
   }
 
   public static CalculateClassAbi of(
@@ -76,8 +87,15 @@ public class CalculateClassAbi extends ModernBuildRule<CalculateClassAbi.Impl>
       SourcePathRuleFinder ruleFinder,
       ProjectFilesystem projectFilesystem,
       SourcePath library,
-      AbiGenerationMode compatibilityMode) {
-    return new CalculateClassAbi(target, projectFilesystem, ruleFinder, library, compatibilityMode);
+      AbiGenerationMode compatibilityMode,
+      long classAbiCacheMaxSizeBytes) {
+    return new CalculateClassAbi(
+        target,
+        projectFilesystem,
+        ruleFinder,
+        library,
+        compatibilityMode,
+        classAbiCacheMaxSizeBytes);
   }
 
   /** CalculateClassAbi's buildable implementation required by MBR */
@@ -90,15 +108,21 @@ public class CalculateClassAbi extends ModernBuildRule<CalculateClassAbi.Impl>
      */
     @AddToRuleKey private final AbiGenerationMode compatibilityMode;
 
+    /** The size of the stubs cache doesn't change the ABI, so it's not part of the rule key. */
+    @CustomFieldBehavior(DefaultFieldSerialization.class)
+    private final long classAbiCacheMaxSizeBytes;
+
     @AddToRuleKey private final OutputPath output;
 
     Impl(
         SourcePath binaryJar,
         AbiGenerationMode compatibilityMode,
+        long classAbiCacheMaxSizeBytes,
         ProjectFilesystem projectFilesystem,
         String outputFileName) {
       this.binaryJar = binaryJar;
       this.compatibilityMode = compatibilityMode;
+      this.classAbiCacheMaxSizeBytes = classAbiCacheMaxSizeBytes;
       this.output = new OutputPath(projectFilesystem.getPath(outputFileName));
     }
 
@@ -113,7 +137,8 @@ public class CalculateClassAbi extends ModernBuildRule<CalculateClassAbi.Impl>
               filesystem,
               buildContext.getSourcePathResolver().getAbsolutePath(binaryJar),
               outputPathResolver.resolvePath(output),
-              compatibilityMode));
+              compatibilityMode,
+              classAbiCacheMaxSizeBytes));
     }
   }
 
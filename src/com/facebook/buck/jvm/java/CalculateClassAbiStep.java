@@ -19,36 +19,67 @@ package com.facebook.buck.jvm.java;
 import com.facebook.buck.core.build.execution.context.ExecutionContext;
 import com.facebook.buck.io.filesystem.ProjectFilesystem;
 import com.facebook.buck.jvm.java.abi.AbiGenerationMode;
+import com.facebook.buck.jvm.java.abi.ClassAbiCache;
 import com.facebook.buck.jvm.java.abi.StubJar;
 import com.facebook.buck.step.Step;
 import com.facebook.buck.step.StepExecutionResult;
 import com.facebook.buck.step.StepExecutionResults;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import java.io.IOException;
 import java.nio.file.Path;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 public class CalculateClassAbiStep implements Step {
+  /** Class ABI caches by directory, shared by the steps so that they prune the caches together. */
+  private static final ConcurrentMap<Path, ClassAbiCache> classAbiCaches =
+      new ConcurrentHashMap<>();
+
+  /**
+   * Stubs the class files of all the steps. Stubbing is CPU bound, so there is a thread per
+   * processor, and the threads exit when idle.
+   */
+  private static final ExecutorService stubExecutor = createStubExecutor();
 
   private final ProjectFilesystem filesystem;
   private final Path binaryJar;
   private final Path abiJar;
   private final AbiGenerationMode compatibilityMode;
+  private final long classAbiCacheMaxSizeBytes;
 
+  /**
+   * @param classAbiCacheMaxSizeBytes the size of the stubs kept in the class ABI cache, which is
+   *     taken from the first step that uses the cache.
+   */
   public CalculateClassAbiStep(
       ProjectFilesystem filesystem,
       Path binaryJar,
       Path abiJar,
-      AbiGenerationMode compatibilityMode) {
+      AbiGenerationMode compatibilityMode,
+      long classAbiCacheMaxSizeBytes) {
     this.filesystem = filesystem;
     this.binaryJar = binaryJar;
     this.abiJar = abiJar;
     this.compatibilityMode = compatibilityMode;
+    this.classAbiCacheMaxSizeBytes = classAbiCacheMaxSizeBytes;
   }
 
   @Override
   public StepExecutionResult execute(ExecutionContext context) throws IOException {
     try {
       Path binJar = filesystem.resolve(binaryJar);
-      new StubJar(binJar).setCompatibilityMode(compatibilityMode).writeTo(filesystem, abiJar);
+      new StubJar(binJar)
+          .setCompatibilityMode(compatibilityMode)
+          .setClassAbiCache(
+              classAbiCaches.computeIfAbsent(
+                  getClassAbiCacheDir(filesystem),
+                  cacheDir -> new ClassAbiCache(cacheDir, classAbiCacheMaxSizeBytes)))
+          .setStubExecutor(stubExecutor)
+          .writeTo(filesystem, abiJar);
     } catch (IllegalArgumentException e) {
       context.logError(e, "Failed to calculate ABI for %s.", binaryJar);
       return StepExecutionResults.ERROR;
@@ -57,6 +88,29 @@ public class CalculateClassAbiStep implements Step {
     return StepExecutionResults.SUCCESS;
   }
 
+  /**
+   * The stubs of class files are cached in the buck-out of the checkout, where they're reused by
+   * all its libraries and prebuilt jars with the same classes, and by its later builds until
+   * buck-out is cleaned.
+   */
+  static Path getClassAbiCacheDir(ProjectFilesystem filesystem) {
+    return filesystem.resolve(filesystem.getBuckPaths().getClassAbiCacheDir());
+  }
+
+  private static ExecutorService createStubExecutor() {
+    int threads = Runtime.getRuntime().availableProcessors();
+    ThreadPoolExecutor executor =
+        new ThreadPoolExecutor(
+            threads,
+            threads,
+            60,
+            TimeUnit.SECONDS,
+            new LinkedBlockingQueue<>(),
+            new ThreadFactoryBuilder().setNameFormat("class-abi-%d").setDaemon(true).build());
+    executor.allowCoreThreadTimeOut(true);
+    return executor;
+  }
+
   @Override
   public String getShortName() {
     return "class_abi";
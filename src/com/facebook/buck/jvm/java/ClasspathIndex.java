@@ -0,0 +1,160 @@
+/*
+ * Copyright 2019-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.jvm.java;
+
+import com.facebook.buck.io.pathformat.PathFormatter;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSortedMap;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.common.io.ByteStreams;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * The class files on a compilation classpath, which incremental compilation compares with the ones
+ * a library was compiled against before.
+ */
+class ClasspathIndex implements Closeable {
+  private final ImmutableList<Path> entries;
+  private final Map<Path, ZipFile> jars = new HashMap<>();
+  private final Map<String, Optional<String>> classHashes = new HashMap<>();
+
+  private ClasspathIndex(ImmutableList<Path> entries) {
+    this.entries = entries;
+  }
+
+  /** Indexes the given classpath entries, which are searched for classes in order. */
+  static ClasspathIndex of(Iterable<Path> entries) throws IOException {
+    ClasspathIndex index = new ClasspathIndex(ImmutableList.copyOf(entries));
+    try {
+      for (Path entry : index.entries) {
+        if (Files.isRegularFile(entry)) {
+          index.jars.put(entry, new ZipFile(entry.toFile()));
+        }
+      }
+    } catch (IOException e) {
+      index.close();
+      throw e;
+    }
+    return index;
+  }
+
+  /**
+   * Returns a hash of the names of the class files in each classpath entry, which changes when
+   * classes are added or removed, and thereby may change what names in sources resolve to.
+   */
+  ImmutableSortedMap<String, String> getListingHashes() throws IOException {
+    ImmutableSortedMap.Builder<String, String> hashes = ImmutableSortedMap.naturalOrder();
+    for (Path entry : entries) {
+      List<String> names = new ArrayList<>();
+      ZipFile jar = jars.get(entry);
+      if (jar != null) {
+        Enumeration<? extends ZipEntry> zipEntries = jar.entries();
+        while (zipEntries.hasMoreElements()) {
+          String name = zipEntries.nextElement().getName();
+          if (name.endsWith(".class")) {
+            names.add(name);
+          }
+        }
+      } else if (Files.isDirectory(entry)) {
+        try (Stream<Path> files = Files.walk(entry)) {
+          names.addAll(
+              files
+                  .filter(file -> file.toString().endsWith(".class"))
+                  .map(file -> PathFormatter.pathWithUnixSeparators(entry.relativize(file)))
+                  .collect(Collectors.toList()));
+        }
+      }
+      Collections.sort(names);
+      Hasher hasher = Hashing.sha1().newHasher();
+      for (String name : names) {
+        hasher.putString(name, StandardCharsets.UTF_8).putByte((byte) 0);
+      }
+      hashes.put(entry.toString(), hasher.hash().toString());
+    }
+    return hashes.build();
+  }
+
+  /**
+   * Returns the hash of the class file that the compiler would read for the class with the given
+   * binary name, or nothing if it's not on the classpath.
+   */
+  Optional<String> getClassHash(String binaryName) throws IOException {
+    Optional<String> hash = classHashes.get(binaryName);
+    if (hash == null) {
+      hash = computeClassHash(binaryName.replace('.', '/') + ".class");
+      classHashes.put(binaryName, hash);
+    }
+    return hash;
+  }
+
+  private Optional<String> computeClassHash(String path) throws IOException {
+    for (Path entry : entries) {
+      ZipFile jar = jars.get(entry);
+      if (jar != null) {
+        ZipEntry zipEntry = jar.getEntry(path);
+        if (zipEntry != null) {
+          try (InputStream inputStream = jar.getInputStream(zipEntry)) {
+            return Optional.of(hash(ByteStreams.toByteArray(inputStream)));
+          }
+        }
+      } else {
+        Path file = entry.resolve(path);
+        if (Files.isRegularFile(file)) {
+          return Optional.of(hash(Files.readAllBytes(file)));
+        }
+      }
+    }
+    return Optional.empty();
+  }
+
+  private static String hash(byte[] classFile) {
+    return Hashing.sha1().hashBytes(classFile).toString();
+  }
+
+  @Override
+  public void close() throws IOException {
+    IOException exception = null;
+    for (ZipFile jar : jars.values()) {
+      try {
+        jar.close();
+      } catch (IOException e) {
+        exception = e;
+      }
+    }
+    jars.clear();
+    if (exception != null) {
+      throw exception;
+    }
+  }
+}
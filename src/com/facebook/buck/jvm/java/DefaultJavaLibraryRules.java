@@ -525,7 +525,8 @@ public abstract class DefaultJavaLibraryRules {
                 getActionGraphBuilder(),
                 getProjectFilesystem(),
                 libraryRule.getSourcePathToOutput(),
-                getAbiCompatibilityMode()));
+                getAbiCompatibilityMode(),
+                Objects.requireNonNull(getJavaBuckConfig()).getClassAbiCacheMaxSizeBytes()));
   }
 
   @Value.Lazy
@@ -90,6 +90,7 @@ public class ExternalJavac implements Javac {
       Path workingDirectory,
       boolean trackClassUsage,
       boolean trackJavacPhaseEvents,
+      boolean trackSourceClassUsage,
       @Nullable JarParameters abiJarParaameters,
       @Nullable JarParameters libraryJarParameters,
       AbiGenerationMode abiGenerationMode,
@@ -0,0 +1,608 @@
+/*
+ * Copyright 2019-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.jvm.java;
+
+import com.facebook.buck.core.build.execution.context.ExecutionContext;
+import com.facebook.buck.core.model.BuildTarget;
+import com.facebook.buck.core.sourcepath.resolver.SourcePathResolver;
+import com.facebook.buck.core.util.log.Logger;
+import com.facebook.buck.io.filesystem.ProjectFilesystem;
+import com.facebook.buck.io.pathformat.PathFormatter;
+import com.facebook.buck.jvm.java.abi.StubJar;
+import com.facebook.buck.step.Step;
+import com.facebook.buck.step.StepExecutionResult;
+import com.facebook.buck.step.StepExecutionResults;
+import com.facebook.buck.util.json.ObjectMappers;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSortedMap;
+import com.google.common.collect.ImmutableSortedSet;
+import com.google.common.collect.Sets;
+import com.google.common.hash.Hashing;
+import com.google.common.io.ByteStreams;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Comparator;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import javax.annotation.Nullable;
+
+/**
+ * Compiles a library to class files like {@link JavacStep}, but after the library was built once,
+ * recompiles only the sources that changed or depend on classes that changed, and reuses the class
+ * files of the other sources from the previous build.
+ *
+ * <p>The classes that each source depends on are tracked while compiling it. Classes on the
+ * classpath are compared with the previous build by the hashes of their class files. Classes of
+ * the library itself are compared by their ABI after recompiling their sources, and the sources
+ * depending on those with a changed ABI are recompiled in turn. Changes that may affect what the
+ * names in any source resolve to, like changed options, classes added to the classpath or new
+ * top-level classes in the library, make it compile all the sources like a clean build.
+ */
+class IncrementalJavacStep implements Step {
+  private static final Logger LOG = Logger.get(IncrementalJavacStep.class);
+
+  /** Changes whenever the meaning of the saved state does, to make the next build a clean one. */
+  private static final String STATE_VERSION = "1";
+
+  private static final String STATE_FILE_NAME = "state.json";
+  private static final String CLASSES_DIR_NAME = "classes";
+  private static final String DEP_FILE_NAME = "used-classes.json";
+  private static final String ABI_DIR_NAME = "abi";
+
+  /**
+   * Recompiling more than this fraction of the sources isn't much faster than compiling all of
+   * them, which is simpler.
+   */
+  private static final double MAX_RECOMPILED_FRACTION = 0.5;
+
+  private final Javac javac;
+  private final JavacOptions javacOptions;
+  private final BuildTarget invokingRule;
+  private final SourcePathResolver resolver;
+  private final ProjectFilesystem filesystem;
+  private final ClasspathChecker classpathChecker;
+  private final CompilerParameters compilerParameters;
+  private final Path classesDir;
+  private final Path stateDir;
+  private final Path stashedClassesDir;
+
+  IncrementalJavacStep(
+      Javac javac,
+      JavacOptions javacOptions,
+      BuildTarget invokingRule,
+      SourcePathResolver resolver,
+      ProjectFilesystem filesystem,
+      ClasspathChecker classpathChecker,
+      CompilerParameters compilerParameters) {
+    this.javac = javac;
+    this.javacOptions = javacOptions;
+    this.invokingRule = invokingRule;
+    this.resolver = resolver;
+    this.filesystem = filesystem;
+    this.classpathChecker = classpathChecker;
+    this.compilerParameters = compilerParameters;
+    this.classesDir = compilerParameters.getOutputPaths().getClassesDir();
+    this.stateDir = CompilerOutputPaths.getIncrementalStateDir(invokingRule, filesystem);
+    this.stashedClassesDir = stateDir.resolve(CLASSES_DIR_NAME);
+  }
+
+  @Override
+  public StepExecutionResult execute(ExecutionContext context)
+      throws IOException, InterruptedException {
+    Optional<IncrementalCompilationState> previousState = readState();
+    // The state describes the stashed classes, which are about to change.
+    filesystem.deleteFileAtPathIfExists(stateDir.resolve(STATE_FILE_NAME));
+    filesystem.deleteFileAtPathIfExists(
+        CompilerOutputPaths.getSourceClassUsageFilePath(invokingRule, filesystem));
+
+    ImmutableList<String> compilationKey = getCompilationKey(context);
+    ImmutableSortedMap<String, String> sourceHashes = getSourceHashes();
+    try (ClasspathIndex classpath = ClasspathIndex.of(compilerParameters.getClasspathEntries())) {
+      ImmutableSortedMap<String, String> listingHashes = classpath.getListingHashes();
+
+      Map<String, SourceClassUsage> usages = new HashMap<>();
+      StepExecutionResult result = null;
+      if (previousState.isPresent()
+          && previousState.get().getCompilationKey().equals(compilationKey)
+          && previousState.get().getClasspathListingHashes().equals(listingHashes)) {
+        result =
+            compileIncrementally(
+                context,
+                previousState.get(),
+                getDirtySources(previousState.get(), sourceHashes, classpath),
+                sourceHashes.keySet(),
+                usages);
+      } else {
+        LOG.debug("%s: compiling all sources, the previous build can't be reused.", invokingRule);
+      }
+      if (result == null) {
+        usages.clear();
+        result = compileAll(context, usages);
+      }
+
+      if (result.isSuccess()) {
+        saveState(compilationKey, listingHashes, sourceHashes, usages, classpath);
+      }
+      return result;
+    }
+  }
+
+  private Optional<IncrementalCompilationState> readState() {
+    Path stateFile = filesystem.resolve(stateDir.resolve(STATE_FILE_NAME));
+    if (!Files.isRegularFile(stateFile)) {
+      return Optional.empty();
+    }
+    try {
+      return Optional.of(ObjectMappers.readValue(stateFile, IncrementalCompilationState.class));
+    } catch (IOException e) {
+      LOG.warn(e, "%s: unable to read the incremental compilation state.", invokingRule);
+      return Optional.empty();
+    }
+  }
+
+  private ImmutableList<String> getCompilationKey(ExecutionContext context) {
+    return ImmutableList.<String>builder()
+        .add(STATE_VERSION)
+        .add(System.getProperty("java.version"))
+        .add(javac.getShortName())
+        .addAll(getOptions(context))
+        .build();
+  }
+
+  private ImmutableList<String> getOptions(ExecutionContext context) {
+    return JavacPipelineState.getOptions(
+        javacOptions,
+        filesystem,
+        resolver,
+        classesDir,
+        compilerParameters.getOutputPaths().getAnnotationPath(),
+        context,
+        compilerParameters.getClasspathEntries());
+  }
+
+  private ImmutableSortedMap<String, String> getSourceHashes() throws IOException {
+    ImmutableSortedMap.Builder<String, String> hashes = ImmutableSortedMap.naturalOrder();
+    for (Path source : compilerParameters.getSourceFilePaths()) {
+      hashes.put(source.toString(), filesystem.computeSha1(source).getHash());
+    }
+    return hashes.build();
+  }
+
+  /** Returns the sources that changed or that depend on changed classes of the classpath. */
+  private Set<String> getDirtySources(
+      IncrementalCompilationState previousState,
+      ImmutableSortedMap<String, String> sourceHashes,
+      ClasspathIndex classpath)
+      throws IOException {
+    Set<String> changedClasses = new HashSet<>();
+    for (Map.Entry<String, String> classHash :
+        previousState.getClasspathClassHashes().entrySet()) {
+      if (!classpath.getClassHash(classHash.getKey()).equals(Optional.of(classHash.getValue()))) {
+        changedClasses.add(classHash.getKey());
+      }
+    }
+
+    Set<String> dirtySources = new TreeSet<>();
+    for (Map.Entry<String, String> sourceHash : sourceHashes.entrySet()) {
+      String source = sourceHash.getKey();
+      SourceClassUsage usage = previousState.getSourceClassUsages().get(source);
+      if (usage == null
+          || !sourceHash.getValue().equals(previousState.getSourceHashes().get(source))
+          || !Sets.intersection(usage.getUsedClasses(), changedClasses).isEmpty()) {
+        dirtySources.add(source);
+      }
+    }
+    return dirtySources;
+  }
+
+  private StepExecutionResult compileAll(
+      ExecutionContext context, Map<String, SourceClassUsage> usages)
+      throws IOException, InterruptedException {
+    filesystem.deleteRecursivelyIfExists(stashedClassesDir);
+    filesystem.deleteFileAtPathIfExists(stateDir.resolve(DEP_FILE_NAME));
+
+    StepExecutionResult result =
+        compile(context, compilerParameters.getSourceFilePaths(), usages, false);
+    if (result.isSuccess()) {
+      stashClasses(usages.keySet(), usages);
+    }
+    return result;
+  }
+
+  /**
+   * Compiles the dirty sources, and the sources that depend on classes whose ABI changed as a
+   * result, until no more ABIs change.
+   *
+   * @return the result of the compilation, or null if all the sources need to be compiled instead
+   */
+  @Nullable
+  private StepExecutionResult compileIncrementally(
+      ExecutionContext context,
+      IncrementalCompilationState previousState,
+      Set<String> dirtySources,
+      Set<String> sources,
+      Map<String, SourceClassUsage> usages)
+      throws IOException, InterruptedException {
+    Path depFile = CompilerOutputPaths.getDepFilePath(invokingRule, filesystem);
+    Path stashedDepFile = stateDir.resolve(DEP_FILE_NAME);
+    if (compilerParameters.shouldTrackClassUsage() && !filesystem.exists(stashedDepFile)) {
+      // The previous build didn't track the classes used by the library.
+      return null;
+    }
+
+    ImmutableSortedMap<String, SourceClassUsage> previousUsages =
+        previousState.getSourceClassUsages();
+    for (String source : sources) {
+      SourceClassUsage usage = previousUsages.get(source);
+      if (usage != null) {
+        usages.put(source, usage);
+      }
+    }
+
+    // Sources using the classes of removed sources need to be compiled to report the errors.
+    Set<String> changedClasses = new HashSet<>();
+    for (Map.Entry<String, SourceClassUsage> usage : previousUsages.entrySet()) {
+      if (!sources.contains(usage.getKey())) {
+        changedClasses.addAll(usage.getValue().getGeneratedClasses());
+      }
+    }
+    Set<String> sourcesToCompile = new TreeSet<>(dirtySources);
+    sourcesToCompile.addAll(getSourcesUsing(usages, changedClasses));
+
+    Set<String> restoredClasses = new HashSet<>();
+    for (String source : Sets.difference(sources, sourcesToCompile)) {
+      for (String className : usages.get(source).getGeneratedClasses()) {
+        copyClass(stashedClassesDir, classesDir, className);
+        restoredClasses.add(className);
+      }
+    }
+
+    StepExecutionResult result = StepExecutionResults.SUCCESS;
+    Set<String> compiledSources = new TreeSet<>();
+    while (!compiledSources.containsAll(sourcesToCompile)) {
+      if (sourcesToCompile.size() > sources.size() * MAX_RECOMPILED_FRACTION) {
+        LOG.debug("%s: too many sources to recompile, compiling all of them.", invokingRule);
+        deleteClasses(classesDir, restoredClasses);
+        return null;
+      }
+
+      Set<String> newSources = new TreeSet<>(Sets.difference(sourcesToCompile, compiledSources));
+      for (String source : newSources) {
+        SourceClassUsage usage = usages.get(source);
+        if (usage != null) {
+          Set<String> staleClasses =
+              Sets.intersection(usage.getGeneratedClasses(), restoredClasses).immutableCopy();
+          deleteClasses(classesDir, staleClasses);
+          restoredClasses.removeAll(staleClasses);
+        }
+      }
+
+      LOG.debug(
+          "%s: recompiling %d of %d sources.",
+          invokingRule, sourcesToCompile.size(), sources.size());
+      result =
+          compile(
+              context,
+              sourcesToCompile.stream()
+                  .map(Paths::get)
+                  .collect(ImmutableSortedSet.toImmutableSortedSet(Comparator.naturalOrder())),
+              usages,
+              true);
+      if (!result.isSuccess()) {
+        return result;
+      }
+      compiledSources.addAll(sourcesToCompile);
+
+      Set<String> previousClasses = new TreeSet<>();
+      Set<String> newClasses = new TreeSet<>();
+      for (String source : newSources) {
+        SourceClassUsage previousUsage = previousUsages.get(source);
+        if (previousUsage != null) {
+          previousClasses.addAll(previousUsage.getGeneratedClasses());
+        }
+        newClasses.addAll(usages.get(source).getGeneratedClasses());
+      }
+      if (!Sets.intersection(newClasses, restoredClasses).isEmpty()) {
+        // Only compiling the sources together reports the duplicate classes.
+        LOG.debug("%s: classes moved between sources, compiling all of them.", invokingRule);
+        deleteClasses(classesDir, restoredClasses);
+        return null;
+      }
+      if (Sets.difference(newClasses, previousClasses).stream()
+          .anyMatch(IncrementalJavacStep::isTopLevelClass)) {
+        // Names in other sources may resolve to the new class now.
+        LOG.debug("%s: top-level classes were added, compiling all sources.", invokingRule);
+        deleteClasses(classesDir, restoredClasses);
+        return null;
+      }
+
+      changedClasses = getClassesWithChangedAbi(previousClasses, newClasses);
+      sourcesToCompile.addAll(getSourcesUsing(usages, changedClasses));
+    }
+
+    if (compilerParameters.shouldTrackClassUsage()) {
+      if (compiledSources.isEmpty()) {
+        filesystem.copyFile(stashedDepFile, depFile);
+      } else {
+        mergeDepFiles(stashedDepFile, depFile);
+      }
+    }
+
+    Set<String> removedSources = Sets.difference(previousUsages.keySet(), sources);
+    for (String source : Sets.union(compiledSources, removedSources)) {
+      SourceClassUsage previousUsage = previousUsages.get(source);
+      if (previousUsage != null) {
+        deleteClasses(stashedClassesDir, previousUsage.getGeneratedClasses());
+      }
+    }
+    stashClasses(compiledSources, usages);
+    return result;
+  }
+
+  /**
+   * Compiles the given sources, with the classes of the other sources on the classpath if {@code
+   * addClassesDirToClasspath} is set, and adds the class usage of the sources to {@code usages}.
+   */
+  private StepExecutionResult compile(
+      ExecutionContext context,
+      ImmutableSortedSet<Path> sources,
+      Map<String, SourceClassUsage> usages,
+      boolean addClassesDirToClasspath)
+      throws IOException, InterruptedException {
+    ImmutableSortedSet<Path> classpathEntries = compilerParameters.getClasspathEntries();
+    if (addClassesDirToClasspath) {
+      classpathEntries =
+          ImmutableSortedSet.<Path>naturalOrder()
+              .addAll(classpathEntries)
+              .add(filesystem.resolve(classesDir))
+              .build();
+    }
+    CompilerParameters parameters =
+        CompilerParameters.builder()
+            .from(compilerParameters)
+            .setSourceFilePaths(sources)
+            .setClasspathEntries(classpathEntries)
+            .setShouldTrackSourceClassUsage(true)
+            .build();
+
+    Path usageFile = CompilerOutputPaths.getSourceClassUsageFilePath(invokingRule, filesystem);
+    filesystem.deleteFileAtPathIfExists(usageFile);
+    StepExecutionResult result =
+        new JavacStep(
+                javac,
+                javacOptions,
+                invokingRule,
+                resolver,
+                filesystem,
+                classpathChecker,
+                parameters,
+                null,
+                null)
+            .execute(context);
+    if (result.isSuccess()) {
+      usages.putAll(SourceClassUsageTracker.readFile(filesystem.resolve(usageFile)));
+      // Sources without classes, like empty ones, aren't tracked by the compiler.
+      for (Path source : sources) {
+        usages.computeIfAbsent(source.toString(), key -> SourceClassUsage.builder().build());
+      }
+    }
+    return result;
+  }
+
+  private static Set<String> getSourcesUsing(
+      Map<String, SourceClassUsage> usages, Set<String> classes) {
+    Set<String> sources = new TreeSet<>();
+    if (!classes.isEmpty()) {
+      for (Map.Entry<String, SourceClassUsage> usage : usages.entrySet()) {
+        if (!Sets.intersection(usage.getValue().getUsedClasses(), classes).isEmpty()) {
+          sources.add(usage.getKey());
+        }
+      }
+    }
+    return sources;
+  }
+
+  /**
+   * Returns the classes that were added, removed, or whose ABI changed between the stashed classes
+   * of the previous build and the ones that were just compiled.
+   */
+  private Set<String> getClassesWithChangedAbi(Set<String> previousClasses, Set<String> newClasses)
+      throws IOException {
+    Path abiDir = stateDir.resolve(ABI_DIR_NAME);
+    filesystem.deleteRecursivelyIfExists(abiDir);
+    Map<String, String> previousAbi =
+        getAbi(stashedClassesDir, previousClasses, abiDir.resolve("previous"));
+    Map<String, String> newAbi = getAbi(classesDir, newClasses, abiDir.resolve("new"));
+    filesystem.deleteRecursivelyIfExists(abiDir);
+
+    Set<String> changedClasses = new TreeSet<>();
+    for (String className : Sets.union(previousAbi.keySet(), newAbi.keySet())) {
+      if (!Objects.equals(previousAbi.get(className), newAbi.get(className))) {
+        changedClasses.add(className);
+      }
+    }
+    return changedClasses;
+  }
+
+  /** Returns the hashes of the ABI stubs of the given classes, by binary name. */
+  private Map<String, String> getAbi(Path fromDir, Set<String> classNames, Path workDir)
+      throws IOException {
+    Path copyDir = workDir.resolve(CLASSES_DIR_NAME);
+    filesystem.mkdirs(copyDir);
+    for (String className : classNames) {
+      copyClass(fromDir, copyDir, className);
+    }
+    Path stubJar = workDir.resolve("abi.jar");
+    new StubJar(filesystem.resolve(copyDir)).writeTo(filesystem, stubJar);
+
+    Map<String, String> abi = new HashMap<>();
+    try (ZipFile zipFile = new ZipFile(filesystem.resolve(stubJar).toFile())) {
+      Enumeration<? extends ZipEntry> entries = zipFile.entries();
+      while (entries.hasMoreElements()) {
+        ZipEntry entry = entries.nextElement();
+        String name = entry.getName();
+        if (name.endsWith(".class")) {
+          try (InputStream inputStream = zipFile.getInputStream(entry)) {
+            abi.put(
+                name.substring(0, name.length() - ".class".length()).replace('/', '.'),
+                Hashing.sha1().hashBytes(ByteStreams.toByteArray(inputStream)).toString());
+          }
+        }
+      }
+    }
+    return abi;
+  }
+
+  /** Copies the classes generated from the given sources to the stash of the next build. */
+  private void stashClasses(Set<String> sources, Map<String, SourceClassUsage> usages)
+      throws IOException {
+    for (String source : sources) {
+      for (String className : usages.get(source).getGeneratedClasses()) {
+        copyClass(classesDir, stashedClassesDir, className);
+      }
+    }
+  }
+
+  private void copyClass(Path fromDir, Path toDir, String className) throws IOException {
+    Path target = toDir.resolve(getClassFilePath(className));
+    filesystem.mkdirs(target.getParent());
+    filesystem.copyFile(fromDir.resolve(getClassFilePath(className)), target);
+  }
+
+  private void deleteClasses(Path dir, Set<String> classNames) throws IOException {
+    for (String className : classNames) {
+      filesystem.deleteFileAtPathIfExists(dir.resolve(getClassFilePath(className)));
+    }
+  }
+
+  /** Adds the classes used by the previous build to the ones used by the recompiled sources. */
+  private void mergeDepFiles(Path stashedDepFile, Path depFile) throws IOException {
+    TypeReference<ImmutableMap<String, ImmutableList<String>>> type =
+        new TypeReference<ImmutableMap<String, ImmutableList<String>>>() {};
+    Map<String, SortedSet<String>> merged = new TreeMap<>();
+    for (Path file : ImmutableList.of(stashedDepFile, depFile)) {
+      for (Map.Entry<String, ImmutableList<String>> entry :
+          ObjectMappers.readValue(filesystem.resolve(file), type).entrySet()) {
+        merged.computeIfAbsent(entry.getKey(), key -> new TreeSet<>()).addAll(entry.getValue());
+      }
+    }
+    ObjectMappers.WRITER.writeValue(filesystem.resolve(depFile).toFile(), merged);
+  }
+
+  private void saveState(
+      ImmutableList<String> compilationKey,
+      ImmutableSortedMap<String, String> listingHashes,
+      ImmutableSortedMap<String, String> sourceHashes,
+      Map<String, SourceClassUsage> usages,
+      ClasspathIndex classpath)
+      throws IOException {
+    Set<String> generatedClasses = new HashSet<>();
+    Set<String> usedClasses = new TreeSet<>();
+    for (SourceClassUsage usage : usages.values()) {
+      generatedClasses.addAll(usage.getGeneratedClasses());
+      usedClasses.addAll(usage.getUsedClasses());
+    }
+
+    // Class files that the compiler didn't report as generated wouldn't be restored.
+    Path absoluteClassesDir = filesystem.resolve(classesDir);
+    try (Stream<Path> files = Files.walk(absoluteClassesDir)) {
+      List<String> untrackedClasses =
+          files
+              .map(absoluteClassesDir::relativize)
+              .map(PathFormatter::pathWithUnixSeparators)
+              .filter(path -> path.endsWith(".class"))
+              .map(path -> path.substring(0, path.length() - ".class".length()).replace('/', '.'))
+              .filter(className -> !generatedClasses.contains(className))
+              .collect(Collectors.toList());
+      if (!untrackedClasses.isEmpty()) {
+        LOG.warn(
+            "%s: not saving the incremental compilation state, %s weren't tracked.",
+            invokingRule,
+            untrackedClasses);
+        return;
+      }
+    }
+
+    ImmutableSortedMap.Builder<String, String> classpathClassHashes =
+        ImmutableSortedMap.naturalOrder();
+    for (String className : Sets.difference(usedClasses, generatedClasses)) {
+      Optional<String> hash = classpath.getClassHash(className);
+      if (hash.isPresent()) {
+        classpathClassHashes.put(className, hash.get());
+      }
+    }
+
+    Path stashedDepFile = stateDir.resolve(DEP_FILE_NAME);
+    if (compilerParameters.shouldTrackClassUsage()) {
+      filesystem.copyFile(
+          CompilerOutputPaths.getDepFilePath(invokingRule, filesystem), stashedDepFile);
+    } else {
+      filesystem.deleteFileAtPathIfExists(stashedDepFile);
+    }
+
+    IncrementalCompilationState state =
+        IncrementalCompilationState.builder()
+            .setCompilationKey(compilationKey)
+            .setClasspathListingHashes(listingHashes)
+            .setSourceHashes(sourceHashes)
+            .setSourceClassUsages(ImmutableSortedMap.copyOf(usages))
+            .setClasspathClassHashes(classpathClassHashes.build())
+            .build();
+    ObjectMappers.WRITER.writeValue(
+        filesystem.resolve(stateDir.resolve(STATE_FILE_NAME)).toFile(), state);
+  }
+
+  private static String getClassFilePath(String className) {
+    return className.replace('.', '/') + ".class";
+  }
+
+  private static boolean isTopLevelClass(String className) {
+    return className.indexOf('$') < 0;
+  }
+
+  @Override
+  public String getShortName() {
+    return javac.getShortName();
+  }
+
+  @Override
+  public String getDescription(ExecutionContext context) {
+    return "incremental "
+        + javac.getDescription(
+            getOptions(context),
+            compilerParameters.getSourceFilePaths(),
+            compilerParameters.getOutputPaths().getPathToSourcesList());
+  }
+}
@@ -28,6 +28,7 @@ import com.facebook.buck.core.toolchain.toolprovider.impl.ConstantToolProvider;
 import com.facebook.buck.jvm.java.abi.AbiGenerationMode;
 import com.facebook.buck.rules.args.SourcePathArg;
 import com.facebook.buck.rules.args.StringArg;
+import com.facebook.buck.util.unit.SizeUnit;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Preconditions;
 import com.google.common.collect.ImmutableList;
@@ -52,6 +53,7 @@ public class JavaBuckConfig implements ConfigView<BuckConfig> {
       new CommandTool.Builder().addArg("java").build();
   static final JavaOptions DEFAULT_JAVA_OPTIONS =
       JavaOptions.of(new ConstantToolProvider(DEFAULT_JAVA_TOOL));
+  private static final long DEFAULT_CLASS_ABI_CACHE_MAX_SIZE_BYTES = 512L * 1024 * 1024;
 
   private final BuckConfig delegate;
   private final Function<TargetConfiguration, JavacSpec> javacSpecSupplier;
@@ -112,6 +114,10 @@ public class JavaBuckConfig implements ConfigView<BuckConfig> {
     if (trackJavacPhaseEvents.isPresent()) {
       builder.setTrackJavacPhaseEvents(trackJavacPhaseEvents.get());
     }
+    builder.setIncrementalCompilationEnabled(
+        delegate.getBooleanValue(SECTION, "incremental_compilation", false));
+    builder.setClasspathJarMappingEnabled(
+        delegate.getBooleanValue(SECTION, "map_classpath_jars", false));
 
     Optional<AbstractJavacOptions.SpoolMode> spoolMode =
         delegate.getEnum(SECTION, "jar_spool_mode", AbstractJavacOptions.SpoolMode.class);
@@ -219,6 +225,14 @@ public class JavaBuckConfig implements ConfigView<BuckConfig> {
             });
   }
 
+  /** The size of the class file stubs that class ABI generation keeps in buck-out for reuse. */
+  public long getClassAbiCacheMaxSizeBytes() {
+    return delegate
+        .getValue(SECTION, "class_abi_cache_max_size")
+        .map(SizeUnit::parseBytes)
+        .orElse(DEFAULT_CLASS_ABI_CACHE_MAX_SIZE_BYTES);
+  }
+
   public boolean shouldCacheBinaries() {
     return delegate.getBooleanValue(SECTION, "cache_binaries", true);
   }
@@ -46,6 +46,7 @@ public interface Javac extends Tool {
       Path workingDirectory,
       boolean trackClassUsage,
       boolean trackJavacPhaseEvents,
+      boolean trackSourceClassUsage,
       @Nullable JarParameters abiJarParameters,
       @Nullable JarParameters libraryJarParameters,
       AbiGenerationMode abiGenerationMode,
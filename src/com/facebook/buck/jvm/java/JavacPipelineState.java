@@ -110,7 +110,10 @@ public class JavacPipelineState implements RulePipelineState {
               filesystem,
               context.getProjectFilesystemFactory(),
               firstOrderContext.getEnvironment(),
-              firstOrderContext.getProcessExecutor());
+              firstOrderContext.getProcessExecutor(),
+              javacOptions.isClasspathJarMappingEnabled()
+                  ? firstOrderContext.getFileHashLoader()
+                  : Optional.empty());
 
       ImmutableList<JavacPluginJsr199Fields> annotationProcessors =
           ImmutableList.copyOf(
@@ -139,6 +142,7 @@ public class JavacPipelineState implements RulePipelineState {
                   compilerParameters.getOutputPaths().getWorkingDirectory(),
                   compilerParameters.shouldTrackClassUsage(),
                   compilerParameters.shouldTrackJavacPhaseEvents(),
+                  compilerParameters.shouldTrackSourceClassUsage(),
                   abiJarParameters,
                   libraryJarParameters,
                   compilerParameters.getAbiGenerationMode(),
@@ -213,6 +213,23 @@ public class JavacToJarStepFactory extends CompileToJarStepFactory implements Ad
               compilerParameters,
               abiJarParameters,
               libraryJarParameters));
+    } else if (libraryJarParameters != null
+        && isIncrementalCompilationSupported(invokingRule, postprocessClassesCommands)) {
+      JavacOptions buildTimeOptions =
+          javacOptions.withBootclasspathFromContext(extraClasspathProvider);
+
+      addAnnotationGenFolderStep(
+          invokingRule, projectFilesystem, steps, buildableContext, context);
+      steps.add(
+          new IncrementalJavacStep(
+              javac,
+              buildTimeOptions,
+              invokingRule,
+              context.getSourcePathResolver(),
+              projectFilesystem,
+              new ClasspathChecker(),
+              compilerParameters));
+      createJarStep(projectFilesystem, libraryJarParameters, steps);
     } else {
       super.createCompileToJarStepImpl(
           projectFilesystem,
@@ -227,6 +244,21 @@ public class JavacToJarStepFactory extends CompileToJarStepFactory implements Ad
     }
   }
 
+  /**
+   * Incremental compilation reuses the classes of the previous build, so it's limited to libraries
+   * whose classes only depend on their sources: annotation processors, javac plugins and
+   * postprocessing commands could generate or change classes in ways that aren't tracked.
+   */
+  private boolean isIncrementalCompilationSupported(
+      BuildTarget invokingRule, ImmutableList<String> postprocessClassesCommands) {
+    return javacOptions.isIncrementalCompilationEnabled()
+        && javac instanceof Jsr199Javac
+        && JavaAbis.isLibraryTarget(invokingRule)
+        && postprocessClassesCommands.isEmpty()
+        && javacOptions.getJavaAnnotationProcessorParams().isEmpty()
+        && javacOptions.getStandardJavacPluginParams().isEmpty();
+  }
+
   public void createPipelinedCompileStep(
       BuildContext context,
       ProjectFilesystem projectFilesystem,
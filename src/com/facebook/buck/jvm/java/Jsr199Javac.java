@@ -74,6 +74,7 @@ public abstract class Jsr199Javac implements Javac {
       Path workingDirectory,
       boolean trackClassUsage,
       boolean trackJavacPhaseEvents,
+      boolean trackSourceClassUsage,
       @Nullable JarParameters abiJarParameters,
       @Nullable JarParameters libraryJarParameters,
       AbiGenerationMode abiGenerationMode,
@@ -90,6 +91,7 @@ public abstract class Jsr199Javac implements Javac {
         pathToSrcsList,
         trackClassUsage,
         trackJavacPhaseEvents,
+        trackSourceClassUsage,
         abiJarParameters,
         libraryJarParameters,
         abiGenerationMode,
@@ -21,6 +21,8 @@ import com.facebook.buck.core.exceptions.HumanReadableException;
 import com.facebook.buck.core.model.BuildTarget;
 import com.facebook.buck.core.util.log.Logger;
 import com.facebook.buck.event.api.BuckTracing;
+import com.facebook.buck.io.filesystem.BuckPaths;
+import com.facebook.buck.io.filesystem.ProjectFilesystem;
 import com.facebook.buck.jvm.core.JavaAbis;
 import com.facebook.buck.jvm.java.abi.AbiGenerationMode;
 import com.facebook.buck.jvm.java.abi.SourceBasedAbiStubber;
@@ -42,6 +44,7 @@ import com.facebook.buck.util.zip.JarBuilder;
 import com.google.common.base.Throwables;
 import com.google.common.collect.FluentIterable;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.ImmutableSortedSet;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
@@ -79,6 +82,12 @@ class Jsr199JavacInvocation implements Javac.Invocation {
       MoreExecutors.listeningDecorator(
           Executors.newCachedThreadPool(new NamedThreadFactory("javac")));
 
+  /**
+   * Jars on the classpaths of compilations that list them from shared indexes. Keeps the central
+   * directories of up to a million jar entries, in the order of a hundred megabytes.
+   */
+  private static final MappedJarCache mappedJarCache = new MappedJarCache(1_000_000);
+
   static final String NO_JAVA_FILES_ERROR_MESSAGE =
       "No Java files provided for library compilation";
 
@@ -98,6 +107,7 @@ class Jsr199JavacInvocation implements Javac.Invocation {
   @Nullable private final SourceOnlyAbiRuleInfoFactory ruleInfoFactory;
   private final boolean trackClassUsage;
   private final boolean trackJavacPhaseEvents;
+  private final boolean trackSourceClassUsage;
 
   @Nullable private CompilerWorker worker;
 
@@ -112,6 +122,7 @@ class Jsr199JavacInvocation implements Javac.Invocation {
       Path pathToSrcsList,
       boolean trackClassUsage,
       boolean trackJavacPhaseEvents,
+      boolean trackSourceClassUsage,
       @Nullable JarParameters abiJarParameters,
       @Nullable JarParameters libraryJarParameters,
       AbiGenerationMode abiGenerationMode,
@@ -132,6 +143,7 @@ class Jsr199JavacInvocation implements Javac.Invocation {
     this.pathToSrcsList = pathToSrcsList;
     this.trackClassUsage = trackClassUsage;
     this.trackJavacPhaseEvents = trackJavacPhaseEvents;
+    this.trackSourceClassUsage = trackSourceClassUsage;
     this.abiJarParameters = abiJarParameters;
     this.libraryJarParameters = libraryJarParameters;
     this.abiGenerationMode = abiGenerationMode;
@@ -209,12 +221,14 @@ class Jsr199JavacInvocation implements Javac.Invocation {
     @Nullable private JavacPhaseEventLogger phaseEventLogger;
     @Nullable private JavaInMemoryFileManager inMemoryFileManager;
     @Nullable private ClassUsageTracker classUsageTracker;
+    @Nullable private SourceClassUsageTracker sourceClassUsageTracker;
     @Nullable private Jsr199TracingBridge tracingBridge;
 
     private CompilerWorker(ListeningExecutorService executor) {
       this.executor = executor;
 
       classUsageTracker = trackClassUsage ? new ClassUsageTracker() : null;
+      sourceClassUsageTracker = trackSourceClassUsage ? new SourceClassUsageTracker() : null;
     }
 
     public int buildSourceOnlyAbiJar() throws InterruptedException {
@@ -450,6 +464,12 @@ class Jsr199JavacInvocation implements Javac.Invocation {
                                 context.getProjectFilesystem(),
                                 context.getCellPathResolver());
                       }
+                      if (sourceClassUsageTracker != null) {
+                        sourceClassUsageTracker.writeFile(
+                            CompilerOutputPaths.getSourceClassUsageFilePath(
+                                libraryTarget, context.getProjectFilesystem()),
+                            context.getProjectFilesystem());
+                      }
                     } else {
                       reportDiagnosticsToUser();
                       return 1;
@@ -506,6 +526,15 @@ class Jsr199JavacInvocation implements Javac.Invocation {
           StandardJavaFileManager standardFileManager =
               compiler.getStandardFileManager(null, null, null);
           addCloseable(standardFileManager);
+          if (context.getClasspathJarHashLoader().isPresent()) {
+            standardFileManager =
+                new MappedJarFileManager(
+                    standardFileManager,
+                    mappedJarCache,
+                    context.getClasspathJarHashLoader().get(),
+                    getOutputDirectories(),
+                    options);
+          }
 
           // Ensure plugins are loaded from their own classloader.
           PluginFactory pluginFactory =
@@ -603,6 +632,10 @@ class Jsr199JavacInvocation implements Javac.Invocation {
           if (trackJavacPhaseEvents) {
             javacTask.setTaskListener(new TracingTaskListener(tracer, taskListener));
           }
+          if (sourceClassUsageTracker != null && !generatingSourceOnlyAbi) {
+            javacTask.addTaskListener(
+                sourceClassUsageTracker.newTaskListener(pluginLoader, javacTask));
+          }
 
           // Ensure annotation processors are loaded from their own classloader. If we don't do
           // this, then the evidence suggests that they get one polluted with Buck's own classpath,
@@ -691,6 +724,21 @@ class Jsr199JavacInvocation implements Javac.Invocation {
     }
   }
 
+  /** @return the absolute paths of the build output directories of all known cells. */
+  private ImmutableSet<Path> getOutputDirectories() {
+    ProjectFilesystem filesystem = context.getProjectFilesystem();
+    BuckPaths buckPaths = filesystem.getBuckPaths();
+    ImmutableSet.Builder<Path> outputDirectories = ImmutableSet.builder();
+    for (Path root :
+        Iterables.concat(
+            ImmutableList.of(filesystem.getRootPath()),
+            context.getCellPathResolver().getKnownRoots())) {
+      outputDirectories.add(root.resolve(buckPaths.getBuckOut()));
+      outputDirectories.add(root.resolve(buckPaths.getConfiguredBuckOut()));
+    }
+    return outputDirectories.build();
+  }
+
   private static SourceVersion getTargetVersion(Iterable<String> options) {
     boolean foundTarget = false;
     for (String option : options) {
@@ -0,0 +1,368 @@
+/*
+ * Copyright 2019-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.jvm.java;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+import javax.tools.JavaFileObject;
+
+/**
+ * A jar whose central directory is read once. Entries of a mapped jar are read straight from a
+ * memory-mapped buffer of the file, and stored entries are read without copying them. Entries of a
+ * jar that isn't mapped are read from the file each time, so that neither a mapping nor an open
+ * file is kept for it.
+ *
+ * <p>Only the parts of the zip format used by jars are supported: jars using ZIP64, encryption or
+ * compression methods other than stored and deflated fail to open, and should be read with {@link
+ * java.util.zip.ZipFile} instead.
+ */
+@ThreadSafe
+class MappedJar {
+
+  private final Path path;
+
+  /** The whole file if the jar is mapped, or null if its entries are read from the file. */
+  @Nullable private final ByteBuffer mappedFile;
+
+  /** Entries by the path of the directory they're in, e.g. {@code com/example}. */
+  private final ImmutableMap<String, ImmutableList<MappedJarEntryJavaFileObject>>
+      entriesByDirectory;
+
+  private final int entryCount;
+
+  /**
+   * @param buffer the end of the file, from {@code bufferOffset}, including at least the central
+   *     directory and the end of central directory record.
+   */
+  private MappedJar(
+      Path path, @Nullable ByteBuffer mappedFile, ByteBuffer buffer, long bufferOffset)
+      throws IOException {
+    this.path = path;
+    this.mappedFile = mappedFile;
+
+    int endOfCentralDirectory = findEndOfCentralDirectory(buffer);
+    int totalEntries =
+        Short.toUnsignedInt(buffer.getShort(endOfCentralDirectory + ZipEntry.ENDTOT));
+    long centralDirectoryOffset =
+        Integer.toUnsignedLong(buffer.getInt(endOfCentralDirectory + ZipEntry.ENDOFF));
+    check(
+        totalEntries != 0xffff && centralDirectoryOffset != 0xffffffffL,
+        "ZIP64 jars aren't supported");
+    check(centralDirectoryOffset >= bufferOffset, "central directory not found");
+
+    Map<String, ImmutableList.Builder<MappedJarEntryJavaFileObject>> entries = new HashMap<>();
+    int fileCount = 0;
+    int offset = (int) (centralDirectoryOffset - bufferOffset);
+    for (int i = 0; i < totalEntries; i++) {
+      check(
+          offset + ZipEntry.CENHDR <= buffer.limit() && buffer.getInt(offset) == ZipEntry.CENSIG,
+          "expected central directory header signature");
+      int nameLength = Short.toUnsignedInt(buffer.getShort(offset + ZipEntry.CENNAM));
+      String name = readString(buffer, offset + ZipEntry.CENHDR, nameLength);
+      if (!name.endsWith("/")) {
+        int flags = Short.toUnsignedInt(buffer.getShort(offset + ZipEntry.CENFLG));
+        int method = Short.toUnsignedInt(buffer.getShort(offset + ZipEntry.CENHOW));
+        check((flags & 1) == 0, "encrypted entries aren't supported");
+        check(
+            method == ZipEntry.STORED || method == ZipEntry.DEFLATED,
+            "unsupported compression method");
+        int compressedSize = buffer.getInt(offset + ZipEntry.CENSIZ);
+        int size = buffer.getInt(offset + ZipEntry.CENLEN);
+        check(compressedSize >= 0 && size >= 0, "entry is too large");
+
+        int lastSlash = name.lastIndexOf('/');
+        String directory = lastSlash < 0 ? "" : name.substring(0, lastSlash);
+        entries
+            .computeIfAbsent(directory, key -> ImmutableList.builder())
+            .add(
+                new MappedJarEntryJavaFileObject(
+                    this,
+                    name,
+                    buffer.getInt(offset + ZipEntry.CENOFF),
+                    method,
+                    compressedSize,
+                    size,
+                    buffer.getInt(offset + ZipEntry.CENTIM)));
+        fileCount++;
+      }
+      offset +=
+          ZipEntry.CENHDR
+              + nameLength
+              + Short.toUnsignedInt(buffer.getShort(offset + ZipEntry.CENEXT))
+              + Short.toUnsignedInt(buffer.getShort(offset + ZipEntry.CENCOM));
+    }
+
+    ImmutableMap.Builder<String, ImmutableList<MappedJarEntryJavaFileObject>> builder =
+        ImmutableMap.builderWithExpectedSize(entries.size());
+    entries.forEach(
+        (directory, directoryEntries) -> builder.put(directory, directoryEntries.build()));
+    this.entriesByDirectory = builder.build();
+    this.entryCount = fileCount;
+  }
+
+  /** Maps the jar at {@code path} and reads its central directory. */
+  static MappedJar open(Path path) throws IOException {
+    ByteBuffer buffer;
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      long size = channel.size();
+      check(size <= Integer.MAX_VALUE, "jar is too large to be mapped");
+      buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+    }
+    buffer.order(ByteOrder.LITTLE_ENDIAN);
+    return newMappedJar(path, buffer, buffer, 0);
+  }
+
+  /**
+   * Reads the central directory of the jar at {@code path} into the heap, without mapping the jar.
+   */
+  static MappedJar read(Path path) throws IOException {
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      long size = channel.size();
+      check(size <= Integer.MAX_VALUE, "jar is too large");
+      // The end of central directory record is followed by a comment of at most 64k.
+      long endOffset = Math.max(0, size - ZipEntry.ENDHDR - 0xffff);
+      ByteBuffer end = readFully(channel, path, endOffset, (int) (size - endOffset));
+      long centralDirectoryOffset =
+          Integer.toUnsignedLong(end.getInt(findEndOfCentralDirectory(end) + ZipEntry.ENDOFF));
+      check(centralDirectoryOffset < size, "central directory not found");
+      return newMappedJar(
+          path,
+          null,
+          readFully(channel, path, centralDirectoryOffset, (int) (size - centralDirectoryOffset)),
+          centralDirectoryOffset);
+    }
+  }
+
+  private static MappedJar newMappedJar(
+      Path path, @Nullable ByteBuffer mappedFile, ByteBuffer buffer, long bufferOffset)
+      throws IOException {
+    try {
+      return new MappedJar(path, mappedFile, buffer, bufferOffset);
+    } catch (IndexOutOfBoundsException e) {
+      throw new ZipException(String.format("%s: truncated central directory", path));
+    }
+  }
+
+  Path getPath() {
+    return path;
+  }
+
+  /** @return the number of files in the jar. */
+  int getEntryCount() {
+    return entryCount;
+  }
+
+  /**
+   * Adds the files of the given kinds in {@code directory}, and in its subdirectories if {@code
+   * recurse} is set, to {@code result}.
+   */
+  void list(
+      String directory,
+      Set<JavaFileObject.Kind> kinds,
+      boolean recurse,
+      Collection<? super JavaFileObject> result) {
+    if (recurse) {
+      String prefix = directory + "/";
+      entriesByDirectory.forEach(
+          (entryDirectory, entries) -> {
+            if (directory.isEmpty()
+                || entryDirectory.equals(directory)
+                || entryDirectory.startsWith(prefix)) {
+              addEntries(entries, kinds, result);
+            }
+          });
+    } else {
+      addEntries(entriesByDirectory.getOrDefault(directory, ImmutableList.of()), kinds, result);
+    }
+  }
+
+  private static void addEntries(
+      ImmutableList<MappedJarEntryJavaFileObject> entries,
+      Set<JavaFileObject.Kind> kinds,
+      Collection<? super JavaFileObject> result) {
+    for (MappedJarEntryJavaFileObject entry : entries) {
+      if (kinds.contains(entry.getKind())) {
+        result.add(entry);
+      }
+    }
+  }
+
+  /** Opens the contents of an entry with the given central directory fields. */
+  InputStream openEntry(int localHeaderOffset, int method, int compressedSize, int size)
+      throws IOException {
+    ByteBuffer data =
+        mappedFile != null
+            ? sliceEntry(mappedFile, localHeaderOffset, compressedSize)
+            : readEntry(localHeaderOffset, compressedSize);
+
+    if (method == ZipEntry.STORED) {
+      return new ByteBufferInputStream(data);
+    }
+
+    // Raw deflate streams need an extra dummy byte of input, see Inflater(boolean).
+    byte[] compressed = new byte[compressedSize + 1];
+    data.get(compressed, 0, compressedSize);
+    byte[] uncompressed = new byte[size];
+    Inflater inflater = new Inflater(true);
+    try {
+      inflater.setInput(compressed);
+      int length = 0;
+      while (length < size) {
+        int inflated = inflater.inflate(uncompressed, length, size - length);
+        if (inflated == 0
+            && (inflater.finished() || inflater.needsInput() || inflater.needsDictionary())) {
+          break;
+        }
+        length += inflated;
+      }
+      check(length == size, "unexpected size of inflated entry");
+    } catch (DataFormatException e) {
+      throw new ZipException(String.format("%s: %s", path, e.getMessage()));
+    } finally {
+      inflater.end();
+    }
+    return new ByteArrayInputStream(uncompressed);
+  }
+
+  private ByteBuffer sliceEntry(ByteBuffer buffer, int localHeaderOffset, int compressedSize)
+      throws ZipException {
+    try {
+      check(
+          buffer.getInt(localHeaderOffset) == ZipEntry.LOCSIG, "expected local header signature");
+      int dataOffset =
+          localHeaderOffset
+              + ZipEntry.LOCHDR
+              + Short.toUnsignedInt(buffer.getShort(localHeaderOffset + ZipEntry.LOCNAM))
+              + Short.toUnsignedInt(buffer.getShort(localHeaderOffset + ZipEntry.LOCEXT));
+      ByteBuffer data = buffer.duplicate();
+      data.limit(dataOffset + compressedSize);
+      data.position(dataOffset);
+      return data.slice();
+    } catch (IndexOutOfBoundsException | IllegalArgumentException e) {
+      throw new ZipException(String.format("%s: truncated entry", path));
+    }
+  }
+
+  private ByteBuffer readEntry(int localHeaderOffset, int compressedSize) throws IOException {
+    long headerOffset = Integer.toUnsignedLong(localHeaderOffset);
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      ByteBuffer header = readFully(channel, path, headerOffset, ZipEntry.LOCHDR);
+      check(header.getInt(0) == ZipEntry.LOCSIG, "expected local header signature");
+      long dataOffset =
+          headerOffset
+              + ZipEntry.LOCHDR
+              + Short.toUnsignedInt(header.getShort(ZipEntry.LOCNAM))
+              + Short.toUnsignedInt(header.getShort(ZipEntry.LOCEXT));
+      return readFully(channel, path, dataOffset, compressedSize);
+    }
+  }
+
+  private static ByteBuffer readFully(FileChannel channel, Path path, long position, int length)
+      throws IOException {
+    ByteBuffer buffer = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+    while (buffer.hasRemaining()) {
+      if (channel.read(buffer, position + buffer.position()) < 0) {
+        throw new ZipException(String.format("%s: truncated jar", path));
+      }
+    }
+    buffer.flip();
+    return buffer;
+  }
+
+  private static int findEndOfCentralDirectory(ByteBuffer buffer) throws ZipException {
+    // The end of central directory record is followed by a comment of at most 64k.
+    int minOffset = Math.max(0, buffer.limit() - ZipEntry.ENDHDR - 0xffff);
+    for (int offset = buffer.limit() - ZipEntry.ENDHDR; offset >= minOffset; offset--) {
+      if (buffer.getInt(offset) == ZipEntry.ENDSIG) {
+        return offset;
+      }
+    }
+    throw new ZipException("end of central directory not found");
+  }
+
+  private static String readString(ByteBuffer buffer, int offset, int length) {
+    byte[] bytes = new byte[length];
+    ByteBuffer source = buffer.duplicate();
+    source.position(offset);
+    source.get(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  private static void check(boolean expression, String message) throws ZipException {
+    if (!expression) {
+      throw new ZipException(message);
+    }
+  }
+
+  /** Reads a buffer without copying it. */
+  private static class ByteBufferInputStream extends InputStream {
+    private final ByteBuffer buffer;
+
+    private ByteBufferInputStream(ByteBuffer buffer) {
+      this.buffer = buffer;
+    }
+
+    @Override
+    public int read() {
+      return buffer.hasRemaining() ? Byte.toUnsignedInt(buffer.get()) : -1;
+    }
+
+    @Override
+    public int read(byte[] bytes, int offset, int length) {
+      if (length == 0) {
+        return 0;
+      }
+      if (!buffer.hasRemaining()) {
+        return -1;
+      }
+      int count = Math.min(length, buffer.remaining());
+      buffer.get(bytes, offset, count);
+      return count;
+    }
+
+    @Override
+    public long skip(long count) {
+      int skipped = (int) Math.max(0, Math.min(count, buffer.remaining()));
+      buffer.position(buffer.position() + skipped);
+      return skipped;
+    }
+
+    @Override
+    public int available() {
+      return buffer.remaining();
+    }
+  }
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright 2019-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.jvm.java;
+
+import com.facebook.buck.core.util.log.Logger;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.hash.HashCode;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Optional;
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * {@link MappedJar}s shared by all compilations, so that the central directory of a jar is only
+ * read again when the contents of the jar change.
+ */
+@ThreadSafe
+class MappedJarCache {
+  private static final Logger LOG = Logger.get(MappedJarCache.class);
+
+  private final Cache<Path, CachedJar> cache;
+
+  /** @param maxEntries the number of jar entries above which the least used jars are dropped. */
+  MappedJarCache(long maxEntries) {
+    this.cache =
+        CacheBuilder.newBuilder()
+            .maximumWeight(maxEntries)
+            .weigher(
+                (Path path, CachedJar cachedJar) ->
+                    cachedJar.jar.map(MappedJar::getEntryCount).orElse(0) + 1)
+            .build();
+  }
+
+  /**
+   * @param hash the hash of the contents of the jar at {@code path}.
+   * @param map whether to map the jar, rather than read its entries from the file each time.
+   * @return the jar at {@code path}, or empty if it can't be read, in which case it should be read
+   *     by javac's own file manager.
+   */
+  Optional<MappedJar> get(Path path, HashCode hash, boolean map) {
+    CachedJar cachedJar = cache.getIfPresent(path);
+    if (cachedJar != null && cachedJar.hash.equals(hash)) {
+      return cachedJar.jar;
+    }
+
+    Optional<MappedJar> jar;
+    try {
+      jar = Optional.of(map ? MappedJar.open(path) : MappedJar.read(path));
+    } catch (IOException e) {
+      LOG.debug(e, "Unable to read %s, it will be read by javac.", path);
+      jar = Optional.empty();
+    }
+    cache.put(path, new CachedJar(hash, jar));
+    return jar;
+  }
+
+  private static class CachedJar {
+    private final HashCode hash;
+    private final Optional<MappedJar> jar;
+
+    private CachedJar(HashCode hash, Optional<MappedJar> jar) {
+      this.hash = hash;
+      this.jar = jar;
+    }
+  }
+}
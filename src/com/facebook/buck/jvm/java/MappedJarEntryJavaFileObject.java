@@ -0,0 +1,180 @@
+/*
+ * Copyright 2019-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.jvm.java;
+
+import com.google.common.io.ByteStreams;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.Writer;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.time.DateTimeException;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import javax.annotation.Nullable;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.NestingKind;
+import javax.tools.JavaFileObject;
+
+/**
+ * A read-only {@link JavaFileObject} for a file in a {@link MappedJar}. Its URI and name have the
+ * same form as the ones of the file objects of javac's own file manager, which the class usage
+ * tracker and diagnostics rely on.
+ */
+class MappedJarEntryJavaFileObject implements JavaFileObject {
+
+  private final MappedJar jar;
+  private final String pathInJar;
+  private final int localHeaderOffset;
+  private final int method;
+  private final int compressedSize;
+  private final int size;
+  private final int dosTime;
+  private final Kind kind;
+
+  MappedJarEntryJavaFileObject(
+      MappedJar jar,
+      String pathInJar,
+      int localHeaderOffset,
+      int method,
+      int compressedSize,
+      int size,
+      int dosTime) {
+    this.jar = jar;
+    this.pathInJar = pathInJar;
+    this.localHeaderOffset = localHeaderOffset;
+    this.method = method;
+    this.compressedSize = compressedSize;
+    this.size = size;
+    this.dosTime = dosTime;
+    this.kind = getKind(pathInJar);
+  }
+
+  /** @return the kind of a file with the given name, based on its extension. */
+  static Kind getKind(String name) {
+    for (Kind kind : Kind.values()) {
+      if (kind != Kind.OTHER && name.endsWith(kind.extension)) {
+        return kind;
+      }
+    }
+    return Kind.OTHER;
+  }
+
+  /** @return the binary name of the class or source file, e.g. {@code com.example.Foo$Bar}. */
+  String getBinaryName() {
+    int extension = pathInJar.lastIndexOf('.');
+    return (extension < 0 ? pathInJar : pathInJar.substring(0, extension)).replace('/', '.');
+  }
+
+  @Override
+  public URI toUri() {
+    URI jarUri = jar.getPath().toFile().toURI().normalize();
+    try {
+      return new URI("jar:" + jarUri + "!/" + pathInJar);
+    } catch (URISyntaxException e) {
+      throw new IllegalArgumentException(e);
+    }
+  }
+
+  @Override
+  public String getName() {
+    return jar.getPath() + "(" + pathInJar + ")";
+  }
+
+  @Override
+  public InputStream openInputStream() throws IOException {
+    return jar.openEntry(localHeaderOffset, method, compressedSize, size);
+  }
+
+  @Override
+  public OutputStream openOutputStream() {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public Reader openReader(boolean ignoreEncodingErrors) throws IOException {
+    return new InputStreamReader(openInputStream(), StandardCharsets.UTF_8);
+  }
+
+  @Override
+  public CharSequence getCharContent(boolean ignoreEncodingErrors) throws IOException {
+    try (InputStream inputStream = openInputStream()) {
+      return new String(ByteStreams.toByteArray(inputStream), StandardCharsets.UTF_8);
+    }
+  }
+
+  @Override
+  public Writer openWriter() {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public long getLastModified() {
+    try {
+      return LocalDateTime.of(
+              ((dosTime >> 25) & 0x7f) + 1980,
+              (dosTime >> 21) & 0x0f,
+              (dosTime >> 16) & 0x1f,
+              (dosTime >> 11) & 0x1f,
+              (dosTime >> 5) & 0x3f,
+              (dosTime << 1) & 0x3e)
+          .atZone(ZoneId.systemDefault())
+          .toInstant()
+          .toEpochMilli();
+    } catch (DateTimeException e) {
+      return 0L;
+    }
+  }
+
+  @Override
+  public boolean delete() {
+    return false;
+  }
+
+  @Override
+  public Kind getKind() {
+    return kind;
+  }
+
+  @Override
+  public boolean isNameCompatible(String simpleName, Kind kind) {
+    String baseName = simpleName + kind.extension;
+    return kind.equals(this.kind)
+        && (baseName.equals(pathInJar) || pathInJar.endsWith("/" + baseName));
+  }
+
+  @Override
+  @Nullable
+  public NestingKind getNestingKind() {
+    return null;
+  }
+
+  @Override
+  @Nullable
+  public Modifier getAccessLevel() {
+    return null;
+  }
+
+  @Override
+  public String toString() {
+    return getName();
+  }
+}
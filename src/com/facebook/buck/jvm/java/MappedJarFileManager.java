@@ -0,0 +1,160 @@
+/*
+ * Copyright 2019-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.jvm.java;
+
+import com.facebook.buck.util.hashing.FileHashLoader;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.hash.HashCode;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import javax.tools.FileObject;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.StandardLocation;
+
+/**
+ * Lists the classes of jars on the classpath from {@link MappedJar}s shared by all compilations,
+ * instead of letting javac's file manager open and index every jar again in each compilation.
+ *
+ * <p>Jars are looked up by their path and the hash of their contents. Jars in build output
+ * directories may be rewritten by other rules at any time, so they're never mapped.
+ *
+ * <p>Classpath entries are listed in order, so the first of several classes with the same name is
+ * still the one javac uses. Directories are listed from the file system. If any jar on the
+ * classpath can't be hashed or read, the whole classpath is listed by javac's file manager.
+ */
+class MappedJarFileManager extends ForwardingStandardJavaFileManager {
+
+  private final MappedJarCache jarCache;
+  private final FileHashLoader hashLoader;
+  private final ImmutableSet<Path> outputDirectories;
+  private final ImmutableSet<Location> mappedLocations;
+
+  /** @param outputDirectories absolute paths of directories whose jars are read but not mapped. */
+  MappedJarFileManager(
+      StandardJavaFileManager fileManager,
+      MappedJarCache jarCache,
+      FileHashLoader hashLoader,
+      ImmutableSet<Path> outputDirectories,
+      ImmutableList<String> options) {
+    super(fileManager);
+    this.jarCache = jarCache;
+    this.hashLoader = hashLoader;
+    this.outputDirectories = outputDirectories;
+
+    // The default boot classpath is read from ct.sym by javac's file manager, so only an
+    // explicitly set boot classpath, e.g. android.jar, is mapped.
+    boolean hasBootClasspath =
+        options.contains("-bootclasspath") || options.contains("--boot-class-path");
+    boolean hasBootClasspathOverrides =
+        options.stream().anyMatch(option -> option.startsWith("-Xbootclasspath"));
+    this.mappedLocations =
+        hasBootClasspath && !hasBootClasspathOverrides
+            ? ImmutableSet.of(StandardLocation.CLASS_PATH, StandardLocation.PLATFORM_CLASS_PATH)
+            : ImmutableSet.of(StandardLocation.CLASS_PATH);
+  }
+
+  @Override
+  public Iterable<JavaFileObject> list(
+      Location location, String packageName, Set<JavaFileObject.Kind> kinds, boolean recurse)
+      throws IOException {
+    Iterable<? extends File> path =
+        mappedLocations.contains(location) ? getLocation(location) : null;
+    if (path == null) {
+      return super.list(location, packageName, kinds, recurse);
+    }
+
+    String directory = packageName.replace('.', '/');
+    List<JavaFileObject> result = new ArrayList<>();
+    for (File entry : path) {
+      if (entry.isDirectory()) {
+        listDirectory(entry.toPath().resolve(directory), kinds, recurse, result);
+      } else if (entry.isFile()) {
+        Optional<MappedJar> jar =
+            isJar(entry) ? getJar(entry.toPath().toAbsolutePath()) : Optional.empty();
+        if (!jar.isPresent()) {
+          return super.list(location, packageName, kinds, recurse);
+        }
+        jar.get().list(directory, kinds, recurse, result);
+      }
+      // Like javac, ignore entries that don't exist.
+    }
+    return result;
+  }
+
+  private void listDirectory(
+      Path directory, Set<JavaFileObject.Kind> kinds, boolean recurse, List<JavaFileObject> result)
+      throws IOException {
+    if (!Files.isDirectory(directory)) {
+      return;
+    }
+    try (DirectoryStream<Path> children = Files.newDirectoryStream(directory)) {
+      for (Path child : children) {
+        if (Files.isDirectory(child)) {
+          if (recurse) {
+            listDirectory(child, kinds, true, result);
+          }
+        } else if (kinds.contains(
+            MappedJarEntryJavaFileObject.getKind(child.getFileName().toString()))) {
+          for (JavaFileObject file : getJavaFileObjects(child.toFile())) {
+            result.add(file);
+          }
+        }
+      }
+    }
+  }
+
+  private Optional<MappedJar> getJar(Path path) {
+    HashCode hash;
+    try {
+      hash = hashLoader.get(path);
+    } catch (IOException e) {
+      return Optional.empty();
+    }
+    boolean isOutput = outputDirectories.stream().anyMatch(path::startsWith);
+    return jarCache.get(path, hash, !isOutput);
+  }
+
+  private static boolean isJar(File file) {
+    String name = file.getName().toLowerCase();
+    return name.endsWith(".jar") || name.endsWith(".zip");
+  }
+
+  @Override
+  public String inferBinaryName(Location location, JavaFileObject file) {
+    if (file instanceof MappedJarEntryJavaFileObject) {
+      return ((MappedJarEntryJavaFileObject) file).getBinaryName();
+    }
+    return super.inferBinaryName(location, file);
+  }
+
+  @Override
+  public boolean isSameFile(FileObject a, FileObject b) {
+    if (a instanceof MappedJarEntryJavaFileObject || b instanceof MappedJarEntryJavaFileObject) {
+      return a.equals(b);
+    }
+    return super.isSameFile(a, b);
+  }
+}
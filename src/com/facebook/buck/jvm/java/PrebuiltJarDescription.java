@@ -51,6 +51,12 @@ public class PrebuiltJarDescription
     implements DescriptionWithTargetGraph<PrebuiltJarDescriptionArg>,
         VersionPropagator<PrebuiltJarDescriptionArg> {
 
+  private final JavaBuckConfig javaBuckConfig;
+
+  public PrebuiltJarDescription(JavaBuckConfig javaBuckConfig) {
+    this.javaBuckConfig = javaBuckConfig;
+  }
+
   @Override
   public Class<PrebuiltJarDescriptionArg> getConstructorArgType() {
     return PrebuiltJarDescriptionArg.class;
@@ -67,7 +73,11 @@ public class PrebuiltJarDescription
 
     if (JavaAbis.isClassAbiTarget(buildTarget)) {
       return CalculateClassAbi.of(
-          buildTarget, graphBuilder, projectFilesystem, args.getBinaryJar());
+          buildTarget,
+          graphBuilder,
+          projectFilesystem,
+          args.getBinaryJar(),
+          javaBuckConfig.getClassAbiCacheMaxSizeBytes());
     }
 
     BuildRule prebuilt =
@@ -0,0 +1,106 @@
+/*
+ * Copyright 2019-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.jvm.java;
+
+import com.facebook.buck.core.exceptions.HumanReadableException;
+import com.facebook.buck.io.filesystem.ProjectFilesystem;
+import com.facebook.buck.jvm.java.plugin.api.BuckJavacTaskListener;
+import com.facebook.buck.jvm.java.plugin.api.BuckJavacTaskProxy;
+import com.facebook.buck.jvm.java.plugin.api.PluginClassLoader;
+import com.facebook.buck.util.json.ObjectMappers;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.ImmutableSortedMap;
+import com.google.common.collect.ImmutableSortedSet;
+import java.io.IOException;
+import java.lang.reflect.Constructor;
+import java.net.URI;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.function.BiConsumer;
+
+/**
+ * Tracks the classes that each compiled source file depends on, and the classes generated from it,
+ * so that incremental compilation can tell which source files are affected by changed classes.
+ */
+class SourceClassUsageTracker {
+  private final Map<URI, Set<String>> usedClasses = new HashMap<>();
+  private final Map<URI, Set<String>> generatedClasses = new HashMap<>();
+
+  /** Returns a listener that tracks the class usage of the sources compiled by {@code task}. */
+  BuckJavacTaskListener newTaskListener(PluginClassLoader pluginLoader, BuckJavacTaskProxy task) {
+    try {
+      Class<?> listenerClass =
+          pluginLoader.loadClass(
+              "com.facebook.buck.jvm.java.plugin.adapter.SourceClassUsageTaskListener",
+              Object.class);
+      Constructor<?> constructor =
+          listenerClass.getConstructor(
+              BuckJavacTaskProxy.class, BiConsumer.class, BiConsumer.class);
+
+      BiConsumer<URI, String> usedClassConsumer = (source, name) -> add(usedClasses, source, name);
+      BiConsumer<URI, String> generatedClassConsumer =
+          (source, name) -> add(generatedClasses, source, name);
+      return BuckJavacTaskListener.wrapRealTaskListener(
+          pluginLoader, constructor.newInstance(task, usedClassConsumer, generatedClassConsumer));
+    } catch (ReflectiveOperationException e) {
+      throw new HumanReadableException(
+          e,
+          "Could not load the source class usage tracker. Your compiler might not support this. "
+              + "If it doesn't, you may need to disable incremental compilation.");
+    }
+  }
+
+  private static void add(Map<URI, Set<String>> classes, URI source, String name) {
+    classes.computeIfAbsent(source, key -> new TreeSet<>()).add(name);
+  }
+
+  /** Writes the class usage of each source, keyed by its path relative to the project root. */
+  void writeFile(Path relativePath, ProjectFilesystem filesystem) {
+    ImmutableSortedMap.Builder<String, SourceClassUsage> builder =
+        ImmutableSortedMap.naturalOrder();
+    Set<URI> sources = new TreeSet<>(usedClasses.keySet());
+    sources.addAll(generatedClasses.keySet());
+    for (URI source : sources) {
+      builder.put(
+          filesystem.relativize(Paths.get(source)).toString(),
+          SourceClassUsage.builder()
+              .setUsedClasses(
+                  ImmutableSortedSet.copyOf(usedClasses.getOrDefault(source, ImmutableSet.of())))
+              .setGeneratedClasses(
+                  ImmutableSortedSet.copyOf(
+                      generatedClasses.getOrDefault(source, ImmutableSet.of())))
+              .build());
+    }
+    try {
+      filesystem.mkdirs(relativePath.getParent());
+      ObjectMappers.WRITER.writeValue(filesystem.resolve(relativePath).toFile(), builder.build());
+    } catch (IOException e) {
+      throw new HumanReadableException(e, "Unable to write source class usage file.");
+    }
+  }
+
+  /** Reads a file written by {@link #writeFile}. */
+  static ImmutableSortedMap<String, SourceClassUsage> readFile(Path path) throws IOException {
+    return ObjectMappers.readValue(
+        path, new TypeReference<ImmutableSortedMap<String, SourceClassUsage>>() {});
+  }
+}
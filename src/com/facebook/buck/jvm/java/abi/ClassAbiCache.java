@@ -0,0 +1,213 @@
+/*
+ * Copyright 2019-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.jvm.java.abi;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.annotation.Nullable;
+
+/**
+ * A cache of the stubs of class files, on disk and addressed by the contents of the class files.
+ * The stub of a class file only depends on its contents and the options it's generated with, so
+ * the cache can be shared by all libraries and builds, including concurrent ones.
+ *
+ * <p>The size of the cache is bounded: once this instance has written a tenth of the maximum size,
+ * it deletes the least recently used stubs of a cache that's over its maximum size.
+ */
+public class ClassAbiCache {
+  /** Changes whenever the stubs generated from the same class files do. */
+  private static final String STUB_FORMAT_VERSION = "1";
+
+  /** Set by the launcher to a hash of Buck's code, which covers any changes to the stubs. */
+  private static final String BUCK_VERSION_UID = System.getProperty("buck.version_uid", "N/A");
+
+  private final Path cacheDir;
+  private final long maxSizeBytes;
+
+  /** Bytes written since the cache was last pruned. */
+  private final AtomicLong bytesWritten = new AtomicLong();
+
+  private final AtomicBoolean pruning = new AtomicBoolean();
+
+  /**
+   * @param cacheDir the absolute path of the directory holding the cached stubs
+   * @param maxSizeBytes the size of the stubs above which the least recently used ones are deleted
+   */
+  public ClassAbiCache(Path cacheDir, long maxSizeBytes) {
+    this.cacheDir = cacheDir;
+    this.maxSizeBytes = maxSizeBytes;
+  }
+
+  /** @return the key of the stub of a class file generated with the given options. */
+  static HashCode getKey(
+      byte[] classFile, @Nullable AbiGenerationMode compatibilityMode, boolean isKotlinModule) {
+    Hasher hasher = Hashing.sha1().newHasher();
+    hasher.putString(STUB_FORMAT_VERSION, StandardCharsets.UTF_8);
+    hasher.putString(BUCK_VERSION_UID, StandardCharsets.UTF_8);
+    hasher.putString(String.valueOf(compatibilityMode), StandardCharsets.UTF_8);
+    hasher.putBoolean(isKotlinModule);
+    hasher.putBytes(classFile);
+    return hasher.hash();
+  }
+
+  /**
+   * @return the cached stub, which is empty for classes that aren't part of the ABI, or nothing if
+   *     the stub isn't cached
+   */
+  Optional<byte[]> get(HashCode key) {
+    Path path = getPath(key);
+    byte[] stub;
+    try {
+      stub = Files.readAllBytes(path);
+    } catch (IOException e) {
+      // Missing or unreadable stubs are generated and written again.
+      return Optional.empty();
+    }
+    try {
+      // Marks the stub as recently used, so that it's the last to be pruned.
+      Files.setLastModifiedTime(path, FileTime.fromMillis(System.currentTimeMillis()));
+    } catch (IOException e) {
+      // The stub may have been pruned by another build.
+    }
+    return Optional.of(stub);
+  }
+
+  /**
+   * Caches a stub. Failures are ignored, since the stub can be generated again.
+   *
+   * @param stub the stub class file, or an empty array for classes that aren't part of the ABI
+   */
+  void put(HashCode key, byte[] stub) {
+    Path path = getPath(key);
+    if (Files.exists(path)) {
+      return;
+    }
+    Path tempFile = null;
+    try {
+      Files.createDirectories(path.getParent());
+      tempFile = Files.createTempFile(path.getParent(), path.getFileName().toString(), ".tmp");
+      Files.write(tempFile, stub);
+      try {
+        Files.move(tempFile, path, StandardCopyOption.ATOMIC_MOVE);
+      } catch (AtomicMoveNotSupportedException e) {
+        Files.move(tempFile, path, StandardCopyOption.REPLACE_EXISTING);
+      }
+      tempFile = null;
+    } catch (IOException e) {
+      // Another build may have written the same stub at the same time, or the disk is full.
+      return;
+    } finally {
+      if (tempFile != null) {
+        try {
+          Files.deleteIfExists(tempFile);
+        } catch (IOException e) {
+          // Nothing else to do.
+        }
+      }
+    }
+    if (bytesWritten.addAndGet(stub.length) > maxSizeBytes / 10
+        && pruning.compareAndSet(false, true)) {
+      try {
+        bytesWritten.set(0);
+        prune();
+      } finally {
+        pruning.set(false);
+      }
+    }
+  }
+
+  /**
+   * Deletes the least recently used stubs until the cache is down to three quarters of its maximum
+   * size, if it's over it. Stubs that are deleted while another build reads them are generated
+   * again.
+   */
+  @VisibleForTesting
+  void prune() {
+    List<CachedFile> files = new ArrayList<>();
+    try {
+      Files.walkFileTree(
+          cacheDir,
+          new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+              files.add(new CachedFile(file, attrs.size(), attrs.lastModifiedTime()));
+              return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path file, IOException exc) {
+              return FileVisitResult.CONTINUE;
+            }
+          });
+    } catch (IOException e) {
+      return;
+    }
+    long size = files.stream().mapToLong(file -> file.size).sum();
+    if (size <= maxSizeBytes) {
+      return;
+    }
+    files.sort(Comparator.comparing(file -> file.lastModifiedTime));
+    long targetSize = maxSizeBytes / 4 * 3;
+    for (CachedFile file : files) {
+      if (size <= targetSize) {
+        break;
+      }
+      try {
+        Files.deleteIfExists(file.path);
+      } catch (IOException e) {
+        continue;
+      }
+      size -= file.size;
+    }
+  }
+
+  @VisibleForTesting
+  Path getPath(HashCode key) {
+    String name = key.toString();
+    return cacheDir.resolve(name.substring(0, 2)).resolve(name);
+  }
+
+  private static final class CachedFile {
+    private final Path path;
+    private final long size;
+    private final FileTime lastModifiedTime;
+
+    private CachedFile(Path path, long size, FileTime lastModifiedTime) {
+      this.path = path;
+      this.size = size;
+      this.lastModifiedTime = lastModifiedTime;
+    }
+  }
+}
@@ -51,20 +51,31 @@ class DirectoryReader implements LibraryReader {
   }
 
   @Override
-  public void visitClass(Path relativePath, ClassVisitor cv, boolean skipCode) throws IOException {
+  public InputStream openClassFile(Path relativePath) throws IOException {
     if (!isClass(relativePath)) {
       throw new IllegalArgumentException();
     }
+    return openInputStream(relativePath);
+  }
 
-    int parsingOptions = ClassReader.SKIP_FRAMES;
-    if (skipCode) {
-      parsingOptions |= ClassReader.SKIP_DEBUG | ClassReader.SKIP_CODE;
+  @Override
+  public void visitClass(Path relativePath, ClassVisitor cv, boolean skipCode) throws IOException {
+    if (!isClass(relativePath)) {
+      throw new IllegalArgumentException();
     }
 
     try (InputStream inputStream = openInputStream(relativePath)) {
       ClassReader reader = new ClassReader(inputStream);
-      reader.accept(cv, parsingOptions);
+      reader.accept(cv, getParsingOptions(skipCode));
+    }
+  }
+
+  static int getParsingOptions(boolean skipCode) {
+    int parsingOptions = ClassReader.SKIP_FRAMES;
+    if (skipCode) {
+      parsingOptions |= ClassReader.SKIP_DEBUG | ClassReader.SKIP_CODE;
     }
+    return parsingOptions;
   }
 
   @Override
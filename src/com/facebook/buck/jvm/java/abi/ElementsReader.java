@@ -77,6 +77,11 @@ class ElementsReader implements LibraryReader {
     throw new UnsupportedOperationException();
   }
 
+  @Override
+  public InputStream openClassFile(Path relativePath) {
+    throw new UnsupportedOperationException();
+  }
+
   @Override
   public void visitClass(Path relativePath, ClassVisitor cv, boolean skipCodeUnused) {
     Element element = Objects.requireNonNull(allElements.get().get(relativePath));
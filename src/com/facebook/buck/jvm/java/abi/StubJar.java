@@ -20,10 +20,24 @@ import com.facebook.buck.io.filesystem.ProjectFilesystem;
 import com.facebook.buck.io.pathformat.PathFormatter;
 import com.facebook.buck.jvm.java.lang.model.ElementsExtended;
 import com.facebook.buck.util.zip.JarBuilder;
+import com.google.common.base.Throwables;
+import com.google.common.hash.HashCode;
+import com.google.common.io.ByteStreams;
+import com.google.common.util.concurrent.MoreExecutors;
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.nio.file.Path;
 import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 import java.util.function.Supplier;
 import java.util.stream.Collectors;
 import javax.annotation.Nullable;
@@ -34,10 +48,15 @@ import javax.lang.model.util.Types;
 
 public class StubJar {
   private final Supplier<LibraryReader> libraryReaderSupplier;
+  /** Whether the library is read from class files, which can be stubbed independently. */
+  private final boolean readsClassFiles;
   @Nullable private AbiGenerationMode compatibilityMode = null;
+  @Nullable private ClassAbiCache classAbiCache = null;
+  @Nullable private ExecutorService stubExecutor = null;
 
   public StubJar(Path toMirror) {
     libraryReaderSupplier = () -> LibraryReader.of(toMirror);
+    readsClassFiles = true;
   }
 
   /**
@@ -63,6 +82,7 @@ public class StubJar {
                 messager,
                 topLevelElements,
                 includeParameterMetadata);
+    readsClassFiles = false;
   }
 
   /**
@@ -75,6 +95,24 @@ public class StubJar {
     return this;
   }
 
+  /**
+   * Reuses the stubs of class files from {@code classAbiCache}, and adds the ones it generates to
+   * it. Only used when stubbing class files.
+   */
+  public StubJar setClassAbiCache(ClassAbiCache classAbiCache) {
+    this.classAbiCache = classAbiCache;
+    return this;
+  }
+
+  /**
+   * Stubs class files in parallel on {@code stubExecutor}, instead of on the calling thread. Only
+   * used when stubbing class files.
+   */
+  public StubJar setStubExecutor(ExecutorService stubExecutor) {
+    this.stubExecutor = stubExecutor;
+    return this;
+  }
+
   public void writeTo(ProjectFilesystem filesystem, Path path) throws IOException {
     // The order of these declarations is important -- FilesystemStubJarWriter actually uses
     // the LibraryReader in its close method, and try-with-resources closes the items in the
@@ -100,7 +138,17 @@ public class StubJar {
             .collect(Collectors.toList());
 
     boolean isKotlinModule = isKotlinModule(relativePaths);
+    Map<Path, byte[]> classStubs =
+        readsClassFiles ? generateClassStubs(input, paths, isKotlinModule) : null;
     for (Path path : paths) {
+      if (classStubs != null && input.isClass(path)) {
+        byte[] stub = Objects.requireNonNull(classStubs.get(path));
+        if (stub.length > 0) {
+          writer.writeEntry(path, () -> new ByteArrayInputStream(stub));
+        }
+        continue;
+      }
+
       StubJarEntry entry = StubJarEntry.of(input, path, compatibilityMode, isKotlinModule);
       if (entry == null) {
         continue;
@@ -109,6 +157,69 @@ public class StubJar {
     }
   }
 
+  /**
+   * Generates the stubs of the class files on the stub executor, since each only depends on its own
+   * class file.
+   *
+   * @return the stubs by path, which are empty for classes that aren't part of the ABI
+   */
+  private Map<Path, byte[]> generateClassStubs(
+      LibraryReader input, List<Path> paths, boolean isKotlinModule) throws IOException {
+    ExecutorService executor =
+        stubExecutor == null ? MoreExecutors.newDirectExecutorService() : stubExecutor;
+    Map<Path, Future<byte[]>> stubFutures = new HashMap<>();
+    Map<Path, byte[]> stubs = new HashMap<>();
+    try {
+      for (Path path : paths) {
+        if (input.isClass(path)) {
+          stubFutures.put(
+              path, executor.submit(() -> generateClassStub(input, path, isKotlinModule)));
+        }
+      }
+      for (Map.Entry<Path, Future<byte[]>> stubFuture : stubFutures.entrySet()) {
+        stubs.put(stubFuture.getKey(), stubFuture.getValue().get());
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while stubbing class files.");
+    } catch (ExecutionException e) {
+      Throwables.throwIfInstanceOf(e.getCause(), IOException.class);
+      Throwables.throwIfUnchecked(e.getCause());
+      throw new IllegalStateException(e.getCause());
+    } finally {
+      // Stubs that aren't needed anymore after a failure aren't generated.
+      stubFutures.values().forEach(stubFuture -> stubFuture.cancel(false));
+    }
+    return stubs;
+  }
+
+  private byte[] generateClassStub(LibraryReader input, Path path, boolean isKotlinModule)
+      throws IOException {
+    byte[] classFile;
+    try (InputStream inputStream = input.openClassFile(path)) {
+      classFile = ByteStreams.toByteArray(inputStream);
+    }
+    if (classAbiCache == null) {
+      return generateClassStub(path, classFile, isKotlinModule);
+    }
+
+    HashCode key = ClassAbiCache.getKey(classFile, compatibilityMode, isKotlinModule);
+    Optional<byte[]> cachedStub = classAbiCache.get(key);
+    if (cachedStub.isPresent()) {
+      return cachedStub.get();
+    }
+    byte[] stub = generateClassStub(path, classFile, isKotlinModule);
+    classAbiCache.put(key, stub);
+    return stub;
+  }
+
+  private byte[] generateClassStub(Path path, byte[] classFile, boolean isKotlinModule)
+      throws IOException {
+    StubJarClassEntry entry =
+        StubJarClassEntry.of(path, classFile, compatibilityMode, isKotlinModule);
+    return entry == null ? new byte[0] : entry.toByteArray();
+  }
+
   private boolean isKotlinModule(List<Path> relativePaths) {
     return relativePaths.stream().anyMatch(path -> path.toString().endsWith(".kotlin_module"));
   }
@@ -26,6 +26,7 @@ import java.util.Collections;
 import java.util.List;
 import java.util.Set;
 import javax.annotation.Nullable;
+import org.objectweb.asm.ClassReader;
 import org.objectweb.asm.ClassVisitor;
 import org.objectweb.asm.ClassWriter;
 import org.objectweb.asm.Opcodes;
@@ -46,6 +47,36 @@ class StubJarClassEntry extends StubJarEntry {
       @Nullable AbiGenerationMode compatibilityMode,
       boolean isKotlinModule)
       throws IOException {
+    return of(
+        path,
+        (cv, skipCode) -> input.visitClass(path, cv, skipCode),
+        compatibilityMode,
+        isKotlinModule);
+  }
+
+  /** Creates the entry of the class file at {@code path}, whose contents are {@code classFile}. */
+  @Nullable
+  static StubJarClassEntry of(
+      Path path,
+      byte[] classFile,
+      @Nullable AbiGenerationMode compatibilityMode,
+      boolean isKotlinModule)
+      throws IOException {
+    ClassReader reader = new ClassReader(classFile);
+    return of(
+        path,
+        (cv, skipCode) -> reader.accept(cv, DirectoryReader.getParsingOptions(skipCode)),
+        compatibilityMode,
+        isKotlinModule);
+  }
+
+  @Nullable
+  private static StubJarClassEntry of(
+      Path path,
+      ClassInput input,
+      @Nullable AbiGenerationMode compatibilityMode,
+      boolean isKotlinModule)
+      throws IOException {
     ClassNode stub = new ClassNode(Opcodes.ASM7);
 
     // Kotlin has the concept of "inline functions", which means that we need to retain the body
@@ -53,7 +84,7 @@ class StubJarClassEntry extends StubJarEntry {
     List<String> inlineFunctions = Collections.emptyList();
     boolean isKotlinClass = false;
     if (isKotlinModule) {
-      AnnotationNode kotlinMetadataAnnotation = findKotlinMetadataAnnotation(input, path);
+      AnnotationNode kotlinMetadataAnnotation = findKotlinMetadataAnnotation(input);
       if (kotlinMetadataAnnotation != null) {
         isKotlinClass = true;
         inlineFunctions = KotlinMetadataReader.getInlineFunctions(kotlinMetadataAnnotation);
@@ -73,7 +104,7 @@ class StubJarClassEntry extends StubJarEntry {
     if (compatibilityMode != null && compatibilityMode != AbiGenerationMode.CLASS) {
       firstLevelFiltering = new SourceAbiCompatibleVisitor(firstLevelFiltering, compatibilityMode);
     }
-    input.visitClass(path, firstLevelFiltering, /* skipCode */ !isKotlinClass);
+    input.accept(firstLevelFiltering, /* skipCode */ !isKotlinClass);
 
     // The synthetic package-info class is how package annotations are recorded; that one is
     // actually used by the compiler
@@ -98,14 +129,19 @@ class StubJarClassEntry extends StubJarEntry {
     writer.writeEntry(path, this::openInputStream);
   }
 
-  private InputStream openInputStream() {
+  /** @return the contents of the stub class file. */
+  byte[] toByteArray() {
     ClassWriter writer = new ClassWriter(0);
     ClassVisitor visitor = writer;
     visitor = new InnerClassSortingClassVisitor(stub.name, visitor);
     visitor = new AbiFilteringClassVisitor(visitor, inlineMethods, referencedClassNames);
     stub.accept(visitor);
 
-    return new ByteArrayInputStream(writer.toByteArray());
+    return writer.toByteArray();
+  }
+
+  private InputStream openInputStream() {
+    return new ByteArrayInputStream(toByteArray());
   }
 
   private static boolean isAnonymousOrLocalOrSyntheticClass(ClassNode node) {
@@ -131,9 +167,8 @@ class StubJarClassEntry extends StubJarEntry {
   }
 
   @Nullable
-  private static AnnotationNode findKotlinMetadataAnnotation(LibraryReader input, Path relativePath)
-      throws IOException {
-    final List<AnnotationNode> annotations = getVisibleAnnotations(input, relativePath);
+  private static AnnotationNode findKotlinMetadataAnnotation(ClassInput input) throws IOException {
+    final List<AnnotationNode> annotations = getVisibleAnnotations(input);
     if (annotations == null) {
       return null;
     }
@@ -143,10 +178,9 @@ class StubJarClassEntry extends StubJarEntry {
         .orElse(null);
   }
 
-  private static List<AnnotationNode> getVisibleAnnotations(LibraryReader input, Path relativePath)
-      throws IOException {
+  private static List<AnnotationNode> getVisibleAnnotations(ClassInput input) throws IOException {
     ClassNode node = new ClassNode();
-    input.visitClass(relativePath, node, /* skipCode */ true);
+    input.accept(node, /* skipCode */ true);
 
     return node.visibleAnnotations;
   }
@@ -162,6 +196,11 @@ class StubJarClassEntry extends StubJarEntry {
     return null;
   }
 
+  /** Reads the class being stubbed into a visitor. */
+  private interface ClassInput {
+    void accept(ClassVisitor cv, boolean skipCode) throws IOException;
+  }
+
   private static class InnerClassSortingClassVisitor extends ClassVisitor {
     private final String className;
     private final List<InnerClassNode> innerClasses = new ArrayList<>();
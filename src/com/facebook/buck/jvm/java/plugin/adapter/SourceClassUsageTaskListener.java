@@ -0,0 +1,227 @@
+/*
+ * Copyright 2019-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.jvm.java.plugin.adapter;
+
+import com.facebook.buck.jvm.java.plugin.api.BuckJavacTaskProxy;
+import com.sun.source.tree.CompilationUnitTree;
+import com.sun.source.tree.Tree;
+import com.sun.source.util.TaskEvent;
+import com.sun.source.util.TaskListener;
+import com.sun.source.util.TreePath;
+import com.sun.source.util.TreePathScanner;
+import com.sun.source.util.Trees;
+import java.net.URI;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.BiConsumer;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.ArrayType;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.ExecutableType;
+import javax.lang.model.type.IntersectionType;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.type.UnionType;
+import javax.lang.model.type.WildcardType;
+import javax.lang.model.util.Elements;
+
+/**
+ * A {@link TaskListener} that reports, for each compiled source file, the classes its code depends
+ * on and the classes generated from it.
+ *
+ * <p>The classes a source file depends on are the ones declaring the elements and types that its
+ * trees refer to, the classes enclosing those, and all of their supertypes. The types in the
+ * signatures of referenced methods and fields are included as well, because the compiler checks
+ * the arguments and values they're used with against them.
+ */
+public class SourceClassUsageTaskListener implements TaskListener {
+  private final BuckJavacTask javacTask;
+  private final BiConsumer<URI, String> usedClassConsumer;
+  private final BiConsumer<URI, String> generatedClassConsumer;
+  private final Map<CompilationUnitTree, Set<TypeElement>> usedClasses = new HashMap<>();
+
+  public SourceClassUsageTaskListener(
+      BuckJavacTaskProxy task,
+      BiConsumer<URI, String> usedClassConsumer,
+      BiConsumer<URI, String> generatedClassConsumer) {
+    this.javacTask = ((BuckJavacTaskProxyImpl) task).getInner();
+    this.usedClassConsumer = usedClassConsumer;
+    this.generatedClassConsumer = generatedClassConsumer;
+  }
+
+  @Override
+  public void started(TaskEvent e) {}
+
+  @Override
+  public void finished(TaskEvent e) {
+    if (e.getKind() == TaskEvent.Kind.ANALYZE) {
+      CompilationUnitTree compilationUnit = e.getCompilationUnit();
+      Trees trees = javacTask.getTrees();
+      boolean firstClassOfUnit = !usedClasses.containsKey(compilationUnit);
+      UsedClassesScanner scanner = new UsedClassesScanner(compilationUnit);
+      if (firstClassOfUnit) {
+        // Imports and package annotations are outside of the classes, and are only scanned once.
+        scanner.scanOutsideOfClasses();
+      }
+      TypeElement typeElement = e.getTypeElement();
+      TreePath classPath = typeElement == null ? null : trees.getPath(typeElement);
+      if (classPath != null) {
+        scanner.scan(classPath, null);
+      }
+    } else if (e.getKind() == TaskEvent.Kind.GENERATE) {
+      TypeElement typeElement = e.getTypeElement();
+      if (typeElement != null) {
+        generatedClassConsumer.accept(
+            e.getSourceFile().toUri(),
+            javacTask.getElements().getBinaryName(typeElement).toString());
+      }
+    }
+  }
+
+  private class UsedClassesScanner extends TreePathScanner<Void, Void> {
+    private final CompilationUnitTree compilationUnit;
+    private final URI sourceUri;
+    private final Set<TypeElement> classes;
+    private final Trees trees;
+    private final Elements elements;
+
+    private UsedClassesScanner(CompilationUnitTree compilationUnit) {
+      this.compilationUnit = compilationUnit;
+      this.sourceUri = compilationUnit.getSourceFile().toUri();
+      this.classes = usedClasses.computeIfAbsent(compilationUnit, unit -> new HashSet<>());
+      this.trees = javacTask.getTrees();
+      this.elements = javacTask.getElements();
+    }
+
+    private void scanOutsideOfClasses() {
+      TreePath unitPath = new TreePath(compilationUnit);
+      for (Tree annotation : compilationUnit.getPackageAnnotations()) {
+        scan(new TreePath(unitPath, annotation), null);
+      }
+      for (Tree importTree : compilationUnit.getImports()) {
+        scan(new TreePath(unitPath, importTree), null);
+      }
+    }
+
+    @Override
+    public Void scan(TreePath path, Void p) {
+      addTree(path);
+      return super.scan(path, p);
+    }
+
+    @Override
+    public Void scan(Tree tree, Void p) {
+      if (tree != null) {
+        addTree(new TreePath(getCurrentPath(), tree));
+      }
+      return super.scan(tree, p);
+    }
+
+    private void addTree(TreePath path) {
+      Element element = trees.getElement(path);
+      if (element != null) {
+        addElement(element);
+      }
+      TypeMirror type = trees.getTypeMirror(path);
+      if (type != null) {
+        addType(type);
+      }
+    }
+
+    private void addElement(Element element) {
+      Element enclosing = element;
+      while (enclosing != null && !(enclosing instanceof TypeElement)) {
+        enclosing = enclosing.getEnclosingElement();
+      }
+      if (enclosing != null) {
+        addClass((TypeElement) enclosing);
+      }
+      if (element instanceof ExecutableElement || element instanceof VariableElement) {
+        addType(element.asType());
+      }
+    }
+
+    private void addClass(TypeElement typeElement) {
+      if (!classes.add(typeElement)) {
+        return;
+      }
+      usedClassConsumer.accept(sourceUri, elements.getBinaryName(typeElement).toString());
+
+      Element enclosing = typeElement.getEnclosingElement();
+      if (enclosing != null) {
+        addElement(enclosing);
+      }
+      addType(typeElement.getSuperclass());
+      for (TypeMirror interfaceType : typeElement.getInterfaces()) {
+        addType(interfaceType);
+      }
+    }
+
+    private void addType(TypeMirror type) {
+      switch (type.getKind()) {
+        case DECLARED:
+          DeclaredType declaredType = (DeclaredType) type;
+          addClass((TypeElement) declaredType.asElement());
+          for (TypeMirror typeArgument : declaredType.getTypeArguments()) {
+            addType(typeArgument);
+          }
+          break;
+        case ARRAY:
+          addType(((ArrayType) type).getComponentType());
+          break;
+        case WILDCARD:
+          WildcardType wildcardType = (WildcardType) type;
+          if (wildcardType.getExtendsBound() != null) {
+            addType(wildcardType.getExtendsBound());
+          }
+          if (wildcardType.getSuperBound() != null) {
+            addType(wildcardType.getSuperBound());
+          }
+          break;
+        case INTERSECTION:
+          for (TypeMirror bound : ((IntersectionType) type).getBounds()) {
+            addType(bound);
+          }
+          break;
+        case UNION:
+          for (TypeMirror alternative : ((UnionType) type).getAlternatives()) {
+            addType(alternative);
+          }
+          break;
+        case EXECUTABLE:
+          ExecutableType executableType = (ExecutableType) type;
+          addType(executableType.getReturnType());
+          for (TypeMirror parameterType : executableType.getParameterTypes()) {
+            addType(parameterType);
+          }
+          for (TypeMirror thrownType : executableType.getThrownTypes()) {
+            addType(thrownType);
+          }
+          break;
+          // $CASES-OMITTED$
+        default:
+          // Primitives, type variables (whose bounds are declared in scanned trees or in classes
+          // that are added already), and error types don't add any classes.
+          break;
+      }
+    }
+  }
+}
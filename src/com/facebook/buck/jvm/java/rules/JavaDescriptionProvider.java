@@ -19,6 +19,7 @@ package com.facebook.buck.jvm.java.rules;
 import com.facebook.buck.core.description.Description;
 import com.facebook.buck.core.description.DescriptionCreationContext;
 import com.facebook.buck.core.model.targetgraph.DescriptionProvider;
+import com.facebook.buck.jvm.java.JavaBuckConfig;
 import com.facebook.buck.jvm.java.PrebuiltJarDescription;
 import java.util.Collection;
 import java.util.Collections;
@@ -28,6 +29,7 @@ import org.pf4j.Extension;
 public class JavaDescriptionProvider implements DescriptionProvider {
   @Override
   public Collection<Description<?>> getDescriptions(DescriptionCreationContext context) {
-    return Collections.singleton(new PrebuiltJarDescription());
+    return Collections.singleton(
+        new PrebuiltJarDescription(context.getBuckConfig().getView(JavaBuckConfig.class)));
   }
 }
@@ -0,0 +1,32 @@
+/*
+ * Copyright 2019-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.parser;
+
+import com.facebook.buck.core.model.TargetConfiguration;
+import com.facebook.buck.core.util.immutables.BuckStyleTuple;
+import com.google.common.collect.ImmutableList;
+import org.immutables.value.Value;
+
+/** Target patterns requested by a command, which the daemon may parse again speculatively. */
+@BuckStyleTuple
+@Value.Immutable(builder = false)
+abstract class AbstractSpeculativeParsingRequest {
+
+  public abstract ImmutableList<TargetNodeSpec> getTargetNodeSpecs();
+
+  public abstract TargetConfiguration getTargetConfiguration();
+}
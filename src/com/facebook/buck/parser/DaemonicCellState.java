@@ -28,14 +28,20 @@ import com.facebook.buck.parser.api.BuildFileManifest;
 import com.facebook.buck.parser.exceptions.BuildTargetException;
 import com.facebook.buck.util.concurrent.AutoCloseableLock;
 import com.facebook.buck.util.concurrent.AutoCloseableReadWriteUpdateLock;
+import com.facebook.buck.util.types.Pair;
 import com.google.common.base.Preconditions;
 import com.google.common.collect.HashMultimap;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Iterables;
 import com.google.common.collect.MapDifference;
 import com.google.common.collect.Maps;
+import com.google.common.collect.Multimaps;
 import com.google.common.collect.SetMultimap;
+import com.google.common.hash.HashCode;
 import java.nio.file.Path;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -44,6 +50,7 @@ import java.util.Objects;
 import java.util.Optional;
 import java.util.Set;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
 import java.util.function.Function;
 import javax.annotation.concurrent.GuardedBy;
 
@@ -60,6 +67,9 @@ class DaemonicCellState {
 
     private final CellCacheType<K, T> type;
 
+    /** Called with every value added to this cache. */
+    private final Consumer<? super T> onComputedNodeAdded;
+
     /** Unbounded cache for all computed objects associated with build targets. */
     @GuardedBy("rawAndComputedNodesLock")
     public final ConcurrentMapCache<K, T> allComputedNodes =
@@ -77,7 +87,12 @@ class DaemonicCellState {
         HashMultimap.create();
 
     Cache(CellCacheType<K, T> type) {
+      this(type, value -> {});
+    }
+
+    Cache(CellCacheType<K, T> type, Consumer<? super T> onComputedNodeAdded) {
       this.type = type;
+      this.onComputedNodeAdded = onComputedNodeAdded;
     }
 
     private void invalidateFor(UnflavoredBuildTargetView target) {
@@ -100,10 +115,27 @@ class DaemonicCellState {
             target);
         if (updatedNode.equals(targetNode)) {
           targetsCornucopia.put(type.keyToUnflavoredBuildTargetView.apply(target), target);
+          onComputedNodeAdded.accept(targetNode);
         }
         return updatedNode;
       }
     }
+
+    /**
+     * Like {@link #putComputedNodeIfNotPresent}, but ignores values for targets which are not
+     * present in raw nodes anymore, e.g. because their build file changed in the meantime.
+     */
+    public void putComputedNodeIfRawNodePresent(K target, T value) {
+      try (AutoCloseableLock writeLock = rawAndComputedNodesLock.writeLock()) {
+        UnflavoredBuildTargetView unflavoredTarget =
+            type.keyToUnflavoredBuildTargetView.apply(target);
+        if (allRawNodeTargets.contains(unflavoredTarget)
+            && allComputedNodes.putIfAbsentAndGet(target, value).equals(value)) {
+          targetsCornucopia.put(unflavoredTarget, target);
+          onComputedNodeAdded.accept(value);
+        }
+      }
+    }
   }
 
   private final Path cellRoot;
@@ -146,6 +178,10 @@ class DaemonicCellState {
   @GuardedBy("rawAndComputedNodesLock")
   private final Set<UnflavoredBuildTargetView> allRawNodeTargets;
 
+  /** Reverse dependencies of the target nodes in {@link #targetNodeCache}. */
+  @GuardedBy("rawAndComputedNodesLock")
+  private final ReverseDependencyIndex reverseDependencyIndex;
+
   /** Type-safe accessor to one of state caches */
   static class CellCacheType<K, T> {
     private final Function<DaemonicCellState, Cache<K, T>> getCache;
@@ -177,9 +213,16 @@ class DaemonicCellState {
           state -> state.targetNodeCache,
           BuildTarget::getUnconfiguredBuildTargetView,
           BuildTarget::getUnflavoredBuildTarget);
+  /** Hashes of the attributes of target nodes, by target and kind of hash. */
+  static final CellCacheType<Pair<BuildTarget, String>, HashCode>
+      TARGET_NODE_ATTRIBUTES_HASH_CACHE_TYPE =
+          new CellCacheType<>(
+              state -> state.targetNodeAttributesHashCache,
+              key -> key.getFirst().getUnconfiguredBuildTargetView(),
+              key -> key.getFirst().getUnflavoredBuildTarget());
 
   private Cache<?, ?>[] typedNodeCaches() {
-    return new Cache[] {targetNodeCache, rawTargetNodeCache};
+    return new Cache[] {targetNodeCache, rawTargetNodeCache, targetNodeAttributesHashCache};
   }
 
   /** Keeps caches by the object type supported by the cache. */
@@ -187,6 +230,8 @@ class DaemonicCellState {
 
   private final Cache<UnconfiguredBuildTargetView, RawTargetNode> rawTargetNodeCache;
 
+  private final Cache<Pair<BuildTarget, String>, HashCode> targetNodeAttributesHashCache;
+
   private final AutoCloseableReadWriteUpdateLock rawAndComputedNodesLock;
   private final int parsingThreads;
 
@@ -200,8 +245,17 @@ class DaemonicCellState {
     this.allBuildFileManifests = new ConcurrentMapCache<>(parsingThreads);
     this.allRawNodeTargets = new HashSet<>();
     this.rawAndComputedNodesLock = new AutoCloseableReadWriteUpdateLock();
-    this.targetNodeCache = new Cache<>(TARGET_NODE_CACHE_TYPE);
+    this.reverseDependencyIndex = new ReverseDependencyIndex();
+    this.targetNodeCache =
+        new Cache<>(
+            TARGET_NODE_CACHE_TYPE,
+            node ->
+                reverseDependencyIndex.addNode(
+                    node.getBuildTarget().getUnconfiguredBuildTargetView(),
+                    Iterables.transform(
+                        node.getParseDeps(), BuildTarget::getUnconfiguredBuildTargetView)));
     this.rawTargetNodeCache = new Cache<>(RAW_TARGET_NODE_CACHE_TYPE);
+    this.targetNodeAttributesHashCache = new Cache<>(TARGET_NODE_ATTRIBUTES_HASH_CACHE_TYPE);
   }
 
   // TODO(mzlee): Only needed for invalidateBasedOn which does not have access to cell metadata
@@ -217,6 +271,24 @@ class DaemonicCellState {
     return type.getCache.apply(this);
   }
 
+  /** @return whether the dependencies of cached target nodes of {@code target} are indexed. */
+  boolean hasIndexedDependencies(UnconfiguredBuildTargetView target) {
+    try (AutoCloseableLock readLock = rawAndComputedNodesLock.readLock()) {
+      return reverseDependencyIndex.isIndexed(target);
+    }
+  }
+
+  /**
+   * Adds the targets of this cell whose cached target nodes depend on {@code target} to {@code
+   * result}.
+   */
+  void addReverseDependencies(
+      UnconfiguredBuildTargetView target, Collection<? super UnconfiguredBuildTargetView> result) {
+    try (AutoCloseableLock readLock = rawAndComputedNodesLock.readLock()) {
+      reverseDependencyIndex.addReverseDependencies(target, result);
+    }
+  }
+
   Optional<BuildFileManifest> lookupBuildFileManifest(Path buildFile) {
     try (AutoCloseableLock readLock = rawAndComputedNodesLock.readLock()) {
       return Optional.ofNullable(allBuildFileManifests.getIfPresent(buildFile));
@@ -248,6 +320,28 @@ class DaemonicCellState {
     }
   }
 
+  /**
+   * @return the build file manifests of this cell along with the files each build file depends on,
+   *     for {@link DaemonicParserStateSnapshot}.
+   */
+  ImmutableList<DaemonicParserStateSnapshot.BuildFileSnapshot> snapshotBuildFiles() {
+    try (AutoCloseableLock readLock = rawAndComputedNodesLock.readLock()) {
+      SetMultimap<Path, Path> dependencies = HashMultimap.create();
+      Multimaps.invertFrom(buildFileDependents, dependencies);
+      ImmutableList.Builder<DaemonicParserStateSnapshot.BuildFileSnapshot> buildFiles =
+          ImmutableList.builder();
+      for (Path buildFile : allBuildFileManifests.keySet()) {
+        BuildFileManifest manifest = allBuildFileManifests.getIfPresent(buildFile);
+        if (manifest != null) {
+          buildFiles.add(
+              new DaemonicParserStateSnapshot.BuildFileSnapshot(
+                  buildFile, ImmutableSet.copyOf(dependencies.get(buildFile)), manifest));
+        }
+      }
+      return buildFiles.build();
+    }
+  }
+
   int invalidatePath(Path path) {
     try (AutoCloseableLock writeLock = rawAndComputedNodesLock.writeLock()) {
       int invalidatedRawNodes = 0;
@@ -264,6 +358,7 @@ class DaemonicCellState {
           for (Cache<?, ?> cache : typedNodeCaches()) {
             cache.invalidateFor(target);
           }
+          reverseDependencyIndex.invalidate(target);
           allRawNodeTargets.remove(target);
         }
         allBuildFileManifests.invalidate(path);
@@ -24,6 +24,7 @@ import com.facebook.buck.core.model.BuildTarget;
 import com.facebook.buck.core.model.UnconfiguredBuildTargetView;
 import com.facebook.buck.core.model.impl.FilesystemBackedBuildFileTree;
 import com.facebook.buck.core.model.targetgraph.TargetNode;
+import com.facebook.buck.core.model.targetgraph.impl.TargetNodeAttributesHashCache;
 import com.facebook.buck.core.model.targetgraph.raw.RawTargetNode;
 import com.facebook.buck.core.util.log.Logger;
 import com.facebook.buck.counters.Counter;
@@ -31,15 +32,20 @@ import com.facebook.buck.counters.IntegerCounter;
 import com.facebook.buck.counters.TagSetCounter;
 import com.facebook.buck.event.BuckEventBus;
 import com.facebook.buck.event.ParsingEvent;
+import com.facebook.buck.io.pathformat.PathFormatter;
 import com.facebook.buck.io.watchman.WatchmanEvent.Kind;
 import com.facebook.buck.io.watchman.WatchmanOverflowEvent;
 import com.facebook.buck.io.watchman.WatchmanPathEvent;
 import com.facebook.buck.parser.api.BuildFileManifest;
+import com.facebook.buck.parser.config.AbstractParserConfig.SkylarkGlobHandler;
 import com.facebook.buck.parser.config.ParserConfig;
 import com.facebook.buck.parser.exceptions.BuildFileParseException;
 import com.facebook.buck.parser.exceptions.BuildTargetException;
+import com.facebook.buck.skylark.io.GlobSpecWithResult;
+import com.facebook.buck.skylark.io.impl.GlobIndex;
 import com.facebook.buck.util.concurrent.AutoCloseableLock;
 import com.facebook.buck.util.concurrent.AutoCloseableReadWriteLock;
+import com.facebook.buck.util.types.Pair;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Throwables;
 import com.google.common.cache.CacheBuilder;
@@ -51,8 +57,11 @@ import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.MapDifference;
 import com.google.common.eventbus.Subscribe;
+import com.google.common.hash.HashCode;
 import com.google.common.util.concurrent.UncheckedExecutionException;
+import java.io.IOException;
 import java.nio.file.Path;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Optional;
@@ -283,6 +292,35 @@ public class DaemonicParserState {
   private final IntegerCounter rulesInvalidatedByWatchEventsCounter;
   private final TagSetCounter pathsAddedOrRemovedInvalidatingBuildFiles;
 
+  /**
+   * View of the hashes of target node attributes, which are invalidated with the raw nodes of their
+   * build files.
+   */
+  private class DaemonicTargetNodeAttributesHashCache implements TargetNodeAttributesHashCache {
+
+    @Override
+    public Optional<HashCode> get(TargetNode<?> node, String hashKind) {
+      DaemonicCellState cellState = getCellState(node.getBuildTarget().getCellPath());
+      if (cellState == null) {
+        return Optional.empty();
+      }
+      return cellState
+          .getCache(DaemonicCellState.TARGET_NODE_ATTRIBUTES_HASH_CACHE_TYPE)
+          .lookupComputedNode(new Pair<>(node.getBuildTarget(), hashKind));
+    }
+
+    @Override
+    public void put(TargetNode<?> node, String hashKind, HashCode hash) {
+      DaemonicCellState cellState = getCellState(node.getBuildTarget().getCellPath());
+      if (cellState == null) {
+        return;
+      }
+      cellState
+          .getCache(DaemonicCellState.TARGET_NODE_ATTRIBUTES_HASH_CACHE_TYPE)
+          .putComputedNodeIfRawNodePresent(new Pair<>(node.getBuildTarget(), hashKind), hash);
+    }
+  }
+
   /**
    * The set of {@link Cell} instances that have been seen by this state. This information is used
    * for cache invalidation. Please see {@link #invalidateBasedOn(WatchmanPathEvent)} for example
@@ -321,10 +359,20 @@ public class DaemonicParserState {
 
   private final DaemonicRawCacheView rawNodeCache;
 
+  private final DaemonicTargetNodeAttributesHashCache targetNodeAttributesHashCache =
+      new DaemonicTargetNodeAttributesHashCache();
+
   private final int parsingThreads;
 
   private final LoadingCache<Cell, BuildFileTree> buildFileTrees;
 
+  /** Directory listings used by Skylark globs, kept up to date by file system events. */
+  private final GlobIndex globIndex = new GlobIndex();
+
+  /** Target patterns requested after file changes, used to parse them again speculatively. */
+  private final SpeculativeParsingHistory speculativeParsingHistory =
+      new SpeculativeParsingHistory();
+
   /**
    * The default includes used by the previous run of the parser in each cell (the key is the cell's
    * root path). If this value changes, then we need to invalidate all the caches.
@@ -440,10 +488,59 @@ public class DaemonicParserState {
     return rawNodeCache;
   }
 
+  /** @return the glob index shared by Skylark parsers configured to use it. */
+  public GlobIndex getGlobIndex() {
+    return globIndex;
+  }
+
+  /** @return the history of target patterns requested after file changes seen by this daemon. */
+  public SpeculativeParsingHistory getSpeculativeParsingHistory() {
+    return speculativeParsingHistory;
+  }
+
+  /**
+   * @return the hashes of target node attributes computed by previous commands, for hashing the
+   *     target graph incrementally.
+   */
+  public TargetNodeAttributesHashCache getTargetNodeAttributesHashCache() {
+    return targetNodeAttributesHashCache;
+  }
+
+  /**
+   * @return whether the dependencies of the cached target nodes of {@code target} are known to
+   *     {@link #getReverseDependencies}.
+   */
+  public boolean hasIndexedDependencies(UnconfiguredBuildTargetView target) {
+    DaemonicCellState cellState = getCellState(target.getCellPath());
+    return cellState != null && cellState.hasIndexedDependencies(target);
+  }
+
+  /**
+   * Returns the targets in all cells whose cached target nodes depend on {@code target}, in any
+   * configuration. The reverse dependencies are kept up to date as build files change, so this
+   * doesn't require a target graph, but only targets parsed since their build file last changed are
+   * included.
+   */
+  public ImmutableSet<UnconfiguredBuildTargetView> getReverseDependencies(
+      UnconfiguredBuildTargetView target) {
+    Set<UnconfiguredBuildTargetView> result = new HashSet<>();
+    try (AutoCloseableLock readLock = cellStateLock.readLock()) {
+      for (DaemonicCellState state : cellPathToDaemonicState.values()) {
+        state.addReverseDependencies(target, result);
+      }
+    }
+    return ImmutableSet.copyOf(result);
+  }
+
   @Nullable
   private DaemonicCellState getCellState(Cell cell) {
+    return getCellState(cell.getRoot());
+  }
+
+  @Nullable
+  private DaemonicCellState getCellState(Path cellRoot) {
     try (AutoCloseableLock readLock = cellStateLock.readLock()) {
-      return cellPathToDaemonicState.get(cell.getRoot());
+      return cellPathToDaemonicState.get(cellRoot);
     }
   }
 
@@ -462,6 +559,8 @@ public class DaemonicParserState {
   public void invalidateBasedOn(WatchmanOverflowEvent event) {
     // Non-path change event, likely an overflow due to many change events: invalidate everything.
     LOG.debug("Received non-path change event %s, assuming overflow and checking caches.", event);
+    globIndex.invalidateAll();
+    speculativeParsingHistory.recordUnknownChanges();
 
     if (invalidateAllCaches()) {
       LOG.warn("Invalidated cache on watch event %s.", event);
@@ -477,10 +576,12 @@ public class DaemonicParserState {
 
     Path path = event.getPath();
     Path fullPath = event.getCellPath().resolve(event.getPath());
+    speculativeParsingHistory.recordChange(fullPath);
 
     // We only care about creation and deletion events because modified should result in a
     // rule key change.  For parsing, these are the only events we need to care about.
     if (isPathCreateOrDeleteEvent(event)) {
+      globIndex.invalidate(fullPath);
       try (AutoCloseableLock readLock = cellStateLock.readLock()) {
         for (DaemonicCellState state : cellPathToDaemonicState.values()) {
           try {
@@ -498,7 +599,8 @@ public class DaemonicParserState {
             // Added or removed files can affect globs, so invalidate the package build file
             // "containing" {@code path} unless its filename matches a temp file pattern.
             if (!cell.getFilesystem().isIgnored(path)) {
-              invalidateContainingBuildFile(state, cell, buildFiles, path);
+              invalidateContainingBuildFile(
+                  state, cell, buildFiles, path, event.getKind() == Kind.CREATE);
             } else {
               LOG.debug(
                   "Not invalidating the owning build file of %s because it is a temporary file.",
@@ -554,11 +656,15 @@ public class DaemonicParserState {
    * Finds the build file responsible for the given {@link Path} and invalidates all of the cached
    * rules dependent on it.
    *
+   * <p>When the cell resolves globs using the glob index, packages whose cached glob results are
+   * not affected by the change are not invalidated.
+   *
    * @param path A {@link Path}, relative to the project root and "contained" within the build file
    *     to find and invalidate.
+   * @param added Whether {@code path} was added rather than removed.
    */
   private void invalidateContainingBuildFile(
-      DaemonicCellState state, Cell cell, BuildFileTree buildFiles, Path path) {
+      DaemonicCellState state, Cell cell, BuildFileTree buildFiles, Path path, boolean added) {
     LOG.verbose("Invalidating rules dependent on change to %s in cell %s", path, cell);
     Set<Path> packageBuildFiles = new HashSet<>();
 
@@ -581,6 +687,21 @@ public class DaemonicParserState {
       }
     }
 
+    ParserConfig parserConfig = cell.getBuckConfigView(ParserConfig.class);
+    String buildFileName = parserConfig.getBuildFileName();
+    if (parserConfig.getSkylarkGlobHandler() == SkylarkGlobHandler.INDEX
+        && !path.endsWith(buildFileName)) {
+      Path changedPath = cell.getFilesystem().resolve(path);
+      packageBuildFiles.removeIf(
+          packagePath ->
+              !globResultsMayChange(
+                  state,
+                  cell.getFilesystem().resolve(packagePath),
+                  buildFileName,
+                  changedPath,
+                  added));
+    }
+
     if (packageBuildFiles.isEmpty()) {
       LOG.debug(
           "%s is not owned by any build file.  Not invalidating anything.",
@@ -593,11 +714,35 @@ public class DaemonicParserState {
 
     // Invalidate all the packages we found.
     for (Path buildFile : packageBuildFiles) {
-      invalidatePath(
-          state, buildFile.resolve(cell.getBuckConfigView(ParserConfig.class).getBuildFileName()));
+      invalidatePath(state, buildFile.resolve(buildFileName));
     }
   }
 
+  /**
+   * Checks whether adding or removing {@code changedPath} may change the results of globs evaluated
+   * by the build file of a package, according to its cached manifest. Manifests without globs are
+   * assumed to be affected, since manifests produced by the Python DSL parser do not record them.
+   */
+  private static boolean globResultsMayChange(
+      DaemonicCellState state,
+      Path packagePath,
+      String buildFileName,
+      Path changedPath,
+      boolean added) {
+    Optional<BuildFileManifest> manifest =
+        state.lookupBuildFileManifest(packagePath.resolve(buildFileName));
+    if (!manifest.isPresent() || manifest.get().getGlobManifest().isEmpty()) {
+      return true;
+    }
+    String relativePath = PathFormatter.pathWithUnixSeparators(packagePath.relativize(changedPath));
+    for (GlobSpecWithResult glob : manifest.get().getGlobManifest()) {
+      if (GlobIndex.mayChangeGlobResult(glob, relativePath, added)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
   /**
    * Remove the targets and rules defined by {@code path} from the cache and recursively remove the
    * targets and rules defined by files that transitively include {@code path} from the cache.
@@ -714,6 +859,94 @@ public class DaemonicParserState {
     }
   }
 
+  /**
+   * Writes the build file manifests of all cells to a snapshot that a later daemon can restore
+   * with {@link #restoreSnapshot}.
+   *
+   * @param watchmanClocks the Watchman clock of each watched cell, up to which this state has
+   *     processed file changes
+   */
+  public void writeSnapshot(
+      Path snapshotPath, String buckVersion, ImmutableMap<Path, String> watchmanClocks)
+      throws IOException {
+    ImmutableList.Builder<DaemonicParserStateSnapshot.CellSnapshot> cells =
+        ImmutableList.builder();
+    try (AutoCloseableLock readLock = cellStateLock.readLock()) {
+      for (DaemonicCellState state : cellPathToDaemonicState.values()) {
+        Iterable<String> defaultIncludes;
+        try (AutoCloseableLock cachedStateReadLock = cachedStateLock.readLock()) {
+          defaultIncludes = cachedIncludes.get(state.getCellRoot());
+        }
+        if (defaultIncludes == null) {
+          continue;
+        }
+        cells.add(
+            new DaemonicParserStateSnapshot.CellSnapshot(
+                state.getCellRoot(),
+                state.getCell().getBuckConfig().getConfig().getOrderIndependentHashCode(),
+                ImmutableList.copyOf(defaultIncludes),
+                state.snapshotBuildFiles()));
+      }
+    }
+    new DaemonicParserStateSnapshot(watchmanClocks, cells.build()).write(snapshotPath, buckVersion);
+  }
+
+  /**
+   * Restores the build file manifests written by {@link #writeSnapshot} for the cells whose
+   * configuration didn't change since.
+   *
+   * @param cells the cells of the current configuration
+   * @param watchedCellPaths the cells whose changes since the snapshot have to be replayed from
+   *     Watchman
+   * @return the Watchman clock of each watched cell the snapshot was taken at, or nothing if the
+   *     snapshot couldn't be restored.
+   */
+  public Optional<ImmutableMap<Path, String>> restoreSnapshot(
+      Path snapshotPath, String buckVersion, Iterable<Cell> cells, Set<Path> watchedCellPaths) {
+    Optional<DaemonicParserStateSnapshot> snapshot =
+        DaemonicParserStateSnapshot.read(snapshotPath, buckVersion, snapshotPath.getFileSystem());
+    if (!snapshot.isPresent()) {
+      return Optional.empty();
+    }
+    if (!snapshot.get().getWatchmanClocks().keySet().containsAll(watchedCellPaths)) {
+      LOG.debug("Parser state snapshot has no Watchman clock for some of %s.", watchedCellPaths);
+      return Optional.empty();
+    }
+
+    Map<Path, Cell> cellsByRoot = new HashMap<>();
+    cells.forEach(cell -> cellsByRoot.put(cell.getRoot(), cell));
+    int restoredBuildFiles = 0;
+    for (DaemonicParserStateSnapshot.CellSnapshot cellSnapshot : snapshot.get().getCells()) {
+      Cell cell = cellsByRoot.get(cellSnapshot.getRoot());
+      if (cell == null
+          || !cell.getBuckConfig()
+              .getConfig()
+              .getOrderIndependentHashCode()
+              .equals(cellSnapshot.getConfigHash())
+          || !Iterables.elementsEqual(
+              cell.getBuckConfig().getView(ParserConfig.class).getDefaultIncludes(),
+              cellSnapshot.getDefaultIncludes())) {
+        LOG.debug("Not restoring parser state of changed cell %s.", cellSnapshot.getRoot());
+        continue;
+      }
+      try (AutoCloseableLock writeLock = cachedStateLock.writeLock()) {
+        cachedIncludes.put(cell.getRoot(), cellSnapshot.getDefaultIncludes());
+      }
+      DaemonicCellState state = getOrCreateCellState(cell);
+      for (DaemonicParserStateSnapshot.BuildFileSnapshot buildFile : cellSnapshot.getBuildFiles()) {
+        BuildFileManifest manifest = buildFile.getManifest();
+        state.putBuildFileManifestIfNotPresent(
+            buildFile.getPath(),
+            manifest,
+            buildFile.getDependencies(),
+            manifest.getEnv().orElse(ImmutableMap.of()));
+        restoredBuildFiles++;
+      }
+    }
+    LOG.info("Restored %d build file manifests from %s.", restoredBuildFiles, snapshotPath);
+    return Optional.of(snapshot.get().getWatchmanClocks());
+  }
+
   public ImmutableList<Counter> getCounters() {
     return ImmutableList.of(
         cacheInvalidatedByEnvironmentVariableChangeCounter,
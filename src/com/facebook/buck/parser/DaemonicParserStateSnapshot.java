@@ -0,0 +1,283 @@
+/*
+ * Copyright 2019-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.parser;
+
+import com.facebook.buck.core.util.log.Logger;
+import com.facebook.buck.parser.api.BuildFileManifest;
+import com.facebook.buck.parser.cache.json.BuildFileManifestSerializer;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.hash.HashCode;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystem;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Versioned on-disk snapshot of the build file manifests of a {@link DaemonicParserState}, used to
+ * carry them over to the next daemon.
+ *
+ * <p>The snapshot records the Watchman clock of each watched cell at the time it was written. The
+ * next daemon replays the changes since these clocks to invalidate the manifests of the build files
+ * that changed meanwhile, the same way a running daemon does between two commands.
+ *
+ * <p>Manifests are stored in the format of {@link BuildFileManifestSerializer}, so that the
+ * attributes of targets are only decoded when used. The snapshot is read into the heap rather than
+ * mapped, so that it can be replaced while the manifests read from it are in use.
+ */
+final class DaemonicParserStateSnapshot {
+  private static final Logger LOG = Logger.get(DaemonicParserStateSnapshot.class);
+
+  private static final int MAGIC = 0x44505353;
+  static final int VERSION = 1;
+
+  private final ImmutableMap<Path, String> watchmanClocks;
+  private final ImmutableList<CellSnapshot> cells;
+
+  DaemonicParserStateSnapshot(
+      ImmutableMap<Path, String> watchmanClocks, ImmutableList<CellSnapshot> cells) {
+    this.watchmanClocks = watchmanClocks;
+    this.cells = cells;
+  }
+
+  /** @return the Watchman clock of each watched cell when the snapshot was taken. */
+  ImmutableMap<Path, String> getWatchmanClocks() {
+    return watchmanClocks;
+  }
+
+  ImmutableList<CellSnapshot> getCells() {
+    return cells;
+  }
+
+  /**
+   * Reads the snapshot written by the same version of Buck.
+   *
+   * @param fileSystem the filesystem of the paths recorded in the snapshot
+   * @return the snapshot, or nothing if it is missing, unreadable or was written by a different
+   *     version.
+   */
+  static Optional<DaemonicParserStateSnapshot> read(
+      Path snapshotPath, String buckVersion, FileSystem fileSystem) {
+    try (FileChannel channel = FileChannel.open(snapshotPath, StandardOpenOption.READ)) {
+      ByteBuffer buffer = readFully(channel);
+      if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+        LOG.debug("Ignoring parser state snapshot %s with unknown format.", snapshotPath);
+        return Optional.empty();
+      }
+      if (!readString(buffer).equals(buckVersion)) {
+        LOG.debug("Ignoring parser state snapshot %s written by another version.", snapshotPath);
+        return Optional.empty();
+      }
+
+      int clockCount = buffer.getInt();
+      ImmutableMap.Builder<Path, String> watchmanClocks = ImmutableMap.builder();
+      for (int i = 0; i < clockCount; i++) {
+        watchmanClocks.put(fileSystem.getPath(readString(buffer)), readString(buffer));
+      }
+
+      int cellCount = buffer.getInt();
+      ImmutableList.Builder<CellSnapshot> cells = ImmutableList.builder();
+      for (int i = 0; i < cellCount; i++) {
+        Path root = fileSystem.getPath(readString(buffer));
+        HashCode configHash = HashCode.fromString(readString(buffer));
+        ImmutableList<String> defaultIncludes = readStrings(buffer);
+        int buildFileCount = buffer.getInt();
+        ImmutableList.Builder<BuildFileSnapshot> buildFiles = ImmutableList.builder();
+        for (int j = 0; j < buildFileCount; j++) {
+          Path buildFile = fileSystem.getPath(readString(buffer));
+          ImmutableSet<Path> dependencies =
+              readStrings(buffer).stream()
+                  .map(fileSystem::getPath)
+                  .collect(ImmutableSet.toImmutableSet());
+          int manifestSize = buffer.getInt();
+          ByteBuffer manifestBytes = buffer.slice();
+          manifestBytes.limit(manifestSize);
+          buffer.position(buffer.position() + manifestSize);
+          buildFiles.add(
+              new BuildFileSnapshot(
+                  buildFile,
+                  dependencies,
+                  BuildFileManifestSerializer.deserialize(manifestBytes)));
+        }
+        cells.add(new CellSnapshot(root, configHash, defaultIncludes, buildFiles.build()));
+      }
+      return Optional.of(new DaemonicParserStateSnapshot(watchmanClocks.build(), cells.build()));
+    } catch (NoSuchFileException e) {
+      return Optional.empty();
+    } catch (IOException | BufferUnderflowException | IllegalArgumentException e) {
+      LOG.warn(e, "Ignoring unreadable parser state snapshot %s.", snapshotPath);
+      return Optional.empty();
+    }
+  }
+
+  private static ByteBuffer readFully(FileChannel channel) throws IOException {
+    ByteBuffer buffer = ByteBuffer.allocate(Math.toIntExact(channel.size()));
+    while (buffer.hasRemaining()) {
+      if (channel.read(buffer) < 0) {
+        break;
+      }
+    }
+    buffer.flip();
+    return buffer;
+  }
+
+  /** Atomically replaces the snapshot at {@code snapshotPath} with this snapshot. */
+  void write(Path snapshotPath, String buckVersion) throws IOException {
+    Files.createDirectories(snapshotPath.getParent());
+    Path tmp = Files.createTempFile(snapshotPath.getParent(), ".parser_state", ".tmp");
+    try {
+      try (DataOutputStream out =
+          new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        writeString(out, buckVersion);
+        out.writeInt(watchmanClocks.size());
+        for (Map.Entry<Path, String> clock : watchmanClocks.entrySet()) {
+          writeString(out, clock.getKey().toString());
+          writeString(out, clock.getValue());
+        }
+        out.writeInt(cells.size());
+        for (CellSnapshot cell : cells) {
+          writeString(out, cell.getRoot().toString());
+          writeString(out, cell.getConfigHash().toString());
+          writeStrings(out, cell.getDefaultIncludes());
+          out.writeInt(cell.getBuildFiles().size());
+          for (BuildFileSnapshot buildFile : cell.getBuildFiles()) {
+            writeString(out, buildFile.getPath().toString());
+            writeStrings(
+                out,
+                buildFile.getDependencies().stream()
+                    .map(Path::toString)
+                    .collect(ImmutableList.toImmutableList()));
+            byte[] manifest = BuildFileManifestSerializer.serialize(buildFile.getManifest());
+            out.writeInt(manifest.length);
+            out.write(manifest);
+          }
+        }
+      }
+      Files.move(
+          tmp, snapshotPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    } finally {
+      Files.deleteIfExists(tmp);
+    }
+  }
+
+  private static String readString(ByteBuffer buffer) {
+    byte[] bytes = new byte[buffer.getInt()];
+    buffer.get(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  private static ImmutableList<String> readStrings(ByteBuffer buffer) {
+    int count = buffer.getInt();
+    ImmutableList.Builder<String> strings = ImmutableList.builderWithExpectedSize(count);
+    for (int i = 0; i < count; i++) {
+      strings.add(readString(buffer));
+    }
+    return strings.build();
+  }
+
+  private static void writeString(DataOutputStream out, String value) throws IOException {
+    byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+    out.writeInt(bytes.length);
+    out.write(bytes);
+  }
+
+  private static void writeStrings(DataOutputStream out, Collection<String> values)
+      throws IOException {
+    out.writeInt(values.size());
+    for (String value : values) {
+      writeString(out, value);
+    }
+  }
+
+  /** The parsed build files of a cell. */
+  static final class CellSnapshot {
+    private final Path root;
+    private final HashCode configHash;
+    private final ImmutableList<String> defaultIncludes;
+    private final ImmutableList<BuildFileSnapshot> buildFiles;
+
+    CellSnapshot(
+        Path root,
+        HashCode configHash,
+        ImmutableList<String> defaultIncludes,
+        ImmutableList<BuildFileSnapshot> buildFiles) {
+      this.root = root;
+      this.configHash = configHash;
+      this.defaultIncludes = defaultIncludes;
+      this.buildFiles = buildFiles;
+    }
+
+    Path getRoot() {
+      return root;
+    }
+
+    /** @return the hash of the configuration of the cell the build files were parsed with. */
+    HashCode getConfigHash() {
+      return configHash;
+    }
+
+    /** @return the default includes the build files were parsed with. */
+    ImmutableList<String> getDefaultIncludes() {
+      return defaultIncludes;
+    }
+
+    ImmutableList<BuildFileSnapshot> getBuildFiles() {
+      return buildFiles;
+    }
+  }
+
+  /** The manifest of a build file with the files whose changes invalidate it. */
+  static final class BuildFileSnapshot {
+    private final Path path;
+    private final ImmutableSet<Path> dependencies;
+    private final BuildFileManifest manifest;
+
+    BuildFileSnapshot(Path path, ImmutableSet<Path> dependencies, BuildFileManifest manifest) {
+      this.path = path;
+      this.dependencies = dependencies;
+      this.manifest = manifest;
+    }
+
+    Path getPath() {
+      return path;
+    }
+
+    /** @return the absolute paths of the files, like includes, the build file depends on. */
+    ImmutableSet<Path> getDependencies() {
+      return dependencies;
+    }
+
+    BuildFileManifest getManifest() {
+      return manifest;
+    }
+  }
+}
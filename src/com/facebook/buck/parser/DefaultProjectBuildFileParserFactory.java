@@ -25,6 +25,7 @@ import com.facebook.buck.core.exceptions.config.ErrorHandlingBuckConfig;
 import com.facebook.buck.core.rules.knowntypes.provider.KnownRuleTypesProvider;
 import com.facebook.buck.core.starlark.eventhandler.ConsoleEventHandler;
 import com.facebook.buck.core.starlark.knowntypes.KnownUserDefinedRuleTypes;
+import com.facebook.buck.core.util.immutables.BuckStyleTuple;
 import com.facebook.buck.event.BuckEventBus;
 import com.facebook.buck.event.ConsoleEvent;
 import com.facebook.buck.io.filesystem.ProjectFilesystem;
@@ -46,6 +47,7 @@ import com.facebook.buck.parser.decorators.EventReportingProjectBuildFileParser;
 import com.facebook.buck.parser.options.ProjectBuildFileParserOptions;
 import com.facebook.buck.rules.coercer.TypeCoercerFactory;
 import com.facebook.buck.skylark.io.GlobberFactory;
+import com.facebook.buck.skylark.io.impl.GlobIndex;
 import com.facebook.buck.skylark.io.impl.HybridGlobberFactory;
 import com.facebook.buck.skylark.io.impl.NativeGlobber;
 import com.facebook.buck.skylark.io.impl.SyncCookieState;
@@ -62,10 +64,14 @@ import com.google.devtools.build.lib.events.EventKind;
 import com.google.devtools.build.lib.syntax.EvalException;
 import com.google.devtools.build.lib.syntax.Runtime;
 import java.io.IOException;
+import java.nio.file.Path;
 import java.util.Arrays;
 import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Supplier;
+import org.immutables.value.Value;
 
 public class DefaultProjectBuildFileParserFactory implements ProjectBuildFileParserFactory {
   private final TypeCoercerFactory typeCoercerFactory;
@@ -77,6 +83,15 @@ public class DefaultProjectBuildFileParserFactory implements ProjectBuildFilePar
   private final ThrowingCloseableMemoizedSupplier<ManifestService, IOException>
       manifestServiceSupplier;
   private final FileHashLoader fileHashLoader;
+  private final Optional<GlobIndex> globIndex;
+
+  /**
+   * Skylark parsers by cell root and the settings they were created with. Skylark parsers are
+   * thread-safe, so all parsers created for a cell with the same settings, like the ones pooled for
+   * polyglot parsing, share one instance and evaluate each extension once.
+   */
+  private final ConcurrentMap<SkylarkParserKey, SkylarkProjectBuildFileParser> skylarkParsers =
+      new ConcurrentHashMap<>();
 
   public DefaultProjectBuildFileParserFactory(
       TypeCoercerFactory typeCoercerFactory,
@@ -86,7 +101,8 @@ public class DefaultProjectBuildFileParserFactory implements ProjectBuildFilePar
       boolean enableProfiling,
       Optional<AtomicLong> processedBytes,
       ThrowingCloseableMemoizedSupplier<ManifestService, IOException> manifestServiceSupplier,
-      FileHashLoader fileHashLoader) {
+      FileHashLoader fileHashLoader,
+      Optional<GlobIndex> globIndex) {
     this.typeCoercerFactory = typeCoercerFactory;
     this.console = console;
     this.pythonInterpreterProvider = pythonInterpreterProvider;
@@ -95,6 +111,7 @@ public class DefaultProjectBuildFileParserFactory implements ProjectBuildFilePar
     this.processedBytes = processedBytes;
     this.manifestServiceSupplier = manifestServiceSupplier;
     this.fileHashLoader = fileHashLoader;
+    this.globIndex = globIndex;
   }
 
   public DefaultProjectBuildFileParserFactory(
@@ -104,7 +121,8 @@ public class DefaultProjectBuildFileParserFactory implements ProjectBuildFilePar
       Optional<AtomicLong> processedBytes,
       KnownRuleTypesProvider knownRuleTypesProvider,
       ThrowingCloseableMemoizedSupplier<ManifestService, IOException> manifestServiceSupplier,
-      FileHashLoader fileHashLoader) {
+      FileHashLoader fileHashLoader,
+      Optional<GlobIndex> globIndex) {
     this(
         typeCoercerFactory,
         Console.createNullConsole(),
@@ -113,7 +131,8 @@ public class DefaultProjectBuildFileParserFactory implements ProjectBuildFilePar
         enableProfiling,
         processedBytes,
         manifestServiceSupplier,
-        fileHashLoader);
+        fileHashLoader,
+        globIndex);
   }
 
   public DefaultProjectBuildFileParserFactory(
@@ -131,7 +150,8 @@ public class DefaultProjectBuildFileParserFactory implements ProjectBuildFilePar
         false,
         Optional.empty(),
         manifestServiceSupplier,
-        fileHashLoader);
+        fileHashLoader,
+        Optional.empty());
   }
 
   /**
@@ -176,6 +196,7 @@ public class DefaultProjectBuildFileParserFactory implements ProjectBuildFilePar
             .setBuildFileImportWhitelist(parserConfig.getBuildFileImportWhitelist())
             .setDisableImplicitNativeRules(parserConfig.getDisableImplicitNativeRules())
             .setEnableUserDefinedRules(parserConfig.getEnableUserDefinedRules())
+            .setEnableBserOutput(parserConfig.getPythonDslBserOutput())
             .setWarnAboutDeprecatedSyntax(parserConfig.isWarnAboutDeprecatedSyntax())
             .setPackageImplicitIncludes(parserConfig.getPackageImplicitIncludes())
             .build();
@@ -243,7 +264,7 @@ public class DefaultProjectBuildFileParserFactory implements ProjectBuildFilePar
                   Syntax.SKYLARK,
                   addCachingDecoratorIfEnabled(
                       cell.getBuckConfig(),
-                      newSkylarkParser(
+                      getOrCreateSkylarkParser(
                           cell,
                           typeCoercerFactory,
                           knownRuleTypesProvider.getUserDefinedRuleTypes(cell),
@@ -259,7 +280,7 @@ public class DefaultProjectBuildFileParserFactory implements ProjectBuildFilePar
           parser =
               addCachingDecoratorIfEnabled(
                   cell.getBuckConfig(),
-                  newSkylarkParser(
+                  getOrCreateSkylarkParser(
                       cell,
                       typeCoercerFactory,
                       knownRuleTypesProvider.getUserDefinedRuleTypes(cell),
@@ -310,7 +331,27 @@ public class DefaultProjectBuildFileParserFactory implements ProjectBuildFilePar
     return new ConcurrentProjectBuildFileParser(parserSupplier);
   }
 
-  private static SkylarkProjectBuildFileParser newSkylarkParser(
+  private SkylarkProjectBuildFileParser getOrCreateSkylarkParser(
+      Cell cell,
+      TypeCoercerFactory typeCoercerFactory,
+      KnownUserDefinedRuleTypes knownUserDefinedRuleTypes,
+      BuckEventBus eventBus,
+      ProjectBuildFileParserOptions buildFileParserOptions,
+      SkylarkGlobHandler skylarkGlobHandler) {
+    return skylarkParsers.computeIfAbsent(
+        SkylarkParserKey.of(
+            cell.getRoot(), eventBus, buildFileParserOptions, skylarkGlobHandler),
+        key ->
+            newSkylarkParser(
+                cell,
+                typeCoercerFactory,
+                knownUserDefinedRuleTypes,
+                eventBus,
+                buildFileParserOptions,
+                skylarkGlobHandler));
+  }
+
+  private SkylarkProjectBuildFileParser newSkylarkParser(
       Cell cell,
       TypeCoercerFactory typeCoercerFactory,
       KnownUserDefinedRuleTypes knownUserDefinedRuleTypes,
@@ -319,7 +360,7 @@ public class DefaultProjectBuildFileParserFactory implements ProjectBuildFilePar
       SkylarkGlobHandler skylarkGlobHandler) {
     GlobberFactory globberFactory;
     try {
-      globberFactory = getSkylarkGlobberFactory(buildFileParserOptions, skylarkGlobHandler);
+      globberFactory = getSkylarkGlobberFactory(cell, buildFileParserOptions, skylarkGlobHandler);
     } catch (IOException e) {
       throw new RuntimeException(
           "Watchman glob handler was requested, but Watchman client cannot be created", e);
@@ -380,9 +421,18 @@ public class DefaultProjectBuildFileParserFactory implements ProjectBuildFilePar
     }
   }
 
-  private static GlobberFactory getSkylarkGlobberFactory(
-      ProjectBuildFileParserOptions buildFileParserOptions, SkylarkGlobHandler skylarkGlobHandler)
+  private GlobberFactory getSkylarkGlobberFactory(
+      Cell cell,
+      ProjectBuildFileParserOptions buildFileParserOptions,
+      SkylarkGlobHandler skylarkGlobHandler)
       throws IOException {
+    if (skylarkGlobHandler == SkylarkGlobHandler.INDEX) {
+      // The index is owned by the daemonic parser state, so it is not available for parsers
+      // created outside of the parsing pipeline.
+      return globIndex.isPresent()
+          ? globIndex.get().createGlobberFactory(cell.getRoot(), cell.getFilesystem()::isIgnored)
+          : NativeGlobber::create;
+    }
     SyncCookieState syncCookieState = new SyncCookieState();
     return skylarkGlobHandler == SkylarkGlobHandler.JAVA
             || buildFileParserOptions.getWatchman() == WatchmanFactory.NULL_WATCHMAN
@@ -393,4 +443,17 @@ public class DefaultProjectBuildFileParserFactory implements ProjectBuildFilePar
             buildFileParserOptions.getProjectRoot(),
             buildFileParserOptions.getWatchman().getProjectWatches());
   }
+
+  /** Settings a shared Skylark parser was created with. */
+  @Value.Immutable
+  @BuckStyleTuple
+  abstract static class AbstractSkylarkParserKey {
+    abstract Path getCellRoot();
+
+    abstract BuckEventBus getEventBus();
+
+    abstract ProjectBuildFileParserOptions getBuildFileParserOptions();
+
+    abstract SkylarkGlobHandler getSkylarkGlobHandler();
+  }
 }
@@ -29,6 +29,10 @@ import com.google.common.collect.ImmutableSortedSet;
 import com.google.common.io.Files;
 import java.io.IOException;
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import javax.annotation.Nullable;
 
 /**
@@ -62,6 +66,24 @@ public class HybridProjectBuildFileParser implements ProjectBuildFileParser {
     return getParserForBuildFile(buildFile).getBuildFileManifest(buildFile);
   }
 
+  @Override
+  public void prefetch(List<Path> buildFiles) throws IOException {
+    Map<ProjectBuildFileParser, List<Path>> buildFilesByParser = new LinkedHashMap<>();
+    for (Path buildFile : buildFiles) {
+      ProjectBuildFileParser parser;
+      try {
+        parser = getParserForBuildFile(buildFile);
+      } catch (BuildFileParseException e) {
+        // Reported when the build file is requested.
+        continue;
+      }
+      buildFilesByParser.computeIfAbsent(parser, key -> new ArrayList<>()).add(buildFile);
+    }
+    for (Map.Entry<ProjectBuildFileParser, List<Path>> entry : buildFilesByParser.entrySet()) {
+      entry.getKey().prefetch(entry.getValue());
+    }
+  }
+
   @Override
   public void reportProfile() throws IOException {
     for (ProjectBuildFileParser parser : parsers.values()) {
@@ -110,7 +110,8 @@ class PerBuildStateFactoryWithConfigurableAttributes extends PerBuildStateFactor
             parseProcessedBytes,
             knownRuleTypesProvider,
             manifestServiceSupplier,
-            fileHashLoader);
+            fileHashLoader,
+            Optional.of(daemonicParserState.getGlobIndex()));
     ProjectBuildFileParserPool projectBuildFileParserPool =
         new ProjectBuildFileParserPool(
             numParsingThreads, // Max parsers to create per cell.
@@ -26,14 +26,27 @@ import com.facebook.buck.parser.api.Syntax;
 import com.facebook.buck.parser.config.ParserConfig;
 import com.facebook.buck.util.concurrent.ResourcePool;
 import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.math.IntMath;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
 import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
 import java.io.IOException;
+import java.math.RoundingMode;
 import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.atomic.AtomicBoolean;
+import javax.annotation.Nullable;
 import javax.annotation.concurrent.GuardedBy;
 
 /**
@@ -42,15 +55,27 @@ import javax.annotation.concurrent.GuardedBy;
  * <p>Parser instances are lazily created up till a fixed maximum. If more than max parser are
  * requested the associated 'requests' are queued up. As soon as a parser is returned it will be
  * used to satisfy the first pending request, otherwise it is "parked".
+ *
+ * <p>Requests for pooled cells are queued per cell and parsers take them off the queue in batches,
+ * which lets parsers that support it ({@link ProjectBuildFileParser#prefetch}) parse a batch
+ * without waiting for each result in turn. Another parser is started only when there are more
+ * queued requests than parsers working on the queue, so the number of parsers follows the depth of
+ * the queue.
  */
 class ProjectBuildFileParserPool implements AutoCloseable {
   private static final Logger LOG = Logger.get(ProjectBuildFileParserPool.class);
 
+  /** Maximum number of build files a parser takes off the queue at once. */
+  private static final int MAX_BATCH_SIZE = 16;
+
   private final int maxParsersPerCell;
 
   @GuardedBy("this")
   private final Map<Cell, ResourcePool<ProjectBuildFileParser>> parserResourcePools;
 
+  @GuardedBy("this")
+  private final Map<Cell, ParseQueue> parseQueues;
+
   @GuardedBy("this")
   private final Map<Cell, ProjectBuildFileParser> nonPooledCells;
 
@@ -67,6 +92,7 @@ class ProjectBuildFileParserPool implements AutoCloseable {
 
     this.maxParsersPerCell = maxParsersPerCell;
     this.parserResourcePools = new HashMap<>();
+    this.parseQueues = new HashMap<>();
     this.nonPooledCells = new HashMap<>();
     this.projectBuildFileParserFactory = projectBuildFileParserFactory;
     this.closing = new AtomicBoolean(false);
@@ -89,9 +115,15 @@ class ProjectBuildFileParserPool implements AutoCloseable {
     Preconditions.checkState(!closing.get());
 
     if (shouldUsePoolForCell(cell)) {
-      return getResourcePoolForCell(buckEventBus, cell, watchman)
-          .scheduleOperationWithResource(
-              parser -> parser.getBuildFileManifest(buildFile), executorService);
+      SettableFuture<BuildFileManifest> result = SettableFuture.create();
+      synchronized (this) {
+        ResourcePool<ProjectBuildFileParser> resourcePool =
+            getResourcePoolForCell(buckEventBus, cell, watchman);
+        ParseQueue queue = parseQueues.computeIfAbsent(cell, c -> new ParseQueue());
+        queue.requests.add(new ParseRequest(buildFile, result));
+        scheduleDrainIfNeeded(resourcePool, queue, executorService);
+      }
+      return result;
     }
     ProjectBuildFileParser parser = getParserForCell(buckEventBus, cell, watchman);
     return executorService.submit(() -> parser.getBuildFileManifest(buildFile));
@@ -113,6 +145,148 @@ class ProjectBuildFileParserPool implements AutoCloseable {
                         buckEventBus, c, watchman, false)));
   }
 
+  /**
+   * Schedules another parser to work on {@code queue} if it has more queued requests than parsers
+   * working on it.
+   */
+  @GuardedBy("this")
+  private void scheduleDrainIfNeeded(
+      ResourcePool<ProjectBuildFileParser> resourcePool,
+      ParseQueue queue,
+      ListeningExecutorService executorService) {
+    if (queue.requests.size() <= queue.scheduledDrains
+        || queue.scheduledDrains >= maxParsersPerCell) {
+      return;
+    }
+    queue.scheduledDrains++;
+    AtomicBoolean started = new AtomicBoolean(false);
+    ListenableFuture<Void> drain =
+        resourcePool.scheduleOperationWithResource(
+            parser -> {
+              started.set(true);
+              drainQueue(parser, resourcePool, queue, executorService);
+              return null;
+            },
+            executorService);
+    Futures.addCallback(
+        drain,
+        new FutureCallback<Void>() {
+          @Override
+          public void onSuccess(@Nullable Void result) {}
+
+          @Override
+          public void onFailure(Throwable t) {
+            if (!started.get()) {
+              // The pool is closing or failed to create a parser.
+              onDrainFailedToStart(queue, t);
+            }
+          }
+        },
+        MoreExecutors.directExecutor());
+  }
+
+  private void drainQueue(
+      ProjectBuildFileParser parser,
+      ResourcePool<ProjectBuildFileParser> resourcePool,
+      ParseQueue queue,
+      ListeningExecutorService executorService)
+      throws Exception {
+    while (true) {
+      List<ParseRequest> batch = takeBatch(queue);
+      if (batch.isEmpty()) {
+        return;
+      }
+      ImmutableList.Builder<Path> buildFiles = ImmutableList.builderWithExpectedSize(batch.size());
+      for (ParseRequest request : batch) {
+        buildFiles.add(request.buildFile);
+      }
+      int next = 0;
+      try {
+        try {
+          parser.prefetch(buildFiles.build());
+        } catch (IOException e) {
+          // If the problem persists, it is reported when the build files are parsed.
+          LOG.debug(e, "Failed to prefetch build files.");
+        }
+        for (; next < batch.size(); next++) {
+          ParseRequest request = batch.get(next);
+          if (closing.get()) {
+            request.result.cancel(false);
+            continue;
+          }
+          request.result.set(parser.getBuildFileManifest(request.buildFile));
+        }
+      } catch (Throwable t) {
+        batch.get(next).result.setException(t);
+        requeueAfterFailure(
+            resourcePool, queue, batch.subList(next + 1, batch.size()), executorService);
+        // Make the resource pool retire the parser.
+        throw t;
+      }
+    }
+  }
+
+  /**
+   * @return the next requests for a parser working on {@code queue}, sharing the queued requests
+   *     evenly between parsers. If there are none, the parser stops working on the queue.
+   */
+  private synchronized List<ParseRequest> takeBatch(ParseQueue queue) {
+    if (closing.get()) {
+      cancelQueuedRequests(queue);
+    }
+    if (queue.requests.isEmpty()) {
+      queue.scheduledDrains--;
+      return ImmutableList.of();
+    }
+    int batchSize =
+        Math.min(
+            MAX_BATCH_SIZE,
+            IntMath.divide(queue.requests.size(), queue.scheduledDrains, RoundingMode.CEILING));
+    List<ParseRequest> batch = new ArrayList<>(batchSize);
+    for (int i = 0; i < batchSize; i++) {
+      batch.add(queue.requests.remove());
+    }
+    return batch;
+  }
+
+  private synchronized void requeueAfterFailure(
+      ResourcePool<ProjectBuildFileParser> resourcePool,
+      ParseQueue queue,
+      List<ParseRequest> remainingRequests,
+      ListeningExecutorService executorService) {
+    for (int i = remainingRequests.size() - 1; i >= 0; i--) {
+      queue.requests.addFirst(remainingRequests.get(i));
+    }
+    queue.scheduledDrains--;
+    if (closing.get()) {
+      cancelQueuedRequests(queue);
+      return;
+    }
+    scheduleDrainIfNeeded(resourcePool, queue, executorService);
+  }
+
+  private synchronized void onDrainFailedToStart(ParseQueue queue, Throwable t) {
+    queue.scheduledDrains--;
+    if (queue.scheduledDrains > 0) {
+      return;
+    }
+    for (ParseRequest request : queue.requests) {
+      if (t instanceof CancellationException) {
+        request.result.cancel(false);
+      } else {
+        request.result.setException(t);
+      }
+    }
+    queue.requests.clear();
+  }
+
+  private static void cancelQueuedRequests(ParseQueue queue) {
+    for (ParseRequest request : queue.requests) {
+      request.result.cancel(false);
+    }
+    queue.requests.clear();
+  }
+
   private synchronized ProjectBuildFileParser getParserForCell(
       BuckEventBus buckEventBus, Cell cell, Watchman watchman) {
     return nonPooledCells.computeIfAbsent(
@@ -174,4 +348,23 @@ class ProjectBuildFileParserPool implements AutoCloseable {
     return parserConfig.isPolyglotParsingEnabled()
         || parserConfig.getDefaultBuildFileSyntax() == Syntax.PYTHON_DSL;
   }
+
+  /** A request to parse a build file of a pooled cell. */
+  private static class ParseRequest {
+    private final Path buildFile;
+    private final SettableFuture<BuildFileManifest> result;
+
+    private ParseRequest(Path buildFile, SettableFuture<BuildFileManifest> result) {
+      this.buildFile = buildFile;
+      this.result = result;
+    }
+  }
+
+  /** Requests to parse build files of a pooled cell that are not handed to a parser yet. */
+  private static class ParseQueue {
+    private final Deque<ParseRequest> requests = new ArrayDeque<>();
+
+    /** Number of parsers that are scheduled to take requests off this queue. */
+    private int scheduledDrains;
+  }
 }
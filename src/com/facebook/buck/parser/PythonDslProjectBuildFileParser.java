@@ -30,6 +30,7 @@ import com.facebook.buck.io.watchman.WatchmanDiagnosticEvent;
 import com.facebook.buck.json.BuildFileParseExceptionData;
 import com.facebook.buck.json.BuildFileParseExceptionStackTraceEntry;
 import com.facebook.buck.json.BuildFilePythonResult;
+import com.facebook.buck.json.BuildFilePythonResultBserDeserializer;
 import com.facebook.buck.json.BuildFileSyntaxError;
 import com.facebook.buck.parser.api.BuildFileManifest;
 import com.facebook.buck.parser.api.ImmutableBuildFileManifest;
@@ -74,6 +75,9 @@ import java.io.OutputStream;
 import java.nio.file.FileSystem;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
@@ -97,6 +101,9 @@ public class PythonDslProjectBuildFileParser implements ProjectBuildFileParser {
   private static final String PYTHON_HASH_SEED_ENV_VAR_NAME = "PYTHONHASHSEED";
   private static final String PYTHON_HASH_SEED_VALUE = "7";
 
+  /** Maximum number of results that are requested from buck.py ahead of being needed. */
+  private static final int MAX_PIPELINED_REQUESTS = 64;
+
   private static final Logger LOG = Logger.get(PythonDslProjectBuildFileParser.class);
 
   private final ImmutableMap<String, String> environment;
@@ -110,6 +117,13 @@ public class PythonDslProjectBuildFileParser implements ProjectBuildFileParser {
   @Nullable private ParserInputStream buckPyProcessInput;
   @Nullable private JsonGenerator buckPyProcessJsonGenerator;
   @Nullable private JsonParser buckPyProcessJsonParser;
+  @Nullable private BuildFilePythonResultBserDeserializer buckPyProcessBserDeserializer;
+
+  /** Build files that were sent to buck.py and whose results were not read yet, in order. */
+  private final Deque<Path> pipelinedBuildFiles = new ArrayDeque<>();
+
+  /** Results that were read from buck.py before the build file was requested. */
+  private final Map<Path, BuckPyResult> pipelinedResults = new HashMap<>();
 
   private final ProjectBuildFileParserOptions options;
   private final TypeCoercerFactory typeCoercerFactory;
@@ -247,13 +261,17 @@ public class PythonDslProjectBuildFileParser implements ProjectBuildFileParser {
               Objects.requireNonNull(buckPyProcess).getStdout(), processedBytes.isPresent());
       buckPyProcessJsonGenerator = ObjectMappers.createGenerator(buckPyProcess.getStdin());
 
-      // Explicitly use Reader instead of InputStream because in case if InputStream is provided
-      // Jackson tries to detect encoding be reading first bytes; because the process may not
-      // output anything at this moment yet this can hang indefinitely.
-      buckPyProcessJsonParser =
-          ObjectMappers.createParser(
-              new InputStreamReader(
-                  Objects.requireNonNull(buckPyProcessInput).getInputStream(), Charsets.UTF_8));
+      if (options.getEnableBserOutput()) {
+        buckPyProcessBserDeserializer = new BuildFilePythonResultBserDeserializer();
+      } else {
+        // Explicitly use Reader instead of InputStream because in case if InputStream is provided
+        // Jackson tries to detect encoding be reading first bytes; because the process may not
+        // output anything at this moment yet this can hang indefinitely.
+        buckPyProcessJsonParser =
+            ObjectMappers.createParser(
+                new InputStreamReader(
+                    Objects.requireNonNull(buckPyProcessInput).getInputStream(), Charsets.UTF_8));
+      }
 
       InputStream stderr = buckPyProcess.getStderr();
 
@@ -368,6 +386,10 @@ public class PythonDslProjectBuildFileParser implements ProjectBuildFileParser {
       argBuilder.add("--warn_about_deprecated_syntax");
     }
 
+    if (options.getEnableBserOutput()) {
+      argBuilder.add("--bser_output");
+    }
+
     return argBuilder.build();
   }
 
@@ -417,12 +439,6 @@ public class PythonDslProjectBuildFileParser implements ProjectBuildFileParser {
   protected BuildFileManifest getAllRulesInternal(Path buildFile)
       throws IOException, BuildFileParseException {
     ensureNotClosed();
-    initIfNeeded();
-
-    // Check isInitialized implications (to avoid Eradicate warnings).
-    Objects.requireNonNull(buckPyProcess);
-    Objects.requireNonNull(buckPyProcessInput);
-    long alreadyReadBytes = buckPyProcessInput.getCount();
 
     ParseBuckFileEvent.Started parseBuckFileStarted =
         ParseBuckFileEvent.started(
@@ -431,29 +447,12 @@ public class PythonDslProjectBuildFileParser implements ProjectBuildFileParser {
 
     ImmutableList<Map<String, Object>> values = ImmutableList.of();
     Optional<String> profile = Optional.empty();
+    long parsedBytes = 0;
     try (AssertScopeExclusiveAccess.Scope scope = assertSingleThreadedParsing.scope()) {
-      Path cellPath = options.getProjectRoot().toAbsolutePath();
-      String watchRoot = cellPath.toString();
-      String projectPrefix = "";
-      if (options.getWatchman().getProjectWatches().containsKey(cellPath)) {
-        ProjectWatch projectWatch = options.getWatchman().getProjectWatches().get(cellPath);
-        watchRoot = projectWatch.getWatchRoot();
-        if (projectWatch.getProjectPrefix().isPresent()) {
-          projectPrefix = projectWatch.getProjectPrefix().get();
-        }
-      }
       currentBuildFile.set(buildFile);
-      BuildFilePythonResult resultObject =
-          performJsonRequest(
-              ImmutableMap.of(
-                  "buildFile",
-                  buildFile.toString(),
-                  "watchRoot",
-                  watchRoot,
-                  "projectPrefix",
-                  projectPrefix,
-                  "packageImplicitLoad",
-                  packageImplicitIncludeFinder.findIncludeForBuildFile(getBasePath(buildFile))));
+      BuckPyResult result = getResult(buildFile);
+      parsedBytes = result.parsedBytes;
+      BuildFilePythonResult resultObject = result.result;
       Path buckPyPath = getPathToBuckPy(options.getDescriptions());
       handleDiagnostics(
           buildFile, buckPyPath.getParent(), resultObject.getDiagnostics(), buckEventBus);
@@ -478,13 +477,108 @@ public class PythonDslProjectBuildFileParser implements ProjectBuildFileParser {
       }
       return toBuildFileManifest(values);
     } finally {
-      long parsedBytes = buckPyProcessInput.getCount() - alreadyReadBytes;
-      processedBytes.ifPresent(processedBytes -> processedBytes.addAndGet(parsedBytes));
+      long finalParsedBytes = parsedBytes;
+      processedBytes.ifPresent(processedBytes -> processedBytes.addAndGet(finalParsedBytes));
       buckEventBus.post(
           ParseBuckFileEvent.finished(parseBuckFileStarted, values.size(), parsedBytes, profile));
     }
   }
 
+  /**
+   * Sends requests to parse {@code buildFiles} to buck.py without waiting for the results, so that
+   * buck.py parses them while the results of previous requests are processed. Results are read
+   * when the build files are requested by {@link #getBuildFileManifest(Path)}.
+   */
+  @Override
+  public void prefetch(List<Path> buildFiles) throws IOException {
+    ensureNotClosed();
+    initIfNeeded();
+
+    try (AssertScopeExclusiveAccess.Scope scope = assertSingleThreadedParsing.scope()) {
+      ImmutableList.Builder<ImmutableMap<String, Object>> requests = ImmutableList.builder();
+      for (Path buildFile : buildFiles) {
+        if (pipelinedBuildFiles.size() + pipelinedResults.size() >= MAX_PIPELINED_REQUESTS) {
+          break;
+        }
+        if (pipelinedResults.containsKey(buildFile) || pipelinedBuildFiles.contains(buildFile)) {
+          continue;
+        }
+        requests.add(createParseRequest(buildFile));
+        pipelinedBuildFiles.add(buildFile);
+      }
+      sendRequests(requests.build());
+    }
+  }
+
+  /**
+   * @return the result of parsing {@code buildFile}, reading and keeping aside the results of
+   *     build files that were requested before it.
+   */
+  private BuckPyResult getResult(Path buildFile) throws IOException {
+    BuckPyResult pipelinedResult = pipelinedResults.remove(buildFile);
+    if (pipelinedResult != null) {
+      return pipelinedResult;
+    }
+
+    initIfNeeded();
+    if (!pipelinedBuildFiles.contains(buildFile)) {
+      sendRequests(ImmutableList.of(createParseRequest(buildFile)));
+      pipelinedBuildFiles.add(buildFile);
+    }
+
+    while (true) {
+      Path nextBuildFile = pipelinedBuildFiles.remove();
+      LOG.verbose("Parsing output of buck.py for %s...", nextBuildFile);
+      BuckPyResult result = readResult();
+      if (nextBuildFile.equals(buildFile)) {
+        return result;
+      }
+      pipelinedResults.put(nextBuildFile, result);
+      if (hasFatalDiagnostic(result.result)) {
+        // buck.py exits after failing to parse a build file, so none of the requests sent after
+        // that one are answered. Send this request to a new buck.py process.
+        try {
+          shutdown();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          throw new IOException(e);
+        }
+        return getResult(buildFile);
+      }
+    }
+  }
+
+  private ImmutableMap<String, Object> createParseRequest(Path buildFile) {
+    Path cellPath = options.getProjectRoot().toAbsolutePath();
+    String watchRoot = cellPath.toString();
+    String projectPrefix = "";
+    if (options.getWatchman().getProjectWatches().containsKey(cellPath)) {
+      ProjectWatch projectWatch = options.getWatchman().getProjectWatches().get(cellPath);
+      watchRoot = projectWatch.getWatchRoot();
+      if (projectWatch.getProjectPrefix().isPresent()) {
+        projectPrefix = projectWatch.getProjectPrefix().get();
+      }
+    }
+    return ImmutableMap.of(
+        "buildFile",
+        buildFile.toString(),
+        "watchRoot",
+        watchRoot,
+        "projectPrefix",
+        projectPrefix,
+        "packageImplicitLoad",
+        packageImplicitIncludeFinder.findIncludeForBuildFile(getBasePath(buildFile)));
+  }
+
+  private static boolean hasFatalDiagnostic(BuildFilePythonResult result) {
+    for (Map<String, Object> diagnostic : result.getDiagnostics()) {
+      if ("fatal".equals(diagnostic.get("level"))) {
+        return true;
+      }
+    }
+    return false;
+  }
+
   /**
    * @return The path of the provided {@code buildFile}. For example, for {@code
    *     /Users/foo/repo/src/bar/BUCK}, where {@code /Users/foo/repo} is the path to the repo, it
@@ -591,21 +685,21 @@ public class PythonDslProjectBuildFileParser implements ProjectBuildFileParser {
     }
   }
 
-  private BuildFilePythonResult performJsonRequest(ImmutableMap<String, Object> request)
-      throws IOException {
-    Objects.requireNonNull(request);
+  private void sendRequests(List<ImmutableMap<String, Object>> requests) throws IOException {
     Objects.requireNonNull(buckPyProcessJsonGenerator);
-    buckPyProcessJsonGenerator.writeObject(request);
+    Objects.requireNonNull(buckPyProcess);
     try {
-      // We disable autoflush at the ObjectMapper level for
-      // performance reasons, but our protocol requires us to
-      // flush newline-delimited JSON for each buck.py query.
-      buckPyProcessJsonGenerator.flush();
-      // I tried using MinimalPrettyPrinter.setRootValueSeparator("\n") and
-      // setting it on the JsonGenerator, but it doesn't seem to
-      // actually write a newline after each element.
-      Objects.requireNonNull(buckPyProcess);
-      buckPyProcess.getStdin().write('\n');
+      for (ImmutableMap<String, Object> request : requests) {
+        buckPyProcessJsonGenerator.writeObject(request);
+        // We disable autoflush at the ObjectMapper level for
+        // performance reasons, but our protocol requires us to
+        // flush newline-delimited JSON for each buck.py query.
+        buckPyProcessJsonGenerator.flush();
+        // I tried using MinimalPrettyPrinter.setRootValueSeparator("\n") and
+        // setting it on the JsonGenerator, but it doesn't seem to
+        // actually write a newline after each element.
+        buckPyProcess.getStdin().write('\n');
+      }
       // I tried enabling JsonGenerator.Feature.FLUSH_PASSED_TO_STREAM,
       // but it doesn't actually flush.
       buckPyProcess.getStdin().flush();
@@ -614,12 +708,19 @@ public class PythonDslProjectBuildFileParser implements ProjectBuildFileParser {
       // IOException if the child process exited before writing/flushing
       LOG.debug(e, "Swallowing exception on flush");
     }
+  }
 
-    if (LOG.isVerboseEnabled()) {
-      LOG.verbose(
-          "Parsing output of buck.py for %s...", request.getOrDefault("buildFile", "[unknown]"));
+  private BuckPyResult readResult() throws IOException {
+    ParserInputStream input = Objects.requireNonNull(buckPyProcessInput);
+    long alreadyReadBytes = input.getCount();
+    BuildFilePythonResult result;
+    if (buckPyProcessBserDeserializer != null) {
+      result = buckPyProcessBserDeserializer.deserialize(input.getInputStream());
+    } else {
+      result =
+          Objects.requireNonNull(buckPyProcessJsonParser).readValueAs(BuildFilePythonResult.class);
     }
-    return buckPyProcessJsonParser.readValueAs(BuildFilePythonResult.class);
+    return new BuckPyResult(result, input.getCount() - alreadyReadBytes);
   }
 
   private static void handleDiagnostics(
@@ -823,8 +924,23 @@ public class PythonDslProjectBuildFileParser implements ProjectBuildFileParser {
 
   @Override
   public void reportProfile() throws IOException {
-    BuildFilePythonResult resultObject =
-        performJsonRequest(ImmutableMap.of("command", "report_profile"));
+    // Results of pipelined requests are sent before the profile.
+    while (!pipelinedBuildFiles.isEmpty()) {
+      Path buildFile = pipelinedBuildFiles.remove();
+      BuckPyResult result = readResult();
+      pipelinedResults.put(buildFile, result);
+      if (hasFatalDiagnostic(result.result)) {
+        // buck.py exited after failing to parse the build file, along with its profile.
+        try {
+          shutdown();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+        return;
+      }
+    }
+    sendRequests(ImmutableList.of(ImmutableMap.of("command", "report_profile")));
+    BuildFilePythonResult resultObject = readResult().result;
     Optional<String> profile = resultObject.getProfile();
     if (profile.isPresent()) {
       LOG.debug("buck parser profiler trace available");
@@ -854,6 +970,7 @@ public class PythonDslProjectBuildFileParser implements ProjectBuildFileParser {
     try {
       shutdown();
     } finally {
+      pipelinedResults.clear();
       isClosed = true;
     }
   }
@@ -890,6 +1007,19 @@ public class PythonDslProjectBuildFileParser implements ProjectBuildFileParser {
       }
     }
 
+    if (buckPyProcessBserDeserializer != null) {
+      // Closing stdout makes buck.py exit if it's still answering pipelined requests.
+      try {
+        Objects.requireNonNull(buckPyProcessInput).getInputStream().close();
+      } catch (IOException e) {
+        LOG.debug(e, "Swallowing exception on closing the output of buck.py");
+      } finally {
+        buckPyProcessBserDeserializer = null;
+      }
+    }
+    // Requests that were not answered yet are lost with the process.
+    pipelinedBuildFiles.clear();
+
     if (stderrConsumerThread != null) {
       stderrConsumerThread.join();
       stderrConsumerThread = null;
@@ -934,6 +1064,17 @@ public class PythonDslProjectBuildFileParser implements ProjectBuildFileParser {
     return buckPythonProgram.getExecutablePath();
   }
 
+  /** Result of a single buck.py request along with the number of bytes it was read from. */
+  private static class BuckPyResult {
+    private final BuildFilePythonResult result;
+    private final long parsedBytes;
+
+    private BuckPyResult(BuildFilePythonResult result, long parsedBytes) {
+      this.result = result;
+      this.parsedBytes = parsedBytes;
+    }
+  }
+
   private static ParserInputStream createParserInputStream(
       InputStream inputStream, boolean withCounting) {
     return withCounting
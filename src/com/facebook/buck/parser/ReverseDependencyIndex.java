@@ -0,0 +1,169 @@
+/*
+ * Copyright 2019-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.parser;
+
+import com.facebook.buck.core.model.UnconfiguredBuildTargetView;
+import com.facebook.buck.core.model.UnflavoredBuildTargetView;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import javax.annotation.concurrent.NotThreadSafe;
+
+/**
+ * Reverse dependencies of the unconfigured target graph, built incrementally from the target nodes
+ * cached by the parser.
+ *
+ * <p>A target depends on another target if a target node of any of its configurations depends on
+ * a node of the other target. Targets are interned to dense {@code int} ids, so edges are stored as
+ * arrays of primitive ints in lists indexed by id. Ids are never reused, so the number of interned
+ * targets only grows with the number of distinct targets seen by this index.
+ */
+@NotThreadSafe
+class ReverseDependencyIndex {
+
+  private final Map<UnconfiguredBuildTargetView, Integer> targetToId = new HashMap<>();
+  private final List<UnconfiguredBuildTargetView> idToTarget = new ArrayList<>();
+
+  /**
+   * Dependencies of every target by id, needed to remove its edges when it's invalidated. Targets
+   * that aren't indexed have no entry.
+   */
+  private final List<IdList> deps = new ArrayList<>();
+
+  private final List<IdList> rdeps = new ArrayList<>();
+
+  /** Indexed targets by their unflavored target, which is what build file changes invalidate. */
+  private final Map<UnflavoredBuildTargetView, IdList> indexedTargets = new HashMap<>();
+
+  private int getOrCreateId(UnconfiguredBuildTargetView target) {
+    Integer id = targetToId.get(target);
+    if (id == null) {
+      id = idToTarget.size();
+      idToTarget.add(target);
+      deps.add(null);
+      rdeps.add(null);
+      targetToId.put(target, id);
+    }
+    return id;
+  }
+
+  /**
+   * Adds the dependencies of a target node of {@code target}. Adding nodes of several
+   * configurations of the same target indexes the union of their dependencies.
+   */
+  void addNode(UnconfiguredBuildTargetView target, Iterable<UnconfiguredBuildTargetView> nodeDeps) {
+    int id = getOrCreateId(target);
+    IdList targetDeps = deps.get(id);
+    if (targetDeps == null) {
+      targetDeps = new IdList();
+      deps.set(id, targetDeps);
+      indexedTargets
+          .computeIfAbsent(target.getUnflavoredBuildTargetView(), key -> new IdList())
+          .add(id);
+    }
+    for (UnconfiguredBuildTargetView dep : nodeDeps) {
+      int depId = getOrCreateId(dep);
+      if (targetDeps.contains(depId)) {
+        continue;
+      }
+      targetDeps.add(depId);
+      IdList depRdeps = rdeps.get(depId);
+      if (depRdeps == null) {
+        depRdeps = new IdList();
+        rdeps.set(depId, depRdeps);
+      }
+      // Each edge is added once, since the dependency wasn't in the dependencies of the target.
+      depRdeps.add(id);
+    }
+  }
+
+  /** Removes the dependencies of all flavors of {@code target}. */
+  void invalidate(UnflavoredBuildTargetView target) {
+    IdList ids = indexedTargets.remove(target);
+    if (ids == null) {
+      return;
+    }
+    for (int i = 0; i < ids.size; i++) {
+      int id = ids.ids[i];
+      IdList targetDeps = deps.set(id, null);
+      for (int j = 0; j < targetDeps.size; j++) {
+        int depId = targetDeps.ids[j];
+        IdList depRdeps = rdeps.get(depId);
+        depRdeps.remove(id);
+        if (depRdeps.size == 0) {
+          rdeps.set(depId, null);
+        }
+      }
+    }
+  }
+
+  /** @return whether the dependencies of {@code target} are in this index. */
+  boolean isIndexed(UnconfiguredBuildTargetView target) {
+    Integer id = targetToId.get(target);
+    return id != null && deps.get(id) != null;
+  }
+
+  /** Adds the indexed targets that depend on {@code target} to {@code result}. */
+  void addReverseDependencies(
+      UnconfiguredBuildTargetView target, Collection<? super UnconfiguredBuildTargetView> result) {
+    Integer id = targetToId.get(target);
+    if (id == null) {
+      return;
+    }
+    IdList targetRdeps = rdeps.get(id);
+    if (targetRdeps == null) {
+      return;
+    }
+    for (int i = 0; i < targetRdeps.size; i++) {
+      result.add(idToTarget.get(targetRdeps.ids[i]));
+    }
+  }
+
+  /** An unordered list of distinct target ids. */
+  private static class IdList {
+    private int[] ids = new int[2];
+    private int size = 0;
+
+    boolean contains(int id) {
+      for (int i = 0; i < size; i++) {
+        if (ids[i] == id) {
+          return true;
+        }
+      }
+      return false;
+    }
+
+    void add(int id) {
+      if (size == ids.length) {
+        ids = Arrays.copyOf(ids, size * 2);
+      }
+      ids[size++] = id;
+    }
+
+    void remove(int id) {
+      for (int i = 0; i < size; i++) {
+        if (ids[i] == id) {
+          ids[i] = ids[--size];
+          return;
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,144 @@
+/*
+ * Copyright 2019-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.parser;
+
+import com.google.common.collect.ImmutableSet;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * Learns which target patterns are requested after changes to files in a directory, so that the
+ * daemon can parse them speculatively the next time files in that directory change.
+ *
+ * <p>Changes reported between two commands form a batch. Every request recorded after a batch is
+ * associated with the parent directories of the changed files. The predictions for a batch are the
+ * most recent requests associated with the changed directories, or with their nearest ancestor
+ * that has any, that weren't already requested since the batch was reported.
+ */
+@ThreadSafe
+public class SpeculativeParsingHistory {
+
+  /** Batches larger than this, like rebases, are too broad to learn from or predict. */
+  private static final int MAX_CHANGED_DIRECTORIES = 100;
+
+  private static final int MAX_REQUESTS_PER_DIRECTORY = 4;
+
+  private static final int MAX_DIRECTORIES = 10_000;
+
+  /** Most recent requests per directory, least recently used directories first. */
+  @GuardedBy("this")
+  private final Map<Path, Deque<SpeculativeParsingRequest>> requestsByDirectory =
+      new LinkedHashMap<Path, Deque<SpeculativeParsingRequest>>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(
+            Map.Entry<Path, Deque<SpeculativeParsingRequest>> eldest) {
+          return size() > MAX_DIRECTORIES;
+        }
+      };
+
+  @GuardedBy("this")
+  private final Set<Path> changedDirectories = new LinkedHashSet<>();
+
+  @GuardedBy("this")
+  private boolean tooManyChanges = false;
+
+  @GuardedBy("this")
+  private final Set<SpeculativeParsingRequest> requestedSinceChange = new HashSet<>();
+
+  @GuardedBy("this")
+  private boolean predictionsTaken = false;
+
+  /** Records a change to {@code path}, starting a new batch if the current one has been used. */
+  public synchronized void recordChange(Path path) {
+    if (!requestedSinceChange.isEmpty() || predictionsTaken) {
+      changedDirectories.clear();
+      tooManyChanges = false;
+      requestedSinceChange.clear();
+      predictionsTaken = false;
+    }
+    if (tooManyChanges) {
+      return;
+    }
+    Path directory = path.getParent();
+    if (directory == null) {
+      return;
+    }
+    changedDirectories.add(directory);
+    if (changedDirectories.size() > MAX_CHANGED_DIRECTORIES) {
+      changedDirectories.clear();
+      tooManyChanges = true;
+    }
+  }
+
+  /** Records changes that are not known individually, like a Watchman overflow. */
+  public synchronized void recordUnknownChanges() {
+    changedDirectories.clear();
+    tooManyChanges = true;
+    requestedSinceChange.clear();
+    predictionsTaken = false;
+  }
+
+  /** Associates {@code request} with the directories changed in the current batch. */
+  public synchronized void recordRequest(SpeculativeParsingRequest request) {
+    if (!requestedSinceChange.add(request)) {
+      return;
+    }
+    for (Path directory : changedDirectories) {
+      Deque<SpeculativeParsingRequest> requests =
+          requestsByDirectory.computeIfAbsent(directory, key -> new ArrayDeque<>());
+      requests.remove(request);
+      requests.addLast(request);
+      if (requests.size() > MAX_REQUESTS_PER_DIRECTORY) {
+        requests.removeFirst();
+      }
+    }
+  }
+
+  /**
+   * @return the requests predicted to follow the changes in the current batch. Predictions are
+   *     returned once per batch, so later calls return an empty set until files change again.
+   */
+  public synchronized ImmutableSet<SpeculativeParsingRequest> takePredictedRequests() {
+    if (predictionsTaken || tooManyChanges) {
+      return ImmutableSet.of();
+    }
+    predictionsTaken = true;
+    ImmutableSet.Builder<SpeculativeParsingRequest> predictions = ImmutableSet.builder();
+    for (Path directory : changedDirectories) {
+      for (Path ancestor = directory; ancestor != null; ancestor = ancestor.getParent()) {
+        Deque<SpeculativeParsingRequest> requests = requestsByDirectory.get(ancestor);
+        if (requests != null) {
+          for (SpeculativeParsingRequest request : requests) {
+            if (!requestedSinceChange.contains(request)) {
+              predictions.add(request);
+            }
+          }
+          break;
+        }
+      }
+    }
+    return predictions.build();
+  }
+}
@@ -22,6 +22,7 @@ import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSortedSet;
 import java.io.IOException;
 import java.nio.file.Path;
+import java.util.List;
 
 /**
  * A convenience decorator for {@link ProjectBuildFileParser} that forwards all method invocation to
@@ -44,6 +45,11 @@ public abstract class ForwardingProjectBuildFileParserDecorator implements Proje
     return delegate.getBuildFileManifest(buildFile);
   }
 
+  @Override
+  public void prefetch(List<Path> buildFiles) throws IOException {
+    delegate.prefetch(buildFiles);
+  }
+
   @Override
   public void reportProfile() throws IOException {
     delegate.reportProfile();
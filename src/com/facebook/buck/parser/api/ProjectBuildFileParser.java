@@ -22,6 +22,7 @@ import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSortedSet;
 import java.io.IOException;
 import java.nio.file.Path;
+import java.util.List;
 
 /** Parses buck build files (usually BUCK files) and retrieve rule information from them. */
 public interface ProjectBuildFileParser extends AutoCloseable {
@@ -35,6 +36,14 @@ public interface ProjectBuildFileParser extends AutoCloseable {
   BuildFileManifest getBuildFileManifest(Path buildFile)
       throws BuildFileParseException, InterruptedException, IOException;
 
+  /**
+   * Hints that {@code buildFiles} are going to be requested next, in this order, so that the parser
+   * can start parsing them before they are requested. Parsers that can't parse ahead ignore it.
+   *
+   * @param buildFiles should be absolute paths to build files. Must have rootPath as their prefix.
+   */
+  default void prefetch(List<Path> buildFiles) throws IOException {}
+
   /** Reports profile information captured while parsing build files. */
   void reportProfile() throws IOException;
 
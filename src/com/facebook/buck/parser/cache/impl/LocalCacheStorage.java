@@ -28,9 +28,11 @@ import com.google.common.base.Stopwatch;
 import com.google.common.hash.HashCode;
 import java.io.IOException;
 import java.io.OutputStream;
-import java.nio.file.Files;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.Optional;
 import java.util.concurrent.TimeUnit;
 
@@ -38,6 +40,8 @@ import java.util.concurrent.TimeUnit;
 public class LocalCacheStorage implements ParserCacheStorage {
   private static final Logger LOG = Logger.get(LocalCacheStorage.class);
 
+  private static final long MIN_MAPPED_ENTRY_SIZE_BYTES = 64 * 1024;
+
   private final Path localCachePath;
   private final ProjectFilesystem filesystem;
   private final ParserCacheAccessMode cacheAccessMode;
@@ -164,10 +168,9 @@ public class LocalCacheStorage implements ParserCacheStorage {
               .resolve(weakFingerprint.toString())
               .resolve(strongFingerprint.toString());
 
-      byte[] data;
+      ByteBuffer data;
       try {
-        // TODO(buck_team): Add readAllBytes to projectFileSystem and use it
-        data = Files.readAllBytes(cachedBuildFileManifestPath);
+        data = readCacheEntry(cachedBuildFileManifestPath);
       } catch (NoSuchFileException ex) {
         return Optional.empty();
       }
@@ -182,6 +185,32 @@ public class LocalCacheStorage implements ParserCacheStorage {
     }
   }
 
+  /**
+   * Maps large entries into memory, so that the attributes of their targets are only read from
+   * disk when used. Small entries are cheaper to read than to map, and mapping every entry would
+   * exhaust the number of mappings a process can have when the daemon keeps many manifests.
+   */
+  private static ByteBuffer readCacheEntry(Path path) throws IOException {
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      long size = channel.size();
+      if (size >= MIN_MAPPED_ENTRY_SIZE_BYTES) {
+        try {
+          return channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        } catch (UnsupportedOperationException e) {
+          // In-memory filesystems can't map files.
+        }
+      }
+      ByteBuffer data = ByteBuffer.allocate((int) size);
+      while (data.hasRemaining()) {
+        if (channel.read(data) < 0) {
+          break;
+        }
+      }
+      data.flip();
+      return data;
+    }
+  }
+
   @Override
   public void deleteCacheEntries(HashCode weakFingerprint, HashCode strongFingerprint)
       throws IOException {
@@ -0,0 +1,90 @@
+/*
+ * Copyright 2019-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.parser.cache.json;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import java.nio.ByteBuffer;
+
+/**
+ * Constants of the binary format of serialized {@link
+ * com.facebook.buck.parser.api.BuildFileManifest}s.
+ *
+ * <p>A serialized manifest starts with {@link #MAGIC} and {@link #VERSION}, followed by a table of
+ * the distinct strings of the manifest, which the rest of the manifest refers to by index. The
+ * attributes of each target are stored as a length-prefixed blob, so that they can be skipped when
+ * reading the manifest and only decoded when the target is used.
+ *
+ * <p>All numbers are big-endian. Values are encoded as a tag byte followed by the payload of the
+ * tag.
+ */
+final class BinaryBuildFileManifestFormat {
+
+  /** Never the first byte of a JSON document, which tells binary and JSON manifests apart. */
+  static final byte[] MAGIC = {0, 'B', 'F', 'M'};
+
+  static final int VERSION = 1;
+
+  /** Index of the string of absent values, e.g. an environment variable without value. */
+  static final int NO_STRING = -1;
+
+  static final byte TAG_NULL = 0;
+  static final byte TAG_TRUE = 1;
+  static final byte TAG_FALSE = 2;
+  static final byte TAG_INT = 3;
+  static final byte TAG_LONG = 4;
+  static final byte TAG_DOUBLE = 5;
+  static final byte TAG_STRING = 6;
+  static final byte TAG_LIST = 7;
+  static final byte TAG_SET = 8;
+  static final byte TAG_MAP = 9;
+  /** Values of any other type, stored as JSON with type information. */
+  static final byte TAG_TYPED_JSON = 10;
+  /** Sorted sets and maps in the natural order of their elements. */
+  static final byte TAG_SORTED_SET = 11;
+
+  static final byte TAG_SORTED_MAP = 12;
+
+  private BinaryBuildFileManifestFormat() {}
+
+  /**
+   * Holds values stored as {@link #TAG_TYPED_JSON}, since Jackson only records the types of values
+   * declared as {@link Object}, not of the root value.
+   */
+  static final class TypedJsonValue {
+    @JsonProperty("value")
+    final Object value;
+
+    @JsonCreator
+    TypedJsonValue(@JsonProperty("value") Object value) {
+      this.value = value;
+    }
+  }
+
+  /** @return whether the remaining bytes of the buffer start with a binary manifest. */
+  static boolean isBinary(ByteBuffer buffer) {
+    if (buffer.remaining() < MAGIC.length) {
+      return false;
+    }
+    for (int i = 0; i < MAGIC.length; i++) {
+      if (buffer.get(buffer.position() + i) != MAGIC[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+}
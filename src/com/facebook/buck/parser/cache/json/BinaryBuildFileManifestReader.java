@@ -0,0 +1,307 @@
+/*
+ * Copyright 2019-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.parser.cache.json;
+
+import com.facebook.buck.parser.api.BuildFileManifest;
+import com.facebook.buck.parser.api.ImmutableBuildFileManifest;
+import com.facebook.buck.parser.exceptions.ImmutableParsingError;
+import com.facebook.buck.parser.exceptions.ParsingError;
+import com.facebook.buck.skylark.io.GlobSpec;
+import com.facebook.buck.skylark.io.GlobSpecWithResult;
+import com.facebook.buck.util.json.ObjectMappers;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.ImmutableSortedMap;
+import com.google.common.collect.ImmutableSortedSet;
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
+import com.google.common.collect.Ordering;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import javax.annotation.Nullable;
+
+/**
+ * Reads a {@link BuildFileManifest} in the format described in {@link
+ * BinaryBuildFileManifestFormat}.
+ *
+ * <p>Only the table of strings and the sections other than targets are read upfront. Strings are
+ * decoded when first used and the attributes of targets when their map is first accessed, directly
+ * from the buffer the manifest was read from, which may be a memory-mapped file.
+ */
+final class BinaryBuildFileManifestReader {
+
+  /** Shares the strings of all manifests, since most attribute names and values repeat. */
+  private static final Interner<String> STRING_INTERNER = Interners.newWeakInterner();
+
+  private final ByteBuffer buffer;
+  private final int[] stringOffsets;
+  private final int[] stringLengths;
+  // Racy caching is fine here: strings are immutable, so threads at worst decode one twice.
+  private final String[] strings;
+
+  private BinaryBuildFileManifestReader(
+      ByteBuffer buffer, int[] stringOffsets, int[] stringLengths) {
+    this.buffer = buffer;
+    this.stringOffsets = stringOffsets;
+    this.stringLengths = stringLengths;
+    this.strings = new String[stringOffsets.length];
+  }
+
+  /**
+   * Reads the manifest stored in the remaining bytes of the buffer, which must not be modified
+   * afterwards since target attributes are decoded from it lazily.
+   */
+  static BuildFileManifest read(ByteBuffer buffer) throws IOException {
+    try {
+      ByteBuffer in = buffer.slice();
+      byte[] magic = new byte[BinaryBuildFileManifestFormat.MAGIC.length];
+      in.get(magic);
+      int version = in.getInt();
+      if (version != BinaryBuildFileManifestFormat.VERSION) {
+        throw new IOException(
+            String.format("Unsupported build file manifest format version %d.", version));
+      }
+
+      int stringCount = readSize(in, Integer.BYTES);
+      int[] stringOffsets = new int[stringCount];
+      int[] stringLengths = new int[stringCount];
+      for (int i = 0; i < stringCount; i++) {
+        stringLengths[i] = readSize(in, 1);
+        stringOffsets[i] = in.position();
+        in.position(in.position() + stringLengths[i]);
+      }
+
+      return new BinaryBuildFileManifestReader(in.duplicate(), stringOffsets, stringLengths)
+          .readManifest(in);
+    } catch (BufferUnderflowException | IllegalArgumentException e) {
+      throw new IOException("Corrupted build file manifest.", e);
+    }
+  }
+
+  private BuildFileManifest readManifest(ByteBuffer in) throws IOException {
+    ImmutableSortedSet<String> includes = ImmutableSortedSet.copyOf(readStrings(in));
+    @SuppressWarnings("unchecked")
+    Map<String, Object> configs = (Map<String, Object>) readValue(in);
+    Optional<ImmutableMap<String, Optional<String>>> env = readEnv(in);
+    ImmutableList<GlobSpecWithResult> globManifest = readGlobManifest(in);
+    ImmutableList<ParsingError> errors = readErrors(in);
+    ImmutableMap<String, Map<String, Object>> targets = readTargets(in);
+    return ImmutableBuildFileManifest.of(targets, includes, configs, env, globManifest, errors);
+  }
+
+  /**
+   * Reads a size, checking that there are enough bytes left for its elements, so that corrupted
+   * sizes don't cause large allocations.
+   */
+  private static int readSize(ByteBuffer in, int minimumElementBytes) {
+    int size = in.getInt();
+    if (size < 0 || (long) size * minimumElementBytes > in.remaining()) {
+      throw new IllegalArgumentException(String.format("Invalid size %d.", size));
+    }
+    return size;
+  }
+
+  @Nullable
+  private String getString(int index) {
+    if (index == BinaryBuildFileManifestFormat.NO_STRING) {
+      return null;
+    }
+    String string = strings[index];
+    if (string == null) {
+      ByteBuffer bytes = buffer.duplicate();
+      bytes.limit(stringOffsets[index] + stringLengths[index]);
+      bytes.position(stringOffsets[index]);
+      string = STRING_INTERNER.intern(StandardCharsets.UTF_8.decode(bytes).toString());
+      strings[index] = string;
+    }
+    return string;
+  }
+
+  private String readString(ByteBuffer in) {
+    String string = getString(in.getInt());
+    if (string == null) {
+      throw new IllegalArgumentException("Missing string.");
+    }
+    return string;
+  }
+
+  private ImmutableList<String> readStrings(ByteBuffer in) {
+    int size = readSize(in, Integer.BYTES);
+    ImmutableList.Builder<String> strings = ImmutableList.builderWithExpectedSize(size);
+    for (int i = 0; i < size; i++) {
+      strings.add(readString(in));
+    }
+    return strings.build();
+  }
+
+  private Optional<ImmutableMap<String, Optional<String>>> readEnv(ByteBuffer in) {
+    if (in.get() == 0) {
+      return Optional.empty();
+    }
+    int size = readSize(in, 2 * Integer.BYTES);
+    ImmutableMap.Builder<String, Optional<String>> env = ImmutableMap.builderWithExpectedSize(size);
+    for (int i = 0; i < size; i++) {
+      env.put(readString(in), Optional.ofNullable(getString(in.getInt())));
+    }
+    return Optional.of(env.build());
+  }
+
+  private ImmutableList<GlobSpecWithResult> readGlobManifest(ByteBuffer in) {
+    int size = readSize(in, 3 * Integer.BYTES + 1);
+    ImmutableList.Builder<GlobSpecWithResult> globManifest =
+        ImmutableList.builderWithExpectedSize(size);
+    for (int i = 0; i < size; i++) {
+      GlobSpec globSpec =
+          GlobSpec.builder()
+              .setInclude(readStrings(in))
+              .setExclude(readStrings(in))
+              .setExcludeDirectories(in.get() != 0)
+              .build();
+      globManifest.add(GlobSpecWithResult.of(globSpec, ImmutableSet.copyOf(readStrings(in))));
+    }
+    return globManifest.build();
+  }
+
+  private ImmutableList<ParsingError> readErrors(ByteBuffer in) {
+    int size = readSize(in, 2 * Integer.BYTES);
+    ImmutableList.Builder<ParsingError> errors = ImmutableList.builderWithExpectedSize(size);
+    for (int i = 0; i < size; i++) {
+      errors.add(ImmutableParsingError.of(readString(in), readStrings(in)));
+    }
+    return errors.build();
+  }
+
+  private ImmutableMap<String, Map<String, Object>> readTargets(ByteBuffer in) {
+    int size = readSize(in, 2 * Integer.BYTES);
+    ImmutableMap.Builder<String, Map<String, Object>> targets =
+        ImmutableMap.builderWithExpectedSize(size);
+    for (int i = 0; i < size; i++) {
+      String name = readString(in);
+      int length = readSize(in, 1);
+      targets.put(name, new LazyAttributeMap(this, in.position()));
+      in.position(in.position() + length);
+    }
+    return targets.build();
+  }
+
+  /** Decodes the attributes of a target stored at the given offset. */
+  Map<String, Object> readAttributes(int offset) throws IOException {
+    ByteBuffer in = buffer.duplicate();
+    in.position(offset);
+    try {
+      @SuppressWarnings("unchecked")
+      Map<String, Object> attributes = (Map<String, Object>) readValue(in);
+      return attributes;
+    } catch (BufferUnderflowException | IllegalArgumentException | ClassCastException e) {
+      throw new IOException("Corrupted build file manifest.", e);
+    }
+  }
+
+  @Nullable
+  private Object readValue(ByteBuffer in) throws IOException {
+    byte tag = in.get();
+    switch (tag) {
+      case BinaryBuildFileManifestFormat.TAG_NULL:
+        return null;
+      case BinaryBuildFileManifestFormat.TAG_TRUE:
+        return Boolean.TRUE;
+      case BinaryBuildFileManifestFormat.TAG_FALSE:
+        return Boolean.FALSE;
+      case BinaryBuildFileManifestFormat.TAG_INT:
+        return in.getInt();
+      case BinaryBuildFileManifestFormat.TAG_LONG:
+        return in.getLong();
+      case BinaryBuildFileManifestFormat.TAG_DOUBLE:
+        return in.getDouble();
+      case BinaryBuildFileManifestFormat.TAG_STRING:
+        return readString(in);
+      case BinaryBuildFileManifestFormat.TAG_LIST:
+        {
+          List<Object> values = readValues(in, new ArrayList<>());
+          return values.contains(null)
+              ? Collections.unmodifiableList(values)
+              : ImmutableList.copyOf(values);
+        }
+      case BinaryBuildFileManifestFormat.TAG_SET:
+        {
+          Set<Object> values = readValues(in, new LinkedHashSet<>());
+          return values.contains(null)
+              ? Collections.unmodifiableSet(values)
+              : ImmutableSet.copyOf(values);
+        }
+      case BinaryBuildFileManifestFormat.TAG_SORTED_SET:
+        return ImmutableSortedSet.copyOf(naturalOrder(), readValues(in, new ArrayList<>()));
+      case BinaryBuildFileManifestFormat.TAG_MAP:
+        {
+          Map<Object, Object> map = readEntries(in);
+          return map.containsKey(null) || map.containsValue(null)
+              ? Collections.unmodifiableMap(map)
+              : ImmutableMap.copyOf(map);
+        }
+      case BinaryBuildFileManifestFormat.TAG_SORTED_MAP:
+        return ImmutableSortedMap.copyOf(readEntries(in), naturalOrder());
+      case BinaryBuildFileManifestFormat.TAG_TYPED_JSON:
+        {
+          byte[] json = new byte[readSize(in, 1)];
+          in.get(json);
+          BinaryBuildFileManifestFormat.TypedJsonValue typedJsonValue =
+              ObjectMappers.READER_WITH_TYPE
+                  .forType(BinaryBuildFileManifestFormat.TypedJsonValue.class)
+                  .readValue(json);
+          return typedJsonValue.value;
+        }
+      default:
+        throw new IllegalArgumentException(String.format("Unknown value tag %d.", tag));
+    }
+  }
+
+  private Map<Object, Object> readEntries(ByteBuffer in) throws IOException {
+    int size = readSize(in, 2);
+    Map<Object, Object> map = new LinkedHashMap<>();
+    for (int i = 0; i < size; i++) {
+      map.put(readValue(in), readValue(in));
+    }
+    return map;
+  }
+
+  @SuppressWarnings("unchecked")
+  private static Comparator<Object> naturalOrder() {
+    return (Comparator<Object>) (Comparator<?>) Ordering.natural();
+  }
+
+  private <T extends Collection<Object>> T readValues(ByteBuffer in, T values)
+      throws IOException {
+    int size = readSize(in, 1);
+    for (int i = 0; i < size; i++) {
+      values.add(readValue(in));
+    }
+    return values;
+  }
+}
@@ -0,0 +1,223 @@
+/*
+ * Copyright 2019-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.parser.cache.json;
+
+import com.facebook.buck.parser.api.BuildFileManifest;
+import com.facebook.buck.parser.exceptions.ParsingError;
+import com.facebook.buck.skylark.io.GlobSpec;
+import com.facebook.buck.skylark.io.GlobSpecWithResult;
+import com.facebook.buck.util.json.ObjectMappers;
+import com.google.common.collect.Ordering;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.SortedSet;
+import javax.annotation.Nullable;
+
+/**
+ * Writes a {@link BuildFileManifest} in the format described in {@link
+ * BinaryBuildFileManifestFormat}.
+ */
+final class BinaryBuildFileManifestWriter {
+
+  private final Map<String, Integer> stringIndices = new HashMap<>();
+  private final List<String> strings = new ArrayList<>();
+
+  private BinaryBuildFileManifestWriter() {}
+
+  /** @return the serialized manifest. */
+  static byte[] write(BuildFileManifest buildFileManifest) throws IOException {
+    return new BinaryBuildFileManifestWriter().writeManifest(buildFileManifest);
+  }
+
+  private byte[] writeManifest(BuildFileManifest buildFileManifest) throws IOException {
+    // The string table precedes the content referring to it, so write the content first.
+    ByteArrayOutputStream content = new ByteArrayOutputStream();
+    DataOutputStream out = new DataOutputStream(content);
+    writeStrings(out, buildFileManifest.getIncludes());
+    writeValue(out, buildFileManifest.getConfigs());
+    writeEnv(out, buildFileManifest.getEnv());
+    writeGlobManifest(out, buildFileManifest.getGlobManifest());
+    writeErrors(out, buildFileManifest.getErrors());
+    writeTargets(out, buildFileManifest.getTargets());
+    out.flush();
+
+    ByteArrayOutputStream result = new ByteArrayOutputStream(content.size() + 64 * strings.size());
+    DataOutputStream header = new DataOutputStream(result);
+    header.write(BinaryBuildFileManifestFormat.MAGIC);
+    header.writeInt(BinaryBuildFileManifestFormat.VERSION);
+    header.writeInt(strings.size());
+    for (String string : strings) {
+      byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+      header.writeInt(bytes.length);
+      header.write(bytes);
+    }
+    header.flush();
+    content.writeTo(result);
+    return result.toByteArray();
+  }
+
+  private void writeString(DataOutputStream out, String string) throws IOException {
+    Integer index = stringIndices.get(string);
+    if (index == null) {
+      index = strings.size();
+      strings.add(string);
+      stringIndices.put(string, index);
+    }
+    out.writeInt(index);
+  }
+
+  private void writeStrings(DataOutputStream out, Collection<String> strings) throws IOException {
+    out.writeInt(strings.size());
+    for (String string : strings) {
+      writeString(out, string);
+    }
+  }
+
+  private void writeEnv(DataOutputStream out, Optional<? extends Map<String, Optional<String>>> env)
+      throws IOException {
+    out.writeBoolean(env.isPresent());
+    if (!env.isPresent()) {
+      return;
+    }
+    out.writeInt(env.get().size());
+    for (Map.Entry<String, Optional<String>> entry : env.get().entrySet()) {
+      writeString(out, entry.getKey());
+      if (entry.getValue().isPresent()) {
+        writeString(out, entry.getValue().get());
+      } else {
+        out.writeInt(BinaryBuildFileManifestFormat.NO_STRING);
+      }
+    }
+  }
+
+  private void writeGlobManifest(DataOutputStream out, List<GlobSpecWithResult> globManifest)
+      throws IOException {
+    out.writeInt(globManifest.size());
+    for (GlobSpecWithResult globSpecWithResult : globManifest) {
+      GlobSpec globSpec = globSpecWithResult.getGlobSpec();
+      writeStrings(out, globSpec.getInclude());
+      writeStrings(out, globSpec.getExclude());
+      out.writeBoolean(globSpec.getExcludeDirectories());
+      writeStrings(out, globSpecWithResult.getFilePaths());
+    }
+  }
+
+  private void writeErrors(DataOutputStream out, List<ParsingError> errors) throws IOException {
+    out.writeInt(errors.size());
+    for (ParsingError error : errors) {
+      writeString(out, error.getMessage());
+      writeStrings(out, error.getStackTrace());
+    }
+  }
+
+  private void writeTargets(DataOutputStream out, Map<String, Map<String, Object>> targets)
+      throws IOException {
+    out.writeInt(targets.size());
+    ByteArrayOutputStream attributes = new ByteArrayOutputStream();
+    DataOutputStream attributesOut = new DataOutputStream(attributes);
+    for (Map.Entry<String, Map<String, Object>> target : targets.entrySet()) {
+      writeString(out, target.getKey());
+      // Prefix the attributes with their size, so that readers can skip them.
+      attributes.reset();
+      writeValue(attributesOut, target.getValue());
+      attributesOut.flush();
+      out.writeInt(attributes.size());
+      attributes.writeTo(out);
+    }
+  }
+
+  private void writeValue(DataOutputStream out, Object value) throws IOException {
+    if (value == null) {
+      out.writeByte(BinaryBuildFileManifestFormat.TAG_NULL);
+    } else if (value instanceof String) {
+      out.writeByte(BinaryBuildFileManifestFormat.TAG_STRING);
+      writeString(out, (String) value);
+    } else if (value instanceof Boolean) {
+      out.writeByte(
+          (Boolean) value
+              ? BinaryBuildFileManifestFormat.TAG_TRUE
+              : BinaryBuildFileManifestFormat.TAG_FALSE);
+    } else if (value instanceof Integer) {
+      out.writeByte(BinaryBuildFileManifestFormat.TAG_INT);
+      out.writeInt((Integer) value);
+    } else if (value instanceof Long) {
+      out.writeByte(BinaryBuildFileManifestFormat.TAG_LONG);
+      out.writeLong((Long) value);
+    } else if (value instanceof Double) {
+      out.writeByte(BinaryBuildFileManifestFormat.TAG_DOUBLE);
+      out.writeDouble((Double) value);
+    } else if (value instanceof List) {
+      out.writeByte(BinaryBuildFileManifestFormat.TAG_LIST);
+      writeValues(out, (List<?>) value);
+    } else if (value instanceof SortedSet
+        && isNaturalOrder(((SortedSet<?>) value).comparator())) {
+      out.writeByte(BinaryBuildFileManifestFormat.TAG_SORTED_SET);
+      writeValues(out, (SortedSet<?>) value);
+    } else if (value instanceof Set && !(value instanceof SortedSet)) {
+      out.writeByte(BinaryBuildFileManifestFormat.TAG_SET);
+      writeValues(out, (Set<?>) value);
+    } else if (value instanceof SortedMap
+        && isNaturalOrder(((SortedMap<?, ?>) value).comparator())) {
+      out.writeByte(BinaryBuildFileManifestFormat.TAG_SORTED_MAP);
+      writeEntries(out, (SortedMap<?, ?>) value);
+    } else if (value instanceof Map && !(value instanceof SortedMap)) {
+      out.writeByte(BinaryBuildFileManifestFormat.TAG_MAP);
+      writeEntries(out, (Map<?, ?>) value);
+    } else {
+      // Parser specific types, like selectors, and collections with custom orders are rare enough
+      // to keep relying on Jackson to preserve their types.
+      byte[] json =
+          ObjectMappers.WRITER_WITH_TYPE.writeValueAsBytes(
+              new BinaryBuildFileManifestFormat.TypedJsonValue(value));
+      out.writeByte(BinaryBuildFileManifestFormat.TAG_TYPED_JSON);
+      out.writeInt(json.length);
+      out.write(json);
+    }
+  }
+
+  private static boolean isNaturalOrder(@Nullable Comparator<?> comparator) {
+    return comparator == null
+        || comparator.equals(Ordering.natural())
+        || comparator.equals(Comparator.naturalOrder());
+  }
+
+  private void writeEntries(DataOutputStream out, Map<?, ?> map) throws IOException {
+    out.writeInt(map.size());
+    for (Map.Entry<?, ?> entry : map.entrySet()) {
+      writeValue(out, entry.getKey());
+      writeValue(out, entry.getValue());
+    }
+  }
+
+  private void writeValues(DataOutputStream out, Collection<?> values) throws IOException {
+    out.writeInt(values.size());
+    for (Object value : values) {
+      writeValue(out, value);
+    }
+  }
+}
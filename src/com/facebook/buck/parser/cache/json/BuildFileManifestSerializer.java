@@ -19,12 +19,16 @@ package com.facebook.buck.parser.cache.json;
 import com.facebook.buck.parser.api.BuildFileManifest;
 import com.facebook.buck.parser.api.ImmutableBuildFileManifest;
 import com.facebook.buck.util.json.ObjectMappers;
-import com.fasterxml.jackson.core.JsonProcessingException;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 
 /**
  * This class serializes the {@link BuildFileManifest} to a form that can be stored and read from
  * disk.
+ *
+ * <p>Manifests are serialized in the binary format described in {@link
+ * BinaryBuildFileManifestFormat}. Manifests serialized as JSON by previous versions can still be
+ * deserialized.
  */
 public class BuildFileManifestSerializer {
 
@@ -35,10 +39,10 @@ public class BuildFileManifestSerializer {
    *
    * @param buildFileManifest the instance of {@link BuildFileManifest} to be serialized.
    * @return a byte array with the serialized manifest.
-   * @throws JsonProcessingException
+   * @throws IOException
    */
   public static byte[] serialize(BuildFileManifest buildFileManifest) throws IOException {
-    return ObjectMappers.WRITER_WITH_TYPE.writeValueAsBytes(buildFileManifest);
+    return BinaryBuildFileManifestWriter.write(buildFileManifest);
   }
 
   /**
@@ -50,8 +54,38 @@ public class BuildFileManifestSerializer {
    * @throws IOException
    */
   public static BuildFileManifest deserialize(byte[] buildFileManifestBytes) throws IOException {
+    return deserialize(ByteBuffer.wrap(buildFileManifestBytes));
+  }
+
+  /**
+   * Deserializes an instance of {@link BuildFileManifest} from the remaining bytes of a buffer.
+   *
+   * <p>The attributes of targets are decoded from the buffer when they are first accessed, so the
+   * buffer must not be modified afterwards. It can be a memory-mapped file.
+   *
+   * @param buildFileManifestBytes the bytes for the manifest to be deserialized.
+   * @return a new instance of {@link BuildFileManifest} serialized from the {@code
+   *     buildFileManifestBytes}.
+   * @throws IOException
+   */
+  public static BuildFileManifest deserialize(ByteBuffer buildFileManifestBytes)
+      throws IOException {
+    if (BinaryBuildFileManifestFormat.isBinary(buildFileManifestBytes)) {
+      return BinaryBuildFileManifestReader.read(buildFileManifestBytes);
+    }
+
+    byte[] json;
+    int offset;
+    if (buildFileManifestBytes.hasArray()) {
+      json = buildFileManifestBytes.array();
+      offset = buildFileManifestBytes.arrayOffset() + buildFileManifestBytes.position();
+    } else {
+      json = new byte[buildFileManifestBytes.remaining()];
+      buildFileManifestBytes.duplicate().get(json);
+      offset = 0;
+    }
     return ObjectMappers.READER_WITH_TYPE
         .forType(ImmutableBuildFileManifest.class)
-        .readValue(buildFileManifestBytes);
+        .readValue(json, offset, buildFileManifestBytes.remaining());
   }
 }
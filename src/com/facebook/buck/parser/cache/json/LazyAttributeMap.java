@@ -0,0 +1,80 @@
+/*
+ * Copyright 2019-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.parser.cache.json;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.AbstractMap;
+import java.util.Map;
+import java.util.Set;
+import javax.annotation.Nullable;
+
+/**
+ * Attributes of a target of a binary {@link com.facebook.buck.parser.api.BuildFileManifest}, only
+ * decoded when first accessed, since most targets of the manifests read from the cache are not
+ * used by a command.
+ */
+final class LazyAttributeMap extends AbstractMap<String, Object> {
+
+  private final BinaryBuildFileManifestReader reader;
+  private final int offset;
+  @Nullable private volatile Map<String, Object> attributes;
+
+  LazyAttributeMap(BinaryBuildFileManifestReader reader, int offset) {
+    this.reader = reader;
+    this.offset = offset;
+  }
+
+  private Map<String, Object> getAttributes() {
+    Map<String, Object> result = attributes;
+    if (result == null) {
+      synchronized (this) {
+        result = attributes;
+        if (result == null) {
+          try {
+            result = reader.readAttributes(offset);
+          } catch (IOException e) {
+            throw new UncheckedIOException(e);
+          }
+          attributes = result;
+        }
+      }
+    }
+    return result;
+  }
+
+  @Override
+  public Set<Entry<String, Object>> entrySet() {
+    return getAttributes().entrySet();
+  }
+
+  @Override
+  public int size() {
+    return getAttributes().size();
+  }
+
+  @Override
+  public boolean containsKey(Object key) {
+    return getAttributes().containsKey(key);
+  }
+
+  @Override
+  @Nullable
+  public Object get(Object key) {
+    return getAttributes().get(key);
+  }
+}
@@ -58,6 +58,11 @@ public abstract class AbstractParserConfig implements ConfigView<BuckConfig> {
   public enum SkylarkGlobHandler {
     JAVA,
     WATCHMAN,
+    /**
+     * Like {@link #JAVA}, but directory listings are kept in an index shared by all build files
+     * and updated from Watchman events for the lifetime of the daemon.
+     */
+    INDEX,
     ;
   }
 
@@ -280,6 +285,33 @@ public abstract class AbstractParserConfig implements ConfigView<BuckConfig> {
     return getDelegate().getBooleanValue("parser", "warn_about_deprecated_syntax", true);
   }
 
+  /**
+   * @return whether the parser state should be persisted to reuse the build files parsed by a
+   *     previous daemon.
+   */
+  @Value.Lazy
+  public boolean shouldPersistParserState() {
+    return getDelegate().getBooleanValue("parser", "persist_parser_state", false);
+  }
+
+  /**
+   * @return whether the daemon should learn which target patterns are built after file changes and
+   *     parse them in the background after later changes.
+   */
+  @Value.Lazy
+  public boolean getSpeculativeParsingAfterChanges() {
+    return getDelegate().getBooleanValue("parser", "speculative_parsing_after_changes", false);
+  }
+
+  /**
+   * @return whether the Python DSL parser should send results from {@code buck.py} as BSER instead
+   *     of JSON, which is cheaper to produce and to read for large build files.
+   */
+  @Value.Lazy
+  public boolean getPythonDslBserOutput() {
+    return getDelegate().getBooleanValue("parser", "python_dsl_bser_output", false);
+  }
+
   /** @return the type of the glob handler used by the Skylark parser. */
   @Value.Lazy
   public SkylarkGlobHandler getSkylarkGlobHandler() {
@@ -98,6 +98,12 @@ abstract class AbstractProjectBuildFileParserOptions {
     return false;
   }
 
+  /** Whether {@code buck.py} should encode its results as BSER instead of JSON. */
+  @Value.Default
+  public boolean getEnableBserOutput() {
+    return false;
+  }
+
   @Value.Default
   public boolean isWarnAboutDeprecatedSyntax() {
     return true;
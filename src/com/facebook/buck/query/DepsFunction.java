@@ -40,6 +40,7 @@ import com.google.common.collect.ImmutableMap;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.LinkedHashSet;
 import java.util.Optional;
 import java.util.Set;
@@ -109,16 +110,43 @@ public class DepsFunction<T extends QueryTarget> implements QueryFunction<T, T>
   public Set<T> eval(
       QueryEvaluator<T> evaluator, QueryEnvironment<T> env, ImmutableList<Argument<T>> args)
       throws QueryException {
+    // LinkedHashSet preserves the order of insertion when iterating over the values.
+    // The order by which we traverse the result is meaningful because the dependencies are
+    // traversed level-by-level.
+    Set<T> result = new LinkedHashSet<T>();
+    traverse(evaluator, env, args, result, queryTarget -> {});
+    return result;
+  }
+
+  /** Passes dependencies to {@code consumer} level-by-level, as they are visited. */
+  @Override
+  public void forEach(
+      QueryEvaluator<T> evaluator,
+      QueryEnvironment<T> env,
+      ImmutableList<Argument<T>> args,
+      Consumer<? super T> consumer)
+      throws QueryException {
+    traverse(evaluator, env, args, new HashSet<>(), consumer);
+  }
+
+  private void traverse(
+      QueryEvaluator<T> evaluator,
+      QueryEnvironment<T> env,
+      ImmutableList<Argument<T>> args,
+      Set<T> result,
+      Consumer<? super T> resultConsumer)
+      throws QueryException {
     Set<T> argumentSet = evaluator.eval(args.get(0).getExpression(), env);
     int depthBound = args.size() > 1 ? args.get(1).getInteger() : Integer.MAX_VALUE;
     Optional<QueryExpression<T>> deps =
         args.size() > 2 ? Optional.of(args.get(2).getExpression()) : Optional.empty();
     env.buildTransitiveClosure(argumentSet, depthBound);
 
-    // LinkedHashSet preserves the order of insertion when iterating over the values.
-    // The order by which we traverse the result is meaningful because the dependencies are
-    // traversed level-by-level.
-    Set<T> result = new LinkedHashSet<T>(argumentSet);
+    for (T queryTarget : argumentSet) {
+      if (result.add(queryTarget)) {
+        resultConsumer.accept(queryTarget);
+      }
+    }
     Collection<T> current = argumentSet;
 
     // Iterating depthBound+1 times because the first one processes the given argument set.
@@ -129,6 +157,7 @@ public class DepsFunction<T extends QueryTarget> implements QueryFunction<T, T>
             boolean added = result.add(queryTarget);
             if (added) {
               next.add(queryTarget);
+              resultConsumer.accept(queryTarget);
             }
           };
       if (deps.isPresent()) {
@@ -141,7 +170,6 @@ public class DepsFunction<T extends QueryTarget> implements QueryFunction<T, T>
       }
       current = next;
     }
-    return result;
   }
 
   /**
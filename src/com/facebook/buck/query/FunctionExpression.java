@@ -39,6 +39,7 @@ import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Iterables;
 import java.util.Objects;
 import java.util.Set;
+import java.util.function.Consumer;
 
 /** A query expression for user-defined query functions. */
 final class FunctionExpression<NODE_TYPE> extends QueryExpression<NODE_TYPE> {
@@ -69,6 +70,17 @@ final class FunctionExpression<NODE_TYPE> extends QueryExpression<NODE_TYPE> {
     return ((QueryFunction<OUTPUT_TYPE, NODE_TYPE>) getFunction()).eval(evaluator, env, getArgs());
   }
 
+  @Override
+  @SuppressWarnings("unchecked")
+  public <OUTPUT_TYPE extends QueryTarget> void forEach(
+      QueryEvaluator<NODE_TYPE> evaluator,
+      QueryEnvironment<NODE_TYPE> env,
+      Consumer<? super OUTPUT_TYPE> consumer)
+      throws QueryException {
+    ((QueryFunction<OUTPUT_TYPE, NODE_TYPE>) getFunction())
+        .forEach(evaluator, env, getArgs(), consumer);
+  }
+
   @Override
   public void traverse(QueryExpression.Visitor<NODE_TYPE> visitor) {
     if (visitor.visit(this) == VisitResult.CONTINUE) {
@@ -196,6 +196,22 @@ public interface QueryEnvironment<NODE_TYPE> {
         QueryEnvironment<ENV_NODE_TYPE> env,
         ImmutableList<Argument<ENV_NODE_TYPE>> args)
         throws QueryException;
+
+    /**
+     * Evaluates this function and passes its results to {@code consumer}, in the order of the set
+     * returned by {@link #eval}.
+     *
+     * <p>Functions that discover results incrementally, like graph traversals, can override this
+     * method to pass results as soon as they are found instead of collecting them first.
+     */
+    default void forEach(
+        QueryEvaluator<ENV_NODE_TYPE> evaluator,
+        QueryEnvironment<ENV_NODE_TYPE> env,
+        ImmutableList<Argument<ENV_NODE_TYPE>> args,
+        Consumer<? super OUTPUT_TYPE> consumer)
+        throws QueryException {
+      eval(evaluator, env, args).forEach(consumer);
+    }
   }
 
   /**
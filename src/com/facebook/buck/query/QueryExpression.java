@@ -33,6 +33,7 @@ package com.facebook.buck.query;
 import com.facebook.buck.core.model.QueryTarget;
 import java.util.Collection;
 import java.util.Set;
+import java.util.function.Consumer;
 
 /**
  * Base class for expressions in the Buck query language.
@@ -75,6 +76,18 @@ public abstract class QueryExpression<NODE_TYPE> {
   abstract <OUTPUT_TYPE extends QueryTarget> Set<OUTPUT_TYPE> eval(
       QueryEvaluator<NODE_TYPE> evaluator, QueryEnvironment<NODE_TYPE> env) throws QueryException;
 
+  /**
+   * Evaluates this query in the specified environment, and passes resulting targets to {@code
+   * consumer}, possibly before the evaluation completes.
+   */
+  public <OUTPUT_TYPE extends QueryTarget> void forEach(
+      QueryEvaluator<NODE_TYPE> evaluator,
+      QueryEnvironment<NODE_TYPE> env,
+      Consumer<? super OUTPUT_TYPE> consumer)
+      throws QueryException {
+    evaluator.<OUTPUT_TYPE>eval(this, env).forEach(consumer);
+  }
+
   /**
    * Collects all target patterns that are referenced anywhere within this query expression and adds
    * them to the given collection, which must be mutable.
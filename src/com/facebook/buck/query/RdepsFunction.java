@@ -37,8 +37,10 @@ import com.facebook.buck.query.QueryEnvironment.QueryFunction;
 import com.google.common.base.Predicate;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Iterables;
+import java.util.HashSet;
 import java.util.LinkedHashSet;
 import java.util.Set;
+import java.util.function.Consumer;
 
 /**
  * A 'rdeps(u, x, [, depth])' expression, which finds the reverse dependencies of the given argument
@@ -80,14 +82,36 @@ public class RdepsFunction<T extends QueryTarget> implements QueryFunction<T, T>
   public Set<T> eval(
       QueryEvaluator<T> evaluator, QueryEnvironment<T> env, ImmutableList<Argument<T>> args)
       throws QueryException {
-    Set<T> universeSet = evaluator.eval(args.get(0).getExpression(), env);
-    env.buildTransitiveClosure(universeSet, Integer.MAX_VALUE);
-    Set<T> transitiveClosureUniverse = env.getTransitiveClosure(universeSet);
-
     // LinkedHashSet preserves the order of insertion when iterating over the values.
     // The order by which we traverse the result is meaningful because the dependencies are
     // traversed level-by-level.
     Set<T> visited = new LinkedHashSet<>();
+    traverse(evaluator, env, args, visited, target -> {});
+    return visited;
+  }
+
+  /** Passes reverse dependencies to {@code consumer} level-by-level, as they are visited. */
+  @Override
+  public void forEach(
+      QueryEvaluator<T> evaluator,
+      QueryEnvironment<T> env,
+      ImmutableList<Argument<T>> args,
+      Consumer<? super T> consumer)
+      throws QueryException {
+    traverse(evaluator, env, args, new HashSet<>(), consumer);
+  }
+
+  private void traverse(
+      QueryEvaluator<T> evaluator,
+      QueryEnvironment<T> env,
+      ImmutableList<Argument<T>> args,
+      Set<T> visited,
+      Consumer<? super T> consumer)
+      throws QueryException {
+    Set<T> universeSet = evaluator.eval(args.get(0).getExpression(), env);
+    env.buildTransitiveClosure(universeSet, Integer.MAX_VALUE);
+    Set<T> transitiveClosureUniverse = env.getTransitiveClosure(universeSet);
+
     Set<T> current = evaluator.eval(args.get(1).getExpression(), env);
 
     // This predicate function does not just do filtering but also populates visited collection.
@@ -95,7 +119,13 @@ public class RdepsFunction<T extends QueryTarget> implements QueryFunction<T, T>
     // The actual evaluation and population of `visited` happens in `getReverseDeps` as it iterates
     // through targets
     Predicate<T> filter =
-        target -> (transitiveClosureUniverse.contains(target) && visited.add(target));
+        target -> {
+          if (transitiveClosureUniverse.contains(target) && visited.add(target)) {
+            consumer.accept(target);
+            return true;
+          }
+          return false;
+        };
 
     int depthBound = args.size() > 2 ? args.get(2).getInteger() : Integer.MAX_VALUE;
     // Iterating depthBound+1 times because the first one processes the given argument set.
@@ -106,6 +136,5 @@ public class RdepsFunction<T extends QueryTarget> implements QueryFunction<T, T>
       }
       current = next;
     }
-    return visited;
   }
 }
@@ -0,0 +1,407 @@
+/*
+ * Copyright 2019-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.rules.keys;
+
+import com.facebook.buck.core.build.action.BuildEngineAction;
+import com.facebook.buck.core.rulekey.AddsToRuleKey;
+import com.facebook.buck.core.rulekey.RuleKey;
+import com.facebook.buck.core.rules.BuildRule;
+import com.facebook.buck.core.util.log.Logger;
+import com.facebook.buck.io.filesystem.ProjectFilesystem;
+import com.facebook.buck.util.MoreSuppliers;
+import com.facebook.buck.util.cache.CacheStatsTracker;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import java.util.AbstractMap;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import javax.annotation.Nullable;
+
+/**
+ * A {@link RuleKey} cache with the same invalidation semantics as {@link DefaultRuleKeyCache},
+ * designed to scale with the number of threads computing rule keys.
+ *
+ * <p>Lookups of already cached nodes don't take any lock, values are published with a CAS, and
+ * each node guards its own list of dependents, so that recording many dependents of the same node
+ * doesn't contend on the locks of the underlying map. Nodes are assigned an int id when first
+ * seen, and reverse dependencies are tracked as arrays of these ids. The ids of invalidated nodes
+ * are reused, so the table of nodes only grows with the number of nodes cached at the same time.
+ *
+ * @param <V> The rule key type.
+ */
+public class StripedRuleKeyCache<V> implements TrackableRuleKeyCache<V> {
+
+  private static final Logger LOG = Logger.get(StripedRuleKeyCache.class);
+
+  /** The underlying rule key cache. We use object identity for indexing. */
+  private final ConcurrentHashMap<IdentityWrapper, Node<V>> cache = new ConcurrentHashMap<>();
+
+  /** A map for rule key inputs to the ids of nodes that use them. */
+  private final ConcurrentHashMap<RuleKeyInput, IntList> inputsIndex = new ConcurrentHashMap<>();
+
+  /** Maps node ids back to nodes. Replaced when everything is invalidated. */
+  private volatile NodeTable<V> nodes = new NodeTable<>();
+
+  private Node<V> getOrCreateNode(Object key) {
+    IdentityWrapper wrapper = new IdentityWrapper(key);
+    Node<V> node = cache.get(wrapper);
+    if (node != null) {
+      return node;
+    }
+    NodeTable<V> table = nodes;
+    return cache.computeIfAbsent(wrapper, ignored -> table.register(key));
+  }
+
+  private <K> V calculateNode(K key, Node<V> node, Function<K, RuleKeyResult<V>> create) {
+    Preconditions.checkArgument(
+        key instanceof BuildEngineAction || key instanceof AddsToRuleKey,
+        "%s must be one of either a `BuildEngineAction` or `AddsToRuleKey`",
+        key.getClass());
+
+    RuleKeyResult<V> result = create.apply(key);
+    for (Object dependency : result.deps) {
+      getOrCreateNode(dependency).dependents.add(node.id);
+    }
+    for (RuleKeyInput input : result.inputs) {
+      IntList users = inputsIndex.get(input);
+      if (users == null) {
+        users = inputsIndex.computeIfAbsent(input, ignored -> new IntList());
+      }
+      users.add(node.id);
+    }
+
+    return result.result;
+  }
+
+  private <K> V getNode(K key, Function<K, RuleKeyResult<V>> create, CacheStatsTracker tracker) {
+    CacheStatsTracker.CacheRequest request = tracker.startRequest();
+    Node<V> node = getOrCreateNode(key);
+    Supplier<V> supplier = node.value;
+    if (supplier == null) {
+      Supplier<V> created = MoreSuppliers.memoize(() -> calculateNode(key, node, create));
+      if (Node.VALUE_UPDATER.compareAndSet(node, null, created)) {
+        request.recordMiss();
+        request.recordLoadSuccess();
+        supplier = created;
+      } else {
+        request.recordHit();
+        supplier = node.value;
+      }
+    } else {
+      request.recordHit();
+    }
+    return supplier.get();
+  }
+
+  @Nullable
+  @Override
+  public V get(BuildEngineAction action, CacheStatsTracker statsTracker) {
+    CacheStatsTracker.CacheRequest request = statsTracker.startRequest();
+    Node<V> node = cache.get(new IdentityWrapper(action));
+    if (node != null) {
+      Supplier<V> supplier = node.value;
+      if (supplier != null) {
+        request.recordHit();
+        return supplier.get();
+      }
+    }
+    request.recordMiss();
+    return null;
+  }
+
+  @Override
+  public V get(
+      BuildEngineAction action,
+      Function<? super BuildEngineAction, RuleKeyResult<V>> create,
+      CacheStatsTracker statsTracker) {
+    return getNode(action, create, statsTracker);
+  }
+
+  @Override
+  public V get(
+      AddsToRuleKey appendable,
+      Function<? super AddsToRuleKey, RuleKeyResult<V>> create,
+      CacheStatsTracker statsTracker) {
+    return getNode(appendable, create, statsTracker);
+  }
+
+  private boolean isCachedNode(Object object) {
+    return cache.containsKey(new IdentityWrapper(object));
+  }
+
+  @VisibleForTesting
+  boolean isCached(BuildEngineAction rule) {
+    return isCachedNode(rule);
+  }
+
+  @VisibleForTesting
+  boolean isCached(AddsToRuleKey appendable) {
+    return isCachedNode(appendable);
+  }
+
+  /** @return the number of node ids that were ever handed out, including the reused ones. */
+  @VisibleForTesting
+  int getAllocatedNodeIds() {
+    return nodes.nextId.get();
+  }
+
+  /** Invalidate the nodes with the given ids and all their transitive dependents. */
+  private void invalidateNodes(IntList pending, CacheStatsTracker statsTracker) {
+    NodeTable<V> table = nodes;
+    while (!pending.isEmpty()) {
+      Node<V> node = table.remove(pending.removeLast());
+      // This node may have already been removed due to being someone else's reverse dependency.
+      if (node != null) {
+        LOG.verbose("invalidating node %s", node.key);
+        cache.remove(new IdentityWrapper(node.key), node);
+        pending.addAll(node.dependents);
+        statsTracker.recordEviction();
+      }
+    }
+  }
+
+  /** Invalidate the given inputs and all their transitive dependents. */
+  @Override
+  public void invalidateInputs(Iterable<RuleKeyInput> inputs, CacheStatsTracker statsTracker) {
+    IntList pending = new IntList();
+    for (RuleKeyInput input : inputs) {
+      LOG.verbose("invalidating input %s", input);
+      IntList users = inputsIndex.remove(input);
+      if (users != null) {
+        pending.addAll(users);
+      }
+    }
+    invalidateNodes(pending, statsTracker);
+  }
+
+  /**
+   * Invalidate all inputs *not* from the given {@link ProjectFilesystem}s and their transitive
+   * dependents.
+   */
+  @Override
+  public void invalidateAllExceptFilesystems(
+      ImmutableSet<ProjectFilesystem> filesystems, CacheStatsTracker statsTracker) {
+    if (filesystems.isEmpty()) {
+      invalidateAll(statsTracker);
+    } else {
+      invalidateInputs(
+          inputsIndex.keySet().stream()
+              .filter(input -> !filesystems.contains(input.getFilesystem()))
+              .collect(Collectors.toList()),
+          statsTracker);
+    }
+  }
+
+  /**
+   * Invalidate all inputs from a given {@link ProjectFilesystem} and their transitive dependents.
+   */
+  @Override
+  public void invalidateFilesystem(ProjectFilesystem filesystem, CacheStatsTracker statsTracker) {
+    invalidateInputs(
+        inputsIndex.keySet().stream()
+            .filter(input -> filesystem.equals(input.getFilesystem()))
+            .collect(Collectors.toList()),
+        statsTracker);
+  }
+
+  /** Invalidate everything in the cache. */
+  @Override
+  public void invalidateAll(CacheStatsTracker statsTracker) {
+    statsTracker.recordEviction(cache.size());
+    nodes = new NodeTable<>();
+    cache.clear();
+    inputsIndex.clear();
+  }
+
+  @Override
+  public ImmutableList<Map.Entry<BuildRule, V>> getCachedBuildRules() {
+    ImmutableList.Builder<Map.Entry<BuildRule, V>> builder = ImmutableList.builder();
+    cache.forEach(
+        (key, value) -> {
+          if (key.delegate instanceof BuildRule) {
+            Supplier<V> supplier = value.value;
+            if (supplier != null) {
+              builder.add(new AbstractMap.SimpleEntry<>((BuildRule) key.delegate, supplier.get()));
+            }
+          }
+        });
+    return builder.build();
+  }
+
+  private static final class Node<V> {
+    @SuppressWarnings("rawtypes")
+    private static final AtomicReferenceFieldUpdater<Node, Supplier> VALUE_UPDATER =
+        AtomicReferenceFieldUpdater.newUpdater(Node.class, Supplier.class, "value");
+
+    private final int id;
+    private final Object key;
+
+    /** Ids of the nodes that depend on this one, invalidated along with this node. */
+    private final IntList dependents = new IntList();
+
+    /**
+     * The cached value, stored in a memoized supplier so that the value is computed outside of any
+     * lock. Null until the value of this node is first requested, as nodes are also created to
+     * record dependents.
+     */
+    @Nullable private volatile Supplier<V> value;
+
+    private Node(int id, Object key) {
+      this.id = id;
+      this.key = key;
+    }
+  }
+
+  /**
+   * Table from ids to nodes, made of fixed size chunks so that lookups don't need to lock.
+   *
+   * <p>The ids of removed nodes are reused by the nodes registered next. A stale id recorded by a
+   * live node, or by the index of inputs, resolves to no node or to a node registered later, which
+   * is then invalidated along with the nodes that it was recorded for. Invalidating more nodes than
+   * needed only costs computing their keys again.
+   */
+  private static final class NodeTable<V> {
+    private static final int CHUNK_BITS = 12;
+    private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+
+    private final AtomicInteger nextId = new AtomicInteger();
+
+    /** Ids of removed nodes, which are handed out before new ones. */
+    private final IntList freeIds = new IntList();
+
+    private volatile ImmutableList<AtomicReferenceArray<Node<V>>> chunks = ImmutableList.of();
+
+    Node<V> register(Object key) {
+      int id = freeIds.pollLast();
+      Node<V> node = new Node<>(id < 0 ? nextId.getAndIncrement() : id, key);
+      getChunk(node.id).set(node.id & (CHUNK_SIZE - 1), node);
+      return node;
+    }
+
+    @Nullable
+    Node<V> remove(int id) {
+      ImmutableList<AtomicReferenceArray<Node<V>>> current = chunks;
+      int index = id >>> CHUNK_BITS;
+      Node<V> node =
+          index < current.size() ? current.get(index).getAndSet(id & (CHUNK_SIZE - 1), null) : null;
+      if (node != null) {
+        freeIds.add(id);
+      }
+      return node;
+    }
+
+    private AtomicReferenceArray<Node<V>> getChunk(int id) {
+      int index = id >>> CHUNK_BITS;
+      ImmutableList<AtomicReferenceArray<Node<V>>> current = chunks;
+      if (index < current.size()) {
+        return current.get(index);
+      }
+      synchronized (this) {
+        current = chunks;
+        if (index >= current.size()) {
+          int size = Math.max(index + 1, current.size() * 2);
+          ImmutableList.Builder<AtomicReferenceArray<Node<V>>> grown =
+              ImmutableList.builderWithExpectedSize(size);
+          grown.addAll(current);
+          for (int i = current.size(); i < size; i++) {
+            grown.add(new AtomicReferenceArray<>(CHUNK_SIZE));
+          }
+          current = grown.build();
+          chunks = current;
+        }
+        return current.get(index);
+      }
+    }
+  }
+
+  /** A growable list of ints, safe for concurrent appends. */
+  private static final class IntList {
+    private int[] values = new int[2];
+    private int size = 0;
+
+    synchronized void add(int value) {
+      if (size == values.length) {
+        values = Arrays.copyOf(values, size * 2);
+      }
+      values[size++] = value;
+    }
+
+    void addAll(IntList other) {
+      int[] otherValues;
+      int otherSize;
+      synchronized (other) {
+        otherValues = other.values;
+        otherSize = other.size;
+      }
+      synchronized (this) {
+        if (size + otherSize > values.length) {
+          values = Arrays.copyOf(values, Math.max(size + otherSize, size * 2));
+        }
+        System.arraycopy(otherValues, 0, values, size, otherSize);
+        size += otherSize;
+      }
+    }
+
+    synchronized boolean isEmpty() {
+      return size == 0;
+    }
+
+    synchronized int removeLast() {
+      return values[--size];
+    }
+
+    /** @return the last value, which is removed, or -1 if the list is empty. */
+    synchronized int pollLast() {
+      return size == 0 ? -1 : values[--size];
+    }
+  }
+
+  /**
+   * A wrapper class which uses identity equality and hash code. Intended to wrap keys used in a
+   * map.
+   */
+  private static final class IdentityWrapper {
+
+    private final Object delegate;
+
+    private IdentityWrapper(Object delegate) {
+      this.delegate = delegate;
+    }
+
+    @Override
+    public int hashCode() {
+      return System.identityHashCode(delegate);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (!(obj instanceof IdentityWrapper)) {
+        return false;
+      }
+      return delegate == ((IdentityWrapper) obj).delegate;
+    }
+  }
+}
@@ -0,0 +1,194 @@
+/*
+ * Copyright 2019-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.skylark.io.impl;
+
+import com.facebook.buck.io.pathformat.PathFormatter;
+import com.facebook.buck.skylark.io.GlobSpecWithResult;
+import com.facebook.buck.skylark.io.GlobberFactory;
+import com.facebook.buck.util.function.ThrowingSupplier;
+import com.google.common.collect.ImmutableList;
+import com.google.devtools.build.lib.vfs.Dirent;
+import com.google.devtools.build.lib.vfs.FileStatus;
+import com.google.devtools.build.lib.vfs.Path;
+import com.google.devtools.build.lib.vfs.Symlinks;
+import com.google.devtools.build.lib.vfs.UnixGlob;
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Predicate;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * In-memory index of directory listings and file statuses used to resolve glob patterns, shared by
+ * all build files parsed during the lifetime of the daemon.
+ *
+ * <p>{@link CachingGlobber} only reuses results of identical globs within a single build file, so
+ * overlapping patterns of different packages used to list the same directories again. The index
+ * keeps everything {@code glob} learned about the file system until Watchman reports that a path
+ * was added or removed, at which point only that path, its descendants and the listing of its
+ * parent directory are dropped. Paths outside of a cell or ignored by it are never indexed, since
+ * no events are delivered for them.
+ */
+@ThreadSafe
+public class GlobIndex {
+
+  /** Directory entries by the absolute path of the directory. */
+  private final ConcurrentNavigableMap<String, Collection<Dirent>> directoryEntries =
+      new ConcurrentSkipListMap<>();
+
+  /** Statuses of files, following symlinks, by their absolute paths. */
+  private final ConcurrentNavigableMap<String, Optional<FileStatus>> fileStatuses =
+      new ConcurrentSkipListMap<>();
+
+  /** Incremented by every invalidation to discard entries read while it was in progress. */
+  private final AtomicLong generation = new AtomicLong();
+
+  /**
+   * @param cellRoot The root of the cell whose build files will use created globbers.
+   * @param isIgnored Whether a path relative to {@code cellRoot} is ignored by the cell.
+   * @return The factory of globbers resolving glob patterns using this index.
+   */
+  public GlobberFactory createGlobberFactory(
+      java.nio.file.Path cellRoot, Predicate<java.nio.file.Path> isIgnored) {
+    AtomicReference<UnixGlob.FilesystemCalls> syscalls =
+        new AtomicReference<>(new IndexedFilesystemCalls(cellRoot, isIgnored));
+    return basePath -> NativeGlobber.create(basePath, syscalls);
+  }
+
+  /**
+   * Drops everything known about {@code path}, which has been added or removed, and about its
+   * parent directory listing.
+   *
+   * @param path The absolute path of the added or removed file or directory.
+   */
+  public void invalidate(java.nio.file.Path path) {
+    generation.incrementAndGet();
+    String pathString = PathFormatter.pathWithUnixSeparators(path);
+    invalidateSubtree(directoryEntries, pathString);
+    invalidateSubtree(fileStatuses, pathString);
+    java.nio.file.Path parent = path.getParent();
+    if (parent != null) {
+      directoryEntries.remove(PathFormatter.pathWithUnixSeparators(parent));
+    }
+  }
+
+  /** Drops the whole index, for example when file system events have been lost. */
+  public void invalidateAll() {
+    generation.incrementAndGet();
+    directoryEntries.clear();
+    fileStatuses.clear();
+  }
+
+  /**
+   * Checks whether adding or removing a path may change the result of a glob. Results are only
+   * changed by removing one of the matched paths or their ancestors, or by adding a path matched by
+   * include patterns and not matched by exclude patterns.
+   *
+   * @param glob The glob evaluated in a package along with its result.
+   * @param path The added or removed path relative to the package, using '/' as a separator.
+   * @param added Whether {@code path} was added rather than removed.
+   */
+  public static boolean mayChangeGlobResult(GlobSpecWithResult glob, String path, boolean added) {
+    if (!added) {
+      String prefix = path + '/';
+      return glob.getFilePaths().stream().anyMatch(p -> p.equals(path) || p.startsWith(prefix));
+    }
+    Set<String> paths = new HashSet<>();
+    paths.add(path);
+    UnixGlob.removeExcludes(paths, glob.getGlobSpec().getInclude());
+    if (!paths.isEmpty()) {
+      return false;
+    }
+    paths.add(path);
+    UnixGlob.removeExcludes(paths, glob.getGlobSpec().getExclude());
+    return !paths.isEmpty();
+  }
+
+  private static void invalidateSubtree(ConcurrentNavigableMap<String, ?> entries, String path) {
+    entries.remove(path);
+    // '0' is the character following '/', so this range contains all descendants of the path.
+    entries.subMap(path + '/', path + '0').clear();
+  }
+
+  private <T> T getOrRead(
+      ConcurrentNavigableMap<String, T> entries,
+      String path,
+      ThrowingSupplier<T, IOException> reader)
+      throws IOException {
+    @Nullable T value = entries.get(path);
+    if (value != null) {
+      return value;
+    }
+    long readGeneration = generation.get();
+    value = reader.get();
+    entries.put(path, value);
+    if (generation.get() != readGeneration) {
+      // The path might have changed while it was being read.
+      entries.remove(path, value);
+    }
+    return value;
+  }
+
+  /** {@link UnixGlob.FilesystemCalls} serving indexable paths of a cell from the index. */
+  private class IndexedFilesystemCalls implements UnixGlob.FilesystemCalls {
+    private final java.nio.file.Path cellRoot;
+    private final Predicate<java.nio.file.Path> isIgnored;
+
+    private IndexedFilesystemCalls(
+        java.nio.file.Path cellRoot, Predicate<java.nio.file.Path> isIgnored) {
+      this.cellRoot = cellRoot;
+      this.isIgnored = isIgnored;
+    }
+
+    @Override
+    public Collection<Dirent> readdir(Path path, Symlinks symlinks) throws IOException {
+      if (symlinks != Symlinks.NOFOLLOW || !isIndexed(path)) {
+        return UnixGlob.DEFAULT_SYSCALLS.readdir(path, symlinks);
+      }
+      return getOrRead(
+          directoryEntries,
+          path.getPathString(),
+          () -> ImmutableList.copyOf(UnixGlob.DEFAULT_SYSCALLS.readdir(path, symlinks)));
+    }
+
+    @Nullable
+    @Override
+    public FileStatus statIfFound(Path path, Symlinks symlinks) throws IOException {
+      if (symlinks != Symlinks.FOLLOW || !isIndexed(path)) {
+        return UnixGlob.DEFAULT_SYSCALLS.statIfFound(path, symlinks);
+      }
+      return getOrRead(
+              fileStatuses,
+              path.getPathString(),
+              () -> Optional.ofNullable(UnixGlob.DEFAULT_SYSCALLS.statIfFound(path, symlinks)))
+          .orElse(null);
+    }
+
+    private boolean isIndexed(Path path) {
+      java.nio.file.Path nioPath = Paths.get(path.getPathString());
+      return nioPath.startsWith(cellRoot) && !isIgnored.test(cellRoot.relativize(nioPath));
+    }
+  }
+}
@@ -53,6 +53,9 @@ import com.google.common.collect.ImmutableMap.Builder;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.ImmutableSortedSet;
 import com.google.common.collect.Iterables;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
 import com.google.common.util.concurrent.UncheckedExecutionException;
 import com.google.devtools.build.lib.cmdline.Label;
 import com.google.devtools.build.lib.cmdline.PackageIdentifier;
@@ -85,6 +88,9 @@ import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import org.immutables.value.Value;
@@ -107,7 +113,9 @@ public class SkylarkProjectBuildFileParser implements ProjectBuildFileParser {
   private final BuckGlobals buckGlobals;
   private final GlobberFactory globberFactory;
   private final Cache<com.google.devtools.build.lib.vfs.Path, BuildFileAST> astCache;
-  private final Cache<com.google.devtools.build.lib.vfs.Path, ExtensionData> extensionDataCache;
+  private final ConcurrentMap<
+          com.google.devtools.build.lib.vfs.Path, ListenableFuture<ExtensionData>>
+      extensionDataCache;
   private final LoadingCache<LoadImport, IncludesData> includesDataCache;
   private final PackageImplicitIncludesFinder packageImplicitIncludeFinder;
 
@@ -126,7 +134,7 @@ public class SkylarkProjectBuildFileParser implements ProjectBuildFileParser {
     this.globberFactory = globberFactory;
 
     this.astCache = CacheBuilder.newBuilder().build();
-    this.extensionDataCache = CacheBuilder.newBuilder().build();
+    this.extensionDataCache = new ConcurrentHashMap<>();
 
     this.includesDataCache =
         CacheBuilder.newBuilder()
@@ -444,21 +452,33 @@ public class SkylarkProjectBuildFileParser implements ProjectBuildFileParser {
       com.google.devtools.build.lib.vfs.Path path, Label containingLabel)
       throws BuildFileParseException, IOException {
     BuildFileAST result = astCache.getIfPresent(path);
-    if (result == null) {
-      try {
-        result = readSkylarkAST(path);
-      } catch (FileNotFoundException e) {
-        throw BuildFileParseException.createForUnknownParseError(
-            "%s cannot be loaded because it does not exist. It was referenced from %s",
-            path, containingLabel);
-      }
-      if (result.containsErrors()) {
-        throw BuildFileParseException.createForUnknownParseError(
-            "Cannot parse %s.  It was referenced from %s", path, containingLabel);
-      }
-      astCache.put(path, result);
+    if (result != null) {
+      return result;
+    }
+    try {
+      // Threads parsing the same file concurrently wait for the first one to finish.
+      return astCache.get(
+          path,
+          () -> {
+            BuildFileAST ast;
+            try {
+              ast = readSkylarkAST(path);
+            } catch (FileNotFoundException e) {
+              throw BuildFileParseException.createForUnknownParseError(
+                  "%s cannot be loaded because it does not exist. It was referenced from %s",
+                  path, containingLabel);
+            }
+            if (ast.containsErrors()) {
+              throw BuildFileParseException.createForUnknownParseError(
+                  "Cannot parse %s.  It was referenced from %s", path, containingLabel);
+            }
+            return ast;
+          });
+    } catch (ExecutionException | UncheckedExecutionException e) {
+      Throwables.throwIfInstanceOf(e.getCause(), IOException.class);
+      Throwables.throwIfUnchecked(e.getCause());
+      throw new IllegalStateException(e);
     }
-    return result;
   }
 
   /**
@@ -698,10 +718,28 @@ public class SkylarkProjectBuildFileParser implements ProjectBuildFileParser {
    */
   private @Nullable ExtensionData lookupExtensionForImport(
       com.google.devtools.build.lib.vfs.Path path, String importString) {
-    ExtensionData ext = extensionDataCache.getIfPresent(path);
+    ExtensionData ext = getEvaluatedExtension(path);
     return ext == null ? ext : ExtensionData.copyOf(ext).withImportString(importString);
   }
 
+  /**
+   * @return {@link ExtensionData} of the extension at {@code path}, or null if it was not evaluated
+   *     yet or is still being evaluated by another thread.
+   */
+  private @Nullable ExtensionData getEvaluatedExtension(
+      com.google.devtools.build.lib.vfs.Path path) {
+    ListenableFuture<ExtensionData> future = extensionDataCache.get(path);
+    if (future == null || !future.isDone()) {
+      return null;
+    }
+    try {
+      return Futures.getDone(future);
+    } catch (ExecutionException e) {
+      // The evaluation failed and was already removed from the cache.
+      return null;
+    }
+  }
+
   /**
    * Loads extensions abstract syntax tree if needed.
    *
@@ -736,7 +774,7 @@ public class SkylarkProjectBuildFileParser implements ProjectBuildFileParser {
       load.addDependency(dependency);
       com.google.devtools.build.lib.vfs.Path extensionPath =
           getImportPath(dependency.getLabel(), dependency.getImport());
-      if (extensionDataCache.getIfPresent(extensionPath) == null) {
+      if (getEvaluatedExtension(extensionPath) == null) {
         // Schedule dependency to be loaded if needed.
         haveUnsatisfiedDeps = true;
         queue.push(new ExtensionLoadState(dependency, extensionPath));
@@ -870,8 +908,7 @@ public class SkylarkProjectBuildFileParser implements ProjectBuildFileParser {
       if (!haveUnsatisfiedDeps) {
         // We are done with this load; build it and cache it.
         work.removeFirst();
-        extension = buildExtensionData(load);
-        extensionDataCache.put(load.getPath(), extension);
+        extension = getOrBuildExtensionData(load);
       }
     }
 
@@ -879,6 +916,46 @@ public class SkylarkProjectBuildFileParser implements ProjectBuildFileParser {
     return extension;
   }
 
+  /**
+   * Evaluates an extension whose dependencies are all loaded, unless another thread already did.
+   *
+   * <p>Each extension is evaluated at most once, even when build files loading it are parsed
+   * concurrently: threads that need an extension being evaluated wait for it and share the frozen
+   * result. Besides saving work, this ensures that user defined rules of an extension are only
+   * registered once. The extension is in the cache once this method returns, which its dependents
+   * rely on.
+   *
+   * <p>The evaluation happens outside of the cache, so it never holds a lock of the map. If it
+   * fails, the extension is removed from the cache and the waiting threads evaluate it themselves,
+   * so that each of them reports the error, or its interruption, on its own.
+   */
+  private ExtensionData getOrBuildExtensionData(ExtensionLoadState load)
+      throws InterruptedException {
+    String importString = load.getSkylarkImport().getImportString();
+    while (true) {
+      SettableFuture<ExtensionData> evaluation = SettableFuture.create();
+      ListenableFuture<ExtensionData> existing =
+          extensionDataCache.putIfAbsent(load.getPath(), evaluation);
+      if (existing == null) {
+        ExtensionData extension;
+        try {
+          extension = buildExtensionData(load);
+        } catch (InterruptedException | RuntimeException | Error e) {
+          extensionDataCache.remove(load.getPath(), evaluation);
+          evaluation.setException(e);
+          throw e;
+        }
+        evaluation.set(extension);
+        return extension.withImportString(importString);
+      }
+      try {
+        return existing.get().withImportString(importString);
+      } catch (ExecutionException e) {
+        LOG.verbose("Evaluating %s again after a concurrent evaluation failed", load.getPath());
+      }
+    }
+  }
+
   /**
    * @return The path to a Skylark extension. For example, for {@code load("//pkg:foo.bzl", "foo")}
    *     import it would return {@code /path/to/repo/pkg/foo.bzl} and for {@code
@@ -30,23 +30,31 @@ import com.facebook.buck.io.watchman.Watchman;
 import com.facebook.buck.io.watchman.WatchmanCursor;
 import com.facebook.buck.io.watchman.WatchmanWatcher;
 import com.facebook.buck.parser.DaemonicParserState;
+import com.facebook.buck.parser.SpeculativeParsingRequest;
 import com.facebook.buck.parser.manifest.BuildFileManifestCache;
 import com.facebook.buck.rules.coercer.TypeCoercerFactory;
 import com.facebook.buck.rules.keys.RuleKeyCacheRecycler;
+import com.facebook.buck.rules.keys.config.impl.BuckVersion;
 import com.facebook.buck.util.cache.ProjectFileHashCache;
 import com.facebook.buck.util.cache.impl.WatchedFileHashCache;
+import com.facebook.buck.util.function.ThrowingConsumer;
 import com.facebook.buck.util.timing.Clock;
 import com.facebook.buck.versions.VersionedTargetGraphCache;
 import com.facebook.buck.worker.WorkerProcessPool;
 import com.google.common.cache.LoadingCache;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
 import com.google.common.eventbus.EventBus;
 import java.io.Closeable;
 import java.io.IOException;
 import java.nio.file.Path;
+import java.util.Map;
 import java.util.Optional;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
 
 /**
  * {@link BuckGlobalState} contains all the global state of Buck which is kept between invocations
@@ -63,6 +71,11 @@ import java.util.concurrent.ConcurrentMap;
 public final class BuckGlobalState implements Closeable {
   private static final Logger LOG = Logger.get(BuckGlobalState.class);
 
+  private static final long PARSER_STATE_SNAPSHOT_INTERVAL_MILLIS = TimeUnit.MINUTES.toMillis(10);
+
+  private static final long SPECULATIVE_PARSING_CANCELLATION_TIMEOUT_MILLIS =
+      TimeUnit.SECONDS.toMillis(10);
+
   private final Cell rootCell;
   private final TypeCoercerFactory typeCoercerFactory;
   private final DaemonicParserState daemonicParserState;
@@ -81,6 +94,15 @@ public final class BuckGlobalState implements Closeable {
   private final Clock clock;
   private final long startTime;
   private final boolean usesWatchman;
+  private final Optional<Path> parserStateSnapshot;
+  private final boolean parserStateRestored;
+  private long lastParserStateSnapshotMillis;
+
+  private final Object speculativeParsingLock = new Object();
+
+  @GuardedBy("speculativeParsingLock")
+  @Nullable
+  private Thread speculativeParsingThread;
 
   BuckGlobalState(
       Cell rootCell,
@@ -99,7 +121,9 @@ public final class BuckGlobalState implements Closeable {
       ImmutableMap<Path, WatchmanCursor> cursor,
       KnownRuleTypesProvider knownRuleTypesProvider,
       Clock clock,
-      boolean usesWatchman) {
+      boolean usesWatchman,
+      Optional<Path> parserStateSnapshot,
+      boolean parserStateRestored) {
     this.rootCell = rootCell;
     this.typeCoercerFactory = typeCoercerFactory;
     this.daemonicParserState = daemonicParserState;
@@ -117,8 +141,11 @@ public final class BuckGlobalState implements Closeable {
     this.knownRuleTypesProvider = knownRuleTypesProvider;
     this.clock = clock;
     this.usesWatchman = usesWatchman;
+    this.parserStateSnapshot = parserStateSnapshot;
+    this.parserStateRestored = parserStateRestored;
 
     this.startTime = clock.currentTimeMillis();
+    this.lastParserStateSnapshotMillis = startTime;
   }
 
   Cell getRootCell() {
@@ -243,10 +270,138 @@ public final class BuckGlobalState implements Closeable {
     return usesWatchman;
   }
 
+  /** Writes the on-disk snapshots of the file hash caches that have one. */
+  public void persistFileHashCaches() {
+    for (ProjectFileHashCache hashCache : hashCaches) {
+      if (hashCache instanceof WatchedFileHashCache) {
+        ((WatchedFileHashCache) hashCache).writeSnapshot();
+      }
+    }
+  }
+
+  /**
+   * @return true if the parser state was restored from the snapshot of a previous daemon, in which
+   *     case the Watchman cursors point to the time that snapshot was taken.
+   */
+  public boolean isParserStateRestored() {
+    return parserStateRestored;
+  }
+
+  /**
+   * Writes the on-disk snapshot of the parser state if it is enabled and wasn't written in the last
+   * {@link #PARSER_STATE_SNAPSHOT_INTERVAL_MILLIS}.
+   */
+  public void persistParserState() {
+    synchronized (this) {
+      long now = clock.currentTimeMillis();
+      if (now - lastParserStateSnapshotMillis < PARSER_STATE_SNAPSHOT_INTERVAL_MILLIS) {
+        return;
+      }
+      lastParserStateSnapshotMillis = now;
+    }
+    writeParserStateSnapshot();
+  }
+
+  private void writeParserStateSnapshot() {
+    if (!parserStateSnapshot.isPresent()) {
+      return;
+    }
+    // The clocks are read before the parser state. A cursor only moves once the changes it covers
+    // were applied to the parser state, so the snapshot reflects at least the changes up to its
+    // clocks, and the next daemon replays the changes since them.
+    ImmutableMap.Builder<Path, String> clocks = ImmutableMap.builder();
+    for (Map.Entry<Path, WatchmanCursor> entry : cursor.entrySet()) {
+      String clock = entry.getValue().get();
+      if (!clock.startsWith("c:")) {
+        // Named cursors can't be carried over to another daemon.
+        return;
+      }
+      clocks.put(entry.getKey(), clock);
+    }
+    try {
+      daemonicParserState.writeSnapshot(
+          parserStateSnapshot.get(), BuckVersion.getVersion(), clocks.build());
+    } catch (IOException e) {
+      LOG.warn(e, "Failed to write parser state snapshot %s.", parserStateSnapshot.get());
+    }
+  }
+
+  /**
+   * Parses the requests predicted to follow the latest file changes on the current thread, at low
+   * priority, unless another thread is already doing it. This is meant to run after a command
+   * released its client, and is interrupted as soon as another command calls {@link
+   * #cancelSpeculativeParsing()}.
+   */
+  public void runSpeculativeParsing(
+      ThrowingConsumer<ImmutableSet<SpeculativeParsingRequest>, Exception> parseRequests) {
+    Thread currentThread = Thread.currentThread();
+    synchronized (speculativeParsingLock) {
+      if (speculativeParsingThread != null) {
+        return;
+      }
+      speculativeParsingThread = currentThread;
+    }
+    int priority = currentThread.getPriority();
+    try {
+      ImmutableSet<SpeculativeParsingRequest> requests =
+          daemonicParserState.getSpeculativeParsingHistory().takePredictedRequests();
+      if (!requests.isEmpty()) {
+        LOG.debug("Speculatively parsing %s", requests);
+        currentThread.setPriority(Thread.MIN_PRIORITY);
+        parseRequests.accept(requests);
+      }
+    } catch (InterruptedException e) {
+      LOG.debug("Speculative parsing was cancelled.");
+    } catch (Exception e) {
+      LOG.warn(e, "Speculative parsing failed.");
+    } finally {
+      currentThread.setPriority(priority);
+      synchronized (speculativeParsingLock) {
+        // Clear a cancellation so that it doesn't leak into the rest of the command.
+        Thread.interrupted();
+        speculativeParsingThread = null;
+        speculativeParsingLock.notifyAll();
+      }
+    }
+  }
+
+  /**
+   * Interrupts speculative parsing started by a previous command and waits for it to stop, so that
+   * it neither competes with this command nor caches nodes of build files that it's about to
+   * invalidate.
+   */
+  public void cancelSpeculativeParsing() throws InterruptedException {
+    synchronized (speculativeParsingLock) {
+      if (speculativeParsingThread == null) {
+        return;
+      }
+      // Same as in interruptOnClientExit(), don't interrupt a parser cache update midway.
+      synchronized (daemonicParserState) {
+        speculativeParsingThread.interrupt();
+      }
+      long deadline = clock.currentTimeMillis() + SPECULATIVE_PARSING_CANCELLATION_TIMEOUT_MILLIS;
+      while (speculativeParsingThread != null) {
+        long remaining = deadline - clock.currentTimeMillis();
+        if (remaining <= 0) {
+          LOG.warn("Speculative parsing didn't stop in time, proceeding concurrently.");
+          return;
+        }
+        speculativeParsingLock.wait(remaining);
+      }
+    }
+  }
+
   @Override
   public void close() {
+    try {
+      cancelSpeculativeParsing();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
     shutdownPersistentWorkerPools();
     shutdownWebServer();
+    persistFileHashCaches();
+    writeParserStateSnapshot();
   }
 
   private void shutdownPersistentWorkerPools() {
@@ -26,6 +26,7 @@ import com.facebook.buck.core.files.DirectoryListCache;
 import com.facebook.buck.core.files.FileTreeCache;
 import com.facebook.buck.core.model.TargetConfigurationSerializer;
 import com.facebook.buck.core.model.actiongraph.computation.ActionGraphCache;
+import com.facebook.buck.core.model.actiongraph.computation.ActionGraphConfig;
 import com.facebook.buck.core.parser.buildtargetparser.UnconfiguredBuildTargetViewFactory;
 import com.facebook.buck.core.rulekey.RuleKey;
 import com.facebook.buck.core.rules.knowntypes.provider.KnownRuleTypesProvider;
@@ -43,6 +44,8 @@ import com.facebook.buck.rules.coercer.DefaultTypeCoercerFactory;
 import com.facebook.buck.rules.coercer.TypeCoercerFactory;
 import com.facebook.buck.rules.keys.DefaultRuleKeyCache;
 import com.facebook.buck.rules.keys.RuleKeyCacheRecycler;
+import com.facebook.buck.rules.keys.StripedRuleKeyCache;
+import com.facebook.buck.rules.keys.config.impl.BuckVersion;
 import com.facebook.buck.util.RichStream;
 import com.facebook.buck.util.cache.ProjectFileHashCache;
 import com.facebook.buck.util.cache.impl.DefaultFileHashCache;
@@ -56,6 +59,7 @@ import com.google.common.cache.LoadingCache;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSortedSet;
+import com.google.common.collect.Maps;
 import com.google.common.eventbus.EventBus;
 import java.nio.file.Path;
 import java.util.Optional;
@@ -87,8 +91,15 @@ public class BuckGlobalStateFactory {
     ImmutableList.Builder<ProjectFileHashCache> hashCachesBuilder =
         ImmutableList.builderWithExpectedSize(allCells.size() + 1);
     for (Cell subCell : allCells) {
+      ProjectFilesystem cellFilesystem = subCell.getFilesystem();
+      Optional<Path> snapshotPath =
+          buildBuckConfig.shouldPersistFileHashCache()
+              ? Optional.of(
+                  cellFilesystem.resolve(cellFilesystem.getBuckPaths().getFileHashCacheSnapshot()))
+              : Optional.empty();
       WatchedFileHashCache watchedCache =
-          new WatchedFileHashCache(subCell.getFilesystem(), buildBuckConfig.getFileHashCacheMode());
+          new WatchedFileHashCache(
+              cellFilesystem, buildBuckConfig.getFileHashCacheMode(), snapshotPath);
       fileEventBus.register(watchedCache);
       hashCachesBuilder.add(watchedCache);
     }
@@ -106,7 +117,12 @@ public class BuckGlobalStateFactory {
         createBuildFileManifestCachePerCellMap(
             fileEventBus, rootCell.getCellProvider(), getSuperRootPath(rootCell));
     ActionGraphCache actionGraphCache =
-        new ActionGraphCache(buildBuckConfig.getMaxActionGraphCacheEntries());
+        new ActionGraphCache(
+            buildBuckConfig.getMaxActionGraphCacheEntries(),
+            rootCell
+                .getBuckConfig()
+                .getView(ActionGraphConfig.class)
+                .getIncrementalActionGraphRetainedGraphs());
     VersionedTargetGraphCache versionedTargetGraphCache = new VersionedTargetGraphCache();
 
     TypeCoercerFactory typeCoercerFactory = new DefaultTypeCoercerFactory();
@@ -119,7 +135,9 @@ public class BuckGlobalStateFactory {
     RuleKeyCacheRecycler<RuleKey> defaultRuleKeyFactoryCacheRecycler =
         RuleKeyCacheRecycler.createAndRegister(
             fileEventBus,
-            new DefaultRuleKeyCache<>(),
+            buildBuckConfig.useStripedRuleKeyCache()
+                ? new StripedRuleKeyCache<>()
+                : new DefaultRuleKeyCache<>(),
             RichStream.from(allCells).map(Cell::getFilesystem).toImmutableSet());
 
     Optional<WebServer> webServer;
@@ -141,10 +159,31 @@ public class BuckGlobalStateFactory {
       }
     }
     ImmutableMap<Path, WatchmanCursor> cursor;
+    Optional<Path> parserStateSnapshot = Optional.empty();
+    boolean parserStateRestored = false;
     if (rootCell.getBuckConfig().getView(ParserConfig.class).getWatchmanCursor()
             == WatchmanWatcher.CursorType.CLOCK_ID
         && !watchman.getClockIds().isEmpty()) {
       cursor = watchman.buildClockWatchmanCursorMap();
+      if (parserConfig.shouldPersistParserState()) {
+        ProjectFilesystem rootFilesystem = rootCell.getFilesystem();
+        parserStateSnapshot =
+            Optional.of(
+                rootFilesystem.resolve(rootFilesystem.getBuckPaths().getParserStateSnapshot()));
+        Optional<ImmutableMap<Path, String>> snapshotClocks =
+            daemonicParserState.restoreSnapshot(
+                parserStateSnapshot.get(), BuckVersion.getVersion(), allCells, cursor.keySet());
+        if (snapshotClocks.isPresent()) {
+          // Replay the changes made since the snapshot was taken.
+          cursor =
+              ImmutableMap.copyOf(
+                  Maps.transformEntries(
+                      cursor,
+                      (cellPath, currentCursor) ->
+                          new WatchmanCursor(snapshotClocks.get().get(cellPath))));
+          parserStateRestored = true;
+        }
+      }
     } else {
       LOG.debug("Falling back to named cursors: %s", watchman.getProjectWatches());
       cursor = watchman.buildNamedWatchmanCursorMap();
@@ -169,7 +208,9 @@ public class BuckGlobalStateFactory {
         cursor,
         knownRuleTypesProvider,
         clock,
-        watchman != WatchmanFactory.NULL_WATCHMAN);
+        watchman != WatchmanFactory.NULL_WATCHMAN,
+        parserStateSnapshot,
+        parserStateRestored);
   }
 
   /** @return Path of the topmost cell's path that roots all other cells */
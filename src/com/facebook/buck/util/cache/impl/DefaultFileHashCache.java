@@ -203,7 +203,7 @@ public class DefaultFileHashCache implements ProjectFileHashCache {
     return HashCodeAndFileType.ofFile(getFileHashCode(path));
   }
 
-  private HashCode getFileHashCode(Path path) throws IOException {
+  protected HashCode getFileHashCode(Path path) throws IOException {
     return projectFilesystem.computeSha1(path).asHashCode();
   }
 
@@ -0,0 +1,215 @@
+/*
+ * Copyright 2019-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.util.cache.impl;
+
+import com.facebook.buck.core.util.log.Logger;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.hash.HashCode;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Versioned on-disk snapshot of file hashes, used to carry the hashes computed by a {@link
+ * WatchedFileHashCache} over to the next daemon.
+ *
+ * <p>Each entry records the size, modification time and file key (inode) of the file at the time
+ * it was hashed. An entry is only reused if the file still has the same {@link FileStamp}.
+ */
+final class FileHashCacheSnapshot {
+  private static final Logger LOG = Logger.get(FileHashCacheSnapshot.class);
+
+  private static final int MAGIC = 0x46484353;
+  @VisibleForTesting static final int VERSION = 1;
+
+  /**
+   * Files modified less than this long before being hashed are not recorded, as they may be
+   * modified again without their modification time changing.
+   */
+  private static final long RACY_WINDOW_MILLIS = 2000;
+
+  private FileHashCacheSnapshot() {}
+
+  /**
+   * Reads the entries of the snapshot written for {@code root}.
+   *
+   * @return the entries keyed by path relative to {@code root}, or an empty map if the snapshot is
+   *     missing, was written for a different root or by a different version.
+   */
+  static ImmutableMap<Path, Entry> read(Path snapshotPath, Path root) {
+    try (FileChannel channel = FileChannel.open(snapshotPath, StandardOpenOption.READ)) {
+      MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+      if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+        LOG.debug("Ignoring file hash cache snapshot %s with unknown format.", snapshotPath);
+        return ImmutableMap.of();
+      }
+      if (!readString(buffer).equals(root.toString())) {
+        LOG.debug("Ignoring file hash cache snapshot %s written for another root.", snapshotPath);
+        return ImmutableMap.of();
+      }
+      int count = buffer.getInt();
+      ImmutableMap.Builder<Path, Entry> entries = ImmutableMap.builderWithExpectedSize(count);
+      for (int i = 0; i < count; i++) {
+        Path path = root.getFileSystem().getPath(readString(buffer));
+        FileStamp stamp = new FileStamp(buffer.getLong(), buffer.getLong(), readString(buffer));
+        byte[] hash = new byte[buffer.getInt()];
+        buffer.get(hash);
+        entries.put(path, new Entry(stamp, HashCode.fromBytes(hash)));
+      }
+      return entries.build();
+    } catch (NoSuchFileException e) {
+      return ImmutableMap.of();
+    } catch (IOException | BufferUnderflowException | IllegalArgumentException e) {
+      LOG.warn(e, "Ignoring unreadable file hash cache snapshot %s.", snapshotPath);
+      return ImmutableMap.of();
+    }
+  }
+
+  /** Atomically replaces the snapshot at {@code snapshotPath} with the given entries. */
+  static void write(Path snapshotPath, Path root, Map<Path, Entry> entries) throws IOException {
+    Files.createDirectories(snapshotPath.getParent());
+    Path tmp = Files.createTempFile(snapshotPath.getParent(), ".file_hash_cache", ".tmp");
+    try {
+      try (DataOutputStream out =
+          new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        writeString(out, root.toString());
+        out.writeInt(entries.size());
+        for (Map.Entry<Path, Entry> entry : entries.entrySet()) {
+          FileStamp stamp = entry.getValue().getStamp();
+          byte[] hash = entry.getValue().getHashCode().asBytes();
+          writeString(out, entry.getKey().toString());
+          out.writeLong(stamp.size);
+          out.writeLong(stamp.lastModifiedMicros);
+          writeString(out, stamp.fileKey);
+          out.writeInt(hash.length);
+          out.write(hash);
+        }
+      }
+      Files.move(
+          tmp, snapshotPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    } finally {
+      Files.deleteIfExists(tmp);
+    }
+  }
+
+  private static String readString(ByteBuffer buffer) {
+    byte[] bytes = new byte[buffer.getInt()];
+    buffer.get(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  private static void writeString(DataOutputStream out, String value) throws IOException {
+    byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+    out.writeInt(bytes.length);
+    out.write(bytes);
+  }
+
+  /** A hash together with the attributes the file had when it was computed. */
+  static final class Entry {
+    private final FileStamp stamp;
+    private final HashCode hashCode;
+
+    Entry(FileStamp stamp, HashCode hashCode) {
+      this.stamp = stamp;
+      this.hashCode = hashCode;
+    }
+
+    FileStamp getStamp() {
+      return stamp;
+    }
+
+    HashCode getHashCode() {
+      return hashCode;
+    }
+  }
+
+  /** The attributes used to decide whether a file changed since it was hashed. */
+  static final class FileStamp {
+    private final long size;
+    private final long lastModifiedMicros;
+    private final String fileKey;
+
+    FileStamp(long size, long lastModifiedMicros, String fileKey) {
+      this.size = size;
+      this.lastModifiedMicros = lastModifiedMicros;
+      this.fileKey = fileKey;
+    }
+
+    /** @return the stamp of the regular file at {@code absolutePath}, if there is one. */
+    static Optional<FileStamp> of(Path absolutePath) {
+      BasicFileAttributes attributes;
+      try {
+        attributes = Files.readAttributes(absolutePath, BasicFileAttributes.class);
+      } catch (IOException e) {
+        return Optional.empty();
+      }
+      if (!attributes.isRegularFile()) {
+        return Optional.empty();
+      }
+      return Optional.of(
+          new FileStamp(
+              attributes.size(),
+              attributes.lastModifiedTime().to(TimeUnit.MICROSECONDS),
+              String.valueOf(attributes.fileKey())));
+    }
+
+    /**
+     * @return whether the file was last modified long enough before {@code nowMillis} for a later
+     *     modification to be guaranteed to change its stamp.
+     */
+    boolean isStable(long nowMillis) {
+      return TimeUnit.MICROSECONDS.toMillis(lastModifiedMicros) < nowMillis - RACY_WINDOW_MILLIS;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+      if (this == other) {
+        return true;
+      }
+      if (!(other instanceof FileStamp)) {
+        return false;
+      }
+      FileStamp that = (FileStamp) other;
+      return size == that.size
+          && lastModifiedMicros == that.lastModifiedMicros
+          && fileKey.equals(that.fileKey);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(size, lastModifiedMicros, fileKey);
+    }
+  }
+}
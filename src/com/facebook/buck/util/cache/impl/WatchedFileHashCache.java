@@ -21,16 +21,89 @@ import com.facebook.buck.io.filesystem.ProjectFilesystem;
 import com.facebook.buck.io.watchman.WatchmanOverflowEvent;
 import com.facebook.buck.io.watchman.WatchmanPathEvent;
 import com.facebook.buck.util.cache.FileHashCacheMode;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.eventbus.Subscribe;
+import com.google.common.hash.HashCode;
+import java.io.IOException;
 import java.nio.file.Path;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 public class WatchedFileHashCache extends DefaultFileHashCache {
 
   private static final Logger LOG = Logger.get(WatchedFileHashCache.class);
 
+  private final Optional<Path> snapshotPath;
+  private final ConcurrentMap<Path, FileHashCacheSnapshot.Entry> snapshotEntries;
+  private final AtomicBoolean snapshotDirty = new AtomicBoolean(false);
+
   public WatchedFileHashCache(
       ProjectFilesystem projectFilesystem, FileHashCacheMode fileHashCacheMode) {
+    this(projectFilesystem, fileHashCacheMode, Optional.empty());
+  }
+
+  /**
+   * @param snapshotPath absolute path of the on-disk snapshot used to reuse the hashes of unchanged
+   *     files across daemon restarts, see {@link #writeSnapshot()}.
+   */
+  public WatchedFileHashCache(
+      ProjectFilesystem projectFilesystem,
+      FileHashCacheMode fileHashCacheMode,
+      Optional<Path> snapshotPath) {
     super(projectFilesystem, getDefaultPathPredicate(projectFilesystem), fileHashCacheMode);
+    this.snapshotPath = snapshotPath;
+    this.snapshotEntries =
+        new ConcurrentHashMap<>(
+            snapshotPath
+                .map(path -> FileHashCacheSnapshot.read(path, projectFilesystem.getRootPath()))
+                .orElse(ImmutableMap.of()));
+    LOG.debug("Loaded %d file hashes from snapshot.", snapshotEntries.size());
+  }
+
+  @Override
+  protected HashCode getFileHashCode(Path path) throws IOException {
+    if (!snapshotPath.isPresent()) {
+      return super.getFileHashCode(path);
+    }
+    Optional<FileHashCacheSnapshot.FileStamp> stamp =
+        FileHashCacheSnapshot.FileStamp.of(getFilesystem().resolve(path));
+    if (!stamp.isPresent()) {
+      return super.getFileHashCode(path);
+    }
+    FileHashCacheSnapshot.Entry entry = snapshotEntries.get(path);
+    if (entry != null && entry.getStamp().equals(stamp.get())) {
+      return entry.getHashCode();
+    }
+    // The stamp is taken before hashing, so a concurrent modification makes the entry stale
+    // rather than wrong.
+    HashCode hashCode = super.getFileHashCode(path);
+    if (stamp.get().isStable(System.currentTimeMillis())) {
+      snapshotEntries.put(path, new FileHashCacheSnapshot.Entry(stamp.get(), hashCode));
+      snapshotDirty.set(true);
+    } else if (snapshotEntries.remove(path) != null) {
+      snapshotDirty.set(true);
+    }
+    return hashCode;
+  }
+
+  /**
+   * Persists the hashes of the files hashed so far, if any changed since the snapshot was loaded
+   * or last written. Failures are logged, as the snapshot is only an optimization.
+   */
+  public void writeSnapshot() {
+    if (!snapshotPath.isPresent() || !snapshotDirty.getAndSet(false)) {
+      return;
+    }
+    try {
+      FileHashCacheSnapshot.write(
+          snapshotPath.get(),
+          getFilesystem().getRootPath(),
+          ImmutableMap.copyOf(snapshotEntries));
+    } catch (IOException e) {
+      LOG.warn(e, "Failed to write file hash cache snapshot to %s.", snapshotPath.get());
+    }
   }
 
   /**
@@ -44,12 +117,16 @@ public class WatchedFileHashCache extends DefaultFileHashCache {
     Path path = event.getPath().normalize();
     LOG.verbose("Invalidating %s", path);
     fileHashCacheEngine.invalidateWithParents(path);
+    if (snapshotEntries.remove(path) != null) {
+      snapshotDirty.set(true);
+    }
   }
 
   @SuppressWarnings("unused")
   @Subscribe
   public synchronized void onFileSystemChange(WatchmanOverflowEvent event) {
     // Non-path change event, likely an overflow due to many change events: invalidate everything.
+    // Snapshot entries are kept, as they are validated against the file's stamp before reuse.
     LOG.debug("Invalidating all");
     invalidateAll();
   }
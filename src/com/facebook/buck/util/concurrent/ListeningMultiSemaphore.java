@@ -23,10 +23,14 @@ import com.google.common.util.concurrent.SettableFuture;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.ListIterator;
 
 /**
  * A semaphore using {@link ListenableFuture}s for acquisition of different resource types rather
  * than blocking.
+ *
+ * <p>Pending acquisitions are served in order of decreasing priority, and in FIFO order among
+ * acquisitions with the same priority.
  */
 public class ListeningMultiSemaphore {
 
@@ -52,7 +56,19 @@ public class ListeningMultiSemaphore {
    *     amounts, they will be capped to them.
    * @return Future that will be completed once resource will be acquired.
    */
-  public synchronized ListenableFuture<Void> acquire(ResourceAmounts resources) {
+  public ListenableFuture<Void> acquire(ResourceAmounts resources) {
+    return acquire(resources, 0);
+  }
+
+  /**
+   * Same as {@link #acquire(ResourceAmounts)}, but if the resources cannot be acquired immediately
+   * the request is queued ahead of all pending requests with a lower priority.
+   *
+   * @param resources Resource amounts that need to be acquired.
+   * @param priority Priority of the request, higher values are served first.
+   * @return Future that will be completed once resource will be acquired.
+   */
+  public synchronized ListenableFuture<Void> acquire(ResourceAmounts resources, long priority) {
     if (resources.equals(ResourceAmounts.zero())) {
       return Futures.immediateFuture(null);
     }
@@ -60,13 +76,29 @@ public class ListeningMultiSemaphore {
     resources = capResourceAmounts(resources);
     if (!checkIfResourcesAvailable(resources)) {
       SettableFuture<Void> pendingFuture = SettableFuture.create();
-      pending.add(ListeningSemaphoreArrayPendingItem.of(pendingFuture, resources));
+      addPendingItem(ListeningSemaphoreArrayPendingItem.of(pendingFuture, resources, priority));
       return pendingFuture;
     }
     increaseUsedResources(resources);
     return Futures.immediateFuture(null);
   }
 
+  /**
+   * Inserts the item after the last pending item with the same or higher priority. Scanning from
+   * the tail keeps the common case, where all requests share the same priority, an append.
+   */
+  private synchronized void addPendingItem(ListeningSemaphoreArrayPendingItem item) {
+    ListIterator<ListeningSemaphoreArrayPendingItem> iterator =
+        pending.listIterator(pending.size());
+    while (iterator.hasPrevious()) {
+      if (iterator.previous().getPriority() >= item.getPriority()) {
+        iterator.next();
+        break;
+      }
+    }
+    iterator.add(item);
+  }
+
   /**
    * Releases previously acquired resources.
    *
@@ -21,8 +21,10 @@ public class ResourceAmountsEstimator {
   public static final int DEFAULT_CPU_CAP = Runtime.getRuntime().availableProcessors();
 
   /** Memory resource unit size has been chosen arbitrarily. We can tune the value if we need. */
+  public static final long MEMORY_RESOURCE_UNIT_BYTES = 100 * 1024 * 1024;
+
   public static final int DEFAULT_MEMORY_CAP =
-      (int) (Runtime.getRuntime().maxMemory() / (100 * 1024 * 1024));
+      (int) (Runtime.getRuntime().maxMemory() / MEMORY_RESOURCE_UNIT_BYTES);
 
   /**
    * Disk IO resource unit size has been chosen arbitrarily. Since most of the jobs are light, we
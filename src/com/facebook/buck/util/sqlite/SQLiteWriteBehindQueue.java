@@ -0,0 +1,200 @@
+/*
+ * Copyright 2019-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.util.sqlite;
+
+import com.facebook.buck.core.util.log.Logger;
+import com.facebook.buck.counters.Counter;
+import com.facebook.buck.counters.IntegerCounter;
+import com.facebook.buck.counters.SamplingCounter;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.Nullable;
+
+/**
+ * Applies writes to a SQLite database on a background thread. The writes queued while a batch is
+ * being committed are applied together in the next transaction, so that callers don't wait for the
+ * database and writes don't pay for one transaction each.
+ *
+ * <p>The queue has exclusive use of its connection until it is closed. Reads should use other
+ * connections, which in WAL journal mode can proceed concurrently with the writes. Writes that were
+ * queued but not committed yet are not visible to readers, so callers typically keep them in
+ * memory until the future returned by {@link #enqueue(Write)} completes.
+ */
+public class SQLiteWriteBehindQueue implements AutoCloseable {
+  private static final Logger LOG = Logger.get(SQLiteWriteBehindQueue.class);
+
+  private static final String COUNTER_CATEGORY = "buck_sqlite_write_behind";
+  public static final int DEFAULT_MAX_BATCH_SIZE = 1000;
+
+  /** A write to the database, executed on the thread of the queue. */
+  @FunctionalInterface
+  public interface Write {
+    void execute() throws SQLException;
+  }
+
+  private final String name;
+  private final Connection connection;
+  private final int maxBatchSize;
+  private final BlockingQueue<QueuedWrite> queue = new LinkedBlockingQueue<>();
+  private final Thread thread;
+  private boolean closed;
+
+  private final IntegerCounter writeCount;
+  private final SamplingCounter queueDepth;
+  private final SamplingCounter batchSize;
+  private final SamplingCounter flushLatencyMillis;
+
+  /**
+   * @param name name of the database, used for the thread name and to tag the counters
+   * @param connection connection to use for the writes, which is switched to manual commits
+   */
+  public SQLiteWriteBehindQueue(String name, Connection connection, int maxBatchSize)
+      throws SQLException {
+    Preconditions.checkArgument(maxBatchSize > 0);
+    this.name = name;
+    this.connection = connection;
+    this.maxBatchSize = maxBatchSize;
+    connection.setAutoCommit(false);
+
+    ImmutableMap<String, String> tags = ImmutableMap.of("database", name);
+    this.writeCount = new IntegerCounter(COUNTER_CATEGORY, "writes", tags);
+    this.queueDepth = new SamplingCounter(COUNTER_CATEGORY, "queue_depth", tags);
+    this.batchSize = new SamplingCounter(COUNTER_CATEGORY, "batch_size", tags);
+    this.flushLatencyMillis = new SamplingCounter(COUNTER_CATEGORY, "flush_latency_ms", tags);
+
+    this.thread = new Thread(this::run, "SQLite writer (" + name + ")");
+    this.thread.setDaemon(true);
+    this.thread.start();
+  }
+
+  /** @return a future completing once the write is committed, or failing if it failed. */
+  public ListenableFuture<Void> enqueue(Write write) {
+    SettableFuture<Void> committed = SettableFuture.create();
+    synchronized (queue) {
+      Preconditions.checkState(!closed, "Write to closed database %s.", name);
+      queue.add(new QueuedWrite(write, committed));
+    }
+    return committed;
+  }
+
+  /** Waits until all the writes queued so far are committed. */
+  public void flush() throws InterruptedException {
+    try {
+      enqueue(() -> {}).get();
+    } catch (ExecutionException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  /** @return the number of writes waiting to be committed. */
+  public int getQueueDepth() {
+    return queue.size();
+  }
+
+  /** @return counters of the writes, queue depth and commit latency of this queue. */
+  public ImmutableList<Counter> getCounters() {
+    return ImmutableList.of(writeCount, queueDepth, batchSize, flushLatencyMillis);
+  }
+
+  /** Commits the queued writes and stops the thread of the queue. */
+  @Override
+  public void close() throws InterruptedException {
+    synchronized (queue) {
+      if (closed) {
+        return;
+      }
+      closed = true;
+      queue.add(new QueuedWrite(null, SettableFuture.create()));
+    }
+    thread.join();
+  }
+
+  private void run() {
+    List<QueuedWrite> batch = new ArrayList<>();
+    boolean stopped = false;
+    while (!stopped) {
+      try {
+        batch.add(queue.take());
+      } catch (InterruptedException e) {
+        LOG.warn("Writer of %s was interrupted, %d writes are lost.", name, queue.size());
+        return;
+      }
+      queue.drainTo(batch, maxBatchSize - 1);
+      queueDepth.addSample(queue.size() + batch.size());
+      stopped = commit(batch);
+      batch.clear();
+    }
+  }
+
+  /** @return whether the batch contained the marker closing the queue. */
+  private boolean commit(List<QueuedWrite> batch) {
+    long start = System.nanoTime();
+    boolean stopped = false;
+    List<QueuedWrite> succeeded = new ArrayList<>(batch.size());
+    for (QueuedWrite queuedWrite : batch) {
+      if (queuedWrite.write == null) {
+        stopped = true;
+        queuedWrite.committed.set(null);
+        continue;
+      }
+      try {
+        queuedWrite.write.execute();
+        succeeded.add(queuedWrite);
+      } catch (SQLException | RuntimeException e) {
+        LOG.warn(e, "Write to %s failed.", name);
+        queuedWrite.committed.setException(e);
+      }
+    }
+    try {
+      connection.commit();
+      succeeded.forEach(queuedWrite -> queuedWrite.committed.set(null));
+    } catch (SQLException e) {
+      LOG.warn(e, "Failed to commit %d writes to %s.", succeeded.size(), name);
+      try {
+        connection.rollback();
+      } catch (SQLException rollbackException) {
+        e.addSuppressed(rollbackException);
+      }
+      succeeded.forEach(queuedWrite -> queuedWrite.committed.setException(e));
+    }
+    writeCount.inc(succeeded.size());
+    batchSize.addSample(batch.size());
+    flushLatencyMillis.addSample(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+    return stopped;
+  }
+
+  private static final class QueuedWrite {
+    @Nullable private final Write write;
+    private final SettableFuture<Void> committed;
+
+    private QueuedWrite(@Nullable Write write, SettableFuture<Void> committed) {
+      this.write = write;
+      this.committed = committed;
+    }
+  }
+}
@@ -37,7 +37,10 @@ public class AndroidPrebuiltAarBuilder
 
   private AndroidPrebuiltAarBuilder(BuildTarget target) {
     super(
-        new AndroidPrebuiltAarDescription(createToolchainProviderForAndroidPrebuiltAar()), target);
+        new AndroidPrebuiltAarDescription(
+            createToolchainProviderForAndroidPrebuiltAar(),
+            JavaCompilationConstants.DEFAULT_JAVA_CONFIG),
+        target);
   }
 
   public static AndroidPrebuiltAarBuilder createBuilder(BuildTarget target) {
@@ -652,7 +652,7 @@ public class DirArtifactCacheTest {
 
     dirArtifactCache.deleteOldFiles();
 
-    assertEquals(3, cacheDir.toFile().listFiles().length);
+    assertEquals(3, dirArtifactCache.getAllFilesInCache().size());
   }
 
   @Test
@@ -709,6 +709,70 @@ public class DirArtifactCacheTest {
     assertEquals(ImmutableSet.of(fileZ, fileW), ImmutableSet.copyOf(filesInCache));
   }
 
+  @Test
+  public void testEvictionUsesAccessesRecordedByPreviousInstances() throws IOException {
+    Path data = tmpDir.newFile("data");
+    Files.write(data, "0123456789".getBytes(UTF_8));
+    RuleKey ruleKeyA = new RuleKey("aaaa");
+    RuleKey ruleKeyB = new RuleKey("bbbb");
+    RuleKey ruleKeyC = new RuleKey("cccc");
+    RuleKey ruleKeyD = new RuleKey("dddd");
+
+    // Each entry takes 14 bytes: the artifact and 4 bytes of empty metadata.
+    DirArtifactCache firstCache = newDirArtifactCache(Optional.of(45L), CacheReadMode.READWRITE);
+    for (RuleKey ruleKey : ImmutableList.of(ruleKeyA, ruleKeyB, ruleKeyC)) {
+      firstCache.store(
+          ArtifactInfo.builder().addRuleKeys(ruleKey).build(),
+          BorrowablePath.notBorrowablePath(data));
+    }
+    assertEquals(
+        CacheResultType.HIT,
+        Futures.getUnchecked(
+                firstCache.fetchAsync(null, ruleKeyA, LazyPath.ofInstance(tmpDir.newFile())))
+            .getType());
+    firstCache.close();
+
+    dirArtifactCache = newDirArtifactCache(Optional.of(45L), CacheReadMode.READWRITE);
+    dirArtifactCache.store(
+        ArtifactInfo.builder().addRuleKeys(ruleKeyD).build(),
+        BorrowablePath.notBorrowablePath(data));
+
+    assertEquals(
+        ImmutableSet.of(
+            dirArtifactCache.getPathForRuleKey(ruleKeyA, Optional.empty()),
+            dirArtifactCache.getPathForRuleKey(ruleKeyA, Optional.of(".metadata")),
+            dirArtifactCache.getPathForRuleKey(ruleKeyD, Optional.empty()),
+            dirArtifactCache.getPathForRuleKey(ruleKeyD, Optional.of(".metadata"))),
+        ImmutableSet.copyOf(dirArtifactCache.getAllFilesInCache()));
+    DirArtifactCacheStats stats = dirArtifactCache.getStats();
+    assertEquals(2, stats.getEvictions());
+    assertEquals(28, stats.getEvictedBytes());
+    assertEquals(28, stats.getSizeBytes());
+    assertEquals(Paths.get("aa", "aa", "aaaa").toString(), stats.getHotKeys().get(0));
+  }
+
+  @Test
+  public void testStatsCountHitsAndMisses() throws IOException {
+    dirArtifactCache = newDirArtifactCache(Optional.empty(), CacheReadMode.READWRITE);
+    Path data = Paths.get("data");
+    projectFilesystem.writeContentsToPath("data", data);
+    RuleKey ruleKey = new RuleKey("aaaa");
+    dirArtifactCache.store(
+        ArtifactInfo.builder().addRuleKeys(ruleKey).build(),
+        BorrowablePath.notBorrowablePath(data));
+
+    Futures.getUnchecked(
+        dirArtifactCache.fetchAsync(null, ruleKey, LazyPath.ofInstance(Paths.get("out"))));
+    Futures.getUnchecked(
+        dirArtifactCache.fetchAsync(
+            null, new RuleKey("bbbb"), LazyPath.ofInstance(Paths.get("out"))));
+
+    DirArtifactCacheStats stats = dirArtifactCache.getStats();
+    assertEquals(1, stats.getHits());
+    assertEquals(1, stats.getMisses());
+    assertEquals(0, stats.getEvictions());
+  }
+
   private DirectoryCleaner.PathStats fakePathStats(long creationTime, long lastAccessTime) {
     return new DirectoryCleaner.PathStats(null, 0, creationTime, lastAccessTime);
   }
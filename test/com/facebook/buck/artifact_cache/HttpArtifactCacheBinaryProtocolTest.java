@@ -20,6 +20,7 @@ import static org.junit.Assert.assertThat;
 
 import com.facebook.buck.core.rulekey.RuleKey;
 import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.hash.HashCode;
@@ -30,6 +31,7 @@ import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
 import org.hamcrest.Matchers;
@@ -101,6 +103,90 @@ public class HttpArtifactCacheBinaryProtocolTest {
     assertThat(fetchResponsePayload.toByteArray(), Matchers.equalTo(data.getBytes(Charsets.UTF_8)));
   }
 
+  @Test
+  public void testMultiFetchRequest() throws IOException {
+    RuleKey ruleKey = new RuleKey("00000000000000000000000000000000");
+    RuleKey ruleKey2 = new RuleKey("90000000000000000000008000000005");
+    HttpArtifactCacheBinaryProtocol.MultiFetchRequest request =
+        new HttpArtifactCacheBinaryProtocol.MultiFetchRequest(
+            ImmutableList.of(ruleKey, ruleKey2), ImmutableList.of("//foo:bar", ""));
+
+    ByteArrayOutputStream requestOutputStream = new ByteArrayOutputStream();
+    request.write(requestOutputStream);
+
+    assertThat((long) requestOutputStream.size(), Matchers.equalTo(request.getContentLength()));
+    assertThat(
+        HttpArtifactCacheBinaryProtocol.readMultiFetchRequest(
+            new DataInputStream(new ByteArrayInputStream(requestOutputStream.toByteArray()))),
+        Matchers.contains(ruleKey, ruleKey2));
+  }
+
+  @Test
+  public void testMultiFetchResponse() throws IOException {
+    RuleKey ruleKey = new RuleKey("00000000000000000000000000000000");
+    RuleKey ruleKey2 = new RuleKey("90000000000000000000008000000005");
+    ImmutableMap<String, String> metadata = ImmutableMap.of("metaKey", "metaValue");
+
+    ByteArrayOutputStream responseOutputStream = new ByteArrayOutputStream();
+    DataOutputStream responseOutput = new DataOutputStream(responseOutputStream);
+    new HttpArtifactCacheBinaryProtocol.FetchResponse(
+            ImmutableSet.of(ruleKey), metadata, ByteSource.wrap("first".getBytes(Charsets.UTF_8)))
+        .writeMultiFetchEntry(responseOutput);
+    HttpArtifactCacheBinaryProtocol.writeMultiFetchResponseMiss(responseOutput);
+    new HttpArtifactCacheBinaryProtocol.FetchResponse(
+            ImmutableSet.of(ruleKey2), metadata, ByteSource.wrap("second".getBytes(Charsets.UTF_8)))
+        .writeMultiFetchEntry(responseOutput);
+    responseOutput.flush();
+
+    DataInputStream responseInput =
+        new DataInputStream(new ByteArrayInputStream(responseOutputStream.toByteArray()));
+
+    assertThat(
+        HttpArtifactCacheBinaryProtocol.readMultiFetchResponseHeader(responseInput),
+        Matchers.is(true));
+    ByteArrayOutputStream firstPayload = new ByteArrayOutputStream();
+    FetchResponseReadResult first =
+        HttpArtifactCacheBinaryProtocol.readMultiFetchResponsePayload(responseInput, firstPayload);
+    assertThat(first.getRuleKeys(), Matchers.contains(ruleKey));
+    assertThat(first.getMetadata(), Matchers.equalTo(metadata));
+    assertThat(first.getActualHashCode(), Matchers.equalTo(first.getExpectedHashCode()));
+    assertThat(firstPayload.toString(Charsets.UTF_8.name()), Matchers.equalTo("first"));
+
+    assertThat(
+        HttpArtifactCacheBinaryProtocol.readMultiFetchResponseHeader(responseInput),
+        Matchers.is(false));
+
+    assertThat(
+        HttpArtifactCacheBinaryProtocol.readMultiFetchResponseHeader(responseInput),
+        Matchers.is(true));
+    ByteArrayOutputStream secondPayload = new ByteArrayOutputStream();
+    FetchResponseReadResult second =
+        HttpArtifactCacheBinaryProtocol.readMultiFetchResponsePayload(responseInput, secondPayload);
+    assertThat(second.getRuleKeys(), Matchers.contains(ruleKey2));
+    assertThat(secondPayload.toString(Charsets.UTF_8.name()), Matchers.equalTo("second"));
+    assertThat(responseInput.read(), Matchers.equalTo(-1));
+  }
+
+  @Test
+  public void testTruncatedMultiFetchResponseThrows() throws IOException {
+    ByteArrayOutputStream responseOutputStream = new ByteArrayOutputStream();
+    DataOutputStream responseOutput = new DataOutputStream(responseOutputStream);
+    new HttpArtifactCacheBinaryProtocol.FetchResponse(
+            ImmutableSet.of(new RuleKey("00000000000000000000000000000000")),
+            ImmutableMap.of(),
+            ByteSource.wrap("data".getBytes(Charsets.UTF_8)))
+        .writeMultiFetchEntry(responseOutput);
+    responseOutput.flush();
+    byte[] response = responseOutputStream.toByteArray();
+
+    DataInputStream responseInput =
+        new DataInputStream(new ByteArrayInputStream(response, 0, response.length - 2));
+    HttpArtifactCacheBinaryProtocol.readMultiFetchResponseHeader(responseInput);
+    thrown.expect(EOFException.class);
+    HttpArtifactCacheBinaryProtocol.readMultiFetchResponsePayload(
+        responseInput, new ByteArrayOutputStream());
+  }
+
   @Test
   public void testReadFetchResponse() throws IOException {
     String base64EncodedData =
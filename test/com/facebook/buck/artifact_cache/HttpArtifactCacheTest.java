@@ -52,6 +52,7 @@ import com.google.common.io.ByteSource;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListeningExecutorService;
 import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.DataInputStream;
@@ -61,6 +62,7 @@ import java.net.HttpURLConnection;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Optional;
@@ -230,6 +232,130 @@ public class HttpArtifactCacheTest {
     cache.close();
   }
 
+  private static byte[] createMultiFetchResponse(
+      ImmutableList<Optional<RuleKey>> hits, int truncatedBytes) throws IOException {
+    try (ByteArrayOutputStream out = new ByteArrayOutputStream();
+        DataOutputStream dataOut = new DataOutputStream(out)) {
+      for (Optional<RuleKey> hit : hits) {
+        if (hit.isPresent()) {
+          new HttpArtifactCacheBinaryProtocol.FetchResponse(
+                  ImmutableSet.of(hit.get()),
+                  ImmutableMap.of(),
+                  ByteSource.wrap(hit.get().toString().getBytes(Charsets.UTF_8)))
+              .writeMultiFetchEntry(dataOut);
+        } else {
+          HttpArtifactCacheBinaryProtocol.writeMultiFetchResponseMiss(dataOut);
+        }
+      }
+      dataOut.flush();
+      byte[] response = out.toByteArray();
+      return Arrays.copyOf(response, response.length - truncatedBytes);
+    }
+  }
+
+  private HttpArtifactCache createMultiFetchCache(
+      FakeProjectFilesystem filesystem, List<RuleKey> requestedKeys, byte[] responseBody) {
+    argsBuilder.setProjectFilesystem(filesystem);
+    argsBuilder.setFetchClient(
+        withMakeRequest(
+            (path, requestBuilder) -> {
+              Request request = requestBuilder.url(SERVER + path).build();
+              assertEquals("/artifacts/multifetch", request.url().encodedPath());
+              Buffer requestBody = new Buffer();
+              request.body().writeTo(requestBody);
+              requestedKeys.addAll(
+                  HttpArtifactCacheBinaryProtocol.readMultiFetchRequest(
+                      new DataInputStream(requestBody.inputStream())));
+              return new OkHttpResponseWrapper(
+                  new Response.Builder()
+                      .request(request)
+                      .protocol(Protocol.HTTP_1_1)
+                      .code(HttpURLConnection.HTTP_OK)
+                      .body(ResponseBody.create(OCTET_STREAM, responseBody))
+                      .message("")
+                      .build());
+            }));
+    return new HttpArtifactCache(argsBuilder.build(), 100, 1);
+  }
+
+  private static AbstractAsynchronousCache.FetchRequest createFetchRequest(
+      RuleKey ruleKey, Path output) {
+    return new AbstractAsynchronousCache.FetchRequest(
+        null, ruleKey, LazyPath.ofInstance(output), SettableFuture.create());
+  }
+
+  @Test
+  public void testMultiFetch() throws Exception {
+    RuleKey ruleKey1 = new RuleKey("00000000000000000000000000000001");
+    RuleKey ruleKey2 = new RuleKey("00000000000000000000000000000002");
+    RuleKey ruleKey3 = new RuleKey("00000000000000000000000000000003");
+    FakeProjectFilesystem filesystem = new FakeProjectFilesystem();
+    List<RuleKey> requestedKeys = new ArrayList<>();
+    HttpArtifactCache cache =
+        createMultiFetchCache(
+            filesystem,
+            requestedKeys,
+            createMultiFetchResponse(
+                ImmutableList.of(Optional.of(ruleKey1), Optional.empty(), Optional.of(ruleKey3)),
+                0));
+
+    MultiFetchResult result =
+        cache.multiFetchImpl(
+            ImmutableList.of(
+                createFetchRequest(ruleKey1, Paths.get("output/one")),
+                createFetchRequest(ruleKey2, Paths.get("output/two")),
+                createFetchRequest(ruleKey3, Paths.get("output/three"))));
+
+    assertEquals(ImmutableList.of(ruleKey1, ruleKey2, ruleKey3), requestedKeys);
+    assertEquals(
+        ImmutableList.of(CacheResultType.HIT, CacheResultType.MISS, CacheResultType.HIT),
+        result.getResults().stream()
+            .map(fetchResult -> fetchResult.getCacheResult().getType())
+            .collect(ImmutableList.toImmutableList()));
+    assertEquals(
+        Optional.of(ruleKey1.toString()), filesystem.readFileIfItExists(Paths.get("output/one")));
+    assertEquals(Optional.empty(), filesystem.readFileIfItExists(Paths.get("output/two")));
+    assertEquals(
+        Optional.of(ruleKey3.toString()),
+        filesystem.readFileIfItExists(Paths.get("output/three")));
+    cache.close();
+  }
+
+  @Test
+  public void testMultiFetchKeepsArtifactsReceivedBeforeResponseIsInterrupted() throws Exception {
+    RuleKey ruleKey1 = new RuleKey("00000000000000000000000000000001");
+    RuleKey ruleKey2 = new RuleKey("00000000000000000000000000000002");
+    FakeProjectFilesystem filesystem = new FakeProjectFilesystem();
+    HttpArtifactCache cache =
+        createMultiFetchCache(
+            filesystem,
+            new ArrayList<>(),
+            createMultiFetchResponse(
+                ImmutableList.of(Optional.of(ruleKey1), Optional.of(ruleKey2)), 4));
+
+    MultiFetchResult result =
+        cache.multiFetchImpl(
+            ImmutableList.of(
+                createFetchRequest(ruleKey1, Paths.get("output/one")),
+                createFetchRequest(ruleKey2, Paths.get("output/two"))));
+
+    assertEquals(CacheResultType.HIT, result.getResults().get(0).getCacheResult().getType());
+    assertEquals(CacheResultType.SKIPPED, result.getResults().get(1).getCacheResult().getType());
+    assertEquals(
+        Optional.of(ruleKey1.toString()), filesystem.readFileIfItExists(Paths.get("output/one")));
+    cache.close();
+  }
+
+  @Test
+  public void testMultiFetchBatchSizeIsBoundedByPendingRequests() {
+    HttpArtifactCache cache = new HttpArtifactCache(argsBuilder.build(), 100, 4);
+    assertEquals(1, cache.getMultiFetchBatchSize(2));
+    assertEquals(3, cache.getMultiFetchBatchSize(10));
+    assertEquals(8, cache.getMultiFetchBatchSize(1000));
+    assertEquals(0, new HttpArtifactCache(argsBuilder.build()).getMultiFetchBatchSize(1000));
+    cache.close();
+  }
+
   @Test
   public void testFetchUrl() {
     RuleKey ruleKey = new RuleKey("00000000000000000000000000000000");
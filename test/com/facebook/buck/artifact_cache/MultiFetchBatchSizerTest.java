@@ -0,0 +1,54 @@
+/*
+ * Copyright 2019-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.artifact_cache;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class MultiFetchBatchSizerTest {
+
+  @Test
+  public void fastFullBatchesGrowUpToTheLimit() {
+    MultiFetchBatchSizer sizer = new MultiFetchBatchSizer(20, 1000);
+    assertEquals(8, sizer.getBatchSize());
+    sizer.recordBatch(8, 100);
+    assertEquals(16, sizer.getBatchSize());
+    sizer.recordBatch(16, 100);
+    assertEquals(20, sizer.getBatchSize());
+  }
+
+  @Test
+  public void fastPartialBatchesDoNotGrow() {
+    MultiFetchBatchSizer sizer = new MultiFetchBatchSizer(20, 1000);
+    sizer.recordBatch(3, 100);
+    assertEquals(8, sizer.getBatchSize());
+  }
+
+  @Test
+  public void slowBatchesShrink() {
+    MultiFetchBatchSizer sizer = new MultiFetchBatchSizer(20, 1000);
+    sizer.recordBatch(8, 1500);
+    assertEquals(4, sizer.getBatchSize());
+    sizer.recordBatch(4, 700);
+    assertEquals(4, sizer.getBatchSize());
+    sizer.recordBatch(4, 5000);
+    sizer.recordBatch(2, 5000);
+    sizer.recordBatch(1, 5000);
+    assertEquals(1, sizer.getBatchSize());
+  }
+}
@@ -0,0 +1,41 @@
+/*
+ * Copyright 2019-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.benchmarks;
+
+import com.google.common.collect.ImmutableList;
+import java.io.IOException;
+import java.util.Arrays;
+import org.openjdk.jmh.Main;
+import org.openjdk.jmh.runner.RunnerException;
+
+/**
+ * Entry point of JMH benchmark binaries, which saves results as JSON to {@code jmh-result.json}
+ * unless another format is passed with {@code -rf}, so that runs can be compared by tools.
+ */
+public class BenchmarkMain {
+
+  private BenchmarkMain() {}
+
+  public static void main(String[] args) throws IOException, RunnerException {
+    ImmutableList.Builder<String> jmhArgs = ImmutableList.builder();
+    if (!Arrays.asList(args).contains("-rf")) {
+      jmhArgs.add("-rf", "json");
+    }
+    jmhArgs.add(args);
+    Main.main(jmhArgs.build().toArray(new String[0]));
+  }
+}
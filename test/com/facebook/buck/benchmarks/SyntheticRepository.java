@@ -0,0 +1,162 @@
+/*
+ * Copyright 2019-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.benchmarks;
+
+import com.facebook.buck.core.cell.Cell;
+import com.facebook.buck.core.cell.TestCellBuilder;
+import com.facebook.buck.core.config.BuckConfig;
+import com.facebook.buck.core.config.FakeBuckConfig;
+import com.facebook.buck.core.model.EmptyTargetConfiguration;
+import com.facebook.buck.core.model.targetgraph.TargetGraphCreationResult;
+import com.facebook.buck.io.file.MostFiles;
+import com.facebook.buck.io.filesystem.ProjectFilesystem;
+import com.facebook.buck.io.filesystem.TestProjectFilesystems;
+import com.facebook.buck.parser.BuildFileSpec;
+import com.facebook.buck.parser.ImmutableTargetNodePredicateSpec;
+import com.facebook.buck.parser.Parser;
+import com.facebook.buck.parser.ParsingContext;
+import com.facebook.buck.parser.exceptions.BuildFileParseException;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * A generated repository of {@code genrule}s used by benchmarks of the parser and the graphs built
+ * from its results.
+ *
+ * <p>Packages are split into {@code depth} layers of about the same size. The only rule of every
+ * package, {@code :lib}, uses a source file of its own and the outputs of {@code fanOut} rules of
+ * the previous layer, so the target graph has {@code packageCount} nodes and is {@code depth} nodes
+ * deep. Dependencies are picked with a fixed seed, so the same parameters always generate the same
+ * repository.
+ */
+public class SyntheticRepository implements Closeable {
+
+  private final Path root;
+  private final Cell cell;
+  private final ImmutableList<Path> buildFiles;
+
+  private SyntheticRepository(Path root, Cell cell, ImmutableList<Path> buildFiles) {
+    this.root = root;
+    this.cell = cell;
+    this.buildFiles = buildFiles;
+  }
+
+  /**
+   * Generates a repository in a new temporary directory, which is deleted when the repository is
+   * closed.
+   *
+   * @param parsingThreads number of threads used to parse build files, or 1 to parse serially.
+   */
+  public static SyntheticRepository create(
+      int packageCount, int fanOut, int depth, int parsingThreads) throws IOException {
+    Preconditions.checkArgument(packageCount >= depth && depth > 0);
+    Path root = Files.createTempDirectory("synthetic-repository").toRealPath();
+    ProjectFilesystem filesystem = TestProjectFilesystems.createProjectFilesystem(root);
+
+    Random random = new Random(42);
+    List<String> previousLayer = new ArrayList<>();
+    ImmutableList.Builder<Path> buildFiles = ImmutableList.builder();
+    for (int layer = 0; layer < depth; layer++) {
+      int layerSize = (packageCount * (layer + 1)) / depth - (packageCount * layer) / depth;
+      List<String> currentLayer = new ArrayList<>(layerSize);
+      for (int i = 0; i < layerSize; i++) {
+        String packageName = String.format("pkg_%d_%d", layer, i);
+        Path packagePath = root.resolve(packageName);
+        Files.createDirectories(packagePath);
+        Files.write(
+            packagePath.resolve("input.txt"), packageName.getBytes(StandardCharsets.UTF_8));
+
+        StringBuilder srcs = new StringBuilder("'input.txt'");
+        Collections.shuffle(previousLayer, random);
+        for (String dep : previousLayer.subList(0, Math.min(fanOut, previousLayer.size()))) {
+          srcs.append(", '").append(dep).append("'");
+        }
+        Path buildFile = packagePath.resolve("BUCK");
+        Files.write(
+            buildFile,
+            String.format(
+                    "genrule(\n"
+                        + "    name = 'lib',\n"
+                        + "    srcs = [%s],\n"
+                        + "    out = 'out.txt',\n"
+                        + "    cmd = 'cat $SRCS > $OUT',\n"
+                        + "    visibility = ['PUBLIC'],\n"
+                        + ")\n",
+                    srcs)
+                .getBytes(StandardCharsets.UTF_8));
+        buildFiles.add(buildFile);
+        currentLayer.add(String.format("//%s:lib", packageName));
+      }
+      previousLayer = currentLayer;
+    }
+
+    ImmutableMap.Builder<String, String> projectSection = ImmutableMap.builder();
+    if (parsingThreads > 1) {
+      projectSection
+          .put("parallel_parsing", "true")
+          .put("parsing_threads", Integer.toString(parsingThreads));
+    }
+    BuckConfig config =
+        FakeBuckConfig.builder()
+            .setFilesystem(filesystem)
+            .setSections(
+                ImmutableMap.of(
+                    "parser", ImmutableMap.of("default_build_file_syntax", "SKYLARK"),
+                    "project", projectSection.build()))
+            .build();
+    Cell cell = new TestCellBuilder().setFilesystem(filesystem).setBuckConfig(config).build();
+    return new SyntheticRepository(root, cell, buildFiles.build());
+  }
+
+  public Cell getCell() {
+    return cell;
+  }
+
+  /** @return absolute paths of all build files of this repository. */
+  public ImmutableList<Path> getBuildFiles() {
+    return buildFiles;
+  }
+
+  /** Parses all targets of this repository. */
+  public TargetGraphCreationResult createTargetGraph(
+      Parser parser, ListeningExecutorService executor)
+      throws BuildFileParseException, IOException, InterruptedException {
+    return parser.buildTargetGraphWithoutTopLevelConfigurationTargets(
+        ParsingContext.builder(cell, executor).build(),
+        ImmutableList.of(
+            ImmutableTargetNodePredicateSpec.of(
+                BuildFileSpec.fromRecursivePath(Paths.get(""), cell.getRoot()))),
+        EmptyTargetConfiguration.INSTANCE);
+  }
+
+  @Override
+  public void close() throws IOException {
+    MostFiles.deleteRecursively(root);
+  }
+}
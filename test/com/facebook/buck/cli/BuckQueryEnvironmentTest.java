@@ -162,7 +162,8 @@ public class BuckQueryEnvironmentTest {
             parserState,
             targetPatternEvaluator,
             eventBus,
-            TYPE_COERCER_FACTORY);
+            TYPE_COERCER_FACTORY,
+            executor);
     cellRoot = workspace.getDestPath();
   }
 
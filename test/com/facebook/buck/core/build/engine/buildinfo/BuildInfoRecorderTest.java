@@ -69,7 +69,7 @@ public class BuildInfoRecorderTest {
   @Test
   public void testWriteMetadataToDisk() throws IOException {
     BuildInfoStore store = createBuildInfoStore();
-    BuildInfoRecorder buildInfoRecorder = createBuildInfoRecorder();
+    BuildInfoRecorder buildInfoRecorder = createBuildInfoRecorder(store);
     buildInfoRecorder.addMetadata("key1", "value1");
 
     buildInfoRecorder.writeMetadataToDisk(/* clearExistingMetadata */ true);
@@ -77,7 +77,7 @@ public class BuildInfoRecorderTest {
     OnDiskBuildInfo onDiskBuildInfo = new DefaultOnDiskBuildInfo(BUILD_TARGET, filesystem, store);
     assertOnDiskBuildInfoHasMetadata(onDiskBuildInfo, "key1", "value1");
 
-    buildInfoRecorder = createBuildInfoRecorder();
+    buildInfoRecorder = createBuildInfoRecorder(store);
     buildInfoRecorder.addMetadata("key2", "value2");
 
     buildInfoRecorder.writeMetadataToDisk(/* clearExistingMetadata */ false);
@@ -86,7 +86,7 @@ public class BuildInfoRecorderTest {
     assertOnDiskBuildInfoHasMetadata(onDiskBuildInfo, "key1", "value1");
     assertOnDiskBuildInfoHasMetadata(onDiskBuildInfo, "key2", "value2");
 
-    buildInfoRecorder = createBuildInfoRecorder();
+    buildInfoRecorder = createBuildInfoRecorder(store);
     buildInfoRecorder.addMetadata("key3", "value3");
 
     buildInfoRecorder.writeMetadataToDisk(/* clearExistingMetadata */ true);
@@ -97,14 +97,14 @@ public class BuildInfoRecorderTest {
     assertOnDiskBuildInfoDoesNotHaveMetadata(onDiskBuildInfo, "key2");
 
     // Verify build metadata gets written correctly.
-    buildInfoRecorder = createBuildInfoRecorder();
+    buildInfoRecorder = createBuildInfoRecorder(store);
     buildInfoRecorder.addBuildMetadata("build", "metadata");
     buildInfoRecorder.writeMetadataToDisk(/* clearExistingMetadata */ true);
     onDiskBuildInfo = new DefaultOnDiskBuildInfo(BUILD_TARGET, filesystem, store);
     assertOnDiskBuildInfoHasBuildMetadata(onDiskBuildInfo, "build", "metadata");
 
     // Verify additional info build metadata always gets written.
-    buildInfoRecorder = createBuildInfoRecorder();
+    buildInfoRecorder = createBuildInfoRecorder(store);
     buildInfoRecorder.writeMetadataToDisk(/* clearExistingMetadata */ true);
     onDiskBuildInfo = new DefaultOnDiskBuildInfo(BUILD_TARGET, filesystem, store);
     assertTrue(onDiskBuildInfo.getBuildValue(BuildInfo.MetadataKey.ADDITIONAL_INFO).isPresent());
@@ -208,10 +208,14 @@ public class BuildInfoRecorderTest {
   }
 
   private BuildInfoRecorder createBuildInfoRecorder() throws IOException {
+    return createBuildInfoRecorder(createBuildInfoStore());
+  }
+
+  private BuildInfoRecorder createBuildInfoRecorder(BuildInfoStore store) {
     return new BuildInfoRecorder(
         BUILD_TARGET,
         filesystem,
-        createBuildInfoStore(),
+        store,
         new DefaultClock(),
         new BuildId(),
         ImmutableMap.of());
@@ -30,6 +30,9 @@ import com.facebook.buck.util.timing.DefaultClock;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import java.io.IOException;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
 import java.util.Optional;
 import org.hamcrest.Matchers;
 import org.junit.Before;
@@ -150,6 +153,27 @@ public class DefaultOnDiskBuildInfoTest {
     onDiskBuildInfo.getMetadataForArtifact();
   }
 
+  @Test
+  public void failedMetadataWritesAreReportedOnClose() throws Exception {
+    SQLiteBuildInfoStore buildInfoStore = createBuildInfoStore();
+    Path dbPath =
+        projectFilesystem.resolve(
+            projectFilesystem.getBuckPaths().getScratchDir().resolve("metadata.db"));
+    try (Connection connection = DriverManager.getConnection("jdbc:sqlite:" + dbPath)) {
+      connection
+          .createStatement()
+          .executeUpdate(
+              "CREATE TRIGGER fail_inserts BEFORE INSERT ON metadata "
+                  + "BEGIN SELECT RAISE(ABORT, 'disk full'); END");
+    }
+    buildInfoStore.updateMetadata(buildTarget, ImmutableMap.of("KEY", "value"));
+
+    thrown.expect(RuntimeException.class);
+    thrown.expectCause(Matchers.instanceOf(IOException.class));
+
+    buildInfoStore.close();
+  }
+
   private void setMetadata(String key, String value) throws IOException {
     BuildInfoRecorder buildInfoRecorder = createBuildInfoRecorder();
     buildInfoRecorder.addMetadata(key, value);
@@ -24,6 +24,7 @@ import com.facebook.buck.core.build.engine.delegate.CachingBuildEngineDelegate;
 import com.facebook.buck.core.build.engine.delegate.LocalCachingBuildEngineDelegate;
 import com.facebook.buck.core.build.engine.type.BuildType;
 import com.facebook.buck.core.build.engine.type.DepFiles;
+import com.facebook.buck.core.build.engine.type.SchedulingOrder;
 import com.facebook.buck.core.cell.TestCellPathResolver;
 import com.facebook.buck.core.model.TargetConfigurationSerializer;
 import com.facebook.buck.core.model.TargetConfigurationSerializerForTests;
@@ -58,6 +59,7 @@ public class CachingBuildEngineFactory {
   private BuildEngineActionToBuildRuleResolver actionToBuildRuleResolver;
   private ResourceAwareSchedulingInfo resourceAwareSchedulingInfo =
       ResourceAwareSchedulingInfo.NON_AWARE_SCHEDULING_INFO;
+  private SchedulingOrder schedulingOrder = SchedulingOrder.FIFO;
   private boolean logBuildRuleFailuresInline = true;
   private BuildInfoStoreManager buildInfoStoreManager;
   private final RemoteBuildRuleCompletionWaiter remoteBuildRuleCompletionWaiter;
@@ -114,6 +116,11 @@ public class CachingBuildEngineFactory {
     return this;
   }
 
+  public CachingBuildEngineFactory setSchedulingOrder(SchedulingOrder schedulingOrder) {
+    this.schedulingOrder = schedulingOrder;
+    return this;
+  }
+
   public CachingBuildEngineFactory setRuleKeyFactories(RuleKeyFactories ruleKeyFactories) {
     this.ruleKeyFactories = Optional.of(ruleKeyFactories);
     return this;
@@ -156,6 +163,7 @@ public class CachingBuildEngineFactory {
           ruleKeyFactories.get(),
           remoteBuildRuleCompletionWaiter,
           resourceAwareSchedulingInfo,
+          schedulingOrder,
           RuleKeyDiagnostics.nop(),
           logBuildRuleFailuresInline,
           Optional.empty());
@@ -174,6 +182,7 @@ public class CachingBuildEngineFactory {
         targetConfigurationSerializer,
         buildInfoStoreManager,
         resourceAwareSchedulingInfo,
+        schedulingOrder,
         logBuildRuleFailuresInline,
         RuleKeyFactories.of(
             TestRuleKeyConfigurationFactory.create(),
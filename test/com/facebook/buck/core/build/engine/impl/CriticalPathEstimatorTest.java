@@ -0,0 +1,63 @@
+/*
+ * Copyright 2019-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.core.build.engine.impl;
+
+import static org.junit.Assert.assertEquals;
+
+import com.facebook.buck.core.rules.BuildRule;
+import com.facebook.buck.core.rules.impl.FakeBuildRule;
+import com.google.common.collect.ImmutableMap;
+import org.junit.Test;
+
+public class CriticalPathEstimatorTest {
+
+  @Test
+  public void remainingPathIncludesLongestChainOfDependents() {
+    BuildRule leaf = new FakeBuildRule("//:leaf");
+    BuildRule fast = new FakeBuildRule("//:fast", leaf);
+    BuildRule slow = new FakeBuildRule("//:slow", leaf);
+    BuildRule top = new FakeBuildRule("//:top", fast, slow);
+    ImmutableMap<BuildRule, Long> durations =
+        ImmutableMap.of(leaf, 5L, fast, 1L, slow, 100L, top, 10L);
+    CriticalPathEstimator estimator = new CriticalPathEstimator(durations::get);
+
+    estimator.registerDep(top, fast);
+    estimator.registerDep(top, slow);
+    estimator.registerDep(fast, leaf);
+    estimator.registerDep(slow, leaf);
+
+    assertEquals(10L, estimator.getRemainingPathMillis(top));
+    assertEquals(11L, estimator.getRemainingPathMillis(fast));
+    assertEquals(110L, estimator.getRemainingPathMillis(slow));
+    assertEquals(115L, estimator.getRemainingPathMillis(leaf));
+  }
+
+  @Test
+  public void estimateOnlyGrowsWhenMoreDependentsAreDiscovered() {
+    BuildRule dep = new FakeBuildRule("//:dep");
+    BuildRule first = new FakeBuildRule("//:first", dep);
+    BuildRule second = new FakeBuildRule("//:second", dep);
+    ImmutableMap<BuildRule, Long> durations = ImmutableMap.of(dep, 1L, first, 50L, second, 20L);
+    CriticalPathEstimator estimator = new CriticalPathEstimator(durations::get);
+
+    estimator.registerDep(first, dep);
+    assertEquals(51L, estimator.getRemainingPathMillis(dep));
+
+    estimator.registerDep(second, dep);
+    assertEquals(51L, estimator.getRemainingPathMillis(dep));
+  }
+}
@@ -0,0 +1,112 @@
+/*
+ * Copyright 2019-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.core.build.engine.impl;
+
+import static org.junit.Assert.assertEquals;
+
+import com.facebook.buck.core.build.engine.buildinfo.BuildInfo;
+import com.facebook.buck.core.build.engine.buildinfo.BuildInfoStore;
+import com.facebook.buck.core.build.engine.cache.manager.BuildInfoStoreManager;
+import com.facebook.buck.core.build.engine.config.ResourceAwareSchedulingInfo;
+import com.facebook.buck.core.model.BuildTargetFactory;
+import com.facebook.buck.core.rules.BuildRule;
+import com.facebook.buck.core.rules.impl.FakeBuildRule;
+import com.facebook.buck.io.filesystem.ProjectFilesystem;
+import com.facebook.buck.io.filesystem.TestProjectFilesystems;
+import com.facebook.buck.testutil.TemporaryPaths;
+import com.facebook.buck.util.concurrent.ResourceAmounts;
+import com.facebook.buck.util.concurrent.ResourceAmountsEstimator;
+import com.google.common.collect.ImmutableMap;
+import java.io.IOException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+public class MeasuredResourceAmountsEstimatorTest {
+
+  private static final ResourceAmounts LINK_AMOUNTS = ResourceAmounts.of(1, 20, 1, 0);
+
+  @Rule public TemporaryPaths tmp = new TemporaryPaths();
+
+  private ProjectFilesystem filesystem;
+  private BuildInfoStoreManager buildInfoStoreManager;
+  private MeasuredResourceAmountsEstimator estimator;
+
+  @Before
+  public void setUp() {
+    filesystem = TestProjectFilesystems.createProjectFilesystem(tmp.getRoot());
+    buildInfoStoreManager = new BuildInfoStoreManager();
+    estimator =
+        new MeasuredResourceAmountsEstimator(
+            buildInfoStoreManager,
+            ResourceAwareSchedulingInfo.of(
+                true,
+                ResourceAmountsEstimator.DEFAULT_AMOUNTS,
+                ImmutableMap.of(newRule("//:type").getType(), LINK_AMOUNTS),
+                true,
+                ResourceAmounts.of(8, 30, 50, 30)));
+  }
+
+  @After
+  public void tearDown() {
+    buildInfoStoreManager.close();
+  }
+
+  @Test
+  public void unmeasuredRulesUseConfiguredAmounts() {
+    BuildRule rule = newRule("//:rule");
+    assertEquals(LINK_AMOUNTS, estimator.getResourceAmounts(rule));
+  }
+
+  @Test
+  public void measuredRulesAreSizedFromTheirMeasurements() throws IOException {
+    BuildRule heavy = newRule("//:heavy");
+    recordMeasurements(heavy, 4000, 1000, 250L * 1024 * 1024);
+    assertEquals(ResourceAmounts.of(4, 3, 1, 0), estimator.getResourceAmounts(heavy));
+
+    BuildRule light = newRule("//:light");
+    recordMeasurements(light, 10, 1000, 1024);
+    assertEquals(ResourceAmounts.of(1, 1, 1, 0), estimator.getResourceAmounts(light));
+  }
+
+  @Test
+  public void measuredAmountsAreCappedByTheMaximumAmounts() throws IOException {
+    BuildRule rule = newRule("//:rule");
+    recordMeasurements(rule, 100_000, 1000, 100L * 1024 * 1024 * 1024);
+    assertEquals(ResourceAmounts.of(8, 30, 1, 0), estimator.getResourceAmounts(rule));
+  }
+
+  private BuildRule newRule(String target) {
+    return new FakeBuildRule(BuildTargetFactory.newInstance(target), filesystem);
+  }
+
+  private void recordMeasurements(
+      BuildRule rule, long cpuMillis, long durationMillis, long peakMemoryBytes)
+      throws IOException {
+    BuildInfoStore buildInfoStore = buildInfoStoreManager.get(filesystem);
+    buildInfoStore.updateMetadata(
+        rule.getBuildTarget(),
+        ImmutableMap.of(
+            BuildInfo.MetadataKey.BUILD_CPU_MILLIS,
+            String.valueOf(cpuMillis),
+            BuildInfo.MetadataKey.BUILD_DURATION_MILLIS,
+            String.valueOf(durationMillis),
+            BuildInfo.MetadataKey.BUILD_PEAK_MEMORY_BYTES,
+            String.valueOf(peakMemoryBytes)));
+  }
+}
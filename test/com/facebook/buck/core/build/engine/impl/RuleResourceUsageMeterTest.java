@@ -0,0 +1,126 @@
+/*
+ * Copyright 2019-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.core.build.engine.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import com.facebook.buck.core.rules.BuildRule;
+import com.facebook.buck.core.rules.impl.FakeBuildRule;
+import com.facebook.buck.util.FakeNuProcess;
+import com.facebook.buck.util.FakeProcessHelper;
+import com.facebook.buck.util.FakeProcessRegistry;
+import com.facebook.buck.util.ProcessExecutorParams;
+import com.facebook.buck.util.ProcessResourceConsumption;
+import com.google.common.collect.ImmutableMap;
+import java.util.Optional;
+import org.junit.Before;
+import org.junit.Test;
+
+public class RuleResourceUsageMeterTest {
+
+  // Pids which are unlikely to exist, so that the real process tree has no descendants for them.
+  private static final int PID_1 = 999_991;
+  private static final int PID_2 = 999_992;
+
+  private FakeProcessHelper processHelper;
+  private FakeProcessRegistry processRegistry;
+
+  @Before
+  public void setUp() {
+    processHelper = new FakeProcessHelper();
+    processRegistry = new FakeProcessRegistry();
+  }
+
+  @Test
+  public void measuresCpuTimeAndPeakMemoryOfProcessesOfRule() {
+    BuildRule rule = new FakeBuildRule("//:rule");
+    try (RuleResourceUsageMeter meter =
+        new RuleResourceUsageMeter(processHelper, processRegistry, null)) {
+      FakeNuProcess process1 = new FakeNuProcess(PID_1);
+      FakeNuProcess process2 = new FakeNuProcess(PID_2);
+      registerProcess(process1, rule);
+      registerProcess(process2, rule);
+
+      processHelper.setProcessResourceConsumption(PID_1, consumption(10, 100));
+      processHelper.setProcessResourceConsumption(PID_2, consumption(20, 200));
+      meter.sample();
+
+      process1.finish(0);
+      processHelper.setProcessResourceConsumption(PID_1, consumption(15, 10));
+      processHelper.setProcessResourceConsumption(PID_2, consumption(40, 50));
+      meter.sample();
+
+      process2.finish(0);
+      Optional<RuleResourceUsageMeter.Usage> usage = meter.finish(rule);
+      assertEquals(55, usage.get().getCpuMillis());
+      assertEquals(300, usage.get().getPeakMemoryBytes());
+      assertFalse(meter.finish(rule).isPresent());
+    }
+  }
+
+  @Test
+  public void ignoresProcessesOfOtherRulesAndProcessesWithoutRule() {
+    BuildRule rule = new FakeBuildRule("//:rule");
+    BuildRule other = new FakeBuildRule("//:other");
+    try (RuleResourceUsageMeter meter =
+        new RuleResourceUsageMeter(processHelper, processRegistry, null)) {
+      registerProcess(new FakeNuProcess(PID_1), other);
+      processRegistry.registerProcess(
+          new FakeNuProcess(PID_2), ProcessExecutorParams.ofCommand("cmd"), ImmutableMap.of());
+      processHelper.setProcessResourceConsumption(PID_1, consumption(10, 100));
+      processHelper.setProcessResourceConsumption(PID_2, consumption(20, 200));
+      meter.sample();
+
+      assertFalse(meter.finish(rule).isPresent());
+      assertEquals(10, meter.finish(other).get().getCpuMillis());
+    }
+  }
+
+  @Test
+  public void stopsMeasuringWhenClosed() {
+    BuildRule rule = new FakeBuildRule("//:rule");
+    RuleResourceUsageMeter meter = new RuleResourceUsageMeter(processHelper, processRegistry, null);
+    meter.close();
+
+    registerProcess(new FakeNuProcess(PID_1), rule);
+    processHelper.setProcessResourceConsumption(PID_1, consumption(10, 100));
+    meter.sample();
+    assertFalse(meter.finish(rule).isPresent());
+  }
+
+  private void registerProcess(FakeNuProcess process, BuildRule rule) {
+    processRegistry.registerProcess(
+        process,
+        ProcessExecutorParams.ofCommand("cmd"),
+        ImmutableMap.of(CachingBuildEngine.BUILD_TARGET_CONTEXT_KEY, rule.getFullyQualifiedName()));
+  }
+
+  private static ProcessResourceConsumption consumption(long cpuMillis, long memoryBytes) {
+    return ProcessResourceConsumption.builder()
+        .setMemResident(memoryBytes)
+        .setMemSize(memoryBytes)
+        .setCpuReal(cpuMillis)
+        .setCpuUser(cpuMillis)
+        .setCpuSys(0)
+        .setCpuTotal(cpuMillis)
+        .setIoBytesRead(0)
+        .setIoBytesWritten(0)
+        .setIoTotal(0)
+        .build();
+  }
+}
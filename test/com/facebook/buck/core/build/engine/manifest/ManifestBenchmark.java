@@ -0,0 +1,142 @@
+/*
+ * Copyright 2019-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.core.build.engine.manifest;
+
+import com.facebook.buck.core.rulekey.RuleKey;
+import com.facebook.buck.core.rules.resolver.impl.TestActionGraphBuilder;
+import com.facebook.buck.core.sourcepath.FakeSourcePath;
+import com.facebook.buck.core.sourcepath.SourcePath;
+import com.facebook.buck.core.sourcepath.resolver.SourcePathResolver;
+import com.facebook.buck.testutil.FakeFileHashCache;
+import com.facebook.buck.util.hashing.FileHashLoader;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.hash.HashCode;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Optional;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.Main;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.runner.RunnerException;
+
+/**
+ * Looks up a {@link Manifest} of a rule with many headers, like a large C++ library, in which every
+ * entry records all headers and each build changed a few of them.
+ */
+@State(Scope.Benchmark)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ManifestBenchmark {
+  private static final SourcePathResolver RESOLVER =
+      new TestActionGraphBuilder().getSourcePathResolver();
+
+  @Param({"1000", "5000"})
+  public int headerCount;
+
+  @Param({"100", "1000"})
+  public int entryCount;
+
+  /** Number of headers changed from one entry to the next. */
+  @Param({"5"})
+  public int changedHeadersPerEntry;
+
+  private ImmutableSet<SourcePath> universe;
+  private Manifest manifest;
+  private FileHashLoader matchingFileHashLoader;
+  private FileHashLoader missingFileHashLoader;
+
+  @Setup(Level.Trial)
+  public void setUpManifest() throws IOException {
+    Random random = new Random(42);
+    ImmutableSet.Builder<SourcePath> universeBuilder = ImmutableSet.builder();
+    SourcePath[] headers = new SourcePath[headerCount];
+    int[] versions = new int[headerCount];
+    for (int i = 0; i < headerCount; i++) {
+      headers[i] = FakeSourcePath.of(String.format("lib/header%d.h", i));
+      universeBuilder.add(headers[i]);
+    }
+    universe = universeBuilder.build();
+
+    ImmutableMap.Builder<RuleKey, ImmutableMap<String, HashCode>> entries = ImmutableMap.builder();
+    for (int entry = 0; entry < entryCount; entry++) {
+      for (int change = 0; change < changedHeadersPerEntry; change++) {
+        versions[random.nextInt(headerCount)]++;
+      }
+      ImmutableMap.Builder<String, HashCode> hashes = ImmutableMap.builder();
+      for (int i = 0; i < headerCount; i++) {
+        hashes.put(RESOLVER.getRelativePath(headers[i]).toString(), hash(i, versions[i]));
+      }
+      entries.put(new RuleKey(String.format("%08x", entry)), hashes.build());
+    }
+
+    // Round trip through serialization, like manifests fetched from the cache.
+    ByteArrayOutputStream output = new ByteArrayOutputStream();
+    ManifestUtil.fromMap(new RuleKey("00"), entries.build()).serialize(output);
+    manifest = new Manifest(new ByteArrayInputStream(output.toByteArray()));
+
+    // The headers on disk match the entry in the middle of the manifest.
+    ImmutableMap<RuleKey, ImmutableMap<String, HashCode>> entryMap = ManifestUtil.toMap(manifest);
+    ImmutableMap<String, HashCode> middleEntry =
+        entryMap.get(new RuleKey(String.format("%08x", entryCount / 2)));
+    ImmutableMap.Builder<Path, HashCode> matchingHashes = ImmutableMap.builder();
+    ImmutableMap.Builder<Path, HashCode> missingHashes = ImmutableMap.builder();
+    for (int i = 0; i < headerCount; i++) {
+      Path path = RESOLVER.getAbsolutePath(headers[i]);
+      HashCode hash = middleEntry.get(RESOLVER.getRelativePath(headers[i]).toString());
+      matchingHashes.put(path, hash);
+      missingHashes.put(path, i == headerCount - 1 ? hash(i, -1) : hash);
+    }
+    matchingFileHashLoader = new FakeFileHashCache(matchingHashes.build());
+    missingFileHashLoader = new FakeFileHashCache(missingHashes.build());
+  }
+
+  private static HashCode hash(int header, int version) {
+    return HashCode.fromLong(((long) header << 32) | (version & 0xffffffffL));
+  }
+
+  /** A lookup finding an entry, e.g. after reverting a change. */
+  @Benchmark
+  @BenchmarkMode(Mode.AverageTime)
+  @Threads(8)
+  public Optional<RuleKey> lookupHit() throws IOException {
+    return manifest.lookup(matchingFileHashLoader, RESOLVER, universe);
+  }
+
+  /** A lookup after a change to a header not matching any entry. */
+  @Benchmark
+  @BenchmarkMode(Mode.AverageTime)
+  @Threads(8)
+  public Optional<RuleKey> lookupMiss() throws IOException {
+    return manifest.lookup(missingFileHashLoader, RESOLVER, universe);
+  }
+
+  public static void main(String[] args) throws IOException, RunnerException {
+    Main.main(args);
+  }
+}
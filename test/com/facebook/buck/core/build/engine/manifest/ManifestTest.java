@@ -37,6 +37,7 @@ import com.google.common.collect.ImmutableSet;
 import com.google.common.hash.HashCode;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
@@ -292,6 +293,120 @@ public class ManifestTest {
         Matchers.equalTo(Optional.of(key2)));
   }
 
+  @Test
+  public void lookupAmongManyEntriesFindsFirstMatchingEntry() throws IOException {
+    SourcePath varying = FakeSourcePath.of("varying.h");
+    SourcePath other = FakeSourcePath.of("other.h");
+    ImmutableMap.Builder<RuleKey, ImmutableMap<String, HashCode>> entries = ImmutableMap.builder();
+    for (int i = 0; i < 100; i++) {
+      entries.put(
+          new RuleKey(String.format("%04x", i)),
+          ImmutableMap.of(
+              RESOLVER.getRelativePath(varying).toString(),
+              HashCode.fromInt(1000 + i % 10),
+              RESOLVER.getRelativePath(other).toString(),
+              HashCode.fromInt(2000 + i)));
+    }
+    Manifest manifest = ManifestUtil.fromMap(new RuleKey("cc"), entries.build());
+
+    FileHashLoader fileHashLoader =
+        new FakeFileHashCache(
+            ImmutableMap.of(
+                RESOLVER.getAbsolutePath(varying),
+                HashCode.fromInt(1002),
+                RESOLVER.getAbsolutePath(other),
+                HashCode.fromInt(2042)));
+    assertThat(
+        manifest.lookup(fileHashLoader, RESOLVER, ImmutableSet.of(varying, other)),
+        Matchers.equalTo(Optional.of(new RuleKey("002a"))));
+    assertThat(
+        manifest.lookup(fileHashLoader, RESOLVER, ImmutableSet.of(other)),
+        Matchers.equalTo(Optional.empty()));
+  }
+
+  @Test
+  public void lookupMatchesEntryAddedAfterPreviousLookup() throws IOException {
+    RuleKey key1 = new RuleKey("aa");
+    RuleKey key2 = new RuleKey("bb");
+    SourcePath input = FakeSourcePath.of("input.h");
+    Manifest manifest =
+        ManifestUtil.fromMap(
+            new RuleKey("cc"),
+            ImmutableMap.of(
+                key1,
+                ImmutableMap.of(RESOLVER.getRelativePath(input).toString(), HashCode.fromInt(1))));
+    FileHashLoader fileHashLoader =
+        new FakeFileHashCache(
+            ImmutableMap.of(RESOLVER.getAbsolutePath(input), HashCode.fromInt(2)));
+    assertThat(
+        manifest.lookup(fileHashLoader, RESOLVER, ImmutableSet.of(input)),
+        Matchers.equalTo(Optional.empty()));
+
+    manifest.addEntry(
+        fileHashLoader, key2, RESOLVER, ImmutableSet.of(input), ImmutableSet.of(input));
+    assertThat(
+        manifest.lookup(fileHashLoader, RESOLVER, ImmutableSet.of(input)),
+        Matchers.equalTo(Optional.of(key2)));
+  }
+
+  @Test
+  public void lookupAfterSerialization() throws IOException {
+    SourcePath varying = FakeSourcePath.of("varying.h");
+    SourcePath shared = FakeSourcePath.of("shared.h");
+    ImmutableMap.Builder<RuleKey, ImmutableMap<String, HashCode>> entries = ImmutableMap.builder();
+    for (int i = 0; i < 10; i++) {
+      entries.put(
+          new RuleKey(String.format("%04x", i)),
+          ImmutableMap.of(
+              RESOLVER.getRelativePath(varying).toString(),
+              HashCode.fromInt(1000 + i),
+              RESOLVER.getRelativePath(shared).toString(),
+              HashCode.fromInt(2000)));
+    }
+    ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
+    ManifestUtil.fromMap(new RuleKey("cc"), entries.build()).serialize(byteArrayOutputStream);
+    Manifest deserialized =
+        new Manifest(new ByteArrayInputStream(byteArrayOutputStream.toByteArray()));
+
+    assertThat(ManifestUtil.toMap(deserialized), Matchers.equalTo(entries.build()));
+    FileHashLoader fileHashLoader =
+        new FakeFileHashCache(
+            ImmutableMap.of(
+                RESOLVER.getAbsolutePath(varying),
+                HashCode.fromInt(1007),
+                RESOLVER.getAbsolutePath(shared),
+                HashCode.fromInt(2000)));
+    assertThat(
+        deserialized.lookup(fileHashLoader, RESOLVER, ImmutableSet.of(varying, shared)),
+        Matchers.equalTo(Optional.of(new RuleKey("0007"))));
+  }
+
+  @Test
+  public void deserializeManifestWithoutIndex() throws IOException {
+    SourcePath input = FakeSourcePath.of("input.h");
+    ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
+    DataOutputStream output = new DataOutputStream(byteArrayOutputStream);
+    output.writeInt(0);
+    output.writeUTF("cc");
+    output.writeInt(1);
+    output.writeUTF(RESOLVER.getRelativePath(input).toString());
+    output.writeInt(1);
+    output.writeInt(0);
+    output.writeUTF(HashCode.fromInt(20).toString());
+    output.writeInt(1);
+    output.writeInt(1);
+    output.writeInt(0);
+    output.writeUTF("aa");
+
+    Manifest manifest = new Manifest(new ByteArrayInputStream(byteArrayOutputStream.toByteArray()));
+    FileHashLoader fileHashLoader =
+        new FakeFileHashCache(
+            ImmutableMap.of(RESOLVER.getAbsolutePath(input), HashCode.fromInt(20)));
+    assertThat(
+        manifest.lookup(fileHashLoader, RESOLVER, ImmutableSet.of(input)),
+        Matchers.equalTo(Optional.of(new RuleKey("aa"))));
+  }
+
   @Test
   public void size() {
     assertThat(new Manifest(new RuleKey("cc")).size(), Matchers.equalTo(0));
@@ -173,4 +173,39 @@ public class BuildTargetTest {
 
     assertSame(target1, target2);
   }
+
+  @Test
+  public void buildTargetsAreInterned() {
+    BuildTarget target1 =
+        BuildTargetFactory.newInstance(ROOT, "//foo", "bar", InternalFlavor.of("baz"));
+    BuildTarget target2 =
+        BuildTargetFactory.newInstance(ROOT, "//foo", "bar", InternalFlavor.of("baz"));
+
+    assertSame(target1, target2);
+    assertSame(
+        target1.getUnconfiguredBuildTargetView(), target2.getUnconfiguredBuildTargetView());
+  }
+
+  @Test
+  public void baseNamesAndFlavorsAreSharedBetweenTargets() {
+    BuildTarget target1 =
+        BuildTargetFactory.newInstance(ROOT, "//foo", "bar", InternalFlavor.of("baz"));
+    String baseName = new StringBuilder("//").append("foo").toString();
+    BuildTarget target2 =
+        BuildTargetFactory.newInstance(ROOT, baseName, "qux", InternalFlavor.of("baz"));
+
+    assertSame(target1.getBaseName(), target2.getBaseName());
+    assertSame(target1.getFlavors(), target2.getFlavors());
+  }
+
+  @Test
+  public void internedTargetsKeepTheClassOfTheirFlavors() {
+    BuildTarget internalTarget =
+        BuildTargetFactory.newInstance(ROOT, "//foo", "bar", InternalFlavor.of("qux"));
+    BuildTarget userTarget =
+        BuildTargetFactory.newInstance(ROOT, "//foo", "bar", UserFlavor.of("qux", "Qux flavor"));
+
+    assertThat(internalTarget.getFlavors().first(), Matchers.instanceOf(InternalFlavor.class));
+    assertThat(userTarget.getFlavors().first(), Matchers.instanceOf(UserFlavor.class));
+  }
 }
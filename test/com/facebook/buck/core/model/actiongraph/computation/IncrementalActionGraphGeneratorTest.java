@@ -590,6 +590,71 @@ public class IncrementalActionGraphGeneratorTest {
     oldRuleResolver.getRuleOptional(node.getBuildTarget());
   }
 
+  @Test
+  public void rulesOfTargetsMissingFromLastGraphReusedWhenRetained() {
+    generator = new IncrementalActionGraphGenerator(2);
+    TargetNode<?> node1 = createTargetNode("test1");
+    TargetNode<?> node2 = createTargetNode("test2");
+    setUpTargetGraphAndResolver(node1);
+
+    generator.populateActionGraphBuilderWithCachedRules(eventBus, targetGraph, graphBuilder);
+    BuildRule originalBuildRule = graphBuilder.requireRule(node1.getBuildTarget());
+
+    setUpTargetGraphAndResolver(node2);
+    generator.populateActionGraphBuilderWithCachedRules(eventBus, targetGraph, graphBuilder);
+    graphBuilder.requireRule(node2.getBuildTarget());
+
+    setUpTargetGraphAndResolver(node1);
+    generator.populateActionGraphBuilderWithCachedRules(eventBus, targetGraph, graphBuilder);
+
+    assertSame(originalBuildRule, graphBuilder.requireRule(node1.getBuildTarget()));
+    assertSame(graphBuilder, ((FakeBuildRule) originalBuildRule).getRuleResolver());
+  }
+
+  @Test
+  public void rulesOfTargetsMissingFromLastGraphNotReusedByDefault() {
+    TargetNode<?> node1 = createTargetNode("test1");
+    TargetNode<?> node2 = createTargetNode("test2");
+    setUpTargetGraphAndResolver(node1);
+
+    generator.populateActionGraphBuilderWithCachedRules(eventBus, targetGraph, graphBuilder);
+    BuildRule originalBuildRule = graphBuilder.requireRule(node1.getBuildTarget());
+
+    setUpTargetGraphAndResolver(node2);
+    generator.populateActionGraphBuilderWithCachedRules(eventBus, targetGraph, graphBuilder);
+    graphBuilder.requireRule(node2.getBuildTarget());
+
+    setUpTargetGraphAndResolver(node1);
+    generator.populateActionGraphBuilderWithCachedRules(eventBus, targetGraph, graphBuilder);
+
+    assertNotSame(originalBuildRule, graphBuilder.requireRule(node1.getBuildTarget()));
+  }
+
+  @Test
+  public void retainedRuleNotReusedWhenDependencyChangedInBetween() {
+    generator = new IncrementalActionGraphGenerator(3);
+    TargetNode<?> childNode = createTargetNode("child");
+    TargetNode<?> parentNode = createTargetNode("parent", childNode);
+    setUpTargetGraphAndResolver(parentNode, childNode);
+
+    generator.populateActionGraphBuilderWithCachedRules(eventBus, targetGraph, graphBuilder);
+    graphBuilder.requireRule(childNode.getBuildTarget());
+    BuildRule originalParentRule = graphBuilder.requireRule(parentNode.getBuildTarget());
+
+    TargetNode<?> newChildNode = createTargetNode("child", "new_label");
+    setUpTargetGraphAndResolver(newChildNode);
+    generator.populateActionGraphBuilderWithCachedRules(eventBus, targetGraph, graphBuilder);
+    BuildRule newChildRule = graphBuilder.requireRule(newChildNode.getBuildTarget());
+
+    TargetNode<?> newParentNode = createTargetNode("parent", newChildNode);
+    assertEquals(parentNode, newParentNode);
+    setUpTargetGraphAndResolver(newParentNode, newChildNode);
+    generator.populateActionGraphBuilderWithCachedRules(eventBus, targetGraph, graphBuilder);
+
+    assertSame(newChildRule, graphBuilder.requireRule(newChildNode.getBuildTarget()));
+    assertNotSame(originalParentRule, graphBuilder.requireRule(newParentNode.getBuildTarget()));
+  }
+
   @Test
   public void actionGraphEventsRaised() throws InterruptedException {
     TargetNode<?> node = createTargetNode("test1");
@@ -0,0 +1,110 @@
+/*
+ * Copyright 2019-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.core.model.actiongraph.computation;
+
+import com.facebook.buck.benchmarks.BenchmarkMain;
+import com.facebook.buck.benchmarks.SyntheticRepository;
+import com.facebook.buck.core.graph.transformation.executor.DepsAwareExecutor;
+import com.facebook.buck.core.graph.transformation.executor.impl.DefaultDepsAwareExecutor;
+import com.facebook.buck.core.graph.transformation.model.ComputeResult;
+import com.facebook.buck.core.model.actiongraph.ActionGraphAndBuilder;
+import com.facebook.buck.core.model.targetgraph.TargetGraph;
+import com.facebook.buck.core.rules.transformer.TargetNodeToBuildRuleTransformer;
+import com.facebook.buck.core.rules.transformer.impl.DefaultTargetNodeToBuildRuleTransformer;
+import com.facebook.buck.parser.TestParserFactory;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+import java.io.IOException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.runner.RunnerException;
+
+/**
+ * Creates the action graph of a {@link SyntheticRepository} with {@link
+ * ParallelActionGraphFactory}.
+ */
+@State(Scope.Benchmark)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class ParallelActionGraphFactoryBenchmark {
+
+  @Param({"1000", "10000"})
+  public int packageCount;
+
+  @Param({"4"})
+  public int fanOut;
+
+  @Param({"10"})
+  public int depth;
+
+  @Param({"1", "8"})
+  public int threads;
+
+  private SyntheticRepository repository;
+  private ListeningExecutorService executor;
+  private TargetGraph targetGraph;
+  private ParallelActionGraphFactory factory;
+
+  @Setup(Level.Trial)
+  public void setUpTargetGraph() throws Exception {
+    repository = SyntheticRepository.create(packageCount, fanOut, depth, threads);
+    executor = MoreExecutors.listeningDecorator(Executors.newFixedThreadPool(threads));
+    DepsAwareExecutor<? super ComputeResult, ?> depsAwareExecutor =
+        DefaultDepsAwareExecutor.of(threads);
+    try {
+      targetGraph =
+          repository
+              .createTargetGraph(
+                  TestParserFactory.create(depsAwareExecutor, repository.getCell()), executor)
+              .getTargetGraph();
+    } finally {
+      depsAwareExecutor.close();
+    }
+    factory =
+        new ParallelActionGraphFactory(() -> executor, repository.getCell().getCellProvider());
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDownTargetGraph() throws IOException {
+    executor.shutdownNow();
+    repository.close();
+  }
+
+  @Benchmark
+  @BenchmarkMode(Mode.AverageTime)
+  public ActionGraphAndBuilder createActionGraph() {
+    TargetNodeToBuildRuleTransformer transformer = new DefaultTargetNodeToBuildRuleTransformer();
+    return factory.create(
+        transformer,
+        targetGraph,
+        graphBuilder -> {},
+        builderConstructor -> builderConstructor.apply(transformer));
+  }
+
+  public static void main(String[] args) throws IOException, RunnerException {
+    BenchmarkMain.main(args);
+  }
+}
@@ -0,0 +1,149 @@
+/*
+ * Copyright 2019-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.core.model.targetgraph.impl;
+
+import com.facebook.buck.benchmarks.BenchmarkMain;
+import com.facebook.buck.benchmarks.SyntheticRepository;
+import com.facebook.buck.core.cell.Cell;
+import com.facebook.buck.core.graph.transformation.executor.DepsAwareExecutor;
+import com.facebook.buck.core.graph.transformation.executor.impl.DefaultDepsAwareExecutor;
+import com.facebook.buck.core.graph.transformation.model.ComputeResult;
+import com.facebook.buck.core.model.BuildTarget;
+import com.facebook.buck.core.model.targetgraph.TargetGraph;
+import com.facebook.buck.core.model.targetgraph.TargetNode;
+import com.facebook.buck.event.BuckEventBus;
+import com.facebook.buck.event.BuckEventBusForTests;
+import com.facebook.buck.parser.Parser;
+import com.facebook.buck.parser.ParsingContext;
+import com.facebook.buck.parser.PerBuildState;
+import com.facebook.buck.parser.TestParserFactory;
+import com.facebook.buck.rules.keys.config.TestRuleKeyConfigurationFactory;
+import com.facebook.buck.util.cache.FileHashCacheMode;
+import com.facebook.buck.util.cache.impl.StackedFileHashCache;
+import com.google.common.collect.ImmutableList;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hashing;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.runner.RunnerException;
+
+/**
+ * Hashes all target nodes of a {@link SyntheticRepository} with {@link TargetGraphHashing}, with
+ * and without hashes of raw attributes cached by the daemon.
+ */
+@State(Scope.Benchmark)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class TargetGraphHashingBenchmark {
+
+  @Param({"1000", "10000"})
+  public int packageCount;
+
+  @Param({"4"})
+  public int fanOut;
+
+  @Param({"10"})
+  public int depth;
+
+  @Param({"1", "8"})
+  public int threads;
+
+  @Param({"false", "true"})
+  public boolean cachedAttributeHashes;
+
+  private SyntheticRepository repository;
+  private DepsAwareExecutor<? super ComputeResult, ?> depsAwareExecutor;
+  private ListeningExecutorService executor;
+  private BuckEventBus eventBus;
+  private PerBuildState perBuildState;
+  private TargetGraph targetGraph;
+  private ImmutableList<TargetNode<?>> roots;
+  private StackedFileHashCache fileHashCache;
+  private Function<TargetNode<?>, ListenableFuture<?>> targetNodeRawAttributesProvider;
+  private TargetNodeAttributesHashCache attributesHashCache;
+
+  @Setup(Level.Trial)
+  public void setUpTargetGraph() throws Exception {
+    repository = SyntheticRepository.create(packageCount, fanOut, depth, threads);
+    depsAwareExecutor = DefaultDepsAwareExecutor.of(threads);
+    executor = MoreExecutors.listeningDecorator(Executors.newFixedThreadPool(threads));
+    eventBus = BuckEventBusForTests.newInstance();
+
+    Cell cell = repository.getCell();
+    Parser parser = TestParserFactory.create(depsAwareExecutor, cell);
+    targetGraph = repository.createTargetGraph(parser, executor).getTargetGraph();
+    roots = ImmutableList.copyOf(targetGraph.getNodes());
+    perBuildState =
+        parser
+            .getPerBuildStateFactory()
+            .create(ParsingContext.builder(cell, executor).build(), parser.getPermState());
+    targetNodeRawAttributesProvider =
+        node -> parser.getTargetNodeRawAttributesJob(perBuildState, cell, node);
+    attributesHashCache =
+        cachedAttributeHashes
+            ? parser.getPermState().getTargetNodeAttributesHashCache()
+            : TargetNodeAttributesHashCache.NONE;
+
+    fileHashCache =
+        StackedFileHashCache.createDefaultHashCaches(
+            cell.getFilesystem(), FileHashCacheMode.DEFAULT);
+    hashTargetGraph();
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDownTargetGraph() throws IOException {
+    perBuildState.close();
+    executor.shutdownNow();
+    depsAwareExecutor.close();
+    repository.close();
+  }
+
+  @Benchmark
+  @BenchmarkMode(Mode.AverageTime)
+  public Map<BuildTarget, HashCode> hashTargetGraph() throws InterruptedException {
+    return new TargetGraphHashing(
+            eventBus,
+            targetGraph,
+            fileHashCache,
+            roots,
+            executor,
+            TestRuleKeyConfigurationFactory.create(),
+            targetNodeRawAttributesProvider,
+            Hashing.murmur3_128(),
+            attributesHashCache)
+        .hashTargetGraph();
+  }
+
+  public static void main(String[] args) throws IOException, RunnerException {
+    BenchmarkMain.main(args);
+  }
+}
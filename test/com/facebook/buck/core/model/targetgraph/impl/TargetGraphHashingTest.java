@@ -75,6 +75,9 @@ import com.google.common.util.concurrent.MoreExecutors;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Function;
 import org.junit.Before;
 import org.junit.Rule;
@@ -147,6 +150,81 @@ public class TargetGraphHashingTest {
         empty());
   }
 
+  @Test
+  public void memoizedAttributesHashesAreReused() throws Exception {
+    TargetNode<?> node =
+        createJavaLibraryTargetNodeWithSrcs(
+            BuildTargetFactory.newInstance(projectFilesystem, "//foo:lib"),
+            ImmutableSet.of(Paths.get("foo/FooLib.java")));
+    TargetGraph targetGraph = TargetGraphFactory.newInstance(node);
+    FileHashLoader fileHashLoader =
+        new FakeFileHashCache(
+            ImmutableMap.of(
+                projectFilesystem.resolve("foo/FooLib.java"), HashCode.fromString("abcdef")));
+    Map<String, HashCode> memoizedHashes = new ConcurrentHashMap<>();
+    TargetNodeAttributesHashCache attributesHashCache =
+        new TargetNodeAttributesHashCache() {
+          @Override
+          public Optional<HashCode> get(TargetNode<?> node, String hashKind) {
+            return Optional.ofNullable(memoizedHashes.get(node.getBuildTarget() + hashKind));
+          }
+
+          @Override
+          public void put(TargetNode<?> node, String hashKind, HashCode hash) {
+            memoizedHashes.put(node.getBuildTarget() + hashKind, hash);
+          }
+        };
+    AtomicInteger attributeRequests = new AtomicInteger();
+    Function<TargetNode<?>, ListenableFuture<?>> countingAttributesProvider =
+        n -> {
+          attributeRequests.incrementAndGet();
+          return targetNodeRawAttributesProvider.apply(n);
+        };
+
+    Map<BuildTarget, HashCode> firstResult =
+        new TargetGraphHashing(
+                eventBus,
+                targetGraph,
+                fileHashLoader,
+                ImmutableList.of(node),
+                MoreExecutors.newDirectExecutorService(),
+                ruleKeyConfiguration,
+                countingAttributesProvider,
+                Hashing.murmur3_128(),
+                attributesHashCache)
+            .hashTargetGraph();
+    Map<BuildTarget, HashCode> secondResult =
+        new TargetGraphHashing(
+                eventBus,
+                targetGraph,
+                fileHashLoader,
+                ImmutableList.of(node),
+                MoreExecutors.newDirectExecutorService(),
+                ruleKeyConfiguration,
+                countingAttributesProvider,
+                Hashing.murmur3_128(),
+                attributesHashCache)
+            .hashTargetGraph();
+    Map<BuildTarget, HashCode> sha1Result =
+        new TargetGraphHashing(
+                eventBus,
+                targetGraph,
+                fileHashLoader,
+                ImmutableList.of(node),
+                MoreExecutors.newDirectExecutorService(),
+                ruleKeyConfiguration,
+                countingAttributesProvider,
+                Hashing.sha1(),
+                attributesHashCache)
+            .hashTargetGraph();
+
+    assertThat(secondResult, equalTo(firstResult));
+    assertThat(
+        sha1Result.get(node.getBuildTarget()),
+        not(equalTo(firstResult.get(node.getBuildTarget()))));
+    assertThat(attributeRequests.get(), equalTo(2));
+  }
+
   @Test
   public void hashChangesWhenSrcContentChanges() throws Exception {
     TargetNode<?> node =
@@ -0,0 +1,160 @@
+/*
+ * Copyright 2019-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.core.rulekey.calculator;
+
+import com.facebook.buck.benchmarks.BenchmarkMain;
+import com.facebook.buck.benchmarks.SyntheticRepository;
+import com.facebook.buck.core.build.engine.impl.DefaultRuleDepsCache;
+import com.facebook.buck.core.graph.transformation.executor.DepsAwareExecutor;
+import com.facebook.buck.core.graph.transformation.executor.impl.DefaultDepsAwareExecutor;
+import com.facebook.buck.core.graph.transformation.model.ComputeResult;
+import com.facebook.buck.core.model.actiongraph.ActionGraphAndBuilder;
+import com.facebook.buck.core.model.actiongraph.computation.ActionGraphProviderBuilder;
+import com.facebook.buck.core.model.targetgraph.TargetGraphCreationResult;
+import com.facebook.buck.core.rulekey.RuleKey;
+import com.facebook.buck.core.rules.BuildRule;
+import com.facebook.buck.event.BuckEventBus;
+import com.facebook.buck.event.BuckEventBusForTests;
+import com.facebook.buck.parser.TestParserFactory;
+import com.facebook.buck.rules.keys.DefaultRuleKeyCache;
+import com.facebook.buck.rules.keys.RuleKeyFactories;
+import com.facebook.buck.rules.keys.TrackedRuleKeyCache;
+import com.facebook.buck.rules.keys.config.TestRuleKeyConfigurationFactory;
+import com.facebook.buck.util.cache.FileHashCacheMode;
+import com.facebook.buck.util.cache.InstrumentingCacheStatsTracker;
+import com.facebook.buck.util.cache.impl.StackedFileHashCache;
+import com.facebook.buck.util.concurrent.ExecutorPool;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.runner.RunnerException;
+
+/**
+ * Calculates default rule keys of all rules of a {@link SyntheticRepository} with {@link
+ * ParallelRuleKeyCalculator}. Every invocation starts with an empty rule key cache, while file
+ * hashes stay cached like in a daemon after the first build.
+ */
+@State(Scope.Benchmark)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class ParallelRuleKeyCalculatorBenchmark {
+
+  @Param({"1000", "10000"})
+  public int packageCount;
+
+  @Param({"4"})
+  public int fanOut;
+
+  @Param({"10"})
+  public int depth;
+
+  @Param({"1", "8"})
+  public int threads;
+
+  private SyntheticRepository repository;
+  private ListeningExecutorService executor;
+  private BuckEventBus eventBus;
+  private ActionGraphAndBuilder graphAndBuilder;
+  private ImmutableList<BuildRule> rules;
+  private StackedFileHashCache fileHashCache;
+
+  @Setup(Level.Trial)
+  public void setUpActionGraph() throws Exception {
+    repository = SyntheticRepository.create(packageCount, fanOut, depth, threads);
+    executor = MoreExecutors.listeningDecorator(Executors.newFixedThreadPool(threads));
+    eventBus = BuckEventBusForTests.newInstance();
+
+    TargetGraphCreationResult targetGraph;
+    DepsAwareExecutor<? super ComputeResult, ?> depsAwareExecutor =
+        DefaultDepsAwareExecutor.of(threads);
+    try {
+      targetGraph =
+          repository.createTargetGraph(
+              TestParserFactory.create(depsAwareExecutor, repository.getCell()), executor);
+    } finally {
+      depsAwareExecutor.close();
+    }
+    graphAndBuilder =
+        new ActionGraphProviderBuilder()
+            .withPoolSupplier(ImmutableMap.of(ExecutorPool.GRAPH_CPU, executor))
+            .withEventBus(eventBus)
+            .withCellProvider(repository.getCell().getCellProvider())
+            .build()
+            .getFreshActionGraph(targetGraph);
+    rules = ImmutableList.copyOf(graphAndBuilder.getActionGraph().getNodes());
+
+    fileHashCache =
+        StackedFileHashCache.createDefaultHashCaches(
+            repository.getCell().getFilesystem(), FileHashCacheMode.DEFAULT);
+    calculateRuleKeys();
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDownActionGraph() throws IOException {
+    executor.shutdownNow();
+    repository.close();
+  }
+
+  @Benchmark
+  @BenchmarkMode(Mode.AverageTime)
+  public List<RuleKey> calculateRuleKeys() throws ExecutionException, InterruptedException {
+    RuleKeyFactories ruleKeyFactories =
+        RuleKeyFactories.of(
+            TestRuleKeyConfigurationFactory.create(),
+            fileHashCache,
+            graphAndBuilder.getActionGraphBuilder(),
+            Long.MAX_VALUE,
+            new TrackedRuleKeyCache<>(
+                new DefaultRuleKeyCache<>(), new InstrumentingCacheStatsTracker()));
+    ParallelRuleKeyCalculator<RuleKey> calculator =
+        new ParallelRuleKeyCalculator<>(
+            executor,
+            ruleKeyFactories.getDefaultRuleKeyFactory(),
+            new DefaultRuleDepsCache(
+                graphAndBuilder.getActionGraphBuilder(),
+                graphAndBuilder.getBuildEngineActionToBuildRuleResolver()),
+            (buckEventBus, rule) -> () -> {});
+
+    List<ListenableFuture<RuleKey>> ruleKeys = new ArrayList<>(rules.size());
+    for (BuildRule rule : rules) {
+      ruleKeys.add(calculator.calculate(eventBus, rule));
+    }
+    return Futures.allAsList(ruleKeys).get();
+  }
+
+  public static void main(String[] args) throws IOException, RunnerException {
+    BenchmarkMain.main(args);
+  }
+}
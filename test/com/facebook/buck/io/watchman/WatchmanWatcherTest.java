@@ -557,6 +557,43 @@ public class WatchmanWatcherTest {
     assertThat(watcher.getWatchmanQuery(FAKE_ROOT), hasItem(hasEntry("since", "c:0:1")));
   }
 
+  @Test
+  public void watcherUpdatesClockIdAfterPostingChanges() throws IOException, InterruptedException {
+    ImmutableMap<String, Object> watchmanOutput =
+        ImmutableMap.of(
+            "clock",
+            "c:0:1",
+            "files",
+            ImmutableList.of(ImmutableMap.<String, Object>of("name", "foo/bar/baz")));
+    WatchmanCursor cursor = new WatchmanCursor("c:0:0");
+    WatchmanWatcher watcher =
+        new WatchmanWatcher(
+            eventBus,
+            () ->
+                new FakeWatchmanClient(
+                    0 /* queryElapsedTimeNanos */,
+                    ImmutableMap.of(FAKE_CLOCK_QUERY, watchmanOutput)),
+            10000 /* timeout */,
+            ImmutableMap.of(FAKE_ROOT, FAKE_QUERY),
+            ImmutableMap.of(FAKE_ROOT, cursor),
+            /* numThreads */ 1);
+    List<String> cursorsSeen = new ArrayList<>();
+    eventBus.register(
+        new Object() {
+          @Subscribe
+          public void on(WatchmanPathEvent event) {
+            cursorsSeen.add(cursor.get());
+          }
+        });
+
+    watcher.postEvents(
+        BuckEventBusForTests.newInstance(FakeClock.doNotCare()),
+        WatchmanWatcher.FreshInstanceAction.NONE);
+
+    assertEquals(ImmutableList.of("c:0:0"), cursorsSeen);
+    assertEquals("c:0:1", cursor.get());
+  }
+
   @Test
   public void watcherOverflowUpdatesClockId() throws IOException, InterruptedException {
     ImmutableMap<String, Object> watchmanOutput =
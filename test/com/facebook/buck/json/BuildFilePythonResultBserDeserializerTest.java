@@ -0,0 +1,110 @@
+/*
+ * Copyright 2019-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.json;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+import com.facebook.buck.util.bser.BserSerializer;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import org.junit.Test;
+
+/** Tests for {@link BuildFilePythonResultBserDeserializer}. */
+public final class BuildFilePythonResultBserDeserializerTest {
+  @Test
+  public void basicParseWithNull() throws IOException {
+    Map<String, Object> values = new LinkedHashMap<>();
+    values.put("buck.foo", null);
+    values.put("buck.bar", ImmutableList.of(1, 2, 3));
+    values.put("buck.baz", true);
+
+    BuildFilePythonResult result =
+        new BuildFilePythonResultBserDeserializer()
+            .deserialize(serialize(ImmutableMap.of("values", ImmutableList.of(values))));
+
+    Map<String, Object> expectedValues = new LinkedHashMap<>();
+    expectedValues.put("buck.foo", null);
+    // Note the L -- equality test will fail if these are Integer
+    expectedValues.put("buck.bar", ImmutableList.of(1L, 2L, 3L));
+    expectedValues.put("buck.baz", true);
+    assertThat(
+        result,
+        is(
+            BuildFilePythonResult.of(
+                ImmutableList.of(expectedValues), ImmutableList.of(), Optional.empty())));
+  }
+
+  @Test
+  public void resultWithDiagnosticsAndProfile() throws IOException {
+    BuildFilePythonResult result =
+        new BuildFilePythonResultBserDeserializer()
+            .deserialize(
+                serialize(
+                    ImmutableMap.of(
+                        "values",
+                        ImmutableList.of(),
+                        "diagnostics",
+                        ImmutableList.of(
+                            ImmutableMap.of(
+                                "message", "Oops", "level", "fatal", "source", "parse")),
+                        "profile",
+                        "this is a profile")));
+    assertThat(
+        result,
+        is(
+            BuildFilePythonResult.of(
+                ImmutableList.of(),
+                ImmutableList.of(
+                    ImmutableMap.of("message", "Oops", "level", "fatal", "source", "parse")),
+                Optional.of("this is a profile"))));
+  }
+
+  @Test
+  public void readsConsecutiveResults() throws IOException {
+    ByteArrayOutputStream output = new ByteArrayOutputStream();
+    BserSerializer serializer = new BserSerializer();
+    serializer.serializeToStream(ImmutableMap.of("profile", "first"), output);
+    serializer.serializeToStream(ImmutableMap.of("profile", "second"), output);
+    InputStream input = new ByteArrayInputStream(output.toByteArray());
+
+    BuildFilePythonResultBserDeserializer deserializer =
+        new BuildFilePythonResultBserDeserializer();
+    assertThat(deserializer.deserialize(input).getProfile(), is(Optional.of("first")));
+    assertThat(deserializer.deserialize(input).getProfile(), is(Optional.of("second")));
+  }
+
+  @Test(expected = IOException.class)
+  public void unexpectedFieldIsAnError() throws IOException {
+    new BuildFilePythonResultBserDeserializer()
+        .deserialize(serialize(ImmutableMap.of("unexpected", Arrays.asList(1, 2))));
+  }
+
+  private static InputStream serialize(Object value) throws IOException {
+    ByteArrayOutputStream output = new ByteArrayOutputStream();
+    new BserSerializer().serializeToStream(value, output);
+    return new ByteArrayInputStream(output.toByteArray());
+  }
+}
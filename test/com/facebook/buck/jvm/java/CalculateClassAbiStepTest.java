@@ -18,6 +18,7 @@ package com.facebook.buck.jvm.java;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertThat;
 
 import com.facebook.buck.core.build.execution.context.ExecutionContext;
 import com.facebook.buck.io.filesystem.ProjectFilesystem;
@@ -34,10 +35,14 @@ import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.jar.JarFile;
 import java.util.jar.Manifest;
+import java.util.stream.Stream;
+import org.hamcrest.Matchers;
 import org.junit.Rule;
 import org.junit.Test;
 
 public class CalculateClassAbiStepTest {
+  private static final long CLASS_ABI_CACHE_MAX_SIZE_BYTES = 16 * 1024 * 1024;
+
   @Rule public TemporaryPaths temp = new TemporaryPaths();
 
   @Test
@@ -54,7 +59,8 @@ public class CalculateClassAbiStepTest {
 
     ExecutionContext executionContext = TestExecutionContext.newInstance();
 
-    new CalculateClassAbiStep(filesystem, binJar, abiJar, AbiGenerationMode.CLASS)
+    new CalculateClassAbiStep(
+            filesystem, binJar, abiJar, AbiGenerationMode.CLASS, CLASS_ABI_CACHE_MAX_SIZE_BYTES)
         .execute(executionContext);
 
     String seenHash = filesystem.computeSha1(Paths.get("abi.jar")).getHash();
@@ -79,4 +85,45 @@ public class CalculateClassAbiStepTest {
               .getValue(CustomJarOutputStream.DIGEST_ATTRIBUTE_NAME));
     }
   }
+
+  @Test
+  public void shouldCalculateTheSameAbiFromCachedStubs() throws IOException {
+    Path outDir = temp.newFolder().toAbsolutePath();
+    ProjectFilesystem filesystem = TestProjectFilesystems.createProjectFilesystem(outDir);
+
+    Path directory = TestDataHelper.getTestDataDirectory(this);
+    Path source = directory.resolve("prebuilt/junit.jar");
+    Path binJar = Paths.get("source.jar");
+    Files.copy(source, outDir.resolve(binJar));
+
+    ExecutionContext executionContext = TestExecutionContext.newInstance();
+    new CalculateClassAbiStep(
+            filesystem,
+            binJar,
+            outDir.resolve("first-abi.jar"),
+            AbiGenerationMode.CLASS,
+            CLASS_ABI_CACHE_MAX_SIZE_BYTES)
+        .execute(executionContext);
+    Path cacheDir = CalculateClassAbiStep.getClassAbiCacheDir(filesystem);
+    long cachedStubs;
+    try (Stream<Path> files = Files.walk(cacheDir)) {
+      cachedStubs = files.filter(Files::isRegularFile).count();
+    }
+    assertThat(cachedStubs, Matchers.greaterThan(0L));
+
+    new CalculateClassAbiStep(
+            filesystem,
+            binJar,
+            outDir.resolve("second-abi.jar"),
+            AbiGenerationMode.CLASS,
+            CLASS_ABI_CACHE_MAX_SIZE_BYTES)
+        .execute(executionContext);
+
+    assertEquals(
+        filesystem.computeSha1(Paths.get("first-abi.jar")),
+        filesystem.computeSha1(Paths.get("second-abi.jar")));
+    try (Stream<Path> files = Files.walk(cacheDir)) {
+      assertEquals(cachedStubs, files.filter(Files::isRegularFile).count());
+    }
+  }
 }
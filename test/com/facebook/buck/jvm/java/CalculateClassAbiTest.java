@@ -16,6 +16,7 @@
 
 package com.facebook.buck.jvm.java;
 
+import static com.facebook.buck.jvm.java.JavaCompilationConstants.DEFAULT_JAVA_CONFIG;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertThat;
 import static org.junit.Assert.assertTrue;
@@ -85,7 +86,11 @@ public class CalculateClassAbiTest {
     BuildTarget target = BuildTargetFactory.newInstance("//:library-abi");
     CalculateClassAbi calculateAbi =
         CalculateClassAbi.of(
-            target, graphBuilder, filesystem, DefaultBuildTargetSourcePath.of(javaLibraryTarget));
+            target,
+            graphBuilder,
+            filesystem,
+            DefaultBuildTargetSourcePath.of(javaLibraryTarget),
+            DEFAULT_JAVA_CONFIG.getClassAbiCacheMaxSizeBytes());
 
     FileHashLoader initialHashCache =
         StackedFileHashCache.createDefaultHashCaches(filesystem, FileHashCacheMode.DEFAULT);
@@ -139,7 +144,11 @@ public class CalculateClassAbiTest {
     BuildTarget target = BuildTargetFactory.newInstance("//:library-abi");
     CalculateClassAbi calculateAbi =
         CalculateClassAbi.of(
-            target, ruleFinder, filesystem, DefaultBuildTargetSourcePath.of(javaLibraryTarget));
+            target,
+            ruleFinder,
+            filesystem,
+            DefaultBuildTargetSourcePath.of(javaLibraryTarget),
+            DEFAULT_JAVA_CONFIG.getClassAbiCacheMaxSizeBytes());
 
     FileHashLoader initialHashCache =
         StackedFileHashCache.createDefaultHashCaches(filesystem, FileHashCacheMode.DEFAULT);
@@ -17,6 +17,7 @@
 package com.facebook.buck.jvm.java;
 
 import static com.facebook.buck.jvm.java.JavaCompilationConstants.DEFAULT_JAVAC_OPTIONS;
+import static com.facebook.buck.jvm.java.JavaCompilationConstants.DEFAULT_JAVA_CONFIG;
 import static org.hamcrest.Matchers.containsString;
 import static org.hamcrest.Matchers.equalTo;
 import static org.hamcrest.Matchers.is;
@@ -1592,7 +1593,8 @@ public class DefaultJavaLibraryTest extends AbiCompilationModeTest {
               target,
               graphBuilder,
               new FakeProjectFilesystem(),
-              FakeSourcePath.of("java/src/com/facebook/somejava/library/library-abi.jar"));
+              FakeSourcePath.of("java/src/com/facebook/somejava/library/library-abi.jar"),
+              DEFAULT_JAVA_CONFIG.getClassAbiCacheMaxSizeBytes());
         }
       };
 
@@ -53,6 +53,7 @@ public class FakeJavac implements Javac {
       Path workingDirectory,
       boolean trackClassUsage,
       boolean trackJavacPhaseEvents,
+      boolean trackSourceClassUsage,
       @Nullable JarParameters abiJarParameters,
       @Nullable JarParameters libraryJarParameters,
       AbiGenerationMode abiGenerationMode,
@@ -0,0 +1,195 @@
+/*
+ * Copyright 2019-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.jvm.java;
+
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import com.facebook.buck.core.build.execution.context.ExecutionContext;
+import com.facebook.buck.core.model.BuildTarget;
+import com.facebook.buck.core.model.BuildTargetFactory;
+import com.facebook.buck.core.rules.resolver.impl.TestActionGraphBuilder;
+import com.facebook.buck.io.filesystem.ProjectFilesystem;
+import com.facebook.buck.io.filesystem.TestProjectFilesystems;
+import com.facebook.buck.step.StepExecutionResult;
+import com.facebook.buck.step.TestExecutionContext;
+import com.facebook.buck.testutil.TemporaryPaths;
+import com.google.common.collect.ImmutableSortedSet;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.stream.Stream;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+public class IncrementalJavacStepTest {
+  @Rule public TemporaryPaths tmp = new TemporaryPaths();
+
+  private ProjectFilesystem filesystem;
+  private BuildTarget target;
+  private CompilerOutputPaths outputPaths;
+
+  @Before
+  public void setUp() throws IOException {
+    filesystem = TestProjectFilesystems.createProjectFilesystem(tmp.getRoot());
+    target = BuildTargetFactory.newInstance(filesystem.getRootPath(), "//foo:lib");
+    outputPaths = CompilerOutputPaths.of(target, filesystem);
+
+    writeSource("A", "class A { int a() { return B.b(); } }");
+    writeSource("B", "class B { static int b() { return 1; } }");
+    writeSource("C", "class C { static class Inner {} }");
+    writeSource("D", "class D {}");
+  }
+
+  @Test
+  public void firstBuildCompilesAllSources() throws Exception {
+    assertTrue(build().isSuccess());
+
+    assertThat(getRecompiledSources(), containsInAnyOrder("A", "B", "C", "D"));
+    assertClassesExist("A", "B", "C", "C$Inner", "D");
+  }
+
+  @Test
+  public void changedMethodBodyOnlyRecompilesItsSource() throws Exception {
+    assertTrue(build().isSuccess());
+
+    writeSource("B", "class B { static int b() { return 2; } }");
+    assertTrue(build().isSuccess());
+
+    assertThat(getRecompiledSources(), containsInAnyOrder("B"));
+    assertClassesExist("A", "B", "C", "C$Inner", "D");
+  }
+
+  @Test
+  public void changedAbiRecompilesDependentSources() throws Exception {
+    assertTrue(build().isSuccess());
+
+    writeSource("B", "class B { static int b() { return 1; } static void c() {} }");
+    assertTrue(build().isSuccess());
+
+    assertThat(getRecompiledSources(), containsInAnyOrder("A", "B"));
+    assertClassesExist("A", "B", "C", "C$Inner", "D");
+  }
+
+  @Test
+  public void brokenDependentSourcesFailTheBuild() throws Exception {
+    assertTrue(build().isSuccess());
+
+    writeSource("B", "class B { static long b() { return 1; } }");
+    assertFalse(build().isSuccess());
+
+    writeSource("B", "class B { static int b() { return 1; } }");
+    assertTrue(build().isSuccess());
+    assertClassesExist("A", "B", "C", "C$Inner", "D");
+  }
+
+  @Test
+  public void unchangedSourcesAreNotRecompiled() throws Exception {
+    assertTrue(build().isSuccess());
+    assertTrue(build().isSuccess());
+
+    assertFalse(filesystem.exists(getUsageFile()));
+    assertClassesExist("A", "B", "C", "C$Inner", "D");
+  }
+
+  @Test
+  public void classesOfRemovedSourcesAreRemoved() throws Exception {
+    assertTrue(build().isSuccess());
+
+    assertTrue(build("A", "B", "D").isSuccess());
+
+    assertClassesExist("A", "B", "D");
+    assertFalse(filesystem.exists(getClassFile("C")));
+    assertFalse(filesystem.exists(getClassFile("C$Inner")));
+  }
+
+  private StepExecutionResult build(String... classNames) throws Exception {
+    if (classNames.length == 0) {
+      classNames = new String[] {"A", "B", "C", "D"};
+    }
+    ImmutableSortedSet.Builder<Path> sources = ImmutableSortedSet.naturalOrder();
+    for (String className : classNames) {
+      sources.add(getSourcePath(className));
+    }
+
+    // Like the steps preparing the outputs of the rule.
+    filesystem.deleteRecursivelyIfExists(outputPaths.getClassesDir());
+    filesystem.mkdirs(outputPaths.getClassesDir());
+    filesystem.mkdirs(outputPaths.getAnnotationPath());
+    filesystem.mkdirs(outputPaths.getWorkingDirectory());
+    filesystem.mkdirs(outputPaths.getPathToSourcesList().getParent());
+
+    ExecutionContext context = TestExecutionContext.newInstance();
+    return new IncrementalJavacStep(
+            new JdkProvidedInMemoryJavac(),
+            JavaCompilationConstants.DEFAULT_JAVAC_OPTIONS,
+            target,
+            new TestActionGraphBuilder().getSourcePathResolver(),
+            filesystem,
+            new ClasspathChecker(),
+            CompilerParameters.builder()
+                .setScratchPaths(target, filesystem)
+                .setSourceFilePaths(sources.build())
+                .build())
+        .execute(context);
+  }
+
+  private void writeSource(String className, String contents) throws IOException {
+    Path path = filesystem.resolve(getSourcePath(className));
+    Files.createDirectories(path.getParent());
+    Files.write(path, contents.getBytes(StandardCharsets.UTF_8));
+  }
+
+  private static Path getSourcePath(String className) {
+    return Paths.get("foo", className + ".java");
+  }
+
+  private Path getClassFile(String className) {
+    return outputPaths.getClassesDir().resolve(className + ".class");
+  }
+
+  private Path getUsageFile() {
+    return CompilerOutputPaths.getSourceClassUsageFilePath(target, filesystem);
+  }
+
+  private Iterable<String> getRecompiledSources() throws IOException {
+    return SourceClassUsageTracker.readFile(filesystem.resolve(getUsageFile())).keySet().stream()
+        .map(source -> Paths.get(source).getFileName().toString().replace(".java", ""))
+        .collect(ImmutableSortedSet.toImmutableSortedSet(String::compareTo));
+  }
+
+  private void assertClassesExist(String... classNames) {
+    for (String className : classNames) {
+      assertTrue(className, filesystem.exists(getClassFile(className)));
+    }
+    assertEquals(classNames.length, countClassFiles());
+  }
+
+  private long countClassFiles() {
+    try (Stream<Path> files = Files.walk(filesystem.resolve(outputPaths.getClassesDir()))) {
+      return files.filter(file -> file.toString().endsWith(".class")).count();
+    } catch (IOException e) {
+      throw new AssertionError(e);
+    }
+  }
+}
@@ -125,7 +125,8 @@ public class Jsr199JavacIntegrationTest {
             createProjectFilesystem(),
             executionContext.getProjectFilesystemFactory(),
             executionContext.getEnvironment(),
-            executionContext.getProcessExecutor());
+            executionContext.getProcessExecutor(),
+            Optional.empty());
 
     int exitCode =
         javac
@@ -141,6 +142,7 @@ public class Jsr199JavacIntegrationTest {
                 Paths.get("working"),
                 false,
                 false,
+                false,
                 null,
                 null,
                 AbiGenerationMode.CLASS,
@@ -180,7 +182,8 @@ public class Jsr199JavacIntegrationTest {
             createProjectFilesystem(),
             executionContext.getProjectFilesystemFactory(),
             executionContext.getEnvironment(),
-            executionContext.getProcessExecutor());
+            executionContext.getProcessExecutor(),
+            Optional.empty());
 
     int exitCode =
         javac
@@ -196,6 +199,7 @@ public class Jsr199JavacIntegrationTest {
                 Paths.get("working"),
                 false,
                 false,
+                false,
                 null,
                 null,
                 AbiGenerationMode.CLASS,
@@ -283,7 +287,8 @@ public class Jsr199JavacIntegrationTest {
             createProjectFilesystem(),
             executionContext.getProjectFilesystemFactory(),
             executionContext.getEnvironment(),
-            executionContext.getProcessExecutor());
+            executionContext.getProcessExecutor(),
+            Optional.empty());
 
     boolean caught = false;
 
@@ -301,6 +306,7 @@ public class Jsr199JavacIntegrationTest {
               Paths.get("working"),
               false,
               false,
+              false,
               null,
               null,
               AbiGenerationMode.CLASS,
@@ -376,7 +382,8 @@ public class Jsr199JavacIntegrationTest {
             createProjectFilesystem(),
             executionContext.getProjectFilesystemFactory(),
             executionContext.getEnvironment(),
-            executionContext.getProcessExecutor());
+            executionContext.getProcessExecutor(),
+            Optional.empty());
 
     Invocation buildInvocation =
         javac.newBuildInvocation(
@@ -391,6 +398,7 @@ public class Jsr199JavacIntegrationTest {
             Paths.get("working"),
             false,
             false,
+            false,
             null,
             null,
             AbiGenerationMode.CLASS,
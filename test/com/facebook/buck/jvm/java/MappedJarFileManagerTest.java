@@ -0,0 +1,216 @@
+/*
+ * Copyright 2019-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.jvm.java;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import com.facebook.buck.testutil.FakeFileHashCache;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Iterables;
+import com.google.common.hash.HashCode;
+import com.google.common.io.ByteStreams;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.EnumSet;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import javax.tools.DiagnosticCollector;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.StandardLocation;
+import javax.tools.ToolProvider;
+import org.hamcrest.Matchers;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/** Tests {@link MappedJarFileManager} */
+public class MappedJarFileManagerTest {
+
+  @Rule public TemporaryFolder temp = new TemporaryFolder();
+
+  private JavaCompiler compiler;
+  private Path libJar;
+  private Path classesDir;
+
+  @Before
+  public void setUp() throws IOException {
+    compiler = ToolProvider.getSystemJavaCompiler();
+    libJar = temp.getRoot().toPath().resolve("lib.jar");
+
+    Path libClasses = temp.newFolder("lib").toPath();
+    compile(
+        libClasses,
+        ImmutableList.of(),
+        "lib/Lib.java",
+        "package lib; public class Lib { public static class Inner {} }");
+    try (OutputStream outputStream = Files.newOutputStream(libJar);
+        JarOutputStream jar = new JarOutputStream(outputStream)) {
+      for (String name : ImmutableList.of("lib/Lib.class", "lib/Lib$Inner.class")) {
+        jar.putNextEntry(new JarEntry(name));
+        jar.write(Files.readAllBytes(libClasses.resolve(name)));
+      }
+    }
+
+    classesDir = temp.newFolder("classes").toPath();
+    compile(
+        classesDir,
+        ImmutableList.of(),
+        "other/Other.java",
+        "package other; public class Other {}");
+  }
+
+  @Test
+  public void compilesAgainstMappedJarsAndDirectories() throws IOException {
+    Path out = temp.newFolder("out").toPath();
+    boolean success =
+        compile(
+            out,
+            ImmutableList.of(
+                "-classpath", libJar + File.pathSeparator + classesDir, "-implicit:none"),
+            "app/App.java",
+            "package app; public class App { lib.Lib.Inner inner; other.Other other; }");
+
+    assertTrue(success);
+    assertTrue(Files.exists(out.resolve("app/App.class")));
+  }
+
+  @Test
+  public void listsClassesOfJarsOnClasspath() throws IOException {
+    try (StandardJavaFileManager fileManager =
+        new MappedJarFileManager(
+            compiler.getStandardFileManager(null, null, null),
+            new MappedJarCache(100),
+            newHashLoader(),
+            ImmutableSet.of(),
+            ImmutableList.of())) {
+      fileManager.setLocation(
+          StandardLocation.CLASS_PATH, ImmutableList.of(libJar.toFile(), classesDir.toFile()));
+
+      Iterable<JavaFileObject> libClasses =
+          fileManager.list(
+              StandardLocation.CLASS_PATH, "lib", EnumSet.of(JavaFileObject.Kind.CLASS), false);
+      assertThat(
+          ImmutableSet.copyOf(Iterables.transform(libClasses, JavaFileObject::getName)),
+          Matchers.containsInAnyOrder(libJar + "(lib/Lib.class)", libJar + "(lib/Lib$Inner.class)"));
+      for (JavaFileObject libClass : libClasses) {
+        assertThat(
+            fileManager.inferBinaryName(StandardLocation.CLASS_PATH, libClass),
+            Matchers.startsWith("lib.Lib"));
+      }
+
+      JavaFileObject otherClass =
+          Iterables.getOnlyElement(
+              fileManager.list(
+                  StandardLocation.CLASS_PATH,
+                  "other",
+                  EnumSet.of(JavaFileObject.Kind.CLASS),
+                  false));
+      assertEquals(
+          "other.Other", fileManager.inferBinaryName(StandardLocation.CLASS_PATH, otherClass));
+    }
+  }
+
+  @Test
+  public void readsJarsInOutputDirectories() throws IOException {
+    try (StandardJavaFileManager fileManager =
+        new MappedJarFileManager(
+            compiler.getStandardFileManager(null, null, null),
+            new MappedJarCache(100),
+            newHashLoader(),
+            ImmutableSet.of(temp.getRoot().toPath()),
+            ImmutableList.of())) {
+      fileManager.setLocation(StandardLocation.CLASS_PATH, ImmutableList.of(libJar.toFile()));
+
+      Iterable<JavaFileObject> libClasses =
+          fileManager.list(
+              StandardLocation.CLASS_PATH, "lib", EnumSet.of(JavaFileObject.Kind.CLASS), false);
+      assertEquals(2, Iterables.size(libClasses));
+      for (JavaFileObject libClass : libClasses) {
+        assertThat(libClass, Matchers.instanceOf(MappedJarEntryJavaFileObject.class));
+        try (InputStream inputStream = libClass.openInputStream()) {
+          assertTrue(ByteStreams.toByteArray(inputStream).length > 0);
+        }
+      }
+    }
+  }
+
+  @Test
+  public void listsJarsWithoutHashesWithJavac() throws IOException {
+    try (StandardJavaFileManager fileManager =
+        new MappedJarFileManager(
+            compiler.getStandardFileManager(null, null, null),
+            new MappedJarCache(100),
+            new FakeFileHashCache(ImmutableMap.of()),
+            ImmutableSet.of(),
+            ImmutableList.of())) {
+      fileManager.setLocation(StandardLocation.CLASS_PATH, ImmutableList.of(libJar.toFile()));
+
+      Iterable<JavaFileObject> libClasses =
+          fileManager.list(
+              StandardLocation.CLASS_PATH, "lib", EnumSet.of(JavaFileObject.Kind.CLASS), false);
+      assertEquals(2, Iterables.size(libClasses));
+      for (JavaFileObject libClass : libClasses) {
+        assertThat(
+            libClass, Matchers.not(Matchers.instanceOf(MappedJarEntryJavaFileObject.class)));
+      }
+    }
+  }
+
+  private FakeFileHashCache newHashLoader() {
+    return new FakeFileHashCache(
+        ImmutableMap.of(libJar.toAbsolutePath(), HashCode.fromString("abcdef")));
+  }
+
+  private boolean compile(
+      Path out, ImmutableList<String> options, String sourcePath, String source)
+      throws IOException {
+    Path sourceFile = temp.getRoot().toPath().resolve("src").resolve(sourcePath);
+    Files.createDirectories(sourceFile.getParent());
+    Files.write(sourceFile, source.getBytes(StandardCharsets.UTF_8));
+
+    DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+    try (StandardJavaFileManager fileManager =
+        new MappedJarFileManager(
+            compiler.getStandardFileManager(diagnostics, null, null),
+            new MappedJarCache(100),
+            newHashLoader(),
+            ImmutableSet.of(),
+            options)) {
+      return compiler
+          .getTask(
+              null,
+              fileManager,
+              diagnostics,
+              ImmutableList.<String>builder().addAll(options).add("-d", out.toString()).build(),
+              null,
+              fileManager.getJavaFileObjects(sourceFile.toFile()))
+          .call();
+    }
+  }
+}
@@ -0,0 +1,187 @@
+/*
+ * Copyright 2019-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.jvm.java;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.hash.HashCode;
+import com.google.common.io.ByteStreams;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipOutputStream;
+import javax.tools.JavaFileObject;
+import org.hamcrest.Matchers;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/** Tests {@link MappedJar} */
+public class MappedJarTest {
+
+  @Rule public TemporaryFolder temp = new TemporaryFolder();
+
+  @Test
+  public void listsEntriesOfDirectory() throws IOException {
+    Path jarPath =
+        writeJar(
+            "com/example/Foo.class",
+            "com/example/Foo$Bar.class",
+            "com/example/Foo.java",
+            "com/example/sub/Baz.class",
+            "com/Other.class");
+    MappedJar jar = MappedJar.open(jarPath);
+
+    assertEquals(5, jar.getEntryCount());
+    assertThat(
+        listNames(jar, "com/example", EnumSet.of(JavaFileObject.Kind.CLASS), false),
+        Matchers.containsInAnyOrder(
+            jarPath + "(com/example/Foo.class)", jarPath + "(com/example/Foo$Bar.class)"));
+    assertThat(
+        listNames(jar, "com/example", EnumSet.allOf(JavaFileObject.Kind.class), true),
+        Matchers.containsInAnyOrder(
+            jarPath + "(com/example/Foo.class)",
+            jarPath + "(com/example/Foo$Bar.class)",
+            jarPath + "(com/example/Foo.java)",
+            jarPath + "(com/example/sub/Baz.class)"));
+    assertThat(
+        listNames(jar, "com/exam", EnumSet.allOf(JavaFileObject.Kind.class), true),
+        Matchers.empty());
+  }
+
+  @Test
+  public void readsStoredAndDeflatedEntries() throws IOException {
+    Path jarPath = temp.getRoot().toPath().resolve("lib.jar");
+    byte[] stored = "stored contents".getBytes(StandardCharsets.UTF_8);
+    byte[] deflated = "deflated contents, deflated contents".getBytes(StandardCharsets.UTF_8);
+    try (ZipOutputStream zip = new ZipOutputStream(Files.newOutputStream(jarPath))) {
+      zip.putNextEntry(new ZipEntry("a/"));
+      ZipEntry storedEntry = new ZipEntry("a/Stored.class");
+      CRC32 crc = new CRC32();
+      crc.update(stored);
+      storedEntry.setMethod(ZipEntry.STORED);
+      storedEntry.setSize(stored.length);
+      storedEntry.setCrc(crc.getValue());
+      zip.putNextEntry(storedEntry);
+      zip.write(stored);
+      zip.putNextEntry(new ZipEntry("a/Deflated.class"));
+      zip.write(deflated);
+    }
+
+    for (MappedJar jar : ImmutableList.of(MappedJar.open(jarPath), MappedJar.read(jarPath))) {
+      List<JavaFileObject> entries = new ArrayList<>();
+      jar.list("a", EnumSet.of(JavaFileObject.Kind.CLASS), false, entries);
+      assertEquals(2, entries.size());
+      for (JavaFileObject entry : entries) {
+        byte[] expected = entry.getName().endsWith("Stored.class)") ? stored : deflated;
+        try (InputStream inputStream = entry.openInputStream()) {
+          assertEquals(
+              new String(expected, StandardCharsets.UTF_8),
+              new String(ByteStreams.toByteArray(inputStream), StandardCharsets.UTF_8));
+        }
+      }
+    }
+  }
+
+  @Test
+  public void entriesHaveJarUrisAndBinaryNames() throws IOException {
+    Path jarPath = writeJar("com/example/Foo$Bar.class");
+    MappedJar jar = MappedJar.open(jarPath);
+
+    List<JavaFileObject> entries = new ArrayList<>();
+    jar.list("com/example", EnumSet.of(JavaFileObject.Kind.CLASS), false, entries);
+    MappedJarEntryJavaFileObject entry = (MappedJarEntryJavaFileObject) entries.get(0);
+
+    assertEquals(
+        URI.create("jar:" + jarPath.toFile().toURI() + "!/com/example/Foo$Bar.class"),
+        entry.toUri());
+    assertEquals("com.example.Foo$Bar", entry.getBinaryName());
+    assertTrue(entry.isNameCompatible("Foo$Bar", JavaFileObject.Kind.CLASS));
+    assertFalse(entry.isNameCompatible("Bar", JavaFileObject.Kind.CLASS));
+  }
+
+  @Test(expected = ZipException.class)
+  public void failsToOpenFilesThatArentJars() throws IOException {
+    Path notAJar = temp.newFile("not-a.jar").toPath();
+    Files.write(notAJar, "not a jar".getBytes(StandardCharsets.UTF_8));
+    MappedJar.open(notAJar);
+  }
+
+  @Test(expected = ZipException.class)
+  public void failsToReadFilesThatArentJars() throws IOException {
+    Path notAJar = temp.newFile("not-a.jar").toPath();
+    Files.write(notAJar, "not a jar".getBytes(StandardCharsets.UTF_8));
+    MappedJar.read(notAJar);
+  }
+
+  @Test
+  public void cacheReadsJarAgainWhenItsHashChanges() throws IOException {
+    Path jarPath = writeJar("com/example/Foo.class");
+    MappedJarCache cache = new MappedJarCache(100);
+
+    Optional<MappedJar> first = cache.get(jarPath, HashCode.fromInt(1), true);
+    assertTrue(first.isPresent());
+    assertEquals(first, cache.get(jarPath, HashCode.fromInt(1), true));
+
+    Files.delete(jarPath);
+    writeJar("com/example/Foo.class", "com/example/Bar.class");
+    Optional<MappedJar> second = cache.get(jarPath, HashCode.fromInt(2), false);
+    assertTrue(second.isPresent());
+    assertEquals(2, second.get().getEntryCount());
+  }
+
+  @Test
+  public void cacheDoesNotReturnJarsThatCantBeRead() throws IOException {
+    Path notAJar = temp.newFile("not-a.jar").toPath();
+    assertFalse(new MappedJarCache(100).get(notAJar, HashCode.fromInt(1), true).isPresent());
+  }
+
+  private Path writeJar(String... entries) throws IOException {
+    Path jarPath = temp.getRoot().toPath().resolve("lib.jar");
+    try (OutputStream outputStream = Files.newOutputStream(jarPath);
+        ZipOutputStream zip = new ZipOutputStream(outputStream)) {
+      for (String entry : entries) {
+        zip.putNextEntry(new ZipEntry(entry));
+        zip.write(entry.getBytes(StandardCharsets.UTF_8));
+      }
+    }
+    return jarPath;
+  }
+
+  private static ImmutableSet<String> listNames(
+      MappedJar jar, String directory, EnumSet<JavaFileObject.Kind> kinds, boolean recurse) {
+    List<JavaFileObject> result = new ArrayList<>();
+    jar.list(directory, kinds, recurse, result);
+    return result.stream().map(JavaFileObject::getName).collect(ImmutableSet.toImmutableSet());
+  }
+}
@@ -31,7 +31,7 @@ public class PrebuiltJarBuilder
         PrebuiltJar> {
 
   private PrebuiltJarBuilder(BuildTarget target) {
-    super(new PrebuiltJarDescription(), target);
+    super(new PrebuiltJarDescription(JavaCompilationConstants.DEFAULT_JAVA_CONFIG), target);
   }
 
   public static PrebuiltJarBuilder createBuilder(BuildTarget target) {
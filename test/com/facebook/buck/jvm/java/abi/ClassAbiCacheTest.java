@@ -0,0 +1,77 @@
+/*
+ * Copyright 2019-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.jvm.java.abi;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.facebook.buck.testutil.TemporaryPaths;
+import com.google.common.hash.HashCode;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.attribute.FileTime;
+import java.util.Optional;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+public class ClassAbiCacheTest {
+  @Rule public TemporaryPaths temp = new TemporaryPaths();
+
+  private ClassAbiCache cache;
+
+  @Before
+  public void setUp() {
+    cache = new ClassAbiCache(temp.getRoot().resolve("cache"), 100);
+  }
+
+  @Test
+  public void cachedStubsAreRead() {
+    HashCode key = getKey("Foo");
+    byte[] stub = new byte[] {1, 2, 3};
+
+    assertEquals(Optional.empty(), cache.get(key));
+    cache.put(key, stub);
+
+    assertArrayEquals(stub, cache.get(key).get());
+  }
+
+  @Test
+  public void leastRecentlyUsedStubsArePrunedWhenTheCacheIsFull() throws IOException {
+    HashCode usedKey = getKey("Used");
+    HashCode unusedKey = getKey("Unused");
+    cache.put(usedKey, new byte[40]);
+    cache.put(unusedKey, new byte[40]);
+    Files.setLastModifiedTime(cache.getPath(usedKey), FileTime.fromMillis(1000));
+    Files.setLastModifiedTime(cache.getPath(unusedKey), FileTime.fromMillis(2000));
+    assertTrue(cache.get(usedKey).isPresent());
+
+    HashCode newKey = getKey("New");
+    cache.put(newKey, new byte[25]);
+
+    assertTrue(cache.get(usedKey).isPresent());
+    assertFalse(cache.get(unusedKey).isPresent());
+    assertTrue(cache.get(newKey).isPresent());
+  }
+
+  private static HashCode getKey(String className) {
+    return ClassAbiCache.getKey(className.getBytes(StandardCharsets.UTF_8), AbiGenerationMode.CLASS, false);
+  }
+}
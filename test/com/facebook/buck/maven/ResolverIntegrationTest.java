@@ -36,6 +36,7 @@ import com.facebook.buck.io.file.MorePaths;
 import com.facebook.buck.io.filesystem.ProjectFilesystem;
 import com.facebook.buck.io.filesystem.impl.FakeProjectFilesystem;
 import com.facebook.buck.io.pathformat.PathFormatter;
+import com.facebook.buck.jvm.java.JavaBuckConfig;
 import com.facebook.buck.jvm.java.PrebuiltJarDescription;
 import com.facebook.buck.maven.aether.Repository;
 import com.facebook.buck.parser.PythonDslProjectBuildFileParser;
@@ -106,7 +107,9 @@ public class ResolverIntegrationTest {
     PythonBuckConfig pythonBuckConfig = new PythonBuckConfig(buckConfig);
 
     ImmutableSet<DescriptionWithTargetGraph<?>> descriptions =
-        ImmutableSet.of(new RemoteFileDescription(), new PrebuiltJarDescription());
+        ImmutableSet.of(
+            new RemoteFileDescription(),
+            new PrebuiltJarDescription(buckConfig.getView(JavaBuckConfig.class)));
 
     buildFileParser =
         new PythonDslProjectBuildFileParser(
@@ -17,6 +17,8 @@
 package com.facebook.buck.parser;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 
 import com.facebook.buck.core.cell.Cell;
 import com.facebook.buck.core.cell.TestCellBuilder;
@@ -27,6 +29,8 @@ import com.facebook.buck.core.model.BuildTarget;
 import com.facebook.buck.core.model.BuildTargetFactory;
 import com.facebook.buck.core.model.RuleType;
 import com.facebook.buck.core.model.UnconfiguredBuildTargetView;
+import com.facebook.buck.core.model.targetgraph.FakeTargetNodeBuilder;
+import com.facebook.buck.core.model.targetgraph.TargetNode;
 import com.facebook.buck.core.model.targetgraph.impl.ImmutableRawTargetNode;
 import com.facebook.buck.core.model.targetgraph.raw.RawTargetNode;
 import com.facebook.buck.core.parser.buildtargetpattern.UnconfiguredBuildTargetParser;
@@ -36,12 +40,16 @@ import com.facebook.buck.io.pathformat.PathFormatter;
 import com.facebook.buck.parser.DaemonicCellState.Cache;
 import com.facebook.buck.parser.api.BuildFileManifestFactory;
 import com.facebook.buck.parser.exceptions.BuildTargetException;
+import com.facebook.buck.util.types.Pair;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.hash.HashCode;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.HashSet;
 import java.util.Optional;
+import java.util.Set;
 import org.junit.Before;
 import org.junit.Test;
 
@@ -154,4 +162,63 @@ public class DaemonicCellStateTest {
         Optional.empty(),
         cache.lookupComputedNode(target.getUnconfiguredBuildTargetView()));
   }
+
+  @Test
+  public void testTargetNodeAttributesHashIsInvalidatedWithBuildFile()
+      throws BuildTargetException {
+    Cache<Pair<BuildTarget, String>, HashCode> cache =
+        state.getCache(DaemonicCellState.TARGET_NODE_ATTRIBUTES_HASH_CACHE_TYPE);
+    BuildTarget target =
+        BuildTargetFactory.newInstance(filesystem.getRootPath(), "//path/to:target");
+    Pair<BuildTarget, String> key = new Pair<>(target, "murmur3");
+    HashCode hash = HashCode.fromString("abcdef");
+
+    cache.putComputedNodeIfRawNodePresent(key, hash);
+    assertEquals(
+        "Hash of a target without raw node should be ignored",
+        Optional.empty(),
+        cache.lookupComputedNode(key));
+
+    populateDummyRawNode(state, target);
+    cache.putComputedNodeIfRawNodePresent(key, hash);
+    assertEquals(Optional.of(hash), cache.lookupComputedNode(key));
+
+    state.invalidatePath(filesystem.resolve("path/to/BUCK"));
+    assertEquals(Optional.empty(), cache.lookupComputedNode(key));
+  }
+
+  @Test
+  public void testReverseDependenciesAreInvalidatedWithBuildFile() throws BuildTargetException {
+    Cache<BuildTarget, TargetNode<?>> cache =
+        state.getCache(DaemonicCellState.TARGET_NODE_CACHE_TYPE);
+    BuildTarget dep = BuildTargetFactory.newInstance(filesystem.getRootPath(), "//path/to:dep");
+    BuildTarget target =
+        BuildTargetFactory.newInstance(filesystem.getRootPath(), "//other/path:target");
+    populateDummyRawNode(state, dep);
+    populateDummyRawNode(state, target);
+
+    cache.putComputedNodeIfNotPresent(dep, FakeTargetNodeBuilder.newBuilder(dep).build());
+    cache.putComputedNodeIfNotPresent(
+        target, FakeTargetNodeBuilder.newBuilder(target).setDeps(dep).build());
+    assertTrue(state.hasIndexedDependencies(target.getUnconfiguredBuildTargetView()));
+    assertEquals(
+        ImmutableSet.of(target.getUnconfiguredBuildTargetView()),
+        reverseDependencies(dep.getUnconfiguredBuildTargetView()));
+
+    state.invalidatePath(filesystem.resolve("path/to/BUCK"));
+    assertEquals(
+        "Reverse dependencies of an invalidated target are still valid",
+        ImmutableSet.of(target.getUnconfiguredBuildTargetView()),
+        reverseDependencies(dep.getUnconfiguredBuildTargetView()));
+
+    state.invalidatePath(filesystem.resolve("other/path/BUCK"));
+    assertFalse(state.hasIndexedDependencies(target.getUnconfiguredBuildTargetView()));
+    assertEquals(ImmutableSet.of(), reverseDependencies(dep.getUnconfiguredBuildTargetView()));
+  }
+
+  private Set<UnconfiguredBuildTargetView> reverseDependencies(UnconfiguredBuildTargetView target) {
+    Set<UnconfiguredBuildTargetView> result = new HashSet<>();
+    state.addReverseDependencies(target, result);
+    return result;
+  }
 }
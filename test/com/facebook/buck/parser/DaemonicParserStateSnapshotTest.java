@@ -0,0 +1,154 @@
+/*
+ * Copyright 2019-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.parser;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.facebook.buck.core.cell.Cell;
+import com.facebook.buck.core.cell.TestCellBuilder;
+import com.facebook.buck.event.BuckEventBus;
+import com.facebook.buck.event.BuckEventBusForTests;
+import com.facebook.buck.io.filesystem.ProjectFilesystem;
+import com.facebook.buck.io.filesystem.impl.FakeProjectFilesystem;
+import com.facebook.buck.parser.api.BuildFileManifest;
+import com.facebook.buck.parser.api.ImmutableBuildFileManifest;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.ImmutableSortedSet;
+import java.nio.file.Path;
+import java.util.Optional;
+import org.junit.Before;
+import org.junit.Test;
+
+public class DaemonicParserStateSnapshotTest {
+
+  private static final String VERSION = "version";
+
+  private ProjectFilesystem filesystem;
+  private Cell cell;
+  private BuckEventBus eventBus;
+  private Path snapshotPath;
+  private Path buildFile;
+  private Path include;
+  private BuildFileManifest manifest;
+
+  @Before
+  public void setUp() {
+    filesystem = FakeProjectFilesystem.createJavaOnlyFilesystem();
+    cell = new TestCellBuilder().setFilesystem(filesystem).build();
+    eventBus = BuckEventBusForTests.newInstance();
+    snapshotPath = filesystem.resolve(filesystem.getBuckPaths().getParserStateSnapshot());
+    buildFile = filesystem.resolve("foo/BUCK");
+    include = filesystem.resolve("defs.bzl");
+    manifest =
+        ImmutableBuildFileManifest.of(
+            ImmutableMap.of(
+                "bar", ImmutableMap.of("name", "bar", "buck.base_path", "foo", "srcs", "Bar.java")),
+            ImmutableSortedSet.of(include.toString()),
+            ImmutableMap.of(),
+            Optional.of(ImmutableMap.of()),
+            ImmutableList.of(),
+            ImmutableList.of());
+  }
+
+  private DaemonicParserState writeSnapshot() throws Exception {
+    DaemonicParserState state = new DaemonicParserState(1);
+    state.getRawNodeCache().putComputedNodeIfNotPresent(cell, buildFile, manifest, eventBus);
+    state.writeSnapshot(
+        snapshotPath, VERSION, ImmutableMap.of(filesystem.getRootPath(), "c:123:4"));
+    return state;
+  }
+
+  @Test
+  public void restoresBuildFileManifestsAndWatchmanClocks() throws Exception {
+    writeSnapshot();
+
+    DaemonicParserState restored = new DaemonicParserState(1);
+    Optional<ImmutableMap<Path, String>> clocks =
+        restored.restoreSnapshot(
+            snapshotPath, VERSION, cell.getAllCells(), ImmutableSet.of(filesystem.getRootPath()));
+
+    assertEquals(Optional.of(ImmutableMap.of(filesystem.getRootPath(), "c:123:4")), clocks);
+    Optional<BuildFileManifest> restoredManifest =
+        restored.getRawNodeCache().lookupComputedNode(cell, buildFile, eventBus);
+    assertTrue(restoredManifest.isPresent());
+    assertEquals(manifest.getTargets(), restoredManifest.get().getTargets());
+    assertEquals(manifest.getIncludes(), restoredManifest.get().getIncludes());
+  }
+
+  @Test
+  public void changesToDependenciesInvalidateRestoredManifests() throws Exception {
+    writeSnapshot();
+
+    DaemonicParserState restored = new DaemonicParserState(1);
+    restored.restoreSnapshot(
+        snapshotPath, VERSION, cell.getAllCells(), ImmutableSet.of(filesystem.getRootPath()));
+    restored.invalidatePath(include);
+
+    assertFalse(
+        restored.getRawNodeCache().lookupComputedNode(cell, buildFile, eventBus).isPresent());
+  }
+
+  @Test
+  public void snapshotOfAnotherVersionIsIgnored() throws Exception {
+    writeSnapshot();
+
+    DaemonicParserState restored = new DaemonicParserState(1);
+
+    assertFalse(
+        restored
+            .restoreSnapshot(
+                snapshotPath,
+                "other",
+                cell.getAllCells(),
+                ImmutableSet.of(filesystem.getRootPath()))
+            .isPresent());
+    assertFalse(
+        restored.getRawNodeCache().lookupComputedNode(cell, buildFile, eventBus).isPresent());
+  }
+
+  @Test
+  public void snapshotWithoutClockOfWatchedCellIsIgnored() throws Exception {
+    writeSnapshot();
+
+    DaemonicParserState restored = new DaemonicParserState(1);
+
+    assertFalse(
+        restored
+            .restoreSnapshot(
+                snapshotPath,
+                VERSION,
+                cell.getAllCells(),
+                ImmutableSet.of(filesystem.getRootPath(), filesystem.resolve("other")))
+            .isPresent());
+  }
+
+  @Test
+  public void missingSnapshotIsIgnored() {
+    assertFalse(
+        new DaemonicParserState(1)
+            .restoreSnapshot(
+                snapshotPath,
+                VERSION,
+                cell.getAllCells(),
+                ImmutableSet.of(filesystem.getRootPath()))
+            .isPresent());
+  }
+}
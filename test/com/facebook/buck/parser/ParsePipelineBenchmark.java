@@ -0,0 +1,189 @@
+/*
+ * Copyright 2019-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.parser;
+
+import com.facebook.buck.benchmarks.BenchmarkMain;
+import com.facebook.buck.benchmarks.SyntheticRepository;
+import com.facebook.buck.core.cell.Cell;
+import com.facebook.buck.core.graph.transformation.executor.DepsAwareExecutor;
+import com.facebook.buck.core.graph.transformation.executor.impl.DefaultDepsAwareExecutor;
+import com.facebook.buck.core.graph.transformation.model.ComputeResult;
+import com.facebook.buck.core.model.EmptyTargetConfiguration;
+import com.facebook.buck.core.model.targetgraph.TargetNode;
+import com.facebook.buck.event.BuckEventBus;
+import com.facebook.buck.event.BuckEventBusForTests;
+import com.facebook.buck.parser.api.BuildFileManifest;
+import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.runner.RunnerException;
+
+/**
+ * Parses a {@link SyntheticRepository} with a cold daemon: build files to raw nodes, and raw nodes
+ * to target nodes by {@link RawTargetNodeToTargetNodeParsePipeline} with raw nodes already cached.
+ */
+@State(Scope.Benchmark)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class ParsePipelineBenchmark {
+
+  @Param({"1000", "10000"})
+  public int packageCount;
+
+  @Param({"4"})
+  public int fanOut;
+
+  @Param({"10"})
+  public int depth;
+
+  @Param({"1", "8"})
+  public int parsingThreads;
+
+  private SyntheticRepository repository;
+  private DepsAwareExecutor<? super ComputeResult, ?> depsAwareExecutor;
+  private ListeningExecutorService executor;
+  private BuckEventBus eventBus;
+  private Parser parser;
+  private Map<Path, BuildFileManifest> manifests;
+
+  @Setup(Level.Trial)
+  public void setUpRepository() throws Exception {
+    repository = SyntheticRepository.create(packageCount, fanOut, depth, parsingThreads);
+    depsAwareExecutor = DefaultDepsAwareExecutor.of(parsingThreads);
+    executor = MoreExecutors.listeningDecorator(Executors.newFixedThreadPool(parsingThreads));
+    eventBus = BuckEventBusForTests.newInstance();
+    parser = TestParserFactory.create(depsAwareExecutor, repository.getCell());
+
+    manifests = new HashMap<>();
+    try (PerBuildState perBuildState = createPerBuildState(new DaemonicParserState(1))) {
+      for (Path buildFile : repository.getBuildFiles()) {
+        manifests.put(
+            buildFile,
+            perBuildState.getBuildFileManifestJob(repository.getCell(), buildFile).get());
+      }
+    }
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDownRepository() throws IOException {
+    executor.shutdownNow();
+    depsAwareExecutor.close();
+    repository.close();
+  }
+
+  private PerBuildState createPerBuildState(DaemonicParserState daemonicParserState) {
+    return parser
+        .getPerBuildStateFactory()
+        .create(
+            ParsingContext.builder(repository.getCell(), executor).build(), daemonicParserState);
+  }
+
+  /** Parser state of a daemon which hasn't parsed any build file yet. */
+  @State(Scope.Benchmark)
+  public static class ColdDaemon {
+    PerBuildState perBuildState;
+
+    @Setup(Level.Invocation)
+    public void setUp(ParsePipelineBenchmark benchmark) {
+      perBuildState =
+          benchmark.createPerBuildState(new DaemonicParserState(benchmark.parsingThreads));
+    }
+
+    @TearDown(Level.Invocation)
+    public void tearDown() {
+      perBuildState.close();
+    }
+  }
+
+  /** Parser state of a daemon which has cached raw nodes of all build files. */
+  @State(Scope.Benchmark)
+  public static class DaemonWithRawNodes {
+    PerBuildState perBuildState;
+
+    @Setup(Level.Invocation)
+    public void setUp(ParsePipelineBenchmark benchmark) {
+      DaemonicParserState daemonicParserState =
+          new DaemonicParserState(benchmark.parsingThreads);
+      for (Map.Entry<Path, BuildFileManifest> manifest : benchmark.manifests.entrySet()) {
+        daemonicParserState
+            .getRawNodeCache()
+            .putComputedNodeIfNotPresent(
+                benchmark.repository.getCell(),
+                manifest.getKey(),
+                manifest.getValue(),
+                benchmark.eventBus);
+      }
+      perBuildState = benchmark.createPerBuildState(daemonicParserState);
+    }
+
+    @TearDown(Level.Invocation)
+    public void tearDown() {
+      perBuildState.close();
+    }
+  }
+
+  /** Parses all build files to raw nodes. */
+  @Benchmark
+  @BenchmarkMode(Mode.SingleShotTime)
+  public List<BuildFileManifest> rawNodeParsing(ColdDaemon daemon)
+      throws ExecutionException, InterruptedException {
+    List<ListenableFuture<BuildFileManifest>> jobs = new ArrayList<>();
+    for (Path buildFile : repository.getBuildFiles()) {
+      jobs.add(daemon.perBuildState.getBuildFileManifestJob(repository.getCell(), buildFile));
+    }
+    return Futures.allAsList(jobs).get();
+  }
+
+  /** Creates target nodes of all build files from raw nodes cached by the daemon. */
+  @Benchmark
+  @BenchmarkMode(Mode.SingleShotTime)
+  public List<ImmutableList<TargetNode<?>>> targetNodeParsing(DaemonWithRawNodes daemon)
+      throws ExecutionException, InterruptedException {
+    Cell cell = repository.getCell();
+    List<ListenableFuture<ImmutableList<TargetNode<?>>>> jobs = new ArrayList<>();
+    for (Path buildFile : repository.getBuildFiles()) {
+      jobs.add(
+          daemon.perBuildState.getAllTargetNodesJob(
+              cell, buildFile, EmptyTargetConfiguration.INSTANCE));
+    }
+    return Futures.allAsList(jobs).get();
+  }
+
+  public static void main(String[] args) throws IOException, RunnerException {
+    BenchmarkMain.main(args);
+  }
+}
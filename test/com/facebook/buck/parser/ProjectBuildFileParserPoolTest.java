@@ -39,6 +39,7 @@ import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
 import com.google.common.util.concurrent.ListeningExecutorService;
 import com.google.common.util.concurrent.MoreExecutors;
+import java.io.IOException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.List;
@@ -51,6 +52,8 @@ import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import javax.annotation.Nullable;
+import org.easymock.Capture;
+import org.easymock.CaptureType;
 import org.easymock.EasyMock;
 import org.easymock.IAnswer;
 import org.hamcrest.Matchers;
@@ -155,6 +158,8 @@ public class ProjectBuildFileParserPoolTest {
                           return EMPTY_BUILD_FILE_MANIFEST;
                         })
                     .anyTimes();
+                parser.prefetch(EasyMock.anyObject());
+                EasyMock.expectLastCall().anyTimes();
                 parser.close();
                 EasyMock.expectLastCall()
                     .andAnswer(
@@ -320,7 +325,7 @@ public class ProjectBuildFileParserPoolTest {
             createMockParserFactory(
                 () -> {
                   if (throwWhileParsing.get()) {
-                    throw new Exception(exceptionMessage);
+                    throw new IOException(exceptionMessage);
                   }
                   return EMPTY_BUILD_FILE_MANIFEST;
                 }))) {
@@ -344,6 +349,111 @@ public class ProjectBuildFileParserPoolTest {
     }
   }
 
+  @Test
+  public void prefetchesQueuedRequestsInBatches() throws Exception {
+    Cell cell = new TestCellBuilder().build();
+    ListeningExecutorService executorService =
+        MoreExecutors.listeningDecorator(Executors.newFixedThreadPool(1));
+
+    CountDownLatch firstJobRunning = new CountDownLatch(1);
+    CountDownLatch allJobsScheduled = new CountDownLatch(1);
+    Capture<List<Path>> prefetchedBuildFiles = Capture.newInstance(CaptureType.ALL);
+    try (ProjectBuildFileParserPool parserPool =
+        createParserPool(
+            /* maxParsers */ 1,
+            (eventBus, input, watchman, threadSafe) -> {
+              ProjectBuildFileParser parser = EasyMock.createMock(ProjectBuildFileParser.class);
+              try {
+                EasyMock.expect(parser.getBuildFileManifest(EasyMock.anyObject(Path.class)))
+                    .andAnswer(
+                        () -> {
+                          firstJobRunning.countDown();
+                          allJobsScheduled.await();
+                          return EMPTY_BUILD_FILE_MANIFEST;
+                        })
+                    .anyTimes();
+                parser.prefetch(EasyMock.capture(prefetchedBuildFiles));
+                EasyMock.expectLastCall().anyTimes();
+                parser.close();
+                EasyMock.expectLastCall().once();
+              } catch (Exception e) {
+                Throwables.throwIfUnchecked(e);
+                throw new RuntimeException(e);
+              }
+              EasyMock.replay(parser);
+              return parser;
+            })) {
+
+      ImmutableList.Builder<ListenableFuture<BuildFileManifest>> futures = ImmutableList.builder();
+      futures.add(scheduleBuildFile(cell, parserPool, executorService, Paths.get("a/BUCK")));
+      firstJobRunning.await(1, TimeUnit.SECONDS);
+      futures.add(scheduleBuildFile(cell, parserPool, executorService, Paths.get("b/BUCK")));
+      futures.add(scheduleBuildFile(cell, parserPool, executorService, Paths.get("c/BUCK")));
+      allJobsScheduled.countDown();
+      Futures.allAsList(futures.build()).get();
+
+      assertThat(
+          prefetchedBuildFiles.getValues(),
+          Matchers.contains(
+              ImmutableList.of(Paths.get("a/BUCK")),
+              ImmutableList.of(Paths.get("b/BUCK"), Paths.get("c/BUCK"))));
+    } finally {
+      executorService.shutdown();
+    }
+  }
+
+  @Test
+  public void doesntCreateParsersWhileRequestsDontQueueUp() throws Exception {
+    Cell cell = new TestCellBuilder().build();
+    ListeningExecutorService executorService =
+        MoreExecutors.listeningDecorator(Executors.newFixedThreadPool(4));
+
+    AtomicInteger createCount = new AtomicInteger(0);
+    CountDownLatch firstJobRunning = new CountDownLatch(1);
+    CountDownLatch secondJobScheduled = new CountDownLatch(1);
+    ProjectBuildFileParserFactory parserFactory =
+        createMockParserFactory(
+            () -> {
+              firstJobRunning.countDown();
+              secondJobScheduled.await();
+              return EMPTY_BUILD_FILE_MANIFEST;
+            });
+    try (ProjectBuildFileParserPool parserPool =
+        createParserPool(
+            /* maxParsers */ 4,
+            (eventBus, input, watchman, threadSafe) -> {
+              createCount.incrementAndGet();
+              return parserFactory.createBuildFileParser(eventBus, input, watchman, threadSafe);
+            })) {
+
+      ListenableFuture<BuildFileManifest> first =
+          scheduleBuildFile(cell, parserPool, executorService, Paths.get("a/BUCK"));
+      firstJobRunning.await(1, TimeUnit.SECONDS);
+      // A single queued request is left for the busy parser.
+      ListenableFuture<BuildFileManifest> second =
+          scheduleBuildFile(cell, parserPool, executorService, Paths.get("b/BUCK"));
+      secondJobScheduled.countDown();
+      Futures.allAsList(first, second).get();
+
+      assertThat(createCount.get(), Matchers.equalTo(1));
+    } finally {
+      executorService.shutdown();
+    }
+  }
+
+  private static ListenableFuture<BuildFileManifest> scheduleBuildFile(
+      Cell cell,
+      ProjectBuildFileParserPool pool,
+      ListeningExecutorService executorService,
+      Path buildFile) {
+    return pool.getBuildFileManifest(
+        BuckEventBusForTests.newInstance(),
+        cell,
+        WatchmanFactory.NULL_WATCHMAN,
+        buildFile,
+        executorService);
+  }
+
   private static ImmutableSet<ListenableFuture<?>> scheduleWork(
       Cell cell,
       ProjectBuildFileParserPool pool,
@@ -368,6 +478,8 @@ public class ProjectBuildFileParserPoolTest {
       EasyMock.expect(mock.getBuildFileManifest(EasyMock.anyObject(Path.class)))
           .andAnswer(parseFn)
           .anyTimes();
+      mock.prefetch(EasyMock.anyObject());
+      EasyMock.expectLastCall().anyTimes();
       mock.close();
       EasyMock.expectLastCall().andVoid().once();
     } catch (Exception e) {
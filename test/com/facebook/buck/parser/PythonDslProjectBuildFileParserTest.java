@@ -467,6 +467,50 @@ public class PythonDslProjectBuildFileParserTest {
    * ProjectBuildFileParser test double which counts the number of times rules are parsed to test
    * caching logic in Parser.
    */
+  @Test
+  public void whenBuildFilesArePrefetchedThenResultsAreMatchedToTheirBuildFiles()
+      throws IOException, BuildFileParseException, InterruptedException {
+    Path buildFileA = cell.getRoot().resolve("a").resolve(DEFAULT_BUILD_FILE_NAME);
+    Path buildFileB = cell.getRoot().resolve("b").resolve(DEFAULT_BUILD_FILE_NAME);
+    ByteArrayOutputStream stdin = new ByteArrayOutputStream();
+    ByteArrayOutputStream stdout = new ByteArrayOutputStream();
+    for (Path buildFile : ImmutableList.of(buildFileA, buildFileB)) {
+      ObjectMappers.WRITER.writeValue(
+          stdout,
+          ImmutableMap.of(
+              "values",
+              ImmutableList.of(
+                  ImmutableMap.of(MetaRules.INCLUDES, ImmutableList.of(buildFile.toString())),
+                  ImmutableMap.of(MetaRules.CONFIGS, ImmutableMap.of()),
+                  ImmutableMap.of(MetaRules.ENV, ImmutableMap.of()))));
+      stdout.write('\n');
+    }
+    FakeProcess process =
+        new FakeProcess(
+            0,
+            stdin,
+            new ByteArrayInputStream(stdout.toByteArray()),
+            new ByteArrayInputStream(new byte[0]));
+
+    TestProjectBuildFileParserFactory buildFileParserFactory =
+        new TestProjectBuildFileParserFactory(cell.getRoot(), knownNativeRuleTypes);
+    try (PythonDslProjectBuildFileParser buildFileParser =
+        buildFileParserFactory.createParserForProcess(process)) {
+      buildFileParser.prefetch(ImmutableList.of(buildFileA, buildFileB));
+      // Both requests are sent before any result is read.
+      assertThat(
+          new String(stdin.toByteArray(), StandardCharsets.UTF_8).split("\n"),
+          Matchers.arrayWithSize(2));
+
+      assertThat(
+          buildFileParser.getBuildFileManifest(buildFileB).getIncludes(),
+          Matchers.contains(buildFileB.toString()));
+      assertThat(
+          buildFileParser.getBuildFileManifest(buildFileA).getIncludes(),
+          Matchers.contains(buildFileA.toString()));
+    }
+  }
+
   private static class TestProjectBuildFileParserFactory {
     private final Path projectRoot;
     private final KnownNativeRuleTypes ruleTypes;
@@ -487,6 +531,13 @@ public class PythonDslProjectBuildFileParserTest {
           BuckEventBusForTests.newInstance());
     }
 
+    public PythonDslProjectBuildFileParser createParserForProcess(FakeProcess process) {
+      return new TestPythonDslProjectBuildFileParser(
+          "fake-python",
+          new FakeProcessExecutor(params -> process, new TestConsole()),
+          BuckEventBusForTests.newInstance());
+    }
+
     public PythonDslProjectBuildFileParser createNoopParserThatAlwaysReturnsSuccess() {
       return new TestPythonDslProjectBuildFileParser(
           "fake-python",
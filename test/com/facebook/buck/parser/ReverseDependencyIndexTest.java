@@ -0,0 +1,98 @@
+/*
+ * Copyright 2019-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.parser;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.facebook.buck.core.model.UnconfiguredBuildTargetFactoryForTests;
+import com.facebook.buck.core.model.UnconfiguredBuildTargetView;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import java.util.HashSet;
+import java.util.Set;
+import org.junit.Test;
+
+public class ReverseDependencyIndexTest {
+
+  private static final UnconfiguredBuildTargetView A = target("//a:a");
+  private static final UnconfiguredBuildTargetView A_FLAVORED = target("//a:a#flavor");
+  private static final UnconfiguredBuildTargetView B = target("//b:b");
+  private static final UnconfiguredBuildTargetView C = target("//c:c");
+
+  private static UnconfiguredBuildTargetView target(String name) {
+    return UnconfiguredBuildTargetFactoryForTests.newInstance(name);
+  }
+
+  private static Set<UnconfiguredBuildTargetView> reverseDependencies(
+      ReverseDependencyIndex index, UnconfiguredBuildTargetView target) {
+    Set<UnconfiguredBuildTargetView> result = new HashSet<>();
+    index.addReverseDependencies(target, result);
+    return result;
+  }
+
+  @Test
+  public void reverseDependenciesOfAllNodesAreIndexed() {
+    ReverseDependencyIndex index = new ReverseDependencyIndex();
+    index.addNode(A, ImmutableList.of(B, C));
+    index.addNode(B, ImmutableList.of(C));
+    index.addNode(C, ImmutableList.of());
+
+    assertEquals(ImmutableSet.of(), reverseDependencies(index, A));
+    assertEquals(ImmutableSet.of(A), reverseDependencies(index, B));
+    assertEquals(ImmutableSet.of(A, B), reverseDependencies(index, C));
+    assertTrue(index.isIndexed(C));
+  }
+
+  @Test
+  public void dependenciesOfSeveralNodesOfTargetAreMerged() {
+    ReverseDependencyIndex index = new ReverseDependencyIndex();
+    index.addNode(A, ImmutableList.of(B));
+    index.addNode(A, ImmutableList.of(C));
+
+    assertEquals(ImmutableSet.of(A), reverseDependencies(index, B));
+    assertEquals(ImmutableSet.of(A), reverseDependencies(index, C));
+  }
+
+  @Test
+  public void invalidateRemovesDependenciesOfAllFlavors() {
+    ReverseDependencyIndex index = new ReverseDependencyIndex();
+    index.addNode(A, ImmutableList.of(B));
+    index.addNode(A_FLAVORED, ImmutableList.of(C));
+    index.addNode(B, ImmutableList.of(C));
+
+    index.invalidate(A.getUnflavoredBuildTargetView());
+
+    assertFalse(index.isIndexed(A));
+    assertFalse(index.isIndexed(A_FLAVORED));
+    assertEquals(ImmutableSet.of(), reverseDependencies(index, B));
+    assertEquals(ImmutableSet.of(B), reverseDependencies(index, C));
+  }
+
+  @Test
+  public void invalidatedTargetKeepsItsReverseDependencies() {
+    ReverseDependencyIndex index = new ReverseDependencyIndex();
+    index.addNode(A, ImmutableList.of(B));
+    index.addNode(B, ImmutableList.of());
+
+    index.invalidate(B.getUnflavoredBuildTargetView());
+
+    assertFalse(index.isIndexed(B));
+    assertEquals(ImmutableSet.of(A), reverseDependencies(index, B));
+  }
+}
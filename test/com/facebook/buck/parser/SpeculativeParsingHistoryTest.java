@@ -0,0 +1,119 @@
+/*
+ * Copyright 2019-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.parser;
+
+import static org.junit.Assert.assertEquals;
+
+import com.facebook.buck.core.model.EmptyTargetConfiguration;
+import com.facebook.buck.core.model.UnconfiguredBuildTargetFactoryForTests;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import org.junit.Test;
+
+public class SpeculativeParsingHistoryTest {
+
+  private static final Path CELL = Paths.get("/cell").toAbsolutePath();
+
+  private static final SpeculativeParsingRequest APP = request("//app:app");
+  private static final SpeculativeParsingRequest LIB = request("//lib:lib");
+
+  private static SpeculativeParsingRequest request(String target) {
+    return SpeculativeParsingRequest.of(
+        ImmutableList.of(
+            BuildTargetSpec.from(UnconfiguredBuildTargetFactoryForTests.newInstance(target))),
+        EmptyTargetConfiguration.INSTANCE);
+  }
+
+  @Test
+  public void requestsAreLearnedFromChangedDirectories() {
+    SpeculativeParsingHistory history = new SpeculativeParsingHistory();
+    history.recordChange(CELL.resolve("app/src/Main.java"));
+    history.recordRequest(APP);
+
+    history.recordChange(CELL.resolve("app/src/Other.java"));
+    history.recordChange(CELL.resolve("lib/Lib.java"));
+
+    assertEquals(ImmutableSet.of(APP), history.takePredictedRequests());
+  }
+
+  @Test
+  public void predictionsAreTakenOncePerBatch() {
+    SpeculativeParsingHistory history = new SpeculativeParsingHistory();
+    history.recordChange(CELL.resolve("app/BUCK"));
+    history.recordRequest(APP);
+    history.recordChange(CELL.resolve("app/BUCK"));
+
+    assertEquals(ImmutableSet.of(APP), history.takePredictedRequests());
+    assertEquals(ImmutableSet.of(), history.takePredictedRequests());
+
+    history.recordChange(CELL.resolve("app/BUCK"));
+    assertEquals(ImmutableSet.of(APP), history.takePredictedRequests());
+  }
+
+  @Test
+  public void requestsMadeSinceTheChangesAreNotPredicted() {
+    SpeculativeParsingHistory history = new SpeculativeParsingHistory();
+    history.recordChange(CELL.resolve("app/BUCK"));
+    history.recordRequest(APP);
+    history.recordRequest(LIB);
+
+    history.recordChange(CELL.resolve("app/BUCK"));
+    history.recordRequest(LIB);
+
+    assertEquals(ImmutableSet.of(APP), history.takePredictedRequests());
+  }
+
+  @Test
+  public void nearestAncestorWithHistoryIsUsedForNewDirectories() {
+    SpeculativeParsingHistory history = new SpeculativeParsingHistory();
+    history.recordChange(CELL.resolve("app/BUCK"));
+    history.recordRequest(APP);
+    history.recordChange(CELL.resolve("lib/BUCK"));
+    history.recordRequest(LIB);
+
+    history.recordChange(CELL.resolve("app/src/new/File.java"));
+
+    assertEquals(ImmutableSet.of(APP), history.takePredictedRequests());
+  }
+
+  @Test
+  public void nothingIsPredictedAfterUnknownChanges() {
+    SpeculativeParsingHistory history = new SpeculativeParsingHistory();
+    history.recordChange(CELL.resolve("app/BUCK"));
+    history.recordRequest(APP);
+
+    history.recordChange(CELL.resolve("app/BUCK"));
+    history.recordUnknownChanges();
+
+    assertEquals(ImmutableSet.of(), history.takePredictedRequests());
+  }
+
+  @Test
+  public void nothingIsLearnedFromTooManyChanges() {
+    SpeculativeParsingHistory history = new SpeculativeParsingHistory();
+    for (int i = 0; i < 200; i++) {
+      history.recordChange(CELL.resolve("dir" + i).resolve("BUCK"));
+    }
+    history.recordRequest(APP);
+
+    history.recordChange(CELL.resolve("dir0/BUCK"));
+
+    assertEquals(ImmutableSet.of(), history.takePredictedRequests());
+  }
+}
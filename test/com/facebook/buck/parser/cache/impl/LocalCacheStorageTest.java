@@ -30,6 +30,7 @@ import com.facebook.buck.core.config.FakeBuckConfig;
 import com.facebook.buck.core.exceptions.BuckUncheckedExecutionException;
 import com.facebook.buck.core.util.log.Logger;
 import com.facebook.buck.io.filesystem.ProjectFilesystem;
+import com.facebook.buck.io.filesystem.TestProjectFilesystems;
 import com.facebook.buck.io.filesystem.impl.FakeProjectFilesystem;
 import com.facebook.buck.parser.api.BuildFileManifest;
 import com.facebook.buck.parser.api.ImmutableBuildFileManifest;
@@ -51,6 +52,7 @@ import java.nio.charset.StandardCharsets;
 import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.logging.Handler;
 import java.util.logging.LogRecord;
@@ -344,6 +346,42 @@ public class LocalCacheStorageTest {
     assertEquals(buildFileManifest, buildFileManifestResult);
   }
 
+  @Test
+  public void storeAndGetLargeBuildFileManifest() throws IOException {
+    // Large entries are memory-mapped, which needs a real filesystem.
+    filesystem = TestProjectFilesystems.createProjectFilesystem(tempDir.getRoot());
+    LocalCacheStorage localCacheStorage =
+        LocalCacheStorage.of(
+            getParserCacheConfig(true, tempDir.getRoot().resolve(FOO_BAR_PATH)), filesystem);
+
+    ImmutableMap.Builder<String, Map<String, Object>> targets = ImmutableMap.builder();
+    for (int i = 0; i < 2000; i++) {
+      targets.put(
+          "target" + i,
+          ImmutableMap.of(
+              "name", "target" + i, "srcs", ImmutableList.of("Source" + i + ".java"), "index", i));
+    }
+    BuildFileManifest buildFileManifest =
+        ImmutableBuildFileManifest.of(
+            targets.build(),
+            ImmutableSortedSet.of(),
+            ImmutableMap.of(),
+            Optional.empty(),
+            ImmutableList.of(),
+            ImmutableList.of());
+    HashCode weakFingerprint = HashCode.fromInt(1);
+    HashCode strongFingerprint = HashCode.fromInt(2);
+
+    localCacheStorage.storeBuildFileManifest(
+        weakFingerprint,
+        strongFingerprint,
+        BuildFileManifestSerializer.serialize(buildFileManifest));
+
+    assertEquals(
+        Optional.of(buildFileManifest),
+        localCacheStorage.getBuildFileManifest(weakFingerprint, strongFingerprint));
+  }
+
   private boolean checkExistsAfterConvertingToProperFilesystem(
       Path buildPath, Path serializedDataFile) {
     return filesystem.exists(
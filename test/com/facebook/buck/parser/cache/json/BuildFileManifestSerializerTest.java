@@ -16,6 +16,8 @@
 
 package com.facebook.buck.parser.cache.json;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThat;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assume.assumeThat;
 
@@ -23,14 +25,22 @@ import com.facebook.buck.parser.api.BuildFileManifest;
 import com.facebook.buck.parser.api.ImmutableBuildFileManifest;
 import com.facebook.buck.parser.exceptions.ImmutableParsingError;
 import com.facebook.buck.parser.exceptions.ParsingError;
+import com.facebook.buck.parser.syntax.ImmutableSelectorValue;
 import com.facebook.buck.skylark.io.GlobSpec;
 import com.facebook.buck.skylark.io.GlobSpecWithResult;
 import com.facebook.buck.util.environment.Platform;
+import com.facebook.buck.util.json.ObjectMappers;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.ImmutableSortedMap;
 import com.google.common.collect.ImmutableSortedSet;
+import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.Optional;
 import org.hamcrest.Matchers;
 import org.junit.Before;
@@ -132,4 +142,103 @@ public class BuildFileManifestSerializerTest {
     assertTrue(resultString.contains("confKey1"));
     assertTrue(resultString.contains("confVal1"));
   }
+
+  @Test
+  public void buildFileManifestRoundTrip() throws Exception {
+    BuildFileManifest buildFileManifest = createFakeManifest();
+
+    assertEquals(
+        buildFileManifest,
+        BuildFileManifestSerializer.deserialize(
+            BuildFileManifestSerializer.serialize(buildFileManifest)));
+  }
+
+  @Test
+  public void buildFileManifestRoundTripWhenEnvIsAbsent() throws Exception {
+    BuildFileManifest buildFileManifest =
+        ImmutableBuildFileManifest.of(
+            ImmutableMap.of(),
+            ImmutableSortedSet.of(),
+            ImmutableMap.of(),
+            Optional.empty(),
+            ImmutableList.of(),
+            ImmutableList.of());
+
+    assertEquals(
+        buildFileManifest,
+        BuildFileManifestSerializer.deserialize(
+            BuildFileManifestSerializer.serialize(buildFileManifest)));
+  }
+
+  @Test
+  public void attributeValuesKeepTheirTypes() throws Exception {
+    Map<String, Object> attributes = new HashMap<>();
+    attributes.put("name", "lib");
+    attributes.put("int", 42);
+    attributes.put("long", 1L << 40);
+    attributes.put("double", 0.5);
+    attributes.put("bool", true);
+    attributes.put("none", null);
+    attributes.put("list", ImmutableList.of("a", ImmutableMap.of("b", false)));
+    attributes.put("listWithNone", Arrays.asList("a", null));
+    attributes.put("set", ImmutableSet.of(1, 2));
+    attributes.put("sortedSet", ImmutableSortedSet.of("b", "a"));
+    attributes.put("sortedMap", ImmutableSortedMap.of("b", 1, "a", 2));
+    attributes.put(
+        "select",
+        ImmutableSelectorValue.of(ImmutableMap.of("DEFAULT", ImmutableList.of("a")), "error"));
+    BuildFileManifest buildFileManifest =
+        ImmutableBuildFileManifest.of(
+            ImmutableMap.of("lib", attributes),
+            ImmutableSortedSet.of(),
+            ImmutableMap.of("section", ImmutableMap.of("key", "value")),
+            Optional.of(ImmutableMap.of("UNSET", Optional.empty())),
+            ImmutableList.of(),
+            ImmutableList.of());
+
+    BuildFileManifest deserializedManifest =
+        BuildFileManifestSerializer.deserialize(
+            BuildFileManifestSerializer.serialize(buildFileManifest));
+
+    assertEquals(buildFileManifest, deserializedManifest);
+    Map<String, Object> deserializedAttributes = deserializedManifest.getTargets().get("lib");
+    assertThat(deserializedAttributes.get("int"), Matchers.instanceOf(Integer.class));
+    assertThat(deserializedAttributes.get("long"), Matchers.instanceOf(Long.class));
+    assertThat(deserializedAttributes.get("set"), Matchers.instanceOf(ImmutableSet.class));
+    assertThat(
+        deserializedAttributes.get("sortedSet"), Matchers.instanceOf(ImmutableSortedSet.class));
+    assertThat(
+        deserializedAttributes.get("sortedMap"), Matchers.instanceOf(ImmutableSortedMap.class));
+    assertTrue(deserializedAttributes.containsKey("none"));
+  }
+
+  @Test
+  public void deserializesJsonManifest() throws Exception {
+    BuildFileManifest buildFileManifest = createFakeManifest();
+    byte[] jsonManifest = ObjectMappers.WRITER_WITH_TYPE.writeValueAsBytes(buildFileManifest);
+
+    assertEquals(buildFileManifest, BuildFileManifestSerializer.deserialize(jsonManifest));
+    ByteBuffer directBuffer = ByteBuffer.allocateDirect(jsonManifest.length);
+    directBuffer.put(jsonManifest).flip();
+    assertEquals(buildFileManifest, BuildFileManifestSerializer.deserialize(directBuffer));
+  }
+
+  @Test
+  public void deserializesFromDirectBuffer() throws Exception {
+    BuildFileManifest buildFileManifest = createFakeManifest();
+    byte[] serializedManifest = BuildFileManifestSerializer.serialize(buildFileManifest);
+    ByteBuffer directBuffer = ByteBuffer.allocateDirect(serializedManifest.length);
+    directBuffer.put(serializedManifest).flip();
+
+    assertEquals(buildFileManifest, BuildFileManifestSerializer.deserialize(directBuffer));
+  }
+
+  @Test
+  public void deserializingTruncatedManifestFails() throws Exception {
+    byte[] serializedManifest = BuildFileManifestSerializer.serialize(createFakeManifest());
+
+    expectedException.expect(IOException.class);
+    BuildFileManifestSerializer.deserialize(
+        Arrays.copyOf(serializedManifest, serializedManifest.length / 2));
+  }
 }
@@ -19,6 +19,7 @@ package com.facebook.buck.query;
 import static org.easymock.EasyMock.createNiceMock;
 import static org.easymock.EasyMock.expect;
 import static org.easymock.EasyMock.replay;
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertThat;
 
 import com.facebook.buck.core.model.BuildTargetFactory;
@@ -30,6 +31,8 @@ import com.facebook.buck.query.QueryEnvironment.Argument;
 import com.facebook.buck.util.RichStream;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Set;
 import org.easymock.Capture;
 import org.easymock.EasyMock;
@@ -98,6 +101,39 @@ public class DepsFunctionTest {
         Matchers.contains(QueryBuildTarget.of(a.getBuildTarget())));
   }
 
+  @Test
+  public void testForEachPassesTargetsInEvaluationOrder() throws Exception {
+    TargetNode<?> d =
+        JavaLibraryBuilder.createBuilder(BuildTargetFactory.newInstance("//:d")).build();
+    TargetNode<?> c =
+        JavaLibraryBuilder.createBuilder(BuildTargetFactory.newInstance("//:c"))
+            .addDep(d.getBuildTarget())
+            .build();
+    TargetNode<?> b =
+        JavaLibraryBuilder.createBuilder(BuildTargetFactory.newInstance("//:b"))
+            .addDep(d.getBuildTarget())
+            .build();
+    TargetNode<?> a =
+        JavaLibraryBuilder.createBuilder(BuildTargetFactory.newInstance("//:a"))
+            .addDep(b.getBuildTarget())
+            .addDep(c.getBuildTarget())
+            .build();
+    TargetGraph targetGraph = TargetGraphFactory.newInstance(a, b, c, d);
+    QueryEnvironment queryEnvironment = makeFakeQueryEnvironment(targetGraph);
+    ImmutableList<Argument> args =
+        ImmutableList.of(
+            Argument.of(TargetLiteral.of(a.getBuildTarget().getFullyQualifiedName())),
+            DEPTH,
+            FIRST_ORDER_DEPS);
+
+    Set<?> result = DEPS_FUNCTION.eval(new NoopQueryEvaluator(), queryEnvironment, args);
+    List<Object> streamed = new ArrayList<>();
+    DEPS_FUNCTION.forEach(new NoopQueryEvaluator(), queryEnvironment, args, streamed::add);
+
+    assertThat(streamed, Matchers.hasSize(4));
+    assertEquals(ImmutableList.copyOf(result), streamed);
+  }
+
   private QueryEnvironment<QueryBuildTarget> makeFakeQueryEnvironment(TargetGraph targetGraph)
       throws Exception {
     QueryEnvironment env = createNiceMock(QueryEnvironment.class);
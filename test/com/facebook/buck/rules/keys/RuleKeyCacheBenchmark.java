@@ -0,0 +1,175 @@
+/*
+ * Copyright 2019-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.rules.keys;
+
+import com.facebook.buck.core.rulekey.AddsToRuleKey;
+import com.facebook.buck.io.filesystem.ProjectFilesystem;
+import com.facebook.buck.io.filesystem.impl.FakeProjectFilesystem;
+import com.facebook.buck.util.cache.CacheStatsTracker;
+import com.facebook.buck.util.cache.NoOpCacheStatsTracker;
+import com.google.common.collect.ImmutableList;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.Main;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.runner.RunnerException;
+
+/**
+ * Compares {@link DefaultRuleKeyCache} and {@link StripedRuleKeyCache} on a synthetic graph in
+ * which every node depends on a few random nodes and on a handful of widely shared ones, like
+ * toolchains.
+ */
+@State(Scope.Benchmark)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class RuleKeyCacheBenchmark {
+  private static final int SHARED_NODES = 8;
+  private static final int RANDOM_DEPS = 4;
+
+  @Param({"default", "striped"})
+  public String cacheType;
+
+  @Param({"100000"})
+  public int nodeCount;
+
+  @Param({"1", "8", "32"})
+  public int parallelism;
+
+  /** Percentage of the inputs changed between two incremental builds. */
+  @Param({"1"})
+  public int changedInputsPercent;
+
+  private final CacheStatsTracker statsTracker = new NoOpCacheStatsTracker();
+  private ImmutableList<Node> nodes;
+  private ImmutableList<RuleKeyInput> changedInputs;
+  private ForkJoinPool pool;
+  private TrackableRuleKeyCache<Long> populatedCache;
+
+  @Setup(Level.Trial)
+  public void setUpGraph() {
+    ProjectFilesystem filesystem = new FakeProjectFilesystem();
+    Random random = new Random(42);
+    ImmutableList.Builder<Node> nodesBuilder = ImmutableList.builderWithExpectedSize(nodeCount);
+    ImmutableList.Builder<RuleKeyInput> changedInputsBuilder = ImmutableList.builder();
+    Node[] created = new Node[nodeCount];
+    for (int i = 0; i < nodeCount; i++) {
+      ImmutableList.Builder<Node> deps = ImmutableList.builder();
+      if (i >= SHARED_NODES) {
+        for (int j = 0; j < SHARED_NODES; j++) {
+          deps.add(created[j]);
+        }
+        for (int j = 0; j < RANDOM_DEPS; j++) {
+          deps.add(created[random.nextInt(i)]);
+        }
+      }
+      RuleKeyInput input = new ImmutableRuleKeyInput(filesystem, filesystem.getPath("input" + i));
+      created[i] = new Node(i, deps.build(), input);
+      nodesBuilder.add(created[i]);
+      if (i >= SHARED_NODES && random.nextInt(100) < changedInputsPercent) {
+        changedInputsBuilder.add(input);
+      }
+    }
+    nodes = nodesBuilder.build();
+    changedInputs = changedInputsBuilder.build();
+    pool = new ForkJoinPool(parallelism);
+  }
+
+  @Setup(Level.Iteration)
+  public void populateCache() throws ExecutionException, InterruptedException {
+    populatedCache = newCache();
+    computeAll(populatedCache);
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    pool.shutdownNow();
+  }
+
+  /** A build with a cold cache, e.g. the first build of a daemon. */
+  @Benchmark
+  @BenchmarkMode(Mode.AverageTime)
+  public TrackableRuleKeyCache<Long> coldBuild() throws ExecutionException, InterruptedException {
+    TrackableRuleKeyCache<Long> cache = newCache();
+    computeAll(cache);
+    return cache;
+  }
+
+  /** An incremental build, invalidating a few inputs and recomputing all rule keys. */
+  @Benchmark
+  @BenchmarkMode(Mode.AverageTime)
+  public TrackableRuleKeyCache<Long> incrementalBuild()
+      throws ExecutionException, InterruptedException {
+    populatedCache.invalidateInputs(changedInputs, statsTracker);
+    computeAll(populatedCache);
+    return populatedCache;
+  }
+
+  private TrackableRuleKeyCache<Long> newCache() {
+    switch (cacheType) {
+      case "default":
+        return new DefaultRuleKeyCache<>();
+      case "striped":
+        return new StripedRuleKeyCache<>();
+      default:
+        throw new IllegalArgumentException("Unknown cache type: " + cacheType);
+    }
+  }
+
+  private void computeAll(TrackableRuleKeyCache<Long> cache)
+      throws ExecutionException, InterruptedException {
+    pool.submit(
+            () ->
+                nodes.parallelStream()
+                    .forEach(node -> cache.get(node, n -> compute(cache, (Node) n), statsTracker)))
+        .get();
+  }
+
+  private RuleKeyResult<Long> compute(TrackableRuleKeyCache<Long> cache, Node node) {
+    long value = node.id;
+    for (Node dep : node.deps) {
+      value = 31 * value + cache.get(dep, n -> compute(cache, (Node) n), statsTracker);
+    }
+    return new RuleKeyResult<>(value, node.deps, ImmutableList.of(node.input));
+  }
+
+  private static final class Node implements AddsToRuleKey {
+    private final int id;
+    private final ImmutableList<Node> deps;
+    private final RuleKeyInput input;
+
+    private Node(int id, ImmutableList<Node> deps, RuleKeyInput input) {
+      this.id = id;
+      this.deps = deps;
+      this.input = input;
+    }
+  }
+
+  public static void main(String[] args) throws IOException, RunnerException {
+    Main.main(args);
+  }
+}
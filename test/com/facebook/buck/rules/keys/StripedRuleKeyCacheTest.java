@@ -0,0 +1,282 @@
+/*
+ * Copyright 2019-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.rules.keys;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import com.facebook.buck.core.model.BuildTargetFactory;
+import com.facebook.buck.core.rules.TestBuildRuleParams;
+import com.facebook.buck.core.rules.actions.ActionRegistryForTests;
+import com.facebook.buck.core.rules.actions.FakeAction;
+import com.facebook.buck.core.rules.actions.ImmutableActionExecutionSuccess;
+import com.facebook.buck.core.rules.impl.NoopBuildRuleWithDeclaredAndExtraDeps;
+import com.facebook.buck.io.filesystem.ProjectFilesystem;
+import com.facebook.buck.io.filesystem.impl.FakeProjectFilesystem;
+import com.facebook.buck.util.cache.InstrumentingCacheStatsTracker;
+import com.facebook.buck.util.timing.Clock;
+import com.facebook.buck.util.timing.IncrementingFakeClock;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.hamcrest.Matchers;
+import org.junit.Test;
+
+public class StripedRuleKeyCacheTest {
+
+  private static final ProjectFilesystem FILESYSTEM = new FakeProjectFilesystem();
+
+  @Test
+  public void testGetReturnValue() {
+    TrackedRuleKeyCache<String> cache =
+        new TrackedRuleKeyCache<>(
+            new StripedRuleKeyCache<>(), new InstrumentingCacheStatsTracker());
+    TestRule rule = new TestRule();
+    assertThat(
+        cache.get(rule, r -> new RuleKeyResult<>("result", ImmutableList.of(), ImmutableList.of())),
+        Matchers.equalTo("result"));
+  }
+
+  @Test
+  public void testCacheRule() {
+    StripedRuleKeyCache<String> internalCache = new StripedRuleKeyCache<>();
+    TrackedRuleKeyCache<String> cache =
+        new TrackedRuleKeyCache<>(internalCache, new InstrumentingCacheStatsTracker());
+    TestRule rule = new TestRule();
+    cache.get(rule, r -> new RuleKeyResult<>("", ImmutableList.of(), ImmutableList.of()));
+    assertTrue(internalCache.isCached(rule));
+    cache.get(
+        rule,
+        r -> {
+          throw new IllegalStateException();
+        });
+  }
+
+  @Test
+  public void cachesActions() {
+    StripedRuleKeyCache<String> internalCache = new StripedRuleKeyCache<>();
+    TrackedRuleKeyCache<String> cache =
+        new TrackedRuleKeyCache<>(internalCache, new InstrumentingCacheStatsTracker());
+    FakeAction fakeAction =
+        new FakeAction(
+            new ActionRegistryForTests(BuildTargetFactory.newInstance("//my:test")),
+            ImmutableSet.of(),
+            ImmutableSet.of(),
+            (ignored1, ignored2, ignored3) ->
+                ImmutableActionExecutionSuccess.of(
+                    Optional.empty(), Optional.empty(), ImmutableList.of()));
+    cache.get(fakeAction, r -> new RuleKeyResult<>("", ImmutableList.of(), ImmutableList.of()));
+    assertTrue(internalCache.isCached(fakeAction));
+    cache.get(
+        fakeAction,
+        r -> {
+          throw new IllegalStateException();
+        });
+  }
+
+  @Test
+  public void testInvalidateInputToCachedRule() {
+    StripedRuleKeyCache<String> internalCache = new StripedRuleKeyCache<>();
+    TrackedRuleKeyCache<String> cache =
+        new TrackedRuleKeyCache<>(internalCache, new InstrumentingCacheStatsTracker());
+    TestRule rule = new TestRule();
+    RuleKeyInput input = new ImmutableRuleKeyInput(FILESYSTEM, FILESYSTEM.getPath("input"));
+    cache.get(rule, r -> new RuleKeyResult<>("", ImmutableList.of(), ImmutableList.of(input)));
+    assertTrue(internalCache.isCached(rule));
+    cache.invalidateInputs(ImmutableList.of(input));
+    assertFalse(internalCache.isCached(rule));
+  }
+
+  @Test
+  public void reusesIdsOfInvalidatedNodes() {
+    StripedRuleKeyCache<String> internalCache = new StripedRuleKeyCache<>();
+    TrackedRuleKeyCache<String> cache =
+        new TrackedRuleKeyCache<>(internalCache, new InstrumentingCacheStatsTracker());
+    RuleKeyInput input = new ImmutableRuleKeyInput(FILESYSTEM, FILESYSTEM.getPath("input"));
+    for (int i = 0; i < 10; i++) {
+      TestRule rule = new TestRule();
+      cache.get(rule, r -> new RuleKeyResult<>("", ImmutableList.of(), ImmutableList.of(input)));
+      assertTrue(internalCache.isCached(rule));
+      cache.invalidateInputs(ImmutableList.of(input));
+      assertFalse(internalCache.isCached(rule));
+    }
+    assertEquals(1, internalCache.getAllocatedNodeIds());
+  }
+
+  @Test
+  public void testInvalidateTransitiveInputToCachedRule() {
+    StripedRuleKeyCache<String> internalCache = new StripedRuleKeyCache<>();
+    TrackedRuleKeyCache<String> cache =
+        new TrackedRuleKeyCache<>(internalCache, new InstrumentingCacheStatsTracker());
+    RuleKeyInput input = new ImmutableRuleKeyInput(FILESYSTEM, FILESYSTEM.getPath("input"));
+    TestRule dep = new TestRule();
+    cache.get(dep, r -> new RuleKeyResult<>("", ImmutableList.of(), ImmutableList.of(input)));
+    TestRule rule = new TestRule();
+    cache.get(rule, r -> new RuleKeyResult<>("", ImmutableList.of(dep), ImmutableList.of()));
+
+    assertTrue(internalCache.isCached(rule));
+    assertTrue(internalCache.isCached(dep));
+    cache.invalidateInputs(ImmutableList.of(input));
+    assertFalse(internalCache.isCached(rule));
+    assertFalse(internalCache.isCached(dep));
+  }
+
+  @Test
+  public void testInvalidateInputToCachedRuleDoesNotInvalidateDependency() {
+    StripedRuleKeyCache<String> internalCache = new StripedRuleKeyCache<>();
+    TrackedRuleKeyCache<String> cache =
+        new TrackedRuleKeyCache<>(internalCache, new InstrumentingCacheStatsTracker());
+    RuleKeyInput input = new ImmutableRuleKeyInput(FILESYSTEM, FILESYSTEM.getPath("input"));
+    TestRule dep = new TestRule();
+    cache.get(dep, r -> new RuleKeyResult<>("", ImmutableList.of(), ImmutableList.of()));
+    TestRule rule = new TestRule();
+    cache.get(rule, r -> new RuleKeyResult<>("", ImmutableList.of(dep), ImmutableList.of(input)));
+    assertTrue(internalCache.isCached(rule));
+    assertTrue(internalCache.isCached(dep));
+    cache.invalidateInputs(ImmutableList.of(input));
+    assertFalse(internalCache.isCached(rule));
+    assertTrue(internalCache.isCached(dep));
+  }
+
+  @Test
+  public void invalidatingDiamondDependencyWorksCorrectly() {
+    // A -> B
+    // |    |
+    // v    v
+    // C -> D
+
+    RuleKeyInput input = new ImmutableRuleKeyInput(FILESYSTEM, FILESYSTEM.getPath("input"));
+    TestRule ruleA = new TestRule();
+    TestRule ruleB = new TestRule();
+    TestRule ruleC = new TestRule();
+    TestRule ruleD = new TestRule();
+
+    StripedRuleKeyCache<String> internalCache = new StripedRuleKeyCache<>();
+    TrackedRuleKeyCache<String> cache =
+        new TrackedRuleKeyCache<>(internalCache, new InstrumentingCacheStatsTracker());
+    cache.get(ruleA, r -> new RuleKeyResult<>("", ImmutableList.of(), ImmutableList.of(input)));
+    cache.get(ruleB, r -> new RuleKeyResult<>("", ImmutableList.of(ruleA), ImmutableList.of()));
+    cache.get(ruleC, r -> new RuleKeyResult<>("", ImmutableList.of(ruleA), ImmutableList.of()));
+    cache.get(
+        ruleD, r -> new RuleKeyResult<>("", ImmutableList.of(ruleB, ruleC), ImmutableList.of()));
+    assertTrue(internalCache.isCached(ruleD));
+    cache.invalidateInputs(ImmutableList.of(input));
+    assertFalse(internalCache.isCached(ruleD));
+  }
+
+  @Test
+  public void testHitMissStats() {
+    TrackedRuleKeyCache<String> cache =
+        new TrackedRuleKeyCache<>(
+            new StripedRuleKeyCache<>(), new InstrumentingCacheStatsTracker());
+    TestRule rule = new TestRule();
+    cache.get(rule, r -> new RuleKeyResult<>("result", ImmutableList.of(), ImmutableList.of()));
+    cache.get(rule, r -> new RuleKeyResult<>("result", ImmutableList.of(), ImmutableList.of()));
+    cache.get(rule, r -> new RuleKeyResult<>("result", ImmutableList.of(), ImmutableList.of()));
+    assertThat(cache.getStats().getMissCount().get(), Matchers.equalTo(1L));
+    assertThat(cache.getStats().getHitCount().get(), Matchers.equalTo(2L));
+  }
+
+  @Test
+  public void testEvictionStats() {
+    TrackedRuleKeyCache<String> cache =
+        new TrackedRuleKeyCache<>(
+            new StripedRuleKeyCache<>(), new InstrumentingCacheStatsTracker());
+    TestRule rule = new TestRule();
+    RuleKeyInput input = new ImmutableRuleKeyInput(FILESYSTEM, FILESYSTEM.getPath("input"));
+    cache.get(rule, r -> new RuleKeyResult<>("", ImmutableList.of(), ImmutableList.of(input)));
+    cache.invalidateInputs(ImmutableList.of(input));
+    assertThat(cache.getStats().getEvictionCount().get(), Matchers.equalTo(1L));
+  }
+
+  @Test
+  public void testLoadTime() {
+    Clock clock = new IncrementingFakeClock(TimeUnit.MILLISECONDS.toNanos(1));
+    TrackedRuleKeyCache<String> cache =
+        new TrackedRuleKeyCache<>(
+            new StripedRuleKeyCache<>(), new InstrumentingCacheStatsTracker(clock));
+    TestRule rule = new TestRule();
+    RuleKeyInput input = new ImmutableRuleKeyInput(FILESYSTEM, FILESYSTEM.getPath("input"));
+    cache.get(rule, r -> new RuleKeyResult<>("", ImmutableList.of(), ImmutableList.of(input)));
+    cache.invalidateInputs(ImmutableList.of(input));
+    assertThat(cache.getStats().getTotalLoadTime().get(), Matchers.equalTo(1L));
+  }
+
+  @Test
+  public void concurrentDependentsOfSharedNodeAreAllInvalidated() throws Exception {
+    StripedRuleKeyCache<String> internalCache = new StripedRuleKeyCache<>();
+    TrackedRuleKeyCache<String> cache =
+        new TrackedRuleKeyCache<>(internalCache, new InstrumentingCacheStatsTracker());
+    RuleKeyInput input = new ImmutableRuleKeyInput(FILESYSTEM, FILESYSTEM.getPath("input"));
+    TestRule shared = new TestRule();
+    List<TestRule> rules = new ArrayList<>();
+    for (int i = 0; i < 5000; i++) {
+      rules.add(new TestRule());
+    }
+
+    ExecutorService executor = Executors.newFixedThreadPool(8);
+    try {
+      List<Future<String>> results = new ArrayList<>();
+      for (TestRule rule : rules) {
+        results.add(
+            executor.submit(
+                () ->
+                    cache.get(
+                        rule,
+                        r ->
+                            new RuleKeyResult<>(
+                                cache.get(
+                                    shared,
+                                    s ->
+                                        new RuleKeyResult<>(
+                                            "shared", ImmutableList.of(), ImmutableList.of(input))),
+                                ImmutableList.of(shared),
+                                ImmutableList.of()))));
+      }
+      for (Future<String> result : results) {
+        assertThat(result.get(), Matchers.equalTo("shared"));
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+
+    assertThat(cache.getStats().getMissCount().get(), Matchers.equalTo(5001L));
+    cache.invalidateInputs(ImmutableList.of(input));
+    assertFalse(internalCache.isCached(shared));
+    for (TestRule rule : rules) {
+      assertFalse(internalCache.isCached(rule));
+    }
+  }
+
+  private static class TestRule extends NoopBuildRuleWithDeclaredAndExtraDeps {
+
+    private TestRule() {
+      super(
+          BuildTargetFactory.newInstance("//:rule"),
+          new FakeProjectFilesystem(),
+          TestBuildRuleParams.create());
+    }
+  }
+}
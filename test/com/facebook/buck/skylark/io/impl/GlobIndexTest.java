@@ -0,0 +1,153 @@
+/*
+ * Copyright 2019-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.skylark.io.impl;
+
+import static org.hamcrest.core.IsEqual.equalTo;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import com.facebook.buck.io.filesystem.ProjectFilesystem;
+import com.facebook.buck.io.filesystem.impl.FakeProjectFilesystem;
+import com.facebook.buck.io.filesystem.skylark.SkylarkFilesystem;
+import com.facebook.buck.skylark.io.GlobSpec;
+import com.facebook.buck.skylark.io.GlobSpecWithResult;
+import com.facebook.buck.skylark.io.Globber;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.devtools.build.lib.vfs.FileSystemUtils;
+import com.google.devtools.build.lib.vfs.Path;
+import java.nio.file.Paths;
+import java.util.Collections;
+import org.hamcrest.Matchers;
+import org.junit.Before;
+import org.junit.Test;
+
+public class GlobIndexTest {
+  private java.nio.file.Path cellRoot;
+  private Path root;
+  private GlobIndex globIndex;
+  private Globber globber;
+
+  @Before
+  public void setUp() {
+    ProjectFilesystem projectFilesystem = FakeProjectFilesystem.createRealTempFilesystem();
+    SkylarkFilesystem fileSystem = SkylarkFilesystem.using(projectFilesystem);
+    cellRoot = projectFilesystem.getRootPath();
+    root = fileSystem.getPath(cellRoot.toString());
+    globIndex = new GlobIndex();
+    globber =
+        globIndex
+            .createGlobberFactory(cellRoot, path -> path.startsWith(Paths.get("ignored")))
+            .create(root);
+  }
+
+  @Test
+  public void globFindsRecursiveIncludesMinusExcludes() throws Exception {
+    Path child = root.getChild("child");
+    child.createDirectory();
+    FileSystemUtils.createEmptyFile(child.getChild("foo.txt"));
+    FileSystemUtils.createEmptyFile(child.getChild("bar.txt"));
+    FileSystemUtils.createEmptyFile(child.getChild("bar.jpg"));
+    assertThat(
+        globber.run(
+            Collections.singleton("**/*.txt"), Collections.singleton("child/bar.txt"), false),
+        equalTo(ImmutableSet.of("child/foo.txt")));
+  }
+
+  @Test
+  public void addedFileIsOnlyVisibleAfterInvalidation() throws Exception {
+    FileSystemUtils.createEmptyFile(root.getChild("foo.txt"));
+    assertThat(
+        globber.run(Collections.singleton("*.txt"), Collections.emptySet(), false),
+        equalTo(ImmutableSet.of("foo.txt")));
+
+    FileSystemUtils.createEmptyFile(root.getChild("bar.txt"));
+    assertThat(
+        globber.run(Collections.singleton("*.txt"), Collections.emptySet(), false),
+        equalTo(ImmutableSet.of("foo.txt")));
+
+    globIndex.invalidate(cellRoot.resolve("bar.txt"));
+    assertThat(
+        globber.run(Collections.singleton("*.txt"), Collections.emptySet(), false),
+        equalTo(ImmutableSet.of("bar.txt", "foo.txt")));
+  }
+
+  @Test
+  public void removingDirectoryInvalidatesItsDescendants() throws Exception {
+    Path child = root.getChild("dir").getChild("child");
+    child.createDirectoryAndParents();
+    FileSystemUtils.createEmptyFile(child.getChild("foo.txt"));
+    assertThat(
+        globber.run(Collections.singleton("dir/child/foo.txt"), Collections.emptySet(), false),
+        equalTo(ImmutableSet.of("dir/child/foo.txt")));
+
+    root.getChild("dir").deleteTree();
+    globIndex.invalidate(cellRoot.resolve("dir"));
+    assertThat(
+        globber.run(Collections.singleton("dir/child/foo.txt"), Collections.emptySet(), false),
+        Matchers.empty());
+  }
+
+  @Test
+  public void ignoredDirectoriesAreNotIndexed() throws Exception {
+    Path ignored = root.getChild("ignored");
+    ignored.createDirectory();
+    assertThat(
+        globber.run(Collections.singleton("ignored/*"), Collections.emptySet(), false),
+        Matchers.empty());
+
+    FileSystemUtils.createEmptyFile(ignored.getChild("foo.txt"));
+    assertThat(
+        globber.run(Collections.singleton("ignored/*"), Collections.emptySet(), false),
+        equalTo(ImmutableSet.of("ignored/foo.txt")));
+  }
+
+  @Test
+  public void globResultChangesWhenMatchingPathIsAdded() {
+    GlobSpecWithResult glob = newGlob(ImmutableSet.of("src/**/*.java"), ImmutableSet.of());
+    assertTrue(GlobIndex.mayChangeGlobResult(glob, "src/com/Foo.java", true));
+    assertFalse(GlobIndex.mayChangeGlobResult(glob, "src/com/Foo.kt", true));
+    assertFalse(GlobIndex.mayChangeGlobResult(glob, "test/Foo.java", true));
+  }
+
+  @Test
+  public void globResultDoesNotChangeWhenExcludedPathIsAdded() {
+    GlobSpecWithResult glob = newGlob(ImmutableSet.of("Foo.java"), ImmutableSet.of("*Test.java"));
+    assertFalse(GlobIndex.mayChangeGlobResult(glob, "FooTest.java", true));
+  }
+
+  @Test
+  public void globResultChangesWhenMatchedPathOrItsAncestorIsRemoved() {
+    GlobSpecWithResult glob = newGlob(ImmutableSet.of("src/Foo.java"), ImmutableSet.of());
+    assertTrue(GlobIndex.mayChangeGlobResult(glob, "src/Foo.java", false));
+    assertTrue(GlobIndex.mayChangeGlobResult(glob, "src", false));
+    assertFalse(GlobIndex.mayChangeGlobResult(glob, "src/Bar.java", false));
+    assertFalse(GlobIndex.mayChangeGlobResult(glob, "sr", false));
+  }
+
+  private static GlobSpecWithResult newGlob(
+      ImmutableSet<String> filePaths, ImmutableSet<String> exclude) {
+    return GlobSpecWithResult.of(
+        GlobSpec.builder()
+            .setInclude(ImmutableList.of("src/**/*.java", "*.java"))
+            .setExclude(exclude)
+            .setExcludeDirectories(true)
+            .build(),
+        filePaths);
+  }
+}
@@ -63,12 +63,17 @@ import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.EnumSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import org.hamcrest.Matchers;
 import org.junit.Before;
 import org.junit.Rule;
@@ -586,6 +591,50 @@ public class SkylarkProjectBuildFileParserTest {
         equalTo(recordingParser.expectedCounts(vfs_path(ext1), 1, vfs_path(ext2), 1)));
   }
 
+  @Test
+  public void buildsSharedExtensionOnceWhenParsingConcurrently() throws Exception {
+    // Verifies threads parsing build files that load the same extension share its evaluation.
+    Path ext1 = projectFilesystem.resolve("ext_1.bzl");
+    Files.write(ext1, Arrays.asList("load('//:ext_2.bzl', 'ext_2')", "ext_1 = ext_2"));
+
+    Path ext2 = projectFilesystem.resolve("ext_2.bzl");
+    Files.write(ext2, Arrays.asList("ext_2 = ''.join([str(i) for i in range(10000)])"));
+
+    List<Path> buildFiles = new ArrayList<>();
+    for (int i = 0; i < 32; i++) {
+      Path buildFile = projectFilesystem.resolve("pkg" + i).resolve("BUCK");
+      Files.createDirectories(buildFile.getParent());
+      Files.write(buildFile, Arrays.asList("load('//:ext_1.bzl', 'ext_1')"));
+      buildFiles.add(buildFile);
+    }
+
+    RecordingParser recordingParser = new RecordingParser(parser);
+    ExecutorService executor = Executors.newFixedThreadPool(8);
+    try {
+      CountDownLatch start = new CountDownLatch(1);
+      List<Future<BuildFileManifest>> manifests = new ArrayList<>();
+      for (Path buildFile : buildFiles) {
+        manifests.add(
+            executor.submit(
+                () -> {
+                  start.await();
+                  return recordingParser.getBuildFileManifest(buildFile);
+                }));
+      }
+      start.countDown();
+      for (Future<BuildFileManifest> manifest : manifests) {
+        assertThat(
+            manifest.get().getIncludes(), Matchers.hasItems(ext1.toString(), ext2.toString()));
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+
+    assertThat(
+        recordingParser.buildCounts,
+        equalTo(recordingParser.expectedCounts(vfs_path(ext1), 1, vfs_path(ext2), 1)));
+  }
+
   @Test
   public void doesNotReadSameBuildFileMultipleTimes() throws Exception {
     // Verifies BUILD file is accessed for IO and AST construction only once.
@@ -36,8 +36,8 @@ import com.google.devtools.build.lib.events.EventHandler;
 import com.google.devtools.build.lib.syntax.BuildFileAST;
 import com.google.devtools.build.lib.vfs.Path;
 import java.io.IOException;
-import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import org.hamcrest.Matchers;
 
 public class SkylarkProjectBuildFileParserTestUtils {
@@ -48,8 +48,8 @@ public class SkylarkProjectBuildFileParserTestUtils {
 
     public RecordingParser(SkylarkProjectBuildFileParser delegate) {
       super(delegate);
-      readCounts = new HashMap<>();
-      buildCounts = new HashMap<>();
+      readCounts = new ConcurrentHashMap<>();
+      buildCounts = new ConcurrentHashMap<>();
     }
 
     @Override
@@ -17,6 +17,7 @@
 package com.facebook.buck.util.cache.impl;
 
 import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotEquals;
 import static org.junit.Assert.assertThat;
@@ -39,8 +40,11 @@ import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
 import java.util.Collection;
 import java.util.EnumSet;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
 import org.hamcrest.junit.ExpectedException;
 import org.junit.Rule;
 import org.junit.Test;
@@ -239,4 +243,49 @@ public class WatchedFileHashCacheTest {
     assertFalse(cache.willGet(filesystem.getPath("buck-out/file.txt")));
     assertTrue(cache.willGet(filesystem.getPath("file.txt")));
   }
+
+  @Test
+  public void snapshotHashesAreReusedForFilesWithUnchangedStamp() throws IOException {
+    ProjectFilesystem filesystem = TestProjectFilesystems.createProjectFilesystem(tmp.getRoot());
+    Path snapshot = tmp.getRoot().resolve("snapshot");
+    Path path = Paths.get("SomeClass.java");
+    filesystem.writeContentsToPath("original", path);
+    FileTime mtime = FileTime.fromMillis(System.currentTimeMillis() - TimeUnit.HOURS.toMillis(1));
+    Files.setLastModifiedTime(filesystem.resolve(path), mtime);
+
+    WatchedFileHashCache cache =
+        new WatchedFileHashCache(filesystem, fileHashCacheMode, Optional.of(snapshot));
+    HashCode original = cache.get(path);
+    cache.writeSnapshot();
+
+    // Rewrite the file in place without changing its size, mtime or inode, so that only a stale
+    // snapshot entry can explain the old hash being returned.
+    Files.write(filesystem.resolve(path), "modified".getBytes(Charsets.UTF_8));
+    Files.setLastModifiedTime(filesystem.resolve(path), mtime);
+    WatchedFileHashCache restarted =
+        new WatchedFileHashCache(filesystem, fileHashCacheMode, Optional.of(snapshot));
+    assertEquals(original, restarted.get(path));
+  }
+
+  @Test
+  public void snapshotHashesAreIgnoredForModifiedFiles() throws IOException {
+    ProjectFilesystem filesystem = TestProjectFilesystems.createProjectFilesystem(tmp.getRoot());
+    Path snapshot = tmp.getRoot().resolve("snapshot");
+    Path path = Paths.get("SomeClass.java");
+    filesystem.writeContentsToPath("original", path);
+    Files.setLastModifiedTime(
+        filesystem.resolve(path),
+        FileTime.fromMillis(System.currentTimeMillis() - TimeUnit.HOURS.toMillis(1)));
+
+    WatchedFileHashCache cache =
+        new WatchedFileHashCache(filesystem, fileHashCacheMode, Optional.of(snapshot));
+    HashCode original = cache.get(path);
+    cache.writeSnapshot();
+
+    filesystem.writeContentsToPath("modified content", path);
+    WatchedFileHashCache restarted =
+        new WatchedFileHashCache(filesystem, fileHashCacheMode, Optional.of(snapshot));
+    assertNotEquals(original, restarted.get(path));
+    assertEquals(filesystem.computeSha1(path).asHashCode(), restarted.get(path));
+  }
 }
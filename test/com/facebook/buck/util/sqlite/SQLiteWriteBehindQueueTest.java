@@ -0,0 +1,114 @@
+/*
+ * Copyright 2019-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.util.sqlite;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.concurrent.ExecutionException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class SQLiteWriteBehindQueueTest {
+  @Rule public TemporaryFolder tmp = new TemporaryFolder();
+
+  private String url;
+  private Connection writeConnection;
+  private Connection readConnection;
+  private SQLiteWriteBehindQueue queue;
+
+  @Before
+  public void setUp() throws Exception {
+    SQLiteUtils.initialize();
+    Path db = tmp.getRoot().toPath().resolve("test.db");
+    url = "jdbc:sqlite:" + db;
+    writeConnection = DriverManager.getConnection(url);
+    writeConnection.createStatement().executeUpdate("PRAGMA JOURNAL_MODE = WAL");
+    writeConnection.createStatement().executeUpdate("CREATE TABLE t (k INTEGER PRIMARY KEY)");
+    readConnection = DriverManager.getConnection(url);
+    queue = new SQLiteWriteBehindQueue("test", writeConnection, 10);
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    queue.close();
+    writeConnection.close();
+    readConnection.close();
+  }
+
+  @Test
+  public void writesAreVisibleToOtherConnectionsAfterFlush() throws Exception {
+    for (int i = 0; i < 25; i++) {
+      int key = i;
+      queue.enqueue(() -> insert(key));
+    }
+    queue.flush();
+
+    assertEquals(25, count());
+    assertEquals(0, queue.getQueueDepth());
+  }
+
+  @Test
+  public void failingWriteOnlyFailsItsOwnFuture() throws Exception {
+    ListenableFuture<Void> first = queue.enqueue(() -> insert(1));
+    ListenableFuture<Void> duplicate = queue.enqueue(() -> insert(1));
+    ListenableFuture<Void> second = queue.enqueue(() -> insert(2));
+    queue.flush();
+
+    first.get();
+    second.get();
+    try {
+      duplicate.get();
+      fail("Inserting a duplicate key should fail.");
+    } catch (ExecutionException e) {
+      assertTrue(e.getCause() instanceof SQLException);
+    }
+    assertEquals(2, count());
+  }
+
+  @Test
+  public void closeCommitsQueuedWrites() throws Exception {
+    for (int i = 0; i < 5; i++) {
+      int key = i;
+      queue.enqueue(() -> insert(key));
+    }
+    queue.close();
+
+    assertEquals(5, count());
+  }
+
+  private void insert(int key) throws SQLException {
+    writeConnection.createStatement().executeUpdate("INSERT INTO t VALUES (" + key + ")");
+  }
+
+  private int count() throws SQLException {
+    try (ResultSet rs = readConnection.createStatement().executeQuery("SELECT COUNT(*) FROM t")) {
+      rs.next();
+      return rs.getInt(1);
+    }
+  }
+}